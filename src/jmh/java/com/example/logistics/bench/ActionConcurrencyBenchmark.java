@@ -0,0 +1,175 @@
+package com.example.logistics.bench;
+
+import com.example.logistics.fsm.engine.FsmMachine;
+import com.example.logistics.model.Workflow;
+import com.example.logistics.reposity.WorkflowDatabase;
+import com.example.logistics.result.ApiResponse;
+import com.example.logistics.result.ReturnCode;
+import com.example.logistics.service.WorkflowLocks;
+import com.example.logistics.service.WorkflowService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Stress benchmarks for concurrent actions.
+ *
+ * <p>{@code ownWorkflow} runs actions with each thread on its own workflow, taking the thread
+ * count from the command line:
+ *
+ * <pre>
+ * mvn -Pbench test-compile exec:exec -Djmh.args="ActionConcurrencyBenchmark.ownWorkflow -t 4"
+ * </pre>
+ *
+ * <p>Only single-threaded throughput has been measured so far (about 0.86 ops/us with the
+ * compiled engine, on one core), so no scaling figure is claimed for the striped locks.
+ *
+ * <p>{@code actionDuringUpdate} races actions against updates of the same workflow and fails the
+ * iteration if an accepted action was applied to a machine that an update had already replaced.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ActionConcurrencyBenchmark {
+
+  private static final int STATE_COUNT = 1000;
+  private static final int WORKFLOW_COUNT = 256;
+
+  /**
+   * Application context with one route workflow per possible thread.
+   */
+  @State(Scope.Benchmark)
+  public static class Routes {
+
+    @Param({"compiled", "spring"})
+    String engine;
+
+    ConfigurableApplicationContext context;
+    WorkflowService service;
+    WorkflowLocks locks;
+    int[] workflowIds = new int[WORKFLOW_COUNT];
+    final AtomicInteger nextThread = new AtomicInteger();
+
+    @Setup
+    public void setUp() throws Exception {
+      context = BenchmarkFixtures.start(engine);
+      service = context.getBean(WorkflowService.class);
+      locks = context.getBean(WorkflowLocks.class);
+      int appId = BenchmarkFixtures.createApp(
+          service, BenchmarkFixtures.application(STATE_COUNT, 1));
+      for (int i = 0; i < WORKFLOW_COUNT; i++) {
+        workflowIds[i] = BenchmarkFixtures.createWorkflow(
+            service, BenchmarkFixtures.workflow(appId, STATE_COUNT));
+      }
+    }
+
+    @TearDown
+    public void tearDown() {
+      context.close();
+    }
+  }
+
+  /**
+   * The workflow owned by one benchmark thread.
+   */
+  @State(Scope.Thread)
+  public static class Own {
+
+    int workflowId;
+
+    @Setup
+    public void setUp(Routes routes) {
+      workflowId = routes.workflowIds[routes.nextThread.getAndIncrement() % WORKFLOW_COUNT];
+    }
+  }
+
+  /**
+   * A short workflow that is updated while actions run on it.
+   */
+  @State(Scope.Group)
+  public static class Race {
+
+    WorkflowService service;
+    WorkflowLocks locks;
+    Workflow workflow;
+    final LongAdder lost = new LongAdder();
+
+    @Setup
+    public void setUp(Routes routes) throws Exception {
+      service = routes.service;
+      locks = routes.locks;
+      int appId = BenchmarkFixtures.createApp(service, BenchmarkFixtures.application(3, 1));
+      workflow = BenchmarkFixtures.workflow(appId, 3);
+      workflow.setId(BenchmarkFixtures.createWorkflow(service, workflow));
+    }
+
+    @TearDown(Level.Iteration)
+    public void check() {
+      if (lost.sum() > 0) {
+        throw new IllegalStateException(lost.sum() + " accepted actions were lost to updates");
+      }
+    }
+  }
+
+  @Benchmark
+  public ApiResponse ownWorkflow(Routes routes, Own own) {
+    ApiResponse response = routes.service.workflowAction(own.workflowId,
+        BenchmarkFixtures.EVENT, BenchmarkFixtures.ROLE);
+    if (response.getState() != ReturnCode.SUCCESS) {
+      // Only this thread acts on the workflow, so the reset needs no lock
+      WorkflowDatabase.get(own.workflowId).getMachine()
+          .restore(BenchmarkFixtures.state(0), 0);
+    }
+    return response;
+  }
+
+  @Benchmark
+  @Group("actionDuringUpdate")
+  @GroupThreads(1)
+  public ApiResponse raceAction(Race race) {
+    int id = race.workflow.getId();
+    ApiResponse response = race.service.workflowAction(id, BenchmarkFixtures.EVENT,
+        BenchmarkFixtures.ROLE);
+    if (response.getState() == ReturnCode.SUCCESS) {
+      Lock lock = race.locks.forWorkflow(id);
+      lock.lock();
+      try {
+        // An update could only have replaced the machine while it was in its initial state
+        FsmMachine machine = WorkflowDatabase.get(id).getMachine();
+        if (machine.isInInitialState()) {
+          race.lost.increment();
+        }
+        machine.restore(BenchmarkFixtures.state(0), machine.getVersion() + 1);
+      } finally {
+        lock.unlock();
+      }
+    }
+    return response;
+  }
+
+  @Benchmark
+  @Group("actionDuringUpdate")
+  @GroupThreads(1)
+  public ApiResponse raceUpdate(Race race) throws Exception {
+    return race.service.updateWorkflow(race.workflow);
+  }
+}
@@ -0,0 +1,95 @@
+package com.example.logistics.bench;
+
+import com.example.logistics.model.Application;
+import com.example.logistics.model.AuthorizationIndex;
+import com.example.logistics.model.Event;
+import com.example.logistics.model.TransitionPermissions;
+import com.example.logistics.model.Workflow;
+import com.example.logistics.service.AuthorizationService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link AuthorizationService} with growing role and event counts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthorizationBenchmark {
+
+  @Param({"2", "20", "200"})
+  int roleCount;
+
+  @Param({"10", "100", "1000"})
+  int eventCount;
+
+  AuthorizationService authorizationService = new AuthorizationService();
+  Application app;
+  TransitionPermissions permissions;
+  Workflow workflow;
+  AuthorizationIndex index;
+  String lastEvent;
+  String lastFromState;
+  String lastToState;
+
+  @Setup
+  public void setUp() {
+    app = BenchmarkFixtures.application(eventCount + 1, roleCount);
+    workflow = BenchmarkFixtures.workflow(0, eventCount + 1);
+    // Give every event its own name so a probe cannot stop at the first match
+    int i = 0;
+    for (Event event : workflow.getEvents()) {
+      event.setName(BenchmarkFixtures.EVENT + i++);
+    }
+    lastEvent = BenchmarkFixtures.EVENT + (eventCount - 1);
+    lastFromState = BenchmarkFixtures.state(eventCount - 1);
+    lastToState = BenchmarkFixtures.state(eventCount);
+    permissions = authorizationService.compile(app);
+    index = authorizationService.compile(permissions, workflow);
+  }
+
+  @Benchmark
+  public boolean authorizeAllowed() {
+    return authorizationService.authorize(index, lastEvent, BenchmarkFixtures.ROLE);
+  }
+
+  @Benchmark
+  public boolean authorizeDenied() {
+    return authorizationService.authorize(index, lastEvent, "role-1");
+  }
+
+  @Benchmark
+  @Threads(4)
+  public boolean authorizeConcurrent() {
+    return authorizationService.authorize(index, lastEvent, BenchmarkFixtures.ROLE);
+  }
+
+  @Benchmark
+  public boolean permittedTransition() {
+    return permissions.isPermitted(lastFromState, lastToState);
+  }
+
+  @Benchmark
+  public TransitionPermissions compilePermissions() {
+    return authorizationService.compile(app);
+  }
+
+  @Benchmark
+  public AuthorizationIndex compileIndex() {
+    return authorizationService.compile(permissions, workflow);
+  }
+}
@@ -0,0 +1,163 @@
+package com.example.logistics.bench;
+
+import com.example.logistics.LogisticsFsmApplication;
+import com.example.logistics.model.Application;
+import com.example.logistics.model.Auth;
+import com.example.logistics.model.Event;
+import com.example.logistics.model.Role;
+import com.example.logistics.model.State;
+import com.example.logistics.model.Workflow;
+import com.example.logistics.result.ApiResponse;
+import com.example.logistics.result.ReturnCode;
+import com.example.logistics.service.WorkflowService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Builds applications, workflows and application contexts for the benchmarks.
+ *
+ * <p>Workflows are linear routes {@code S0 -> S1 -> ... -> Sn}, driven by the event
+ * {@code next} of role {@code operator}.
+ */
+final class BenchmarkFixtures {
+
+  static final String ROLE = "operator";
+  static final String EVENT = "next";
+
+  private static final AtomicInteger names = new AtomicInteger();
+
+  private BenchmarkFixtures() {
+  }
+
+  /**
+   * Starts a non-web application context.
+   *
+   * @param engine the FSM engine to select
+   * @return the started context
+   */
+  static ConfigurableApplicationContext start(String engine) {
+    return new SpringApplicationBuilder(LogisticsFsmApplication.class)
+        .web(WebApplicationType.NONE)
+        .run("--logistics.fsm.engine=" + engine, "--logging.level.root=WARN",
+            "--spring.main.banner-mode=off");
+  }
+
+  /**
+   * Starts a web application context.
+   *
+   * <p>Settings are passed as command-line arguments so they override
+   * {@code application.properties}.
+   *
+   * @param settings the settings, as {@code name=value}
+   * @return the started context
+   */
+  static ConfigurableApplicationContext startWeb(String... settings) {
+    String[] args = new String[settings.length + 3];
+    args[0] = "--server.port=0";
+    args[1] = "--logging.level.root=WARN";
+    args[2] = "--spring.main.banner-mode=off";
+    for (int i = 0; i < settings.length; i++) {
+      args[i + 3] = "--" + settings[i];
+    }
+    return new SpringApplicationBuilder(LogisticsFsmApplication.class).run(args);
+  }
+
+  static String state(int index) {
+    return "S" + index;
+  }
+
+  /**
+   * Builds a route application.
+   *
+   * @param stateCount the number of states
+   * @param roleCount the number of roles; only the first one is authorized for the route
+   * @return the application
+   */
+  static Application application(int stateCount, int roleCount) {
+    Application app = new Application();
+    app.setName("bench-app-" + names.incrementAndGet());
+    List<State> states = new ArrayList<>();
+    List<Auth> auths = new ArrayList<>();
+    for (int i = 0; i < stateCount; i++) {
+      State state = new State();
+      state.setCode(state(i));
+      states.add(state);
+      if (i > 0) {
+        auths.add(new Auth(state(i - 1), state(i)));
+      }
+    }
+    List<Role> roles = new ArrayList<>();
+    for (int i = 0; i < roleCount; i++) {
+      Role role = new Role();
+      role.setRole(i == 0 ? ROLE : "role-" + i);
+      role.setAuth(i == 0 ? auths : Collections.singletonList(auths.get(i % auths.size())));
+      roles.add(role);
+    }
+    app.setStates(states);
+    app.setBeginState(state(0));
+    app.setEndState(state(stateCount - 1));
+    app.setRoles(roles);
+    return app;
+  }
+
+  /**
+   * Builds a route workflow for an application.
+   *
+   * @param appId the application ID
+   * @param stateCount the number of states
+   * @return the workflow
+   */
+  static Workflow workflow(int appId, int stateCount) {
+    Workflow workflow = new Workflow();
+    workflow.setAppId(appId);
+    workflow.setName("bench-workflow-" + names.incrementAndGet());
+    List<State> states = new ArrayList<>();
+    List<Event> events = new ArrayList<>();
+    for (int i = 0; i < stateCount; i++) {
+      State state = new State();
+      state.setCode(state(i));
+      states.add(state);
+      if (i > 0) {
+        Event event = new Event();
+        event.setName(EVENT);
+        event.setFromState(state(i - 1));
+        event.setToState(state(i));
+        event.setRole(ROLE);
+        events.add(event);
+      }
+    }
+    workflow.setStates(states);
+    workflow.setEvents(events);
+    return workflow;
+  }
+
+  /**
+   * Creates an application through the service.
+   *
+   * @return the application ID
+   */
+  static int createApp(WorkflowService service, Application app) throws Exception {
+    return require(service.createApp(app));
+  }
+
+  /**
+   * Creates a workflow through the service.
+   *
+   * @return the workflow ID
+   */
+  static int createWorkflow(WorkflowService service, Workflow workflow) throws Exception {
+    return require(service.createWorkflow(workflow));
+  }
+
+  private static int require(ApiResponse response) {
+    if (response.getState() != ReturnCode.SUCCESS) {
+      throw new IllegalStateException("Fixture setup failed: " + response);
+    }
+    return response.getData().getId();
+  }
+}
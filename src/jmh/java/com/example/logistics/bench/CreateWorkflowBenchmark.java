@@ -0,0 +1,125 @@
+package com.example.logistics.bench;
+
+import com.example.logistics.fsm.engine.FsmDefinition;
+import com.example.logistics.fsm.engine.FsmEngine;
+import com.example.logistics.model.Workflow;
+import com.example.logistics.result.ApiResponse;
+import com.example.logistics.result.BatchApiResponse;
+import com.example.logistics.service.WorkflowImportService;
+import com.example.logistics.service.WorkflowService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Benchmarks {@link WorkflowService#createWorkflow}, which validates the workflow, checks it for
+ * cycles and compiles its state machine, and the engine compile step on its own.
+ *
+ * <p>{@code importWorkflows} creates {@value #IMPORT_SIZE} workflows per call through
+ * {@link WorkflowImportService} and reports the time per workflow, comparable to
+ * {@code createWorkflow}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CreateWorkflowBenchmark {
+
+  static final int IMPORT_SIZE = 100;
+
+  /**
+   * Application context with one route application.
+   */
+  @State(Scope.Benchmark)
+  public static class Context {
+
+    @Param({"compiled", "spring"})
+    String engine;
+
+    @Param({"10", "100"})
+    int stateCount;
+
+    ConfigurableApplicationContext context;
+    WorkflowService service;
+    WorkflowImportService importService;
+    FsmEngine fsmEngine;
+    int appId;
+    Workflow template;
+
+    @Setup
+    public void setUp() throws Exception {
+      context = BenchmarkFixtures.start(engine);
+      service = context.getBean(WorkflowService.class);
+      importService = context.getBean(WorkflowImportService.class);
+      fsmEngine = context.getBean(FsmEngine.class);
+      appId = BenchmarkFixtures.createApp(
+          service, BenchmarkFixtures.application(stateCount, 1));
+      template = BenchmarkFixtures.workflow(appId, stateCount);
+    }
+
+    @TearDown
+    public void tearDown() {
+      context.close();
+    }
+  }
+
+  /**
+   * Workflows created by one thread during an iteration, deleted afterwards.
+   */
+  @State(Scope.Thread)
+  public static class Created {
+
+    final List<Integer> ids = new ArrayList<>();
+
+    @TearDown(Level.Iteration)
+    public void deleteAll(Context context) {
+      for (int id : ids) {
+        context.service.deleteWorkflow(id);
+      }
+      ids.clear();
+    }
+  }
+
+  @Benchmark
+  public ApiResponse createWorkflow(Context context, Created created) throws Exception {
+    Workflow workflow = BenchmarkFixtures.workflow(context.appId, context.stateCount);
+    ApiResponse response = context.service.createWorkflow(workflow);
+    created.ids.add(response.getData().getId());
+    return response;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(IMPORT_SIZE)
+  public BatchApiResponse importWorkflows(Context context, Created created) {
+    List<Workflow> workflows = new ArrayList<>(IMPORT_SIZE);
+    for (int i = 0; i < IMPORT_SIZE; i++) {
+      workflows.add(BenchmarkFixtures.workflow(context.appId, context.stateCount));
+    }
+    BatchApiResponse response = context.importService.importWorkflows(workflows, true);
+    for (ApiResponse item : response.getData()) {
+      created.ids.add(item.getData().getId());
+    }
+    return response;
+  }
+
+  @Benchmark
+  public FsmDefinition compileDefinition(Context context) throws Exception {
+    return context.fsmEngine.compile(context.template);
+  }
+}
@@ -0,0 +1,89 @@
+package com.example.logistics.bench;
+
+import com.example.logistics.result.Content;
+import com.example.logistics.result.PagedApiResponse;
+import com.example.logistics.result.PagedData;
+import com.example.logistics.service.WorkflowService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Benchmarks {@link WorkflowService#queryWorkflow} and cursor paging at several content sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryWorkflowBenchmark {
+
+  private static final int PAGE_SIZE = 20;
+
+  /**
+   * Application context holding {@code contentSize} workflows.
+   */
+  @State(Scope.Benchmark)
+  public static class Contents {
+
+    @Param({"1000", "10000", "100000"})
+    int contentSize;
+
+    ConfigurableApplicationContext context;
+    WorkflowService service;
+    int lastPage;
+    Content middle;
+
+    @Setup
+    public void setUp() throws Exception {
+      context = BenchmarkFixtures.start("compiled");
+      service = context.getBean(WorkflowService.class);
+      int appId = BenchmarkFixtures.createApp(service, BenchmarkFixtures.application(3, 1));
+      for (int i = 0; i < contentSize; i++) {
+        BenchmarkFixtures.createWorkflow(service, BenchmarkFixtures.workflow(appId, 3));
+      }
+      lastPage = (contentSize + PAGE_SIZE - 1) / PAGE_SIZE;
+      PagedData page = service.queryWorkflow(lastPage / 2, PAGE_SIZE).getData();
+      middle = page.getContent().get(0);
+    }
+
+    @TearDown
+    public void tearDown() {
+      context.close();
+    }
+  }
+
+  @Benchmark
+  public PagedApiResponse firstPage(Contents contents) {
+    return contents.service.queryWorkflow(1, PAGE_SIZE);
+  }
+
+  @Benchmark
+  public PagedApiResponse lastPage(Contents contents) {
+    return contents.service.queryWorkflow(contents.lastPage, PAGE_SIZE);
+  }
+
+  @Benchmark
+  public PagedApiResponse cursorPage(Contents contents) {
+    return contents.service.queryWorkflowAfter(
+        contents.middle.getCreatedTime(), contents.middle.getId(), PAGE_SIZE);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public PagedApiResponse concurrentFirstPage(Contents contents) {
+    return contents.service.queryWorkflow(1, PAGE_SIZE);
+  }
+}
@@ -0,0 +1,127 @@
+package com.example.logistics.bench;
+
+import com.example.logistics.service.WorkflowService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Load test of the blocking and asynchronous REST modes over HTTP.
+ *
+ * <p>Tomcat is limited to {@value #TOMCAT_THREADS} worker threads and the journal runs with
+ * synchronous fsync, so every instance start blocks on disk. In blocking mode at most
+ * {@value #TOMCAT_THREADS} requests can wait on the journal at once; in async mode all
+ * {@value #CLIENTS} clients can, and group commit forces their records together.
+ *
+ * <p>Each iteration prints the largest group commit seen; a batch larger than
+ * {@value #TOMCAT_THREADS} shows more requests in flight than Tomcat has threads. Throughput only
+ * diverges once fsync, rather than the CPU, is the bottleneck.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@Threads(RestModeBenchmark.CLIENTS)
+public class RestModeBenchmark {
+
+  static final int CLIENTS = 64;
+  static final int TOMCAT_THREADS = 4;
+
+  /**
+   * A web application context with one workflow to start instances of.
+   */
+  @State(Scope.Benchmark)
+  public static class Server {
+
+    @Param({"blocking", "async"})
+    String mode;
+
+    ConfigurableApplicationContext context;
+    Path journalDir;
+    URL startUrl;
+    byte[] startBody;
+
+    @Setup
+    public void setUp() throws Exception {
+      journalDir = Files.createTempDirectory("rest-mode-journal");
+      context = BenchmarkFixtures.startWeb("server.tomcat.threads.max=" + TOMCAT_THREADS,
+          "server.tomcat.threads.min-spare=" + TOMCAT_THREADS,
+          "logistics.web.mode=" + mode, "logistics.web.async.threads=" + CLIENTS,
+          "logistics.journal.enabled=true", "logistics.journal.dir=" + journalDir,
+          "logistics.journal.segment-size=16777216",
+          "logistics.journal.snapshot-interval-seconds=0");
+      WorkflowService service = context.getBean(WorkflowService.class);
+      int appId = BenchmarkFixtures.createApp(service, BenchmarkFixtures.application(3, 1));
+      int workflowId = BenchmarkFixtures.createWorkflow(
+          service, BenchmarkFixtures.workflow(appId, 3));
+      String port = context.getEnvironment().getProperty("local.server.port");
+      startUrl = new URL("http://localhost:" + port + "/api/instance/start");
+      startBody = ("{\"workflowId\":" + workflowId + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Iteration)
+    public void printBatchSize() {
+      HistogramSnapshot batches = context.getBean(MeterRegistry.class)
+          .get("logistics.journal.batch").summary().takeSnapshot();
+      System.out.printf("journal batch: max %.0f, mean %.1f%n", batches.max(), batches.mean());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+      context.close();
+      try (Stream<Path> files = Files.walk(journalDir)) {
+        files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+      }
+    }
+  }
+
+  @Benchmark
+  public byte[] startInstance(Server server) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) server.startUrl.openConnection();
+    connection.setRequestMethod("POST");
+    connection.setRequestProperty("Content-Type", "application/json");
+    connection.setDoOutput(true);
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(server.startBody);
+    }
+    if (connection.getResponseCode() != 200) {
+      throw new IOException("HTTP " + connection.getResponseCode());
+    }
+    // Drain the body so the keep-alive connection is reused
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    byte[] buffer = new byte[256];
+    try (InputStream in = connection.getInputStream()) {
+      for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+        body.write(buffer, 0, n);
+      }
+    }
+    return body.toByteArray();
+  }
+}
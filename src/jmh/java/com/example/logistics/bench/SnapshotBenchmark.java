@@ -0,0 +1,119 @@
+package com.example.logistics.bench;
+
+import com.example.logistics.journal.SnapshotStore;
+import com.example.logistics.reposity.InstanceDatabase;
+import com.example.logistics.reposity.WorkflowDatabase;
+import com.example.logistics.service.WorkflowService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Benchmarks writing a snapshot of {@code instanceCount} instances of one 5-state route, and
+ * loading it into empty databases as a restart does.
+ *
+ * <p>Each call is a single shot; run with a heap large enough for the instances, for example
+ * {@code -Djmh.args="SnapshotBenchmark -jvmArgs -Xmx3g"}. The snapshot size is printed at the end
+ * of each trial.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SnapshotBenchmark {
+
+  private static final int STATE_COUNT = 5;
+  private static final long SEGMENT = 1;
+
+  /**
+   * Application context holding {@code instanceCount} instances, spread over the route's states,
+   * and a directory holding their snapshot.
+   */
+  @State(Scope.Benchmark)
+  public static class Instances {
+
+    @Param({"1000000", "10000000"})
+    int instanceCount;
+
+    ConfigurableApplicationContext context;
+    WorkflowService service;
+    SnapshotStore store;
+    Path dir;
+    int workflowId;
+
+    @Setup
+    public void setUp() throws Exception {
+      context = BenchmarkFixtures.start("compiled");
+      service = context.getBean(WorkflowService.class);
+      int appId = BenchmarkFixtures.createApp(
+          service, BenchmarkFixtures.application(STATE_COUNT, 1));
+      workflowId = BenchmarkFixtures.createWorkflow(
+          service, BenchmarkFixtures.workflow(appId, STATE_COUNT));
+      for (int i = 0; i < instanceCount; i++) {
+        int instanceId = service.startInstance(workflowId).getData().getId();
+        for (int step = 0; step < i % (STATE_COUNT - 1); step++) {
+          service.instanceAction(instanceId, BenchmarkFixtures.EVENT, BenchmarkFixtures.ROLE);
+        }
+      }
+      dir = Files.createTempDirectory("snapshot-bench");
+      store = new SnapshotStore(dir, context.getBean(ObjectMapper.class));
+      store.write(SEGMENT, service);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+      Path snapshot;
+      try (Stream<Path> files = Files.list(dir)) {
+        snapshot = files.filter(path -> path.toString().endsWith(".snapshot")).findFirst().get();
+      }
+      System.out.printf("%nSnapshot of %d instances: %d bytes%n",
+          instanceCount, Files.size(snapshot));
+      try (Stream<Path> files = Files.walk(dir)) {
+        files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+      }
+      context.close();
+    }
+  }
+
+  /**
+   * Empties the databases before each load, so it starts as a restart does.
+   */
+  @State(Scope.Benchmark)
+  public static class Emptied {
+
+    @Setup(Level.Iteration)
+    public void forget(Instances instances) {
+      InstanceDatabase.deleteInstances(instances.workflowId);
+      WorkflowDatabase.delete(instances.workflowId);
+    }
+  }
+
+  @Benchmark
+  public int writeSnapshot(Instances instances) throws IOException {
+    return instances.store.write(SEGMENT, instances.service);
+  }
+
+  @Benchmark
+  public long loadSnapshot(Instances instances, Emptied emptied) throws Exception {
+    return instances.store.load(instances.service);
+  }
+}
@@ -0,0 +1,139 @@
+package com.example.logistics.bench;
+
+import com.example.logistics.reposity.WorkflowDatabase;
+import com.example.logistics.result.ApiResponse;
+import com.example.logistics.result.ReturnCode;
+import com.example.logistics.service.WorkflowLocks;
+import com.example.logistics.service.WorkflowService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Benchmarks {@link WorkflowService#workflowAction} on long routes.
+ *
+ * <p>A machine that reaches the end of its route is reset to the begin state, which costs one
+ * extra call every {@code stateCount} actions.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WorkflowActionBenchmark {
+
+  private static final int STATE_COUNT = 1000;
+  private static final int WORKFLOW_COUNT = 64;
+
+  /**
+   * Application context with a set of route workflows.
+   */
+  @State(Scope.Benchmark)
+  public static class Routes {
+
+    @Param({"compiled", "spring"})
+    String engine;
+
+    ConfigurableApplicationContext context;
+    WorkflowService service;
+    WorkflowLocks locks;
+    int[] workflowIds = new int[WORKFLOW_COUNT];
+    int finishedId;
+    final AtomicInteger nextThread = new AtomicInteger();
+
+    @Setup
+    public void setUp() throws Exception {
+      context = BenchmarkFixtures.start(engine);
+      service = context.getBean(WorkflowService.class);
+      locks = context.getBean(WorkflowLocks.class);
+      int appId = BenchmarkFixtures.createApp(
+          service, BenchmarkFixtures.application(STATE_COUNT, 1));
+      for (int i = 0; i < WORKFLOW_COUNT; i++) {
+        workflowIds[i] = BenchmarkFixtures.createWorkflow(
+            service, BenchmarkFixtures.workflow(appId, STATE_COUNT));
+      }
+      finishedId = BenchmarkFixtures.createWorkflow(
+          service, BenchmarkFixtures.workflow(appId, STATE_COUNT));
+      for (int i = 1; i < STATE_COUNT; i++) {
+        service.workflowAction(finishedId, BenchmarkFixtures.EVENT, BenchmarkFixtures.ROLE);
+      }
+    }
+
+    @TearDown
+    public void tearDown() {
+      context.close();
+    }
+  }
+
+  /**
+   * The workflow owned by one benchmark thread.
+   */
+  @State(Scope.Thread)
+  public static class Own {
+
+    int workflowId;
+
+    @Setup
+    public void setUp(Routes routes) {
+      workflowId = routes.workflowIds[routes.nextThread.getAndIncrement() % WORKFLOW_COUNT];
+    }
+  }
+
+  private static ApiResponse act(Routes routes, int id) {
+    ApiResponse response = routes.service.workflowAction(id, BenchmarkFixtures.EVENT,
+        BenchmarkFixtures.ROLE);
+    if (response.getState() != ReturnCode.SUCCESS) {
+      Lock lock = routes.locks.forWorkflow(id);
+      lock.lock();
+      try {
+        WorkflowDatabase.get(id).getMachine()
+            .restore(BenchmarkFixtures.state(0), 0);
+      } finally {
+        lock.unlock();
+      }
+    }
+    return response;
+  }
+
+  @Benchmark
+  public ApiResponse accepted(Routes routes, Own own) {
+    return act(routes, own.workflowId);
+  }
+
+  @Benchmark
+  public ApiResponse rejectedByRole(Routes routes, Own own) {
+    return routes.service.workflowAction(own.workflowId, BenchmarkFixtures.EVENT, "nobody");
+  }
+
+  @Benchmark
+  public ApiResponse rejectedByState(Routes routes) {
+    return routes.service.workflowAction(routes.finishedId, BenchmarkFixtures.EVENT,
+        BenchmarkFixtures.ROLE);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public ApiResponse contendedSameWorkflow(Routes routes) {
+    return act(routes, routes.workflowIds[0]);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public ApiResponse parallelOwnWorkflows(Routes routes, Own own) {
+    return act(routes, own.workflowId);
+  }
+}
@@ -0,0 +1,220 @@
+package com.example.logistics.controller;
+
+import com.example.logistics.model.Action;
+import com.example.logistics.model.Application;
+import com.example.logistics.model.DeleteId;
+import com.example.logistics.model.InstanceStart;
+import com.example.logistics.model.Workflow;
+import com.example.logistics.result.ApiResponse;
+import com.example.logistics.result.BatchApiResponse;
+import com.example.logistics.result.ReturnCode;
+import com.example.logistics.result.SingleData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Servlet controller serving the same endpoints as {@link WorkflowController} in {@code async}
+ * mode ({@code logistics.web.mode}).
+ *
+ * <p>Actions are applied on the container thread, which is then released while the journal's
+ * fsync is awaited as a future. Definition changes and instance starts block on the journal, so
+ * they are handed to a dedicated executor instead, and the number of them in flight is bounded by
+ * the executor. When its queue is full, or it is shutting down, the request fails at once with
+ * {@link ReturnCode#SYSTEM_BUSY}. Queries never block and always run on the container thread.
+ */
+@RestController
+@ConditionalOnProperty(name = "logistics.web.mode", havingValue = "async")
+@RequestMapping("/api")
+public class AsyncWorkflowController extends ServletWorkflowController {
+
+  private final ThreadPoolExecutor executor;
+
+  /**
+   * Constructs an AsyncWorkflowController.
+   *
+   * @param requests the request mapping shared with the other controllers
+   * @param objectMapper the mapper serializing streamed transitions
+   * @param threads the number of threads running blocking requests
+   * @param queueCapacity the number of requests that may wait for a thread
+   */
+  @Autowired
+  AsyncWorkflowController(WorkflowRequests requests, ObjectMapper objectMapper,
+      @Value("${logistics.web.async.threads:512}") int threads,
+      @Value("${logistics.web.async.queue-capacity:4096}") int queueCapacity) {
+    super(requests, objectMapper);
+    AtomicInteger threadId = new AtomicInteger(1);
+    this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+          Thread thread = new Thread(runnable, "async-request-" + threadId.getAndIncrement());
+          thread.setDaemon(true);
+          return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Creates a new application.
+   *
+   * @param app the application to create
+   * @return the API response
+   */
+  @PostMapping("/app/create")
+  public CompletableFuture<ApiResponse> createApp(@RequestBody Application app) {
+    return submit(() -> requests.createApp(app));
+  }
+
+  /**
+   * Creates a new workflow.
+   *
+   * @param workflow the workflow to create
+   * @return the API response
+   */
+  @PostMapping("/workflow/create")
+  public CompletableFuture<ApiResponse> createWorkflow(@RequestBody Workflow workflow) {
+    return submit(() -> requests.createWorkflow(workflow));
+  }
+
+  /**
+   * Imports workflows in bulk.
+   *
+   * @param body a JSON array of workflows, or one workflow per line
+   * @param requireAllValid whether to create no workflow unless all of them are valid
+   * @return the batch API response with one result per workflow
+   */
+  @PostMapping(value = "/workflow/import",
+      consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+  public CompletableFuture<BatchApiResponse> importWorkflows(InputStream body,
+      @RequestParam(defaultValue = "false") boolean requireAllValid) {
+    return submit(() -> requests.importWorkflows(body, requireAllValid),
+        AsyncWorkflowController::batchBusy);
+  }
+
+  /**
+   * Updates an existing workflow.
+   *
+   * @param workflow the workflow to update
+   * @return the API response
+   */
+  @PostMapping("/workflow/update")
+  public CompletableFuture<ApiResponse> updateWorkflow(@RequestBody Workflow workflow) {
+    return submit(() -> requests.updateWorkflow(workflow));
+  }
+
+  /**
+   * Deletes a workflow.
+   *
+   * @param id the ID of the workflow to delete
+   * @return the API response
+   */
+  @PostMapping("/workflow/delete")
+  public CompletableFuture<ApiResponse> deleteWorkflow(@RequestBody DeleteId id) {
+    return submit(() -> requests.deleteWorkflow(id));
+  }
+
+  /**
+   * Performs an action on a workflow.
+   *
+   * @param action the action to perform
+   * @return the API response, once the transition is durable
+   */
+  @PostMapping("/workflow/action")
+  public CompletableFuture<ApiResponse> workflowAction(@RequestBody Action action) {
+    return requests.workflowAction(action);
+  }
+
+  /**
+   * Performs a batch of actions, keeping the order of actions on the same workflow.
+   *
+   * @param actions the actions to perform
+   * @return the batch API response with one result per action, once every transition is durable
+   */
+  @PostMapping("/workflow/action/batch")
+  public CompletableFuture<BatchApiResponse> workflowActionBatch(
+      @RequestBody List<Action> actions) {
+    return requests.workflowActionBatch(actions);
+  }
+
+  /**
+   * Starts a new instance of a workflow.
+   *
+   * @param start the workflow to start an instance of
+   * @return the API response
+   */
+  @PostMapping("/instance/start")
+  public CompletableFuture<ApiResponse> startInstance(@RequestBody InstanceStart start) {
+    return submit(() -> requests.startInstance(start));
+  }
+
+  /**
+   * Performs an action on a workflow instance.
+   *
+   * @param action the action to perform, identifying the instance by ID
+   * @return the API response, once the transition is durable
+   */
+  @PostMapping("/instance/action")
+  public CompletableFuture<ApiResponse> instanceAction(@RequestBody Action action) {
+    return requests.instanceAction(action);
+  }
+
+  /**
+   * Stops the request threads.
+   */
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  private CompletableFuture<ApiResponse> submit(Callable<ApiResponse> request) {
+    return submit(request, AsyncWorkflowController::busy);
+  }
+
+  private <T> CompletableFuture<T> submit(Callable<T> request, Supplier<T> busy) {
+    try {
+      return CompletableFuture.supplyAsync(() -> {
+        try {
+          return request.call();
+        } catch (RuntimeException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new CompletionException(e);
+        }
+      }, executor);
+    } catch (RejectedExecutionException e) {
+      // A rejected task would never run, so answer now rather than leave the future pending
+      return CompletableFuture.completedFuture(busy.get());
+    }
+  }
+
+  private static ApiResponse busy() {
+    ApiResponse apiResponse = new ApiResponse();
+    apiResponse.setState(ReturnCode.SYSTEM_BUSY);
+    apiResponse.setData(new SingleData(null));
+    return apiResponse;
+  }
+
+  private static BatchApiResponse batchBusy() {
+    BatchApiResponse batchApiResponse = new BatchApiResponse();
+    batchApiResponse.setState(ReturnCode.SYSTEM_BUSY);
+    return batchApiResponse;
+  }
+}
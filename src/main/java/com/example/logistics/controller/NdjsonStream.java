@@ -0,0 +1,30 @@
+package com.example.logistics.controller;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.util.Iterator;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Writes items to a servlet response as NDJSON, one line per item, while they are produced.
+ */
+final class NdjsonStream {
+
+  private NdjsonStream() {
+  }
+
+  /**
+   * Creates a response body that serializes items one at a time.
+   *
+   * @param items the items, consumed while the response is written
+   * @param writer the writer serializing one item
+   * @return the response body
+   */
+  static StreamingResponseBody of(Iterator<?> items, ObjectWriter writer) {
+    return out -> {
+      while (items.hasNext()) {
+        out.write(writer.writeValueAsBytes(items.next()));
+        out.write('\n');
+      }
+    };
+  }
+}
@@ -0,0 +1,245 @@
+package com.example.logistics.controller;
+
+import com.example.logistics.model.Action;
+import com.example.logistics.model.Application;
+import com.example.logistics.model.DeleteId;
+import com.example.logistics.model.HistoryQuery;
+import com.example.logistics.model.InstanceStart;
+import com.example.logistics.model.PageQuery;
+import com.example.logistics.model.StatsQuery;
+import com.example.logistics.model.Workflow;
+import com.example.logistics.model.WorkflowFilter;
+import com.example.logistics.result.ApiResponse;
+import com.example.logistics.result.BatchApiResponse;
+import com.example.logistics.result.PagedApiResponse;
+import com.example.logistics.result.StatsApiResponse;
+import com.example.logistics.result.Transition;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * WebFlux controller serving the same endpoints as {@link WorkflowController} and
+ * {@link AsyncWorkflowController}.
+ *
+ * <p>Only queries, which never wait, run on the event loop. An action waits for its workflow's
+ * stripe lock, so actions are applied on the bounded elastic scheduler, and the wait for the
+ * journal that follows is a future rather than a blocked thread. Definition changes compile state
+ * machines and wait for the journal, so those run on the same scheduler.
+ *
+ * <p>{@code /workflow/action/stream} ingests an NDJSON stream of actions, such as a gateway's
+ * continuous scan feed, and streams one result line back per action in the same order. Actions
+ * are applied one at a time on a single scheduler worker, so they take effect in arrival order.
+ * At most {@code logistics.web.reactive.concurrency} actions await the journal at once; beyond
+ * that the request body is no longer read, so a fast producer is held back by TCP flow control.
+ *
+ * <p>Enabled by the {@code reactive} profile. Request mapping is shared with
+ * the servlet controllers through {@link WorkflowRequests}.
+ */
+@RestController
+@RequestMapping("/api")
+@ConditionalOnProperty(name = "logistics.web.mode", havingValue = "reactive")
+public class ReactiveWorkflowController {
+
+  private final WorkflowRequests requests;
+  private final int concurrency;
+
+  /**
+   * Constructs a ReactiveWorkflowController.
+   *
+   * @param requests the request mapping shared with the servlet controller
+   * @param concurrency the number of streamed actions that may await the journal at once
+   */
+  @Autowired
+  ReactiveWorkflowController(WorkflowRequests requests,
+      @Value("${logistics.web.reactive.concurrency:256}") int concurrency) {
+    this.requests = requests;
+    this.concurrency = concurrency;
+  }
+
+  /**
+   * Creates a new application.
+   *
+   * @param app the application to create
+   * @return the API response
+   */
+  @PostMapping("/app/create")
+  public Mono<ApiResponse> createApp(@RequestBody Application app) {
+    return offload(() -> requests.createApp(app));
+  }
+
+  /**
+   * Creates a new workflow.
+   *
+   * @param workflow the workflow to create
+   * @return the API response
+   */
+  @PostMapping("/workflow/create")
+  public Mono<ApiResponse> createWorkflow(@RequestBody Workflow workflow) {
+    return offload(() -> requests.createWorkflow(workflow));
+  }
+
+  /**
+   * Imports workflows in bulk.
+   *
+   * @param workflows a JSON array of workflows, or one workflow per line
+   * @param requireAllValid whether to create no workflow unless all of them are valid
+   * @return the batch API response with one result per workflow
+   */
+  @PostMapping(value = "/workflow/import",
+      consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+  public Mono<BatchApiResponse> importWorkflows(@RequestBody Flux<Workflow> workflows,
+      @RequestParam(defaultValue = "false") boolean requireAllValid) {
+    // Workflows are decoded one at a time as the body arrives
+    return workflows.collectList()
+        .flatMap(list -> offload(() -> requests.importWorkflows(list, requireAllValid)));
+  }
+
+  /**
+   * Queries workflows with page-number or cursor pagination.
+   *
+   * @param pageQuery the page query parameters
+   * @return the paged API response
+   */
+  @PostMapping("/workflow/query")
+  public Mono<PagedApiResponse> queryWorkflow(@RequestBody PageQuery pageQuery) {
+    return Mono.fromSupplier(() -> requests.queryWorkflow(pageQuery));
+  }
+
+  /**
+   * Queries the workflows matching an application, current state or actionable role.
+   *
+   * @param filter the criteria and page parameters
+   * @return the paged API response
+   */
+  @PostMapping("/workflow/filter")
+  public Mono<PagedApiResponse> filterWorkflows(@RequestBody WorkflowFilter filter) {
+    return Mono.fromSupplier(() -> requests.filterWorkflows(filter));
+  }
+
+  /**
+   * Counts workflows per application and current state.
+   *
+   * @param query the application to count, or none for all applications
+   * @return the counts, by application ID and state code
+   */
+  @PostMapping("/workflow/stats")
+  public Mono<StatsApiResponse> queryStats(@RequestBody StatsQuery query) {
+    return Mono.fromSupplier(() -> requests.queryStats(query));
+  }
+
+  /**
+   * Updates an existing workflow.
+   *
+   * @param workflow the workflow to update
+   * @return the API response
+   */
+  @PostMapping("/workflow/update")
+  public Mono<ApiResponse> updateWorkflow(@RequestBody Workflow workflow) {
+    return offload(() -> requests.updateWorkflow(workflow));
+  }
+
+  /**
+   * Deletes a workflow.
+   *
+   * @param id the ID of the workflow to delete
+   * @return the API response
+   */
+  @PostMapping("/workflow/delete")
+  public Mono<ApiResponse> deleteWorkflow(@RequestBody DeleteId id) {
+    return offload(() -> requests.deleteWorkflow(id));
+  }
+
+  /**
+   * Performs an action on a workflow.
+   *
+   * @param action the action to perform
+   * @return the API response
+   */
+  @PostMapping("/workflow/action")
+  public Mono<ApiResponse> workflowAction(@RequestBody Action action) {
+    return offloadFuture(() -> requests.workflowAction(action));
+  }
+
+  /**
+   * Performs a batch of actions, keeping the order of actions on the same workflow.
+   *
+   * @param actions the actions to perform
+   * @return the batch API response with one result per action
+   */
+  @PostMapping("/workflow/action/batch")
+  public Mono<BatchApiResponse> workflowActionBatch(@RequestBody List<Action> actions) {
+    return offloadFuture(() -> requests.workflowActionBatch(actions));
+  }
+
+  /**
+   * Performs a stream of actions, applied in arrival order.
+   *
+   * @param actions the actions, one JSON object per line
+   * @return one API response per action, in the same order
+   */
+  @PostMapping(value = "/workflow/action/stream", consumes = MediaType.APPLICATION_NDJSON_VALUE,
+      produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public Flux<ApiResponse> workflowActionStream(@RequestBody Flux<Action> actions) {
+    // One worker applies the actions in order; only the journal waits overlap
+    return actions.publishOn(Schedulers.boundedElastic(), concurrency).flatMapSequential(
+        action -> Mono.fromFuture(() -> requests.workflowAction(action)), concurrency);
+  }
+
+  /**
+   * Streams the recorded transitions of a workflow in a time range, oldest first.
+   *
+   * <p>Transitions are decoded on demand as the client reads them, so a long history is never
+   * held in memory. An unknown workflow yields an empty stream.
+   *
+   * @param query the workflow ID and time range
+   * @return the transitions, one JSON object per line
+   */
+  @PostMapping(value = "/workflow/history", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public Flux<Transition> queryHistory(@RequestBody HistoryQuery query) {
+    return Flux.fromIterable(() -> requests.queryHistory(query));
+  }
+
+  /**
+   * Starts a new instance of a workflow.
+   *
+   * @param start the workflow to start an instance of
+   * @return the API response
+   */
+  @PostMapping("/instance/start")
+  public Mono<ApiResponse> startInstance(@RequestBody InstanceStart start) {
+    return offload(() -> requests.startInstance(start));
+  }
+
+  /**
+   * Performs an action on a workflow instance.
+   *
+   * @param action the action to perform, identifying the instance by ID
+   * @return the API response
+   */
+  @PostMapping("/instance/action")
+  public Mono<ApiResponse> instanceAction(@RequestBody Action action) {
+    return offloadFuture(() -> requests.instanceAction(action));
+  }
+
+  private static <T> Mono<T> offload(Callable<T> request) {
+    return Mono.fromCallable(request).subscribeOn(Schedulers.boundedElastic());
+  }
+
+  private static <T> Mono<T> offloadFuture(Supplier<CompletableFuture<T>> request) {
+    return Mono.fromFuture(request).subscribeOn(Schedulers.boundedElastic());
+  }
+}
@@ -0,0 +1,79 @@
+package com.example.logistics.controller;
+
+import com.example.logistics.model.HistoryQuery;
+import com.example.logistics.model.PageQuery;
+import com.example.logistics.model.StatsQuery;
+import com.example.logistics.model.WorkflowFilter;
+import com.example.logistics.result.PagedApiResponse;
+import com.example.logistics.result.StatsApiResponse;
+import com.example.logistics.result.Transition;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Query endpoints of the servlet stack, shared by {@link WorkflowController} and
+ * {@link AsyncWorkflowController}. Queries never block, so they run on the container thread in
+ * every mode; the subclasses differ only in how changes and actions are executed.
+ */
+public abstract class ServletWorkflowController {
+
+  final WorkflowRequests requests;
+  private final ObjectWriter transitionWriter;
+
+  ServletWorkflowController(WorkflowRequests requests, ObjectMapper objectMapper) {
+    this.requests = requests;
+    this.transitionWriter = objectMapper.writerFor(Transition.class);
+  }
+
+  /**
+   * Queries workflows with page-number or cursor pagination.
+   *
+   * @param pageQuery the page query parameters
+   * @return the paged API response
+   */
+  @PostMapping("/workflow/query")
+  public PagedApiResponse queryWorkflow(@RequestBody PageQuery pageQuery) {
+    return requests.queryWorkflow(pageQuery);
+  }
+
+  /**
+   * Queries the workflows matching an application, current state or actionable role.
+   *
+   * @param filter the criteria and page parameters
+   * @return the paged API response
+   */
+  @PostMapping("/workflow/filter")
+  public PagedApiResponse filterWorkflows(@RequestBody WorkflowFilter filter) {
+    return requests.filterWorkflows(filter);
+  }
+
+  /**
+   * Counts workflows per application and current state.
+   *
+   * @param query the application to count, or none for all applications
+   * @return the counts, by application ID and state code
+   */
+  @PostMapping("/workflow/stats")
+  public StatsApiResponse queryStats(@RequestBody StatsQuery query) {
+    return requests.queryStats(query);
+  }
+
+  /**
+   * Streams the recorded transitions of a workflow in a time range, oldest first.
+   *
+   * <p>Transitions are written as NDJSON while they are read from the history, so a long history
+   * is never held in memory. The body is written on the MVC async executor. An unknown workflow
+   * yields an empty stream.
+   *
+   * @param query the workflow ID and time range
+   * @return the transitions, one JSON object per line
+   */
+  @PostMapping(value = "/workflow/history", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public StreamingResponseBody queryHistory(@RequestBody HistoryQuery query) {
+    return NdjsonStream.of(requests.queryHistory(query), transitionWriter);
+  }
+}
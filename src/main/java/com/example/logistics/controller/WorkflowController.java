@@ -3,30 +3,47 @@ package com.example.logistics.controller;
 import com.example.logistics.model.Action;
 import com.example.logistics.model.Application;
 import com.example.logistics.model.DeleteId;
-import com.example.logistics.model.PageQuery;
+import com.example.logistics.model.InstanceStart;
 import com.example.logistics.model.Workflow;
 import com.example.logistics.result.ApiResponse;
-import com.example.logistics.result.PagedApiResponse;
-import com.example.logistics.service.WorkflowService;
+import com.example.logistics.result.BatchApiResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 
 /**
- * Controller for handling workflow-related requests.
+ * Controller for handling workflow-related requests on the servlet stack.
+ *
+ * <p>Serves the default {@code blocking} mode ({@code logistics.web.mode}): every request runs to
+ * completion on the container's worker thread, waiting for the journal included. See
+ * {@link AsyncWorkflowController} for {@code async} mode and {@link ReactiveWorkflowController}
+ * for the WebFlux stack. All of them delegate to {@link WorkflowRequests}.
  */
 @RestController
+@ConditionalOnExpression("'${logistics.web.mode:blocking}' != 'reactive'"
+    + " && '${logistics.web.mode:blocking}' != 'async'")
 @RequestMapping("/api")
-public class WorkflowController {
-
-  private final WorkflowService workflowService;
+public class WorkflowController extends ServletWorkflowController {
 
+  /**
+   * Constructs a WorkflowController.
+   *
+   * @param requests the request mapping shared with the other controllers
+   * @param objectMapper the mapper serializing streamed transitions
+   */
   @Autowired
-  public WorkflowController(WorkflowService workflowService) {
-    this.workflowService = workflowService;
+  WorkflowController(WorkflowRequests requests, ObjectMapper objectMapper) {
+    super(requests, objectMapper);
   }
 
   /**
@@ -38,7 +55,7 @@ public class WorkflowController {
    */
   @PostMapping("/app/create")
   public ApiResponse createApp(@RequestBody Application app) throws Exception {
-    return workflowService.createApp(app);
+    return requests.createApp(app);
   }
 
   /**
@@ -50,20 +67,22 @@ public class WorkflowController {
    */
   @PostMapping("/workflow/create")
   public ApiResponse createWorkflow(@RequestBody Workflow workflow) throws Exception {
-    return workflowService.createWorkflow(workflow);
+    return requests.createWorkflow(workflow);
   }
 
   /**
-   * Queries workflows with pagination.
+   * Imports workflows in bulk.
    *
-   * @param pageQuery the page query parameters
-   * @return the paged API response
+   * @param body a JSON array of workflows, or one workflow per line
+   * @param requireAllValid whether to create no workflow unless all of them are valid
+   * @return the batch API response with one result per workflow
+   * @throws IOException if the body cannot be read
    */
-  @PostMapping("/workflow/query")
-  public PagedApiResponse queryWorkflow(@RequestBody PageQuery pageQuery) {
-    int page = pageQuery.getPage();
-    int pageSize = pageQuery.getPageSize();
-    return workflowService.queryWorkflow(page, pageSize);
+  @PostMapping(value = "/workflow/import",
+      consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+  public BatchApiResponse importWorkflows(InputStream body,
+      @RequestParam(defaultValue = "false") boolean requireAllValid) throws IOException {
+    return requests.importWorkflows(body, requireAllValid);
   }
 
   /**
@@ -75,7 +94,7 @@ public class WorkflowController {
    */
   @PostMapping("/workflow/update")
   public ApiResponse updateWorkflow(@RequestBody Workflow workflow) throws Exception {
-    return workflowService.updateWorkflow(workflow);
+    return requests.updateWorkflow(workflow);
   }
 
   /**
@@ -86,20 +105,51 @@ public class WorkflowController {
    */
   @PostMapping("/workflow/delete")
   public ApiResponse deleteWorkflow(@RequestBody DeleteId id) {
-    return workflowService.deleteWorkflow(id.getId());
+    return requests.deleteWorkflow(id);
   }
 
   /**
-   * Performs an action on a workflow.
+   * Performs an action on a workflow, waiting for its journal record.
    *
    * @param action the action to perform
    * @return the API response
    */
   @PostMapping("/workflow/action")
   public ApiResponse workflowAction(@RequestBody Action action) {
-    int id = action.getId();
-    String role = action.getRole();
-    String actionName = action.getAction();
-    return workflowService.workflowAction(id, actionName, role);
+    return requests.workflowAction(action).join();
+  }
+
+  /**
+   * Performs a batch of actions, keeping the order of actions on the same workflow.
+   *
+   * @param actions the actions to perform
+   * @return the batch API response with one result per action
+   */
+  @PostMapping("/workflow/action/batch")
+  public BatchApiResponse workflowActionBatch(@RequestBody List<Action> actions) {
+    return requests.workflowActionBatch(actions).join();
+  }
+
+  /**
+   * Starts a new instance of a workflow.
+   *
+   * @param start the workflow to start an instance of
+   * @return the API response
+   * @throws Exception if an error occurs while starting the instance
+   */
+  @PostMapping("/instance/start")
+  public ApiResponse startInstance(@RequestBody InstanceStart start) throws Exception {
+    return requests.startInstance(start);
+  }
+
+  /**
+   * Performs an action on a workflow instance, waiting for its journal record.
+   *
+   * @param action the action to perform, identifying the instance by ID
+   * @return the API response
+   */
+  @PostMapping("/instance/action")
+  public ApiResponse instanceAction(@RequestBody Action action) {
+    return requests.instanceAction(action).join();
   }
 }
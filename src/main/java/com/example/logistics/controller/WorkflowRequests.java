@@ -0,0 +1,111 @@
+package com.example.logistics.controller;
+
+import com.example.logistics.model.Action;
+import com.example.logistics.model.Application;
+import com.example.logistics.model.DeleteId;
+import com.example.logistics.model.HistoryQuery;
+import com.example.logistics.model.InstanceStart;
+import com.example.logistics.model.PageQuery;
+import com.example.logistics.model.StatsQuery;
+import com.example.logistics.model.Workflow;
+import com.example.logistics.model.WorkflowFilter;
+import com.example.logistics.result.ApiResponse;
+import com.example.logistics.result.BatchApiResponse;
+import com.example.logistics.result.PagedApiResponse;
+import com.example.logistics.result.StatsApiResponse;
+import com.example.logistics.result.Transition;
+import com.example.logistics.service.BatchActionService;
+import com.example.logistics.service.WorkflowImportService;
+import com.example.logistics.service.WorkflowService;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Maps the request bodies of the workflow API to service calls, for both web stacks.
+ *
+ * <p>Each method does the work of one endpoint on the calling thread; the controllers only decide
+ * which thread that is. Actions return the service's futures, so no thread has to wait for the
+ * journal.
+ */
+@Component
+class WorkflowRequests {
+
+  private final WorkflowService workflowService;
+  private final BatchActionService batchActionService;
+  private final WorkflowImportService workflowImportService;
+
+  @Autowired
+  WorkflowRequests(WorkflowService workflowService, BatchActionService batchActionService,
+      WorkflowImportService workflowImportService) {
+    this.workflowService = workflowService;
+    this.batchActionService = batchActionService;
+    this.workflowImportService = workflowImportService;
+  }
+
+  ApiResponse createApp(Application app) throws Exception {
+    return workflowService.createApp(app);
+  }
+
+  ApiResponse createWorkflow(Workflow workflow) throws Exception {
+    return workflowService.createWorkflow(workflow);
+  }
+
+  BatchApiResponse importWorkflows(InputStream body, boolean requireAllValid) throws IOException {
+    return workflowImportService.importWorkflows(body, requireAllValid);
+  }
+
+  BatchApiResponse importWorkflows(List<Workflow> workflows, boolean requireAllValid) {
+    return workflowImportService.importWorkflows(workflows, requireAllValid);
+  }
+
+  PagedApiResponse queryWorkflow(PageQuery pageQuery) {
+    if (pageQuery.getAfterCreatedTime() != null && pageQuery.getAfterId() != null) {
+      return workflowService.queryWorkflowAfter(
+          pageQuery.getAfterCreatedTime(), pageQuery.getAfterId(), pageQuery.getPageSize());
+    }
+    return workflowService.queryWorkflow(pageQuery.getPage(), pageQuery.getPageSize());
+  }
+
+  PagedApiResponse filterWorkflows(WorkflowFilter filter) {
+    return workflowService.filterWorkflows(filter);
+  }
+
+  StatsApiResponse queryStats(StatsQuery query) {
+    return workflowService.queryStats(query.getAppId());
+  }
+
+  ApiResponse updateWorkflow(Workflow workflow) throws Exception {
+    return workflowService.updateWorkflow(workflow);
+  }
+
+  ApiResponse deleteWorkflow(DeleteId id) {
+    return workflowService.deleteWorkflow(id.getId());
+  }
+
+  CompletableFuture<ApiResponse> workflowAction(Action action) {
+    return workflowService.workflowActionAsync(
+        action.getId(), action.getAction(), action.getRole());
+  }
+
+  CompletableFuture<BatchApiResponse> workflowActionBatch(List<Action> actions) {
+    return batchActionService.workflowActionsAsync(actions);
+  }
+
+  Iterator<Transition> queryHistory(HistoryQuery query) {
+    return workflowService.queryHistory(query.getId(), query.getFrom(), query.getTo());
+  }
+
+  ApiResponse startInstance(InstanceStart start) throws Exception {
+    return workflowService.startInstance(start.getWorkflowId());
+  }
+
+  CompletableFuture<ApiResponse> instanceAction(Action action) {
+    return workflowService.instanceActionAsync(
+        action.getId(), action.getAction(), action.getRole());
+  }
+}
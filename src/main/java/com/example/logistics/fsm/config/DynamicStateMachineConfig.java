@@ -30,8 +30,7 @@ public class DynamicStateMachineConfig {
    */
   public StateMachine<String, String> buildStateMachine(Workflow workflow) throws Exception {
     StateMachineBuilder.Builder<String, String> builder = StateMachineBuilder.builder();
-    Application app = ApplicationDatabase.applications.get(
-            String.valueOf(workflow.getAppId()));
+    Application app = ApplicationDatabase.getApplication(workflow.getAppId());
     Set<String> states = new HashSet<>();
     List<Event> events = workflow.getEvents();
 
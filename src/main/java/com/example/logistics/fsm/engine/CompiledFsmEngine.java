@@ -0,0 +1,23 @@
+package com.example.logistics.fsm.engine;
+
+import com.example.logistics.model.Application;
+import com.example.logistics.model.Workflow;
+import com.example.logistics.reposity.ApplicationDatabase;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Default engine that compiles workflows into immutable transition tables.
+ */
+@Component
+@ConditionalOnProperty(name = "logistics.fsm.engine", havingValue = "compiled",
+    matchIfMissing = true)
+public class CompiledFsmEngine implements FsmEngine {
+
+  @Override
+  public FsmDefinition compile(Workflow workflow) {
+    Application app = ApplicationDatabase.getApplication(workflow.getAppId());
+    return TransitionTable.compile(
+        workflow.getEvents(), app.getBeginState(), app.getEndState());
+  }
+}
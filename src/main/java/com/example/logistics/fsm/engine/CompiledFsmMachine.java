@@ -0,0 +1,77 @@
+package com.example.logistics.fsm.engine;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * State machine backed by a shared {@link TransitionTable}.
+ *
+ * <p>Its only mutable field packs the version into the high and the state ordinal into the low
+ * 32 bits of one long, so a transition is a single CAS, even one followed by a cascade of
+ * automatic transitions.
+ */
+public final class CompiledFsmMachine implements FsmMachine {
+
+  private static final AtomicLongFieldUpdater<CompiledFsmMachine> CURRENT =
+      AtomicLongFieldUpdater.newUpdater(CompiledFsmMachine.class, "current");
+
+  private final TransitionTable table;
+  private volatile long current;
+
+  /**
+   * Constructs a machine positioned in the table's initial state.
+   *
+   * @param table the compiled transition table
+   */
+  public CompiledFsmMachine(TransitionTable table) {
+    this.table = table;
+    this.current = pack(0, table.getInitialState());
+  }
+
+  static long pack(int version, int state) {
+    return ((long) version << 32) | (state & 0xFFFFFFFFL);
+  }
+
+  @Override
+  public boolean sendEvent(String event) {
+    while (true) {
+      long packed = current;
+      int target = table.next((int) packed, event);
+      if (target == TransitionTable.NONE) {
+        return false;
+      }
+      int version = (int) (packed >>> 32) + 1 + table.autoHops(target);
+      if (CURRENT.compareAndSet(this, packed, pack(version, table.settle(target)))) {
+        return true;
+      }
+    }
+  }
+
+  @Override
+  public String getState() {
+    return table.stateCode((int) current);
+  }
+
+  @Override
+  public boolean isInInitialState() {
+    return (int) current == table.getInitialState();
+  }
+
+  @Override
+  public boolean isFinished() {
+    return (int) current == table.getEndState();
+  }
+
+  @Override
+  public int getVersion() {
+    return (int) (current >>> 32);
+  }
+
+  @Override
+  public void restore(String state, int version) {
+    int ordinal = table.stateOrdinal(state);
+    if (ordinal == TransitionTable.NONE) {
+      throw new IllegalArgumentException("Unknown state " + state);
+    }
+    current = pack(version, ordinal);
+  }
+}
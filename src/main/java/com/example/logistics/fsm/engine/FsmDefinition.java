@@ -0,0 +1,24 @@
+package com.example.logistics.fsm.engine;
+
+/**
+ * A compiled, immutable workflow definition shared by all machines started from it.
+ */
+public interface FsmDefinition {
+
+  /**
+   * Starts a new machine positioned in the definition's initial state.
+   *
+   * @return the started state machine
+   * @throws Exception if an error occurs during state machine configuration
+   */
+  FsmMachine newMachine() throws Exception;
+
+  /**
+   * Gets the transition table compiled from the same workflow.
+   *
+   * <p>Engines running their own machines still compile one, to resolve automatic transitions.
+   *
+   * @return the transition table
+   */
+  TransitionTable getTransitionTable();
+}
@@ -0,0 +1,18 @@
+package com.example.logistics.fsm.engine;
+
+import com.example.logistics.model.Workflow;
+
+/**
+ * Compiles workflows into definitions that runnable state machines are started from.
+ */
+public interface FsmEngine {
+
+  /**
+   * Compiles a workflow into a shareable definition.
+   *
+   * @param workflow the workflow to compile
+   * @return the compiled definition
+   * @throws Exception if an error occurs during state machine configuration
+   */
+  FsmDefinition compile(Workflow workflow) throws Exception;
+}
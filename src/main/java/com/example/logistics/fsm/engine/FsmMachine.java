@@ -0,0 +1,54 @@
+package com.example.logistics.fsm.engine;
+
+/**
+ * A running state machine for a single workflow.
+ */
+public interface FsmMachine {
+
+  /**
+   * Sends an event to the state machine, then follows the automatic transitions from the state
+   * it reaches until the machine comes to rest.
+   *
+   * @param event the event name
+   * @return true if the event triggered a transition, false otherwise
+   */
+  boolean sendEvent(String event);
+
+  /**
+   * Gets the code of the current state.
+   *
+   * @return the current state code
+   */
+  String getState();
+
+  /**
+   * Checks if the state machine is still in its initial state.
+   *
+   * @return true if no transition has moved the machine away from its initial state
+   */
+  boolean isInInitialState();
+
+  /**
+   * Checks if the state machine has reached its end state.
+   *
+   * @return true if no further transition can be accepted
+   */
+  boolean isFinished();
+
+  /**
+   * Gets the number of transitions this machine has taken, automatic ones included.
+   *
+   * @return the machine version
+   */
+  int getVersion();
+
+  /**
+   * Moves the machine directly to a state, bypassing transitions.
+   *
+   * <p>Used to rebuild machines from persisted state.
+   *
+   * @param state the state code
+   * @param version the machine version to restore
+   */
+  void restore(String state, int version);
+}
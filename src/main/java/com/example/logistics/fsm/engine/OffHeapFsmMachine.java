@@ -0,0 +1,90 @@
+package com.example.logistics.fsm.engine;
+
+/**
+ * View of a workflow's or instance's {@link OffHeapStateStore} slot as a state machine backed by a
+ * shared {@link TransitionTable}.
+ *
+ * <p>The slot holds the same packed version and state ordinal as {@link CompiledFsmMachine}, so a
+ * transition is a compare-and-set of one slot. The view holds nothing else: each record keeps one
+ * view of its workflow's slot, and the views of a replaced and a replacing record see the same
+ * state.
+ */
+public final class OffHeapFsmMachine implements FsmMachine {
+
+  private final TransitionTable table;
+  private final OffHeapStateStore store;
+  private final int id;
+
+  /**
+   * Constructs a view of a slot, leaving its state as it is.
+   *
+   * @param table the compiled transition table
+   * @param store the store holding the state
+   * @param id the workflow or instance ID selecting the slot
+   */
+  public OffHeapFsmMachine(TransitionTable table, OffHeapStateStore store, int id) {
+    this.table = table;
+    this.store = store;
+    this.id = id;
+  }
+
+  /**
+   * Positions the slot in the table's initial state at version 0, as a new machine starts.
+   */
+  public void reset() {
+    store.set(id, CompiledFsmMachine.pack(0, table.getInitialState()));
+  }
+
+  @Override
+  public boolean sendEvent(String event) {
+    while (true) {
+      long packed = store.get(id);
+      int target = table.next((int) packed, event);
+      if (target == TransitionTable.NONE) {
+        return false;
+      }
+      int version = (int) (packed >>> 32) + 1 + table.autoHops(target);
+      if (store.compareAndSet(id, packed, CompiledFsmMachine.pack(version, table.settle(target)))) {
+        return true;
+      }
+    }
+  }
+
+  @Override
+  public String getState() {
+    return table.stateCode((int) store.get(id));
+  }
+
+  @Override
+  public boolean isInInitialState() {
+    return (int) store.get(id) == table.getInitialState();
+  }
+
+  @Override
+  public boolean isFinished() {
+    return (int) store.get(id) == table.getEndState();
+  }
+
+  @Override
+  public int getVersion() {
+    return (int) (store.get(id) >>> 32);
+  }
+
+  @Override
+  public void restore(String state, int version) {
+    int ordinal = table.stateOrdinal(state);
+    if (ordinal == TransitionTable.NONE) {
+      throw new IllegalArgumentException("Unknown state " + state);
+    }
+    store.set(id, CompiledFsmMachine.pack(version, ordinal));
+  }
+
+  /**
+   * Gets the time of the last change.
+   *
+   * @return the epoch milliseconds of the last transition, restore or reset
+   */
+  public long getUpdatedTime() {
+    return store.getUpdatedTime(id);
+  }
+}
@@ -0,0 +1,168 @@
+package com.example.logistics.fsm.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Machine state held outside the Java heap in fixed-width slots indexed by workflow or instance
+ * ID.
+ *
+ * <p>Each slot is two longs: the packed version and state ordinal of a {@link CompiledFsmMachine},
+ * and the epoch milliseconds of the last change. Slots live in direct buffers of
+ * {@value #CHUNK_SLOTS} allocated on first use, so the collector never scans or copies the state,
+ * however many machines there are. The buffers count against {@code -XX:MaxDirectMemorySize}.
+ *
+ * <p>Slots are never reclaimed. IDs are never reused, so the slot of a deleted workflow or a
+ * finished instance is never handed out again, and a chunk stays allocated while any ID it covers
+ * may still be live. The store grows with the highest ID issued, 16 bytes per ID, not with the
+ * live machines.
+ *
+ * <p>Java 8 offers no atomic access to a direct buffer: {@code VarHandle} arrives in Java 9, and
+ * the {@code LongBuffer} view of a buffer has no compare-and-set. Each slot is therefore read and
+ * written under one of {@value #LOCK_STRIPES} striped monitors. Holding one is a single
+ * uncontended CAS, since actions on the same workflow are already serialized by the workflow's
+ * lock.
+ */
+public final class OffHeapStateStore implements AutoCloseable {
+
+  private static final int CHUNK_SHIFT = 16;
+  private static final int CHUNK_SLOTS = 1 << CHUNK_SHIFT;
+  private static final int SLOT_BYTES = 16;
+  private static final int STATE_OFFSET = 0;
+  private static final int TIME_OFFSET = 8;
+  // Enough chunks for every non-negative int ID
+  private static final int MAX_CHUNKS = (Integer.MAX_VALUE >>> CHUNK_SHIFT) + 1;
+  private static final int LOCK_STRIPES = 1024;
+
+  private final AtomicReferenceArray<ByteBuffer> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+  private final Object[] locks = new Object[LOCK_STRIPES];
+  private volatile int allocatedChunks;
+  private volatile boolean closed;
+
+  /**
+   * Constructs an empty OffHeapStateStore.
+   */
+  public OffHeapStateStore() {
+    for (int i = 0; i < LOCK_STRIPES; i++) {
+      locks[i] = new Object();
+    }
+  }
+
+  /**
+   * Reads the packed state of a slot.
+   *
+   * @param id the workflow or instance ID
+   * @return the packed version and state ordinal
+   */
+  public long get(int id) {
+    ByteBuffer chunk = chunk(id);
+    synchronized (lock(id)) {
+      return chunk.getLong(offset(id) + STATE_OFFSET);
+    }
+  }
+
+  /**
+   * Reads the time of the last change of a slot.
+   *
+   * @param id the workflow or instance ID
+   * @return the epoch milliseconds of the last change, or 0 if the slot was never written
+   */
+  public long getUpdatedTime(int id) {
+    ByteBuffer chunk = chunk(id);
+    synchronized (lock(id)) {
+      return chunk.getLong(offset(id) + TIME_OFFSET);
+    }
+  }
+
+  /**
+   * Replaces the packed state of a slot if it still holds the expected value.
+   *
+   * @param id the workflow or instance ID
+   * @param expected the packed state read before the transition
+   * @param update the packed state after the transition
+   * @return true if the slot was updated
+   */
+  public boolean compareAndSet(int id, long expected, long update) {
+    ByteBuffer chunk = chunk(id);
+    int slot = offset(id);
+    synchronized (lock(id)) {
+      if (chunk.getLong(slot + STATE_OFFSET) != expected) {
+        return false;
+      }
+      chunk.putLong(slot + STATE_OFFSET, update);
+      chunk.putLong(slot + TIME_OFFSET, System.currentTimeMillis());
+      return true;
+    }
+  }
+
+  /**
+   * Overwrites the packed state of a slot.
+   *
+   * @param id the workflow or instance ID
+   * @param packed the packed version and state ordinal
+   */
+  public void set(int id, long packed) {
+    ByteBuffer chunk = chunk(id);
+    int slot = offset(id);
+    synchronized (lock(id)) {
+      chunk.putLong(slot + STATE_OFFSET, packed);
+      chunk.putLong(slot + TIME_OFFSET, System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * Gets the native memory held by the store.
+   *
+   * @return the allocated bytes
+   */
+  public long allocatedBytes() {
+    return (long) allocatedChunks * CHUNK_SLOTS * SLOT_BYTES;
+  }
+
+  /**
+   * Releases the native memory. Machines bound to the store fail once closed.
+   *
+   * <p>The buffers are dropped rather than freed: an action still running holds its buffer, and
+   * the memory is returned when the collector reclaims the last reference, so no caller ever
+   * reads freed memory.
+   */
+  @Override
+  public synchronized void close() {
+    closed = true;
+    for (int i = 0; i < MAX_CHUNKS; i++) {
+      chunks.set(i, null);
+    }
+    allocatedChunks = 0;
+  }
+
+  private ByteBuffer chunk(int id) {
+    if (id < 0) {
+      throw new IllegalArgumentException("Negative ID " + id);
+    }
+    ByteBuffer chunk = chunks.get(id >>> CHUNK_SHIFT);
+    return chunk != null ? chunk : allocate(id >>> CHUNK_SHIFT);
+  }
+
+  private synchronized ByteBuffer allocate(int index) {
+    if (closed) {
+      throw new IllegalStateException("State store is closed");
+    }
+    ByteBuffer chunk = chunks.get(index);
+    if (chunk == null) {
+      // Direct buffers are allocated zeroed
+      chunk = ByteBuffer.allocateDirect(CHUNK_SLOTS * SLOT_BYTES).order(ByteOrder.nativeOrder());
+      chunks.set(index, chunk);
+      allocatedChunks++;
+    }
+    return chunk;
+  }
+
+  private Object lock(int id) {
+    return locks[id & (LOCK_STRIPES - 1)];
+  }
+
+  private static int offset(int id) {
+    return (id & (CHUNK_SLOTS - 1)) * SLOT_BYTES;
+  }
+}
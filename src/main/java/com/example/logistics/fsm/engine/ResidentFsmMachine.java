@@ -0,0 +1,142 @@
+package com.example.logistics.fsm.engine;
+
+/**
+ * A machine that can drop its engine machine while idle and rebuild it on demand.
+ *
+ * <p>A parked machine keeps only its state code, version and two flags; the definition it was
+ * started from is shared with the workflow, so nothing else is needed to rebuild it. Reads are
+ * answered from the parked form. Only {@link #sendEvent} and {@link #restore} rehydrate the
+ * machine, by starting a new one from the definition and restoring the parked state into it.
+ *
+ * <p>Reads take no lock: the engine machine, or the parked snapshot once it is dropped, is
+ * published through a volatile field. Transitions, restores and parking synchronize on the
+ * machine, so parking never interleaves with a transition.
+ */
+public final class ResidentFsmMachine implements FsmMachine {
+
+  private final FsmDefinition definition;
+  private final Runnable onRehydrate;
+
+  // The engine machine while resident, null while parked. The snapshot is published before the
+  // machine is cleared, so a reader that sees no machine always sees the snapshot.
+  private volatile FsmMachine machine;
+  private volatile Parked parked;
+  private volatile long lastAccess;
+
+  /**
+   * Constructs a ResidentFsmMachine around a started machine.
+   *
+   * @param definition the definition the machine was started from
+   * @param machine the started machine
+   * @param onRehydrate called each time a parked machine is rebuilt
+   */
+  public ResidentFsmMachine(FsmDefinition definition, FsmMachine machine, Runnable onRehydrate) {
+    this.definition = definition;
+    this.machine = machine;
+    this.onRehydrate = onRehydrate;
+    this.lastAccess = System.nanoTime();
+  }
+
+  @Override
+  public synchronized boolean sendEvent(String event) {
+    lastAccess = System.nanoTime();
+    return resident().sendEvent(event);
+  }
+
+  @Override
+  public String getState() {
+    FsmMachine current = machine;
+    return current == null ? parked.state : current.getState();
+  }
+
+  @Override
+  public boolean isInInitialState() {
+    FsmMachine current = machine;
+    return current == null ? parked.initial : current.isInInitialState();
+  }
+
+  @Override
+  public boolean isFinished() {
+    FsmMachine current = machine;
+    return current == null ? parked.finished : current.isFinished();
+  }
+
+  @Override
+  public int getVersion() {
+    FsmMachine current = machine;
+    return current == null ? parked.version : current.getVersion();
+  }
+
+  @Override
+  public synchronized void restore(String state, int version) {
+    lastAccess = System.nanoTime();
+    resident().restore(state, version);
+  }
+
+  /**
+   * Drops the engine machine, keeping its state in the parked form.
+   *
+   * @return true if the machine was resident
+   */
+  public synchronized boolean park() {
+    FsmMachine current = machine;
+    if (current == null) {
+      return false;
+    }
+    parked = new Parked(current);
+    machine = null;
+    return true;
+  }
+
+  /**
+   * Checks if the engine machine is held in memory.
+   *
+   * @return true if resident, false if parked
+   */
+  public boolean isResident() {
+    return machine != null;
+  }
+
+  /**
+   * Gets the time of the last transition or restore.
+   *
+   * @return the {@link System#nanoTime()} of the last use
+   */
+  public long getLastAccess() {
+    return lastAccess;
+  }
+
+  private FsmMachine resident() {
+    FsmMachine current = machine;
+    if (current == null) {
+      try {
+        current = definition.newMachine();
+      } catch (Exception e) {
+        throw new IllegalStateException("Failed to rehydrate state machine", e);
+      }
+      current.restore(parked.state, parked.version);
+      // Published only once restored; the snapshot stays for readers that saw no machine
+      machine = current;
+      onRehydrate.run();
+    }
+    return current;
+  }
+
+  /**
+   * The state of a parked machine, immutable so readers see all of it or none.
+   */
+  private static final class Parked {
+
+    final String state;
+    final int version;
+    final boolean initial;
+    final boolean finished;
+
+    Parked(FsmMachine machine) {
+      this.state = machine.getState();
+      this.version = machine.getVersion();
+      this.initial = machine.isInInitialState();
+      this.finished = machine.isFinished();
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package com.example.logistics.fsm.engine;
+
+import com.example.logistics.fsm.config.DynamicStateMachineConfig;
+import com.example.logistics.model.Application;
+import com.example.logistics.model.Workflow;
+import com.example.logistics.reposity.ApplicationDatabase;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * Engine that runs every machine on its own Spring Statemachine.
+ *
+ * <p>Spring machines cannot share a transition graph, so each {@link FsmDefinition#newMachine()}
+ * call builds a complete machine from the workflow. Automatic transitions are still resolved from
+ * a {@link TransitionTable}, but Spring cannot jump a cascade, so its events are sent one by one.
+ */
+@Component
+@ConditionalOnProperty(name = "logistics.fsm.engine", havingValue = "spring")
+public class SpringFsmEngine implements FsmEngine {
+
+  @Autowired
+  private DynamicStateMachineConfig dynamicStateMachineConfig;
+
+  @Override
+  public FsmDefinition compile(Workflow workflow) {
+    Application app = ApplicationDatabase.getApplication(workflow.getAppId());
+    TransitionTable table = TransitionTable.compile(
+        workflow.getEvents(), app.getBeginState(), app.getEndState());
+    return new FsmDefinition() {
+      @Override
+      public FsmMachine newMachine() throws Exception {
+        StateMachine<String, String> stateMachine = dynamicStateMachineConfig
+            .buildStateMachine(workflow);
+        stateMachine.start();
+        return new SpringFsmMachine(stateMachine, table);
+      }
+
+      @Override
+      public TransitionTable getTransitionTable() {
+        return table;
+      }
+    };
+  }
+
+  /**
+   * Adapts a Spring state machine to {@link FsmMachine}.
+   */
+  static final class SpringFsmMachine implements FsmMachine {
+
+    private final StateMachine<String, String> stateMachine;
+    private final TransitionTable table;
+    private final AtomicInteger version = new AtomicInteger();
+
+    SpringFsmMachine(StateMachine<String, String> stateMachine, TransitionTable table) {
+      this.stateMachine = stateMachine;
+      this.table = table;
+    }
+
+    @Override
+    public boolean sendEvent(String event) {
+      if (!stateMachine.sendEvent(event)) {
+        return false;
+      }
+      version.incrementAndGet();
+      int state = table.stateOrdinal(getState());
+      while (table.autoTarget(state) != TransitionTable.NONE
+          && stateMachine.sendEvent(table.autoEvent(state))) {
+        version.incrementAndGet();
+        state = table.stateOrdinal(getState());
+      }
+      return true;
+    }
+
+    @Override
+    public String getState() {
+      return stateMachine.getState().getId();
+    }
+
+    @Override
+    public boolean isInInitialState() {
+      return stateMachine.getState().getId().equals(stateMachine.getInitialState().getId());
+    }
+
+    @Override
+    public boolean isFinished() {
+      return stateMachine.isComplete();
+    }
+
+    @Override
+    public int getVersion() {
+      return version.get();
+    }
+
+    @Override
+    public void restore(String state, int version) {
+      stateMachine.stopReactively().block();
+      stateMachine.getStateMachineAccessor().doWithAllRegions(access -> access
+          .resetStateMachineReactively(new DefaultStateMachineContext<>(state, null, null, null))
+          .block());
+      stateMachine.startReactively().block();
+      this.version.set(version);
+    }
+  }
+}
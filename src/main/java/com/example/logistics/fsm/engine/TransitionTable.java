@@ -0,0 +1,295 @@
+package com.example.logistics.fsm.engine;
+
+import com.example.logistics.model.Event;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable transition table compiled from a workflow.
+ *
+ * <p>State and event codes are interned to int ordinals, and transitions are stored in a flat
+ * {@code int[]} indexed by {@code state * eventCount + event}, so a dispatch is two map probes
+ * and one array read. A table is shared by every machine started from it.
+ *
+ * <p>Automatic transitions are resolved at compile time into an auto-closure: for every state,
+ * the state a chain of automatic transitions comes to rest in and the number of hops it takes.
+ * A machine applies an action and its whole cascade as one transition, and looks nothing up when
+ * no automatic transition applies. Compiling rejects automatic cycles, so a cascade never takes
+ * more hops than there are states.
+ *
+ * <p>Timer transitions are indexed the same way: for every state, the timer event leaving it and
+ * its delay, so scheduling the timer of a state a workflow enters is an array read.
+ */
+public final class TransitionTable implements FsmDefinition {
+
+  /** Marker for a missing transition or an unknown code. */
+  public static final int NONE = -1;
+
+  /** The name of events that are automatic without being flagged. */
+  public static final String AUTO = "AUTO";
+
+  private final String[] stateCodes;
+  private final Map<String, Integer> stateOrdinals;
+  private final Map<String, Integer> eventOrdinals;
+  private final int[] targets;
+  private final int[] autoTargets;
+  private final String[] autoEvents;
+  private final int[] restingStates;
+  private final int[] autoHops;
+  private final String[] timerEvents;
+  private final long[] timerDelays;
+  private final int eventCount;
+  private final int initialState;
+  private final int endState;
+
+  private TransitionTable(String[] stateCodes, Map<String, Integer> stateOrdinals,
+      Map<String, Integer> eventOrdinals, int[] targets, int[] autoTargets, String[] autoEvents,
+      String[] timerEvents, long[] timerDelays, int initialState, int endState) {
+    this.stateCodes = stateCodes;
+    this.stateOrdinals = stateOrdinals;
+    this.eventOrdinals = eventOrdinals;
+    this.targets = targets;
+    this.autoTargets = autoTargets;
+    this.autoEvents = autoEvents;
+    this.restingStates = new int[stateCodes.length];
+    this.autoHops = new int[stateCodes.length];
+    this.timerEvents = timerEvents;
+    this.timerDelays = timerDelays;
+    this.eventCount = eventOrdinals.size();
+    this.initialState = initialState;
+    this.endState = endState;
+  }
+
+  /**
+   * Compiles a transition table.
+   *
+   * <p>When several events share a name and source state, or several automatic or timer events
+   * share a source state, the first declared one wins.
+   *
+   * @param events the workflow events
+   * @param beginState the initial state code
+   * @param endState the final state code
+   * @return the compiled table
+   * @throws IllegalArgumentException if automatic transitions form a cycle
+   */
+  public static TransitionTable compile(List<Event> events, String beginState, String endState) {
+    Map<String, Integer> stateOrdinals = new HashMap<>();
+    Map<String, Integer> eventOrdinals = new HashMap<>();
+    intern(stateOrdinals, beginState);
+    intern(stateOrdinals, endState);
+    for (Event event : events) {
+      intern(stateOrdinals, event.getFromState());
+      intern(stateOrdinals, event.getToState());
+      intern(eventOrdinals, event.getName());
+    }
+
+    String[] stateCodes = new String[stateOrdinals.size()];
+    for (Map.Entry<String, Integer> entry : stateOrdinals.entrySet()) {
+      stateCodes[entry.getValue()] = entry.getKey();
+    }
+
+    int[] targets = new int[stateOrdinals.size() * eventOrdinals.size()];
+    Arrays.fill(targets, NONE);
+    for (Event event : events) {
+      int slot = stateOrdinals.get(event.getFromState()) * eventOrdinals.size()
+          + eventOrdinals.get(event.getName());
+      if (targets[slot] == NONE) {
+        targets[slot] = stateOrdinals.get(event.getToState());
+      }
+    }
+
+    // No transition leaves the end state, so no cascade starts from it
+    int end = stateOrdinals.get(endState);
+    int[] autoTargets = new int[stateCodes.length];
+    String[] autoEvents = new String[stateCodes.length];
+    Arrays.fill(autoTargets, NONE);
+    for (Event event : events) {
+      int from = stateOrdinals.get(event.getFromState());
+      if (isAutomatic(event) && from != end && autoTargets[from] == NONE) {
+        autoTargets[from] = stateOrdinals.get(event.getToState());
+        autoEvents[from] = event.getName();
+      }
+    }
+
+    String[] timerEvents = new String[stateCodes.length];
+    long[] timerDelays = new long[stateCodes.length];
+    for (Event event : events) {
+      int from = stateOrdinals.get(event.getFromState());
+      if (event.getTimeoutSeconds() != null && from != end && timerEvents[from] == null) {
+        timerEvents[from] = event.getName();
+        timerDelays[from] = TimeUnit.SECONDS.toMillis(event.getTimeoutSeconds());
+      }
+    }
+
+    TransitionTable table = new TransitionTable(stateCodes, stateOrdinals, eventOrdinals, targets,
+        autoTargets, autoEvents, timerEvents, timerDelays, stateOrdinals.get(beginState), end);
+    table.closeAutoTransitions();
+    return table;
+  }
+
+  /**
+   * Checks if an event is automatic.
+   *
+   * @param event the event
+   * @return true if the event is flagged automatic or named {@value #AUTO}
+   */
+  public static boolean isAutomatic(Event event) {
+    return event.isAuto() || AUTO.equals(event.getName());
+  }
+
+  private void closeAutoTransitions() {
+    Arrays.fill(restingStates, NONE);
+    int[] chain = new int[stateCodes.length];
+    for (int state = 0; state < stateCodes.length; state++) {
+      // Walk to a state that is resolved or has no automatic transition, then resolve backwards
+      int length = 0;
+      int current = state;
+      while (restingStates[current] == NONE && autoTargets[current] != NONE) {
+        if (length == chain.length) {
+          throw new IllegalArgumentException(
+              "Automatic transitions form a cycle through " + stateCodes[state]);
+        }
+        chain[length++] = current;
+        current = autoTargets[current];
+      }
+      if (restingStates[current] == NONE) {
+        restingStates[current] = current;
+      }
+      for (int i = length - 1; i >= 0; i--) {
+        int next = autoTargets[chain[i]];
+        restingStates[chain[i]] = restingStates[next];
+        autoHops[chain[i]] = autoHops[next] + 1;
+      }
+    }
+  }
+
+  private static void intern(Map<String, Integer> ordinals, String code) {
+    if (!ordinals.containsKey(code)) {
+      ordinals.put(code, ordinals.size());
+    }
+  }
+
+  @Override
+  public FsmMachine newMachine() {
+    return new CompiledFsmMachine(this);
+  }
+
+  @Override
+  public TransitionTable getTransitionTable() {
+    return this;
+  }
+
+  /**
+   * Resolves the target of a transition.
+   *
+   * @param state the source state ordinal
+   * @param event the event name
+   * @return the target state ordinal, or {@link #NONE} if no transition applies
+   */
+  public int next(int state, String event) {
+    if (state == endState) {
+      return NONE;
+    }
+    Integer eventOrdinal = eventOrdinals.get(event);
+    if (eventOrdinal == null) {
+      return NONE;
+    }
+    return targets[state * eventCount + eventOrdinal];
+  }
+
+  /**
+   * Resolves the state a cascade of automatic transitions comes to rest in.
+   *
+   * @param state the state ordinal an action reached
+   * @return the resting state ordinal; the state itself if no automatic transition applies
+   */
+  public int settle(int state) {
+    return restingStates[state];
+  }
+
+  /**
+   * Counts the automatic transitions taken from a state before coming to rest.
+   *
+   * @param state the state ordinal an action reached
+   * @return the number of hops, at most one less than the number of states
+   */
+  public int autoHops(int state) {
+    return autoHops[state];
+  }
+
+  /**
+   * Resolves the target of the automatic transition leaving a state.
+   *
+   * @param state the source state ordinal
+   * @return the target state ordinal, or {@link #NONE} if no automatic transition applies
+   */
+  public int autoTarget(int state) {
+    return autoTargets[state];
+  }
+
+  /**
+   * Gets the name of the automatic event leaving a state.
+   *
+   * @param state the source state ordinal
+   * @return the event name, or null if no automatic transition applies
+   */
+  public String autoEvent(int state) {
+    return autoEvents[state];
+  }
+
+  /**
+   * Gets the name of the timer event leaving a state.
+   *
+   * @param state the source state ordinal
+   * @return the event name, or null if the state has no timer
+   */
+  public String timerEvent(int state) {
+    return timerEvents[state];
+  }
+
+  /**
+   * Gets the delay of the timer event leaving a state.
+   *
+   * @param state the source state ordinal
+   * @return the delay in milliseconds; meaningful only if the state has a timer
+   */
+  public long timerDelay(int state) {
+    return timerDelays[state];
+  }
+
+  /**
+   * Gets the ordinal of a state code.
+   *
+   * @param code the state code
+   * @return the state ordinal, or {@link #NONE} if the code is unknown
+   */
+  public int stateOrdinal(String code) {
+    Integer ordinal = stateOrdinals.get(code);
+    return ordinal == null ? NONE : ordinal;
+  }
+
+  /**
+   * Gets the code of a state ordinal.
+   *
+   * @param ordinal the state ordinal
+   * @return the state code
+   */
+  public String stateCode(int ordinal) {
+    return stateCodes[ordinal];
+  }
+
+  public int getInitialState() {
+    return initialState;
+  }
+
+  public int getEndState() {
+    return endState;
+  }
+
+  public int getStateCount() {
+    return stateCodes.length;
+  }
+}
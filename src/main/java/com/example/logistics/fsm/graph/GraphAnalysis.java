@@ -0,0 +1,292 @@
+package com.example.logistics.fsm.graph;
+
+import com.example.logistics.model.Event;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Structural analysis of a workflow's transition graph.
+ *
+ * <p>State codes are interned to int ids and the graph is stored as forward and reverse
+ * adjacency arrays (compressed rows). Every pass is iterative, so long routes cannot overflow the
+ * stack:
+ * <ul>
+ *   <li>Kahn's algorithm peels off states with no remaining predecessor; whatever is left lies on
+ *   or behind a cycle, and walking remaining predecessors back from any of them closes one.</li>
+ *   <li>A breadth-first search from the begin state finds the unreachable states, and its parent
+ *   links give the path to a state that is reached.</li>
+ *   <li>A breadth-first search from the end state over reversed edges finds the states that
+ *   cannot reach the end.</li>
+ * </ul>
+ *
+ * <p>The begin and end states always belong to the graph, even without events.
+ */
+public final class GraphAnalysis {
+
+  // Longer lists are shortened in descriptions, keeping both ends
+  private static final int DESCRIBED_STATES = 32;
+
+  private final List<String> cycle;
+  private final List<String> unreachable;
+  private final List<String> deadEnds;
+  private final List<String> deadEndPath;
+  private final String endState;
+
+  private GraphAnalysis(List<String> cycle, List<String> unreachable, List<String> deadEnds,
+      List<String> deadEndPath, String endState) {
+    this.cycle = cycle;
+    this.unreachable = unreachable;
+    this.deadEnds = deadEnds;
+    this.deadEndPath = deadEndPath;
+    this.endState = endState;
+  }
+
+  /**
+   * Analyzes the transition graph of a workflow.
+   *
+   * @param events the workflow events
+   * @param beginState the initial state code
+   * @param endState the final state code
+   * @return the analysis
+   */
+  public static GraphAnalysis analyze(List<Event> events, String beginState, String endState) {
+    Map<String, Integer> ids = new HashMap<>();
+    intern(ids, beginState);
+    intern(ids, endState);
+    int[] from = new int[events.size()];
+    int[] to = new int[events.size()];
+    for (int i = 0; i < events.size(); i++) {
+      from[i] = intern(ids, events.get(i).getFromState());
+      to[i] = intern(ids, events.get(i).getToState());
+    }
+    String[] codes = new String[ids.size()];
+    for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+      codes[entry.getValue()] = entry.getKey();
+    }
+
+    int stateCount = codes.length;
+    int[] outStart = new int[stateCount + 1];
+    int[] outEdges = adjacency(from, to, outStart);
+    int[] inStart = new int[stateCount + 1];
+    int[] inEdges = adjacency(to, from, inStart);
+    int begin = 0;
+    int end = ids.get(endState);
+
+    int[] queue = new int[stateCount];
+    List<String> cycle = findCycle(outStart, outEdges, inStart, inEdges, queue, codes);
+
+    boolean[] reachesEnd = search(end, inStart, inEdges, queue, null);
+    int[] parent = new int[stateCount];
+    boolean[] reached = search(begin, outStart, outEdges, queue, parent);
+
+    // The forward search left the reached states in the queue in breadth-first order, so the
+    // path to the last dead end found is the longest one
+    List<String> unreachable = new ArrayList<>();
+    for (int state = 0; state < stateCount; state++) {
+      if (!reached[state]) {
+        unreachable.add(codes[state]);
+      }
+    }
+    List<String> deadEnds = new ArrayList<>();
+    int deepestDeadEnd = -1;
+    for (int i = 0; i < stateCount - unreachable.size(); i++) {
+      if (!reachesEnd[queue[i]]) {
+        deadEnds.add(codes[queue[i]]);
+        deepestDeadEnd = queue[i];
+      }
+    }
+    List<String> deadEndPath = deepestDeadEnd < 0
+        ? Collections.emptyList() : path(deepestDeadEnd, parent, codes);
+    return new GraphAnalysis(cycle, unreachable, deadEnds, deadEndPath, endState);
+  }
+
+  /**
+   * Checks if the graph is acyclic, every state is reachable from the begin state, and every
+   * reachable state can reach the end state.
+   *
+   * @return true if the graph passed every check, false otherwise
+   */
+  public boolean isValid() {
+    return cycle.isEmpty() && unreachable.isEmpty() && deadEnds.isEmpty();
+  }
+
+  /**
+   * Gets a cycle of the graph.
+   *
+   * @return the states of one cycle, with the first state repeated at the end, or an empty list
+   */
+  public List<String> getCycle() {
+    return cycle;
+  }
+
+  /**
+   * Gets the states that cannot be reached from the begin state.
+   *
+   * @return the unreachable states
+   */
+  public List<String> getUnreachable() {
+    return unreachable;
+  }
+
+  /**
+   * Gets the reachable states that cannot reach the end state.
+   *
+   * @return the dead-end states
+   */
+  public List<String> getDeadEnds() {
+    return deadEnds;
+  }
+
+  /**
+   * Gets a shortest path from the begin state to the dead-end state farthest from it.
+   *
+   * @return the path, or an empty list without dead ends
+   */
+  public List<String> getDeadEndPath() {
+    return deadEndPath;
+  }
+
+  /**
+   * Describes the first failed check, most severe first.
+   *
+   * @return the description, or null if the graph is valid
+   */
+  public String describe() {
+    if (!cycle.isEmpty()) {
+      return "cycle: " + join(" -> ", cycle);
+    }
+    if (!deadEnds.isEmpty()) {
+      return "cannot reach end state " + endState + ": " + join(", ", deadEnds)
+          + " (via " + join(" -> ", deadEndPath) + ")";
+    }
+    if (!unreachable.isEmpty()) {
+      return "unreachable from begin state: " + join(", ", unreachable);
+    }
+    return null;
+  }
+
+  private static String join(String separator, List<String> states) {
+    if (states.size() <= DESCRIBED_STATES) {
+      return String.join(separator, states);
+    }
+    int half = DESCRIBED_STATES / 2;
+    return String.join(separator, states.subList(0, half)) + separator + "..."
+        + separator + String.join(separator, states.subList(states.size() - half, states.size()));
+  }
+
+  private static int intern(Map<String, Integer> ids, String code) {
+    return ids.computeIfAbsent(code, k -> ids.size());
+  }
+
+  private static int[] adjacency(int[] sources, int[] targets, int[] start) {
+    // Counting sort of the edges by source state
+    for (int source : sources) {
+      start[source + 1]++;
+    }
+    for (int state = 0; state + 1 < start.length; state++) {
+      start[state + 1] += start[state];
+    }
+    int[] fill = start.clone();
+    int[] edges = new int[sources.length];
+    for (int i = 0; i < sources.length; i++) {
+      edges[fill[sources[i]]++] = targets[i];
+    }
+    return edges;
+  }
+
+  private static List<String> findCycle(int[] outStart, int[] outEdges, int[] inStart,
+      int[] inEdges, int[] queue, String[] codes) {
+    int stateCount = codes.length;
+    int[] inDegree = new int[stateCount];
+    for (int state = 0; state < stateCount; state++) {
+      inDegree[state] = inStart[state + 1] - inStart[state];
+    }
+    int head = 0;
+    int tail = 0;
+    for (int state = 0; state < stateCount; state++) {
+      if (inDegree[state] == 0) {
+        queue[tail++] = state;
+      }
+    }
+    while (head < tail) {
+      int state = queue[head++];
+      for (int e = outStart[state]; e < outStart[state + 1]; e++) {
+        if (--inDegree[outEdges[e]] == 0) {
+          queue[tail++] = outEdges[e];
+        }
+      }
+    }
+    if (tail == stateCount) {
+      return Collections.emptyList();
+    }
+
+    // Every state left has a predecessor that is left too; walking back must revisit a state
+    int state = 0;
+    while (inDegree[state] == 0) {
+      state++;
+    }
+    int[] step = new int[stateCount];
+    Arrays.fill(step, -1);
+    int steps = 0;
+    int[] walk = new int[stateCount + 1];
+    while (step[state] < 0) {
+      step[state] = steps;
+      walk[steps++] = state;
+      int predecessor = state;
+      for (int e = inStart[state]; e < inStart[state + 1]; e++) {
+        if (inDegree[inEdges[e]] > 0) {
+          predecessor = inEdges[e];
+          break;
+        }
+      }
+      state = predecessor;
+    }
+
+    // The walk went backwards; list the cycle in edge direction, closing it
+    List<String> cycle = new ArrayList<>();
+    cycle.add(codes[state]);
+    for (int i = steps - 1; i >= step[state]; i--) {
+      cycle.add(codes[walk[i]]);
+    }
+    return cycle;
+  }
+
+  private static boolean[] search(int origin, int[] start, int[] edges, int[] queue,
+      int[] parent) {
+    boolean[] seen = new boolean[start.length - 1];
+    seen[origin] = true;
+    if (parent != null) {
+      parent[origin] = -1;
+    }
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = origin;
+    while (head < tail) {
+      int state = queue[head++];
+      for (int e = start[state]; e < start[state + 1]; e++) {
+        int next = edges[e];
+        if (!seen[next]) {
+          seen[next] = true;
+          if (parent != null) {
+            parent[next] = state;
+          }
+          queue[tail++] = next;
+        }
+      }
+    }
+    return seen;
+  }
+
+  private static List<String> path(int state, int[] parent, String[] codes) {
+    List<String> path = new ArrayList<>();
+    for (int s = state; s >= 0; s = parent[s]) {
+      path.add(codes[s]);
+    }
+    Collections.reverse(path);
+    return path;
+  }
+}
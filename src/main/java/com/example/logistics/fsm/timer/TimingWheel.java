@@ -0,0 +1,262 @@
+package com.example.logistics.fsm.timer;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hierarchical timing wheel holding any number of pending timers.
+ *
+ * <p>Time advances in fixed ticks. There are {@value #LEVELS} wheels of {@value #SLOTS} slots;
+ * a slot of level {@code n} spans {@code SLOTS^n} ticks, so the wheels together cover
+ * {@code SLOTS^LEVELS} ticks, about 13 years at 100 ms ticks. A timer is linked into the slot of
+ * the lowest level whose span contains both its deadline and the current tick. Whenever a lower
+ * wheel wraps around, the next slot of the wheel above is emptied and its timers relinked one
+ * level down, until they reach the lowest wheel and expire on their tick. A timer is relinked at
+ * most once per level, and deadlines beyond the wheels' range park in the top wheel until they
+ * come within it.
+ *
+ * <p>Slots are intrusive doubly linked lists owned by the single ticker thread. Other threads
+ * never touch them: {@link #schedule} and {@link Timeout#cancel()} are a queue offer and a CAS,
+ * and the ticker links and unlinks the queued timers before each tick, so both are O(1) and never
+ * block. Expired timers are handed to the handler on the ticker thread, so the handler must be
+ * quick.
+ *
+ * @param <T> the type of the timers' payload
+ */
+public final class TimingWheel<T> implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(TimingWheel.class);
+
+  private static final int LEVELS = 4;
+  private static final int SLOT_BITS = 8;
+  private static final int SLOTS = 1 << SLOT_BITS;
+  private static final int SLOT_MASK = SLOTS - 1;
+
+  private final long tickNanos;
+  private final long startNanos;
+  private final Consumer<Timeout<T>> handler;
+  private final Thread ticker;
+  private final Queue<Timeout<T>> scheduled = new ConcurrentLinkedQueue<>();
+  private final Queue<Timeout<T>> cancelled = new ConcurrentLinkedQueue<>();
+
+  // Owned by the ticker thread
+  private final Timeout<?>[] heads = new Timeout<?>[LEVELS * SLOTS];
+  private long current;
+
+  private volatile boolean closed;
+
+  /**
+   * A scheduled timer.
+   *
+   * @param <T> the type of the payload
+   */
+  public static final class Timeout<T> {
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+        AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+    private final TimingWheel<T> wheel;
+    private final long deadline;
+    private final T payload;
+    private volatile int state;
+
+    // Owned by the ticker thread; slot is -1 while unlinked
+    private Timeout<T> previous;
+    private Timeout<T> next;
+    private int slot = -1;
+
+    private Timeout(TimingWheel<T> wheel, long deadline, T payload) {
+      this.wheel = wheel;
+      this.deadline = deadline;
+      this.payload = payload;
+    }
+
+    public T getPayload() {
+      return payload;
+    }
+
+    /**
+     * Cancels the timer.
+     *
+     * @return true if the timer was pending, false if it had already expired or been cancelled
+     */
+    public boolean cancel() {
+      if (!STATE.compareAndSet(this, PENDING, CANCELLED)) {
+        return false;
+      }
+      wheel.cancelled.offer(this);
+      return true;
+    }
+  }
+
+  /**
+   * Constructs a TimingWheel and starts its ticker thread.
+   *
+   * @param name the name of the ticker thread
+   * @param tickMillis the length of a tick, the resolution of every timer
+   * @param handler called on the ticker thread with each expired timer
+   */
+  public TimingWheel(String name, long tickMillis, Consumer<Timeout<T>> handler) {
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    this.startNanos = System.nanoTime();
+    this.handler = handler;
+    this.ticker = new Thread(this::run, name);
+    ticker.setDaemon(true);
+    ticker.start();
+  }
+
+  /**
+   * Schedules a timer.
+   *
+   * @param delayMillis the delay after which the timer expires, rounded up to a whole tick
+   * @param payload the payload handed to the handler on expiry
+   * @return the pending timer
+   */
+  public Timeout<T> schedule(long delayMillis, T payload) {
+    long delayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+    long elapsed = System.nanoTime() - startNanos;
+    Timeout<T> timeout =
+        new Timeout<>(this, (elapsed + delayNanos + tickNanos - 1) / tickNanos, payload);
+    scheduled.offer(timeout);
+    return timeout;
+  }
+
+  /**
+   * Stops the ticker thread. Pending timers never expire.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    ticker.interrupt();
+  }
+
+  private void run() {
+    while (!closed) {
+      long wait = startNanos + current * tickNanos - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(this, wait);
+        continue;
+      }
+      // Behind schedule after a pause, the missed ticks run back to back
+      try {
+        transfer();
+        tick();
+      } catch (RuntimeException e) {
+        log.warn("Timing wheel tick failed", e);
+      }
+      current++;
+    }
+  }
+
+  private void transfer() {
+    for (Timeout<T> timeout = scheduled.poll(); timeout != null; timeout = scheduled.poll()) {
+      if (timeout.state == Timeout.PENDING) {
+        link(timeout);
+      }
+    }
+    for (Timeout<T> timeout = cancelled.poll(); timeout != null; timeout = cancelled.poll()) {
+      unlink(timeout);
+    }
+  }
+
+  private void tick() {
+    // Empty the wheels whose lower wheels wrapped around, top first, so relinked timers land in
+    // slots that are still ahead
+    for (int level = LEVELS - 1; level > 0; level--) {
+      if ((current & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+        relink(level * SLOTS + digit(current, level));
+      }
+    }
+    Timeout<T> timeout = detach(digit(current, 0));
+    while (timeout != null) {
+      Timeout<T> next = timeout.next;
+      timeout.next = null;
+      if (Timeout.STATE.compareAndSet(timeout, Timeout.PENDING, Timeout.EXPIRED)) {
+        try {
+          handler.accept(timeout);
+        } catch (RuntimeException e) {
+          log.warn("Timer handler failed", e);
+        }
+      }
+      timeout = next;
+    }
+  }
+
+  private void relink(int slot) {
+    Timeout<T> timeout = detach(slot);
+    while (timeout != null) {
+      Timeout<T> next = timeout.next;
+      timeout.next = null;
+      link(timeout);
+      timeout = next;
+    }
+  }
+
+  private void link(Timeout<T> timeout) {
+    int slot;
+    long deadline = Math.max(timeout.deadline, current);
+    int level = LEVELS - 1;
+    while (level > 0 && deadline >>> (SLOT_BITS * level) == current >>> (SLOT_BITS * level)) {
+      level--;
+    }
+    if (deadline >>> (SLOT_BITS * LEVELS) != current >>> (SLOT_BITS * LEVELS)) {
+      // Beyond the wheels: wait in the top slot that is emptied last
+      slot = (LEVELS - 1) * SLOTS + digit(current, LEVELS - 1);
+    } else {
+      slot = level * SLOTS + digit(deadline, level);
+    }
+    @SuppressWarnings("unchecked")
+    Timeout<T> head = (Timeout<T>) heads[slot];
+    timeout.slot = slot;
+    timeout.previous = null;
+    timeout.next = head;
+    if (head != null) {
+      head.previous = timeout;
+    }
+    heads[slot] = timeout;
+  }
+
+  private void unlink(Timeout<T> timeout) {
+    if (timeout.slot < 0) {
+      return;
+    }
+    if (timeout.previous == null) {
+      heads[timeout.slot] = timeout.next;
+    } else {
+      timeout.previous.next = timeout.next;
+    }
+    if (timeout.next != null) {
+      timeout.next.previous = timeout.previous;
+    }
+    timeout.previous = null;
+    timeout.next = null;
+    timeout.slot = -1;
+  }
+
+  private Timeout<T> detach(int slot) {
+    @SuppressWarnings("unchecked")
+    Timeout<T> head = (Timeout<T>) heads[slot];
+    heads[slot] = null;
+    for (Timeout<T> timeout = head; timeout != null; timeout = timeout.next) {
+      timeout.slot = -1;
+      timeout.previous = null;
+    }
+    return head;
+  }
+
+  private static int digit(long tick, int level) {
+    return (int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK;
+  }
+}
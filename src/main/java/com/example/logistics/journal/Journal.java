@@ -0,0 +1,468 @@
+package com.example.logistics.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal stored in memory-mapped segment files.
+ *
+ * <p>Each record is framed as {@code [int length][byte type][payload][int crc32]}, where length
+ * covers the type and payload. Segments are preallocated and zero-filled, so a zero length marks
+ * the end of the written data. A single writer thread drains pending appends in batches and
+ * forces each batch to disk once (group commit); an append completes when its batch is durable.
+ * A record's position, its segment index in the high and its offset in the low 32 bits, is the
+ * same when it is handed to the durable listener and when it is replayed.
+ *
+ * <p>A record that cannot be written fails on its own, without failing the rest of its batch. If
+ * forcing a batch fails, its records are erased from the segment before their appends fail, so
+ * a record reported as failed is never replayed.
+ */
+public class Journal implements Closeable {
+
+  private static final int FRAME_OVERHEAD = 4 + 1 + 4;
+  private static final byte ROLL = 0;
+  private static final String SEGMENT_SUFFIX = ".journal";
+
+  private final Path dir;
+  private final int segmentSize;
+  private final int maxBatch;
+  private final BlockingQueue<Append> pending;
+  private final Thread writer;
+  private final CRC32 crc = new CRC32();
+
+  private long segmentIndex;
+  private MappedByteBuffer buffer;
+  // Written since the last force, from unforcedStart in the current segment; writer thread only
+  private final List<Append> unforced = new ArrayList<>();
+  private int unforcedStart;
+  private volatile boolean closed;
+  // Position of the last record replayed or made durable, or 0 if there is none
+  private volatile long durablePosition;
+  private volatile IntConsumer batchListener = size -> { };
+  private volatile DurableListener durableListener = (position, type, payload) -> { };
+
+  /**
+   * Receives records during replay.
+   */
+  public interface RecordHandler {
+
+    /**
+     * Handles one record.
+     *
+     * @param position the position of the record
+     * @param type the record type
+     * @param payload the record payload, positioned at its first byte
+     * @throws IOException if the record cannot be applied
+     */
+    void onRecord(long position, byte type, ByteBuffer payload) throws IOException;
+  }
+
+  /**
+   * Receives every appended record once it is durable, in journal order.
+   */
+  public interface DurableListener {
+
+    /**
+     * Handles one durable record, on the writer thread; the next batch waits until it returns,
+     * and it must not throw.
+     *
+     * @param position the position of the record
+     * @param type the record type
+     * @param payload the record payload
+     */
+    void onDurable(long position, byte type, byte[] payload);
+  }
+
+  private static final class Append {
+
+    final byte type;
+    final byte[] payload;
+    final CompletableFuture<Void> done = new CompletableFuture<>();
+    long segment;
+    long position;
+
+    Append(byte type, byte[] payload) {
+      this.type = type;
+      this.payload = payload;
+    }
+  }
+
+  private Journal(Path dir, int segmentSize, int maxBatch) {
+    this.dir = dir;
+    this.segmentSize = segmentSize;
+    this.maxBatch = maxBatch;
+    this.pending = new ArrayBlockingQueue<>(maxBatch * 4);
+    this.writer = new Thread(this::writeLoop, "journal-writer");
+    this.writer.setDaemon(true);
+  }
+
+  /**
+   * Opens a journal, replaying every valid record before accepting appends.
+   *
+   * <p>Replay stops at the first torn or corrupt record of the last segment, and the space after
+   * it is cleared so new records overwrite it. Older segments were forced whole before the
+   * journal rolled past them, so a torn or corrupt record in one of them fails the open rather
+   * than silently dropping the rest of that segment under the records replayed after it.
+   *
+   * @param dir the directory holding the segment files
+   * @param segmentSize the size of each segment file in bytes
+   * @param maxBatch the maximum number of records forced to disk together
+   * @param fromSegment the first segment to replay; older segments are skipped
+   * @param handler the handler receiving replayed records
+   * @return the opened journal
+   * @throws IOException if the journal cannot be read or created, or a segment other than the
+   *     last holds a torn or corrupt record
+   */
+  public static Journal open(Path dir, int segmentSize, int maxBatch, long fromSegment,
+      RecordHandler handler) throws IOException {
+    Files.createDirectories(dir);
+    Journal journal = new Journal(dir, segmentSize, maxBatch);
+    List<Long> segments = journal.listSegments();
+    segments.removeIf(index -> index < fromSegment);
+    if (segments.isEmpty()) {
+      journal.map(Math.max(fromSegment, 1));
+    } else {
+      long last = segments.get(segments.size() - 1);
+      for (long index : segments) {
+        journal.map(index);
+        journal.replaySegment((position, type, payload) -> {
+          handler.onRecord(position, type, payload);
+          journal.durablePosition = position;
+        }, index == last);
+      }
+      // Clear whatever a crash left behind the last valid record
+      ByteBuffer tail = journal.buffer.duplicate();
+      byte[] zeros = new byte[64 * 1024];
+      while (tail.hasRemaining()) {
+        tail.put(zeros, 0, Math.min(zeros.length, tail.remaining()));
+      }
+    }
+    journal.writer.start();
+    return journal;
+  }
+
+  /**
+   * Appends a record.
+   *
+   * @param type the record type
+   * @param payload the record payload
+   * @return a future completed once the record is durable
+   */
+  public CompletableFuture<Void> append(byte type, byte[] payload) {
+    if (type == ROLL) {
+      throw new IllegalArgumentException("Record type 0 is reserved");
+    }
+    Append append = new Append(type, payload);
+    if (payload.length + FRAME_OVERHEAD > segmentSize) {
+      append.done.completeExceptionally(
+          new IOException("Record of " + payload.length + " bytes exceeds segment size"));
+      return append.done;
+    }
+    return append(append);
+  }
+
+  private CompletableFuture<Void> append(Append append) {
+    if (closed) {
+      append.done.completeExceptionally(new IOException("Journal is closed"));
+      return append.done;
+    }
+    try {
+      pending.put(append);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      append.done.completeExceptionally(e);
+      return append.done;
+    }
+    // Closed while queuing: whoever takes the append off the queue completes it, and the writer
+    // may already have made its last pass
+    if (closed && pending.remove(append)) {
+      append.done.completeExceptionally(new IOException("Journal is closed"));
+    }
+    return append.done;
+  }
+
+  /**
+   * Closes the current segment once every record appended so far is durable, and continues in a
+   * new one.
+   *
+   * @return a future completed with the index of the new segment
+   */
+  public CompletableFuture<Long> roll() {
+    Append marker = new Append(ROLL, null);
+    return append(marker).thenApply(v -> marker.segment);
+  }
+
+  /**
+   * Reads the durable records at or after a position while the journal is open.
+   *
+   * <p>The segments are read through mappings of their own, so the caller may run on any thread
+   * alongside appends. Records made durable while it reads may be left out; the returned position
+   * says how far it got. Segments must not be deleted meanwhile.
+   *
+   * @param from the position of the first record to read
+   * @param handler the handler receiving the records
+   * @return the position of the last record read, or 0 if none was
+   * @throws IOException if a segment cannot be read, a corrupt record stops the read before the
+   *     durable end, or the handler fails
+   */
+  public long readDurable(long from, RecordHandler handler) throws IOException {
+    long durable = durablePosition;
+    long[] last = new long[1];
+    CRC32 checksum = new CRC32();
+    for (long index : listSegments()) {
+      if (index < from >>> 32 || index > durable >>> 32) {
+        continue;
+      }
+      ByteBuffer segment;
+      try (RandomAccessFile file = new RandomAccessFile(segmentPath(index).toFile(), "r")) {
+        segment = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+      }
+      // Frames after the durable end may still be being written, so a torn one ends the segment
+      readFrames(segment, index, checksum, (position, type, payload) -> {
+        if (position >= from && position <= durable) {
+          handler.onRecord(position, type, payload);
+          last[0] = position;
+        }
+      });
+    }
+    if (from <= durable && last[0] != durable) {
+      throw new IOException("Journal read stopped before durable record " + durable);
+    }
+    return last[0];
+  }
+
+  /**
+   * Sets the listener told the number of records in each batch forced to disk.
+   *
+   * @param listener the listener, called on the writer thread
+   */
+  public void setBatchListener(IntConsumer listener) {
+    this.batchListener = listener;
+  }
+
+  /**
+   * Sets the listener receiving every record once it is durable.
+   *
+   * @param listener the listener, called on the writer thread after the record's append completes
+   */
+  public void setDurableListener(DurableListener listener) {
+    this.durableListener = listener;
+  }
+
+  /**
+   * Deletes the segments older than the given one.
+   *
+   * @param index the oldest segment to keep
+   * @throws IOException if a segment cannot be deleted
+   */
+  public void deleteSegmentsBefore(long index) throws IOException {
+    for (long segment : listSegments()) {
+      if (segment < index) {
+        Files.deleteIfExists(segmentPath(segment));
+      }
+    }
+  }
+
+  /**
+   * Stops the writer after it has flushed every pending record.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    writer.interrupt();
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void writeLoop() {
+    List<Append> batch = new ArrayList<>(maxBatch);
+    while (!closed || !pending.isEmpty()) {
+      try {
+        if (pending.isEmpty()) {
+          batch.add(pending.take());
+        }
+      } catch (InterruptedException e) {
+        // Closing; flush what is left
+      }
+      pending.drainTo(batch, maxBatch - batch.size());
+      if (batch.isEmpty()) {
+        continue;
+      }
+      for (Append append : batch) {
+        try {
+          write(append);
+        } catch (IOException | RuntimeException e) {
+          append.done.completeExceptionally(e);
+        }
+      }
+      try {
+        force();
+      } catch (IOException e) {
+        // The unforced records have failed and been erased
+      }
+      batchListener.accept(batch.size());
+      batch.clear();
+    }
+    for (Append append = pending.poll(); append != null; append = pending.poll()) {
+      append.done.completeExceptionally(new IOException("Journal is closed"));
+    }
+  }
+
+  private void write(Append append) throws IOException {
+    if (append.type == ROLL) {
+      force();
+      map(segmentIndex + 1);
+      append.segment = segmentIndex;
+      append.done.complete(null);
+      return;
+    }
+    int frameSize = append.payload.length + FRAME_OVERHEAD;
+    if (frameSize > segmentSize) {
+      throw new IOException("Record of " + append.payload.length + " bytes exceeds segment size");
+    }
+    if (buffer.remaining() < frameSize) {
+      force();
+      map(segmentIndex + 1);
+    }
+    if (unforced.isEmpty()) {
+      unforcedStart = buffer.position();
+    }
+    append.position = position(segmentIndex, buffer.position());
+    crc.reset();
+    crc.update(append.type);
+    crc.update(append.payload, 0, append.payload.length);
+    buffer.putInt(append.payload.length + 1);
+    buffer.put(append.type);
+    buffer.put(append.payload);
+    buffer.putInt((int) crc.getValue());
+    unforced.add(append);
+  }
+
+  private void force() throws IOException {
+    if (unforced.isEmpty()) {
+      return;
+    }
+    try {
+      buffer.force();
+    } catch (RuntimeException e) {
+      // Zero the frames, so a later force cannot make records durable that were reported failed
+      ByteBuffer written = buffer.duplicate();
+      written.position(unforcedStart);
+      while (written.position() < buffer.position()) {
+        written.put((byte) 0);
+      }
+      buffer.position(unforcedStart);
+      IOException failure = new IOException("Failed to force journal segment " + segmentIndex, e);
+      for (Append append : unforced) {
+        append.done.completeExceptionally(failure);
+      }
+      unforced.clear();
+      throw failure;
+    }
+    durablePosition = unforced.get(unforced.size() - 1).position;
+    for (Append append : unforced) {
+      append.done.complete(null);
+    }
+    DurableListener listener = durableListener;
+    for (Append append : unforced) {
+      listener.onDurable(append.position, append.type, append.payload);
+    }
+    unforced.clear();
+  }
+
+  private void replaySegment(RecordHandler handler, boolean last) throws IOException {
+    if (!readFrames(buffer, segmentIndex, crc, handler)) {
+      tornOrCorrupt(buffer.position(), last);
+    }
+  }
+
+  // Hands over the valid frames from the buffer's position. Returns true at the end of the
+  // written data, false at a torn or corrupt frame; either way the buffer is left at the frame
+  private static boolean readFrames(ByteBuffer buffer, long segment, CRC32 crc,
+      RecordHandler handler) throws IOException {
+    while (buffer.remaining() >= FRAME_OVERHEAD) {
+      int start = buffer.position();
+      int length = buffer.getInt();
+      // A zero length marks the end of the written data
+      if (length == 0) {
+        buffer.position(start);
+        return true;
+      }
+      if (length < 0 || length + 4 > buffer.remaining()) {
+        buffer.position(start);
+        return false;
+      }
+      byte type = buffer.get();
+      ByteBuffer payload = buffer.slice();
+      payload.limit(length - 1);
+      buffer.position(buffer.position() + length - 1);
+      int expected = buffer.getInt();
+
+      crc.reset();
+      crc.update(type);
+      crc.update(payload.duplicate());
+      if ((int) crc.getValue() != expected) {
+        buffer.position(start);
+        return false;
+      }
+      handler.onRecord(position(segment, start), type, payload);
+    }
+    return true;
+  }
+
+  private void tornOrCorrupt(int offset, boolean last) throws IOException {
+    // Only the segment being written when the process stopped can end in a torn record
+    if (!last) {
+      throw new IOException("Corrupt record at offset " + offset + " of journal segment "
+          + segmentPath(segmentIndex) + ", which is not the last segment");
+    }
+  }
+
+  private void map(long index) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(segmentPath(index).toFile(), "rw")) {
+      if (file.length() < segmentSize) {
+        file.setLength(segmentSize);
+      }
+      // The mapping stays valid after the file is closed
+      buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+    }
+    segmentIndex = index;
+  }
+
+  private static long position(long segment, int offset) {
+    return (segment << 32) | offset;
+  }
+
+  private Path segmentPath(long index) {
+    return dir.resolve(String.format("%016d%s", index, SEGMENT_SUFFIX));
+  }
+
+  private List<Long> listSegments() throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files
+          .map(path -> path.getFileName().toString())
+          .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+          .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+          .sorted()
+          .collect(Collectors.toCollection(ArrayList::new));
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package com.example.logistics.journal;
+
+import com.example.logistics.service.WorkflowService;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+/**
+ * Replays the journal into the workflow service at startup, before any request is served.
+ *
+ * <p>Replay waits for the content store to be chosen, so restored contents land in it.
+ */
+@Component
+@DependsOn("contentStorage")
+public class JournalRecovery {
+
+  private final JournalService journalService;
+  private final WorkflowService workflowService;
+
+  @Autowired
+  public JournalRecovery(JournalService journalService, WorkflowService workflowService) {
+    this.journalService = journalService;
+    this.workflowService = workflowService;
+  }
+
+  /**
+   * Opens the journal and rebuilds the in-memory state from it.
+   *
+   * @throws Exception if the snapshot or journal cannot be read or applied
+   */
+  @PostConstruct
+  public void recover() throws Exception {
+    journalService.open(workflowService);
+  }
+}
@@ -0,0 +1,600 @@
+package com.example.logistics.journal;
+
+import com.example.logistics.fsm.engine.FsmMachine;
+import com.example.logistics.metrics.WorkflowMetrics;
+import com.example.logistics.model.Application;
+import com.example.logistics.model.Workflow;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Service recording application, workflow and transition changes in the durable journal.
+ *
+ * <p>When the journal is disabled every method returns immediately. When {@code sync} is on, a
+ * call returns only after its record is durable; group commit in {@link Journal} amortizes the
+ * fsync across all callers waiting at the same time. Definition changes are journaled before
+ * they are applied, so a change whose record fails is never applied. Each holds a shared change
+ * lock from journaling to applying, which a snapshot takes exclusively: otherwise a snapshot
+ * could delete a change's segment before the change reached the state it captures.
+ *
+ * <p>Snapshots are written periodically in the background. Startup loads the latest snapshot and
+ * replays only the journal segments written after it; older segments are deleted.
+ *
+ * <p>With a {@link TransitionSink}, transition records also carry the hops of their action, and
+ * the sink is handed each hop once the record is durable, and again on replay if it had not stored
+ * it. The service is also the sink's {@link TransitionSource}, so a sink that dropped hops reads
+ * them back. A snapshot waits for the sink, so no segment holding unstored hops is deleted.
+ */
+@Service
+public class JournalService implements TransitionSource {
+
+  private static final Logger log = LoggerFactory.getLogger(JournalService.class);
+
+  static final byte APP_CREATED = 1;
+  static final byte WORKFLOW_CREATED = 2;
+  static final byte WORKFLOW_UPDATED = 3;
+  static final byte WORKFLOW_DELETED = 4;
+  static final byte TRANSITION = 5;
+  static final byte INSTANCE_STARTED = 6;
+  static final byte INSTANCE_TRANSITION = 7;
+  static final byte WORKFLOWS_IMPORTED = 8;
+
+  private final ObjectMapper objectMapper;
+  private final WorkflowMetrics metrics;
+  private final ObjectProvider<TransitionSink> sinks;
+  private final boolean enabled;
+  private final String dir;
+  private final int segmentSize;
+  private final int maxBatch;
+  private final boolean sync;
+  private final long snapshotIntervalSeconds;
+  private final SnapshotStore snapshotStore;
+  private final ScheduledExecutorService snapshotScheduler;
+  // Not owned by a thread: a change journaled asynchronously ends on the writer thread
+  private final StampedLock changes = new StampedLock();
+
+  private volatile Journal journal;
+  private volatile WorkflowRestorer restorer;
+  private volatile TransitionSink sink;
+
+  /**
+   * Constructs a JournalService.
+   *
+   * @param objectMapper the mapper serializing definitions
+   * @param metrics the metrics recording group commit batch sizes
+   * @param sinks the sink receiving durable transitions, if any
+   * @param enabled whether changes are journaled
+   * @param dir the journal directory
+   * @param segmentSize the size of each segment file in bytes
+   * @param maxBatch the maximum number of records forced to disk together
+   * @param sync whether callers wait until their record is durable
+   * @param snapshotIntervalSeconds the delay between snapshots; 0 disables them
+   */
+  @Autowired
+  public JournalService(ObjectMapper objectMapper, WorkflowMetrics metrics,
+      ObjectProvider<TransitionSink> sinks,
+      @Value("${logistics.journal.enabled:false}") boolean enabled,
+      @Value("${logistics.journal.dir:data/journal}") String dir,
+      @Value("${logistics.journal.segment-size:67108864}") int segmentSize,
+      @Value("${logistics.journal.max-batch:1024}") int maxBatch,
+      @Value("${logistics.journal.sync:true}") boolean sync,
+      @Value("${logistics.journal.snapshot-interval-seconds:300}") long snapshotIntervalSeconds) {
+    this.objectMapper = objectMapper;
+    this.metrics = metrics;
+    this.sinks = sinks;
+    this.enabled = enabled;
+    this.dir = dir;
+    this.segmentSize = segmentSize;
+    this.maxBatch = maxBatch;
+    this.sync = sync;
+    this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+    this.snapshotStore = new SnapshotStore(Paths.get(dir), objectMapper);
+    this.snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "journal-snapshot");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Loads the latest snapshot, replays the journal after it into the given restorer, and starts
+   * taking periodic snapshots.
+   *
+   * @param restorer the restorer rebuilding in-memory state
+   * @throws Exception if the snapshot or journal cannot be read or applied
+   */
+  public void open(WorkflowRestorer restorer) throws Exception {
+    if (!enabled) {
+      return;
+    }
+    this.restorer = restorer;
+    this.sink = sinks.getIfAvailable();
+    long storedPosition = sink == null ? 0 : sink.getStoredPosition();
+    int storedHops = sink == null ? 0 : sink.getStoredHops();
+    long start = System.nanoTime();
+    long fromSegment = snapshotStore.load(restorer);
+    long loaded = System.nanoTime();
+    int[] count = new int[1];
+    journal = Journal.open(Paths.get(dir), segmentSize, maxBatch, fromSegment,
+        (position, type, payload) -> {
+          // Hand the sink only the hops it had not stored before the restart
+          int skippedHops = position < storedPosition ? Integer.MAX_VALUE
+              : position == storedPosition ? storedHops : 0;
+          replay(restorer, position, type, payload, skippedHops);
+          count[0]++;
+        });
+    log.info("Loaded snapshot {} in {} ms, replayed {} journal records in {} ms",
+        fromSegment, (loaded - start) / 1_000_000, count[0],
+        (System.nanoTime() - loaded) / 1_000_000);
+    journal.setBatchListener(metrics::recordJournalBatch);
+    if (sink != null) {
+      sink.setSource(this);
+      journal.setDurableListener(this::durable);
+    }
+
+    if (snapshotIntervalSeconds > 0) {
+      snapshotScheduler.scheduleWithFixedDelay(() -> {
+        try {
+          snapshot();
+        } catch (Exception e) {
+          log.warn("Snapshot failed", e);
+        }
+      }, snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Checks whether transition records carry their hops for a {@link TransitionSink}.
+   *
+   * @return true if a sink receives durable transitions
+   */
+  public boolean hasTransitionSink() {
+    return sink != null;
+  }
+
+  /**
+   * Begins a change that is journaled before it is applied in memory.
+   *
+   * <p>The change must be ended once it is applied, or once its record failed; no snapshot is
+   * taken in between. A change must not begin another before it ends.
+   *
+   * @return the stamp to end the change with
+   */
+  public long beginChange() {
+    return changes.readLock();
+  }
+
+  /**
+   * Ends a change begun with {@link #beginChange}, from any thread.
+   *
+   * @param stamp the stamp returned when the change began
+   */
+  public void endChange(long stamp) {
+    changes.unlockRead(stamp);
+  }
+
+  /**
+   * Writes a snapshot and deletes the journal segments and snapshots it supersedes.
+   *
+   * <p>Transitions are not paused: they are applied before they are journaled, as absolute
+   * states, so the journal is rolled to a new segment first and every transition the snapshot
+   * misses is replayed from that segment on the next startup. Definition changes are journaled
+   * before they are applied, so they wait while the journal is rolled and the state captured;
+   * every change journaled in the older segments is then in the snapshot. The snapshot is
+   * written only once the transition sink has stored every hop of the older segments.
+   *
+   * @throws Exception if the snapshot cannot be written
+   */
+  public synchronized void snapshot() throws Exception {
+    if (journal == null) {
+      return;
+    }
+    long start = System.nanoTime();
+    long segment;
+    int entries;
+    long stamp = changes.writeLock();
+    try {
+      segment = journal.roll().get();
+      if (sink != null) {
+        sink.awaitStored();
+      }
+      entries = snapshotStore.write(segment, restorer);
+    } finally {
+      changes.unlockWrite(stamp);
+    }
+    journal.deleteSegmentsBefore(segment);
+    snapshotStore.deleteSnapshotsBefore(segment);
+    log.info("Wrote snapshot {} with {} entries in {} ms",
+        segment, entries, (System.nanoTime() - start) / 1_000_000);
+  }
+
+  /**
+   * Flushes pending records and closes the journal.
+   */
+  @PreDestroy
+  public void close() {
+    snapshotScheduler.shutdownNow();
+    if (journal != null) {
+      journal.close();
+    }
+  }
+
+  /**
+   * Records a created application.
+   *
+   * @param key the application key
+   * @param app the application
+   * @throws IOException if the record could not be journaled
+   */
+  public void appCreated(String key, Application app) throws IOException {
+    if (enabled) {
+      byte[] json = toJson(app);
+      ByteBuffer payload = ByteBuffer.allocate(sizeOf(key) + json.length);
+      putString(payload, key);
+      payload.put(json);
+      append(APP_CREATED, payload);
+    }
+  }
+
+  /**
+   * Records a created workflow, without waiting.
+   *
+   * @param workflow the workflow, carrying its ID
+   * @param createdTime the time the workflow was created
+   * @return a future completed once the record is durable, or at once when {@code sync} is off
+   */
+  public CompletableFuture<Void> workflowCreatedAsync(Workflow workflow,
+      LocalDateTime createdTime) {
+    if (!enabled) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return appendAsync(WORKFLOW_CREATED, encodeCreated(workflow, createdTime));
+  }
+
+  /**
+   * Records workflows created together, as one record, without waiting.
+   *
+   * <p>The record is replayed whole or not at all, so a crash never recovers part of the batch.
+   * It must fit in one segment: a larger batch fails, and nothing of it is added.
+   *
+   * @param workflows the workflows, each carrying its ID
+   * @param createdTime the time the workflows were created
+   * @return a future completed once the record is durable, or at once when {@code sync} is off
+   */
+  public CompletableFuture<Void> workflowsImportedAsync(List<Workflow> workflows,
+      LocalDateTime createdTime) {
+    if (!enabled) {
+      return CompletableFuture.completedFuture(null);
+    }
+    // [time][int count], then each workflow as [int length][json]
+    String time = createdTime.toString();
+    List<byte[]> jsons = new ArrayList<>(workflows.size());
+    int size = sizeOf(time) + 4;
+    for (Workflow workflow : workflows) {
+      byte[] json = toJson(workflow);
+      jsons.add(json);
+      size += 4 + json.length;
+    }
+    ByteBuffer payload = ByteBuffer.allocate(size);
+    putString(payload, time).putInt(jsons.size());
+    for (byte[] json : jsons) {
+      payload.putInt(json.length).put(json);
+    }
+    return appendAsync(WORKFLOWS_IMPORTED, payload);
+  }
+
+  /**
+   * Records an updated workflow.
+   *
+   * @param workflow the workflow, carrying its ID
+   * @param generation the generation of the updated definition
+   * @throws IOException if the record could not be journaled
+   */
+  public void workflowUpdated(Workflow workflow, int generation) throws IOException {
+    if (enabled) {
+      byte[] json = toJson(workflow);
+      append(WORKFLOW_UPDATED, ByteBuffer.allocate(4 + json.length).putInt(generation).put(json));
+    }
+  }
+
+  /**
+   * Records a deleted workflow.
+   *
+   * @param id the ID of the workflow
+   * @throws IOException if the record could not be journaled
+   */
+  public void workflowDeleted(int id) throws IOException {
+    if (enabled) {
+      append(WORKFLOW_DELETED, ByteBuffer.allocate(4).putInt(id));
+    }
+  }
+
+  /**
+   * Records the state of a workflow after an accepted transition, without waiting.
+   *
+   * <p>Called under the workflow's lock, so records are queued in the order the transitions were
+   * applied.
+   *
+   * @param id the ID of the workflow
+   * @param generation the generation of the workflow's definition
+   * @param machine the workflow's state machine
+   * @param hops the hops of the action, kept only for a {@link TransitionSink}
+   * @param role the role that performed the action
+   * @return a future completed once the record is durable, or at once when {@code sync} is off
+   */
+  public CompletableFuture<Void> transitionAsync(int id, int generation, FsmMachine machine,
+      List<TransitionHop> hops, String role) {
+    if (!enabled) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return appendAsync(TRANSITION, encodeTransition(id, generation, id, machine, hops, role));
+  }
+
+  /**
+   * Records a started workflow instance.
+   *
+   * @param instanceId the ID of the instance
+   * @param workflowId the ID of the workflow the instance was started from
+   * @param generation the generation of the definition the instance runs on
+   * @throws IOException if the record could not be journaled
+   */
+  public void instanceStarted(int instanceId, int workflowId, int generation)
+      throws IOException {
+    if (enabled) {
+      append(INSTANCE_STARTED,
+          ByteBuffer.allocate(12).putInt(instanceId).putInt(workflowId).putInt(generation));
+    }
+  }
+
+  /**
+   * Records the state of a workflow instance after an accepted transition, without waiting.
+   *
+   * <p>Called under the instance's lock, so records are queued in the order the transitions were
+   * applied.
+   *
+   * @param instanceId the ID of the instance
+   * @param generation the generation of the definition the instance runs on
+   * @param workflowId the ID of the workflow the instance was started from
+   * @param machine the instance's state machine
+   * @param hops the hops of the action, kept only for a {@link TransitionSink}
+   * @param role the role that performed the action
+   * @return a future completed once the record is durable, or at once when {@code sync} is off
+   */
+  public CompletableFuture<Void> instanceTransitionAsync(int instanceId, int generation,
+      int workflowId, FsmMachine machine, List<TransitionHop> hops, String role) {
+    if (!enabled) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return appendAsync(INSTANCE_TRANSITION,
+        encodeTransition(instanceId, generation, workflowId, machine, hops, role));
+  }
+
+  private void replay(WorkflowRestorer restorer, long position, byte type, ByteBuffer payload,
+      int skippedHops) throws IOException {
+    try {
+      switch (type) {
+        case APP_CREATED:
+          String key = getString(payload);
+          restorer.restoreApp(key, fromJson(payload, Application.class));
+          break;
+        case WORKFLOW_CREATED:
+          LocalDateTime createdTime = LocalDateTime.parse(getString(payload));
+          restorer.restoreWorkflow(fromJson(payload, Workflow.class), 0, createdTime);
+          break;
+        case WORKFLOW_UPDATED:
+          int generation = payload.getInt();
+          restorer.restoreWorkflowUpdate(fromJson(payload, Workflow.class), generation);
+          break;
+        case WORKFLOW_DELETED:
+          restorer.restoreWorkflowDeletion(payload.getInt());
+          break;
+        case TRANSITION:
+          int id = payload.getInt();
+          restorer.restoreTransition(id, payload.getInt(), payload.getInt(), getString(payload));
+          handOver(position, type, id, payload, skippedHops);
+          break;
+        case INSTANCE_STARTED:
+          restorer.restoreInstance(payload.getInt(), payload.getInt(), payload.getInt());
+          break;
+        case INSTANCE_TRANSITION:
+          int instanceId = payload.getInt();
+          restorer.restoreInstanceTransition(
+              instanceId, payload.getInt(), payload.getInt(), getString(payload));
+          handOver(position, type, instanceId, payload, skippedHops);
+          break;
+        case WORKFLOWS_IMPORTED:
+          LocalDateTime importedTime = LocalDateTime.parse(getString(payload));
+          // Read the whole batch before restoring any of it
+          int count = payload.getInt();
+          List<Workflow> workflows = new ArrayList<>(count);
+          for (int i = 0; i < count; i++) {
+            byte[] json = new byte[payload.getInt()];
+            payload.get(json);
+            workflows.add(objectMapper.readValue(json, Workflow.class));
+          }
+          for (Workflow workflow : workflows) {
+            restorer.restoreWorkflow(workflow, 0, importedTime);
+          }
+          break;
+        default:
+          throw new IOException("Unknown journal record type " + type);
+      }
+    } catch (IOException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException("Failed to replay journal record of type " + type, e);
+    }
+  }
+
+  @Override
+  public long readTransitions(long position, int skippedHops, Handler handler)
+      throws IOException {
+    return journal.readDurable(position, (recordPosition, type, payload) -> {
+      if (type != TRANSITION && type != INSTANCE_TRANSITION) {
+        return;
+      }
+      int id = payload.getInt();
+      payload.getInt();
+      payload.getInt();
+      getString(payload);
+      handOver(handler, recordPosition, type, id, payload,
+          recordPosition == position ? skippedHops : 0);
+    });
+  }
+
+  private void durable(long position, byte type, byte[] payload) {
+    if (type != TRANSITION && type != INSTANCE_TRANSITION) {
+      return;
+    }
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(payload);
+      int id = buffer.getInt();
+      buffer.getInt();
+      buffer.getInt();
+      getString(buffer);
+      handOver(position, type, id, buffer, 0);
+    } catch (RuntimeException e) {
+      log.error("Failed to hand over the transitions of journal record {}", position, e);
+    }
+  }
+
+  private void handOver(long position, byte type, int id, ByteBuffer trailer, int skippedHops) {
+    if (sink == null) {
+      return;
+    }
+    try {
+      handOver(sink::transitioned, position, type, id, trailer, skippedHops);
+    } catch (IOException e) {
+      // The sink does not throw
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void handOver(Handler handler, long position, byte type, int id,
+      ByteBuffer trailer, int skippedHops) throws IOException {
+    // Records written without a sink carry no hops
+    if (!trailer.hasRemaining()) {
+      return;
+    }
+    int workflowId = trailer.getInt();
+    int instanceId = type == INSTANCE_TRANSITION ? id : 0;
+    String role = getString(trailer);
+    long timestamp = trailer.getLong();
+    int hops = trailer.getInt();
+    for (int hop = 0; hop < hops; hop++) {
+      String fromState = getString(trailer);
+      String toState = getString(trailer);
+      String event = getString(trailer);
+      if (hop >= skippedHops) {
+        handler.transitioned(
+            position, workflowId, instanceId, fromState, toState, event, role, timestamp);
+      }
+    }
+  }
+
+  private void append(byte type, ByteBuffer payload) throws IOException {
+    try {
+      appendAsync(type, payload).join();
+    } catch (CompletionException e) {
+      throw new IOException("Journal append failed", e.getCause());
+    }
+  }
+
+  private CompletableFuture<Void> appendAsync(byte type, ByteBuffer payload) {
+    CompletableFuture<Void> done = journal.append(type, payload.array());
+    return sync ? done : CompletableFuture.completedFuture(null);
+  }
+
+  private ByteBuffer encodeCreated(Workflow workflow, LocalDateTime createdTime) {
+    String time = createdTime.toString();
+    byte[] json = toJson(workflow);
+    ByteBuffer payload = ByteBuffer.allocate(sizeOf(time) + json.length);
+    putString(payload, time);
+    return payload.put(json);
+  }
+
+  private ByteBuffer encodeTransition(int id, int generation, int workflowId, FsmMachine machine,
+      List<TransitionHop> hops, String role) {
+    int version = machine.getVersion();
+    String state = machine.getState();
+    // [int id][int generation][int version][state], then the trailer
+    int size = 12 + sizeOf(state);
+    boolean withHops = sink != null;
+    if (withHops) {
+      // Trailer: [int workflowId][role][long timestamp][int hops], then each hop's from and to
+      // state and event
+      size += 4 + sizeOf(role) + 8 + 4;
+      for (TransitionHop hop : hops) {
+        size += sizeOf(hop.getFromState()) + sizeOf(hop.getToState()) + sizeOf(hop.getEvent());
+      }
+    }
+    ByteBuffer payload = ByteBuffer.allocate(size);
+    putString(payload.putInt(id).putInt(generation).putInt(version), state);
+    if (withHops) {
+      putString(payload.putInt(workflowId), role);
+      payload.putLong(System.currentTimeMillis()).putInt(hops.size());
+      for (TransitionHop hop : hops) {
+        putString(payload, hop.getFromState());
+        putString(payload, hop.getToState());
+        putString(payload, hop.getEvent());
+      }
+    }
+    return payload;
+  }
+
+  private byte[] toJson(Object value) {
+    try {
+      return objectMapper.writeValueAsBytes(value);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private <T> T fromJson(ByteBuffer payload, Class<T> type) throws IOException {
+    byte[] json = new byte[payload.remaining()];
+    payload.get(json);
+    return objectMapper.readValue(json, type);
+  }
+
+  private static int sizeOf(String value) {
+    return 4 + (value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length);
+  }
+
+  private static ByteBuffer putString(ByteBuffer buffer, String value) {
+    if (value == null) {
+      return buffer.putInt(-1);
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    return buffer.putInt(bytes.length).put(bytes);
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
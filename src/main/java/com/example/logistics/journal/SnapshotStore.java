@@ -0,0 +1,265 @@
+package com.example.logistics.journal;
+
+import com.example.logistics.fsm.engine.FsmMachine;
+import com.example.logistics.model.Application;
+import com.example.logistics.model.Workflow;
+import com.example.logistics.model.WorkflowInstance;
+import com.example.logistics.reposity.ApplicationDatabase;
+import com.example.logistics.reposity.ApplicationRecord;
+import com.example.logistics.reposity.InstanceDatabase;
+import com.example.logistics.reposity.WorkflowDatabase;
+import com.example.logistics.reposity.WorkflowRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshots of the application, workflow and instance state.
+ *
+ * <p>A snapshot is named after the first journal segment it does not cover. It is written while
+ * traffic continues: the journal is rolled first, so every change missing from the snapshot is
+ * in that segment or a later one, and replaying those segments over the snapshot is idempotent.
+ *
+ * <p>Layout: {@code [long magic][long segment][int next workflow ID][int next instance ID]},
+ * then tagged entries, an end tag and a CRC32 of everything before it. Workflow and instance
+ * entries carry the generation of their definition, so records of an older generation replayed
+ * over the snapshot are ignored. State codes are dictionary-encoded, so an instance entry costs
+ * about 21 bytes.
+ */
+public class SnapshotStore {
+
+  private static final long MAGIC = 0x4c46534d534e5033L;
+  private static final String SUFFIX = ".snapshot";
+  private static final byte END = 0;
+  private static final byte APP = 1;
+  private static final byte WORKFLOW = 2;
+  private static final byte INSTANCE = 3;
+
+  private final Path dir;
+  private final ObjectMapper objectMapper;
+
+  /**
+   * Constructs a SnapshotStore.
+   *
+   * @param dir the directory holding the snapshot files
+   * @param objectMapper the mapper serializing definitions
+   */
+  public SnapshotStore(Path dir, ObjectMapper objectMapper) {
+    this.dir = dir;
+    this.objectMapper = objectMapper;
+  }
+
+  /**
+   * Writes a snapshot of the current state.
+   *
+   * <p>The ID counters are read before the state, so they are never lower than an ID in the
+   * snapshot; they also cover IDs whose records were truncated, such as a deleted workflow's.
+   *
+   * @param segment the first journal segment the snapshot does not cover
+   * @param restorer the restorer handing out the next workflow and instance IDs
+   * @return the number of entries written
+   * @throws IOException if the snapshot cannot be written
+   */
+  public int write(long segment, WorkflowRestorer restorer) throws IOException {
+    Files.createDirectories(dir);
+    Path target = snapshotPath(segment);
+    Path temp = dir.resolve(target.getFileName() + ".tmp");
+    CRC32 checksum = new CRC32();
+    int entries = 0;
+
+    try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+      BufferedOutputStream buffered = new BufferedOutputStream(file, 1 << 16);
+      DataOutputStream out = new DataOutputStream(new CheckedOutputStream(buffered, checksum));
+      Map<String, Integer> dictionary = new HashMap<>();
+      out.writeLong(MAGIC);
+      out.writeLong(segment);
+      out.writeInt(restorer.nextWorkflowId());
+      out.writeInt(restorer.nextInstanceId());
+
+      for (Map.Entry<String, ApplicationRecord> entry
+          : ApplicationDatabase.getRecords().entrySet()) {
+        out.writeByte(APP);
+        out.writeUTF(entry.getKey());
+        writeBytes(out, objectMapper.writeValueAsBytes(entry.getValue().getApplication()));
+        entries++;
+      }
+
+      for (WorkflowRecord record : WorkflowDatabase.getRecords()) {
+        out.writeByte(WORKFLOW);
+        writeBytes(out, objectMapper.writeValueAsBytes(record.getWorkflow()));
+        out.writeLong(record.getCreatedTime().toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(record.getCreatedTime().getNano());
+        out.writeInt(record.getGeneration());
+        writeState(out, record.getMachine(), dictionary);
+        entries++;
+      }
+
+      for (WorkflowInstance instance : InstanceDatabase.getInstances()) {
+        out.writeByte(INSTANCE);
+        out.writeInt(instance.getId());
+        out.writeInt(instance.getWorkflowId());
+        out.writeInt(instance.getGeneration());
+        writeState(out, instance.getMachine(), dictionary);
+        entries++;
+      }
+
+      out.writeByte(END);
+      out.flush();
+      new DataOutputStream(buffered).writeLong(checksum.getValue());
+      buffered.flush();
+      file.getFD().sync();
+    }
+    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+    return entries;
+  }
+
+  /**
+   * Loads the latest snapshot into the given restorer.
+   *
+   * @param restorer the restorer rebuilding in-memory state
+   * @return the first journal segment to replay after the snapshot, or 0 without a snapshot
+   * @throws Exception if the snapshot is corrupt or cannot be applied
+   */
+  public long load(WorkflowRestorer restorer) throws Exception {
+    List<Long> snapshots = listSnapshots();
+    if (snapshots.isEmpty()) {
+      return 0;
+    }
+    long segment = snapshots.get(snapshots.size() - 1);
+    CRC32 checksum = new CRC32();
+
+    try (FileInputStream file = new FileInputStream(snapshotPath(segment).toFile())) {
+      DataInputStream in = new DataInputStream(
+          new CheckedInputStream(new BufferedInputStream(file, 1 << 16), checksum));
+      List<String> dictionary = new ArrayList<>();
+      if (in.readLong() != MAGIC || in.readLong() != segment) {
+        throw new IOException("Invalid snapshot header in " + snapshotPath(segment));
+      }
+      restorer.restoreNextIds(in.readInt(), in.readInt());
+
+      for (byte tag = in.readByte(); tag != END; tag = in.readByte()) {
+        switch (tag) {
+          case APP:
+            String key = in.readUTF();
+            restorer.restoreApp(key, objectMapper.readValue(readBytes(in), Application.class));
+            break;
+          case WORKFLOW:
+            Workflow workflow = objectMapper.readValue(readBytes(in), Workflow.class);
+            LocalDateTime createdTime = LocalDateTime.ofEpochSecond(
+                in.readLong(), in.readInt(), ZoneOffset.UTC);
+            int generation = in.readInt();
+            restorer.restoreWorkflow(workflow, generation, createdTime);
+            int version = in.readInt();
+            restorer.restoreTransition(
+                workflow.getId(), generation, version, readState(in, dictionary));
+            break;
+          case INSTANCE:
+            int instanceId = in.readInt();
+            int workflowId = in.readInt();
+            int instanceGeneration = in.readInt();
+            restorer.restoreInstance(instanceId, workflowId, instanceGeneration);
+            int instanceVersion = in.readInt();
+            restorer.restoreInstanceTransition(
+                instanceId, instanceGeneration, instanceVersion, readState(in, dictionary));
+            break;
+          default:
+            throw new IOException("Unknown snapshot entry " + tag);
+        }
+      }
+
+      long expected = checksum.getValue();
+      if (in.readLong() != expected) {
+        throw new IOException("Snapshot checksum mismatch in " + snapshotPath(segment));
+      }
+    }
+    return segment;
+  }
+
+  /**
+   * Deletes the snapshots older than the given one.
+   *
+   * @param segment the segment of the oldest snapshot to keep
+   * @throws IOException if a snapshot cannot be deleted
+   */
+  public void deleteSnapshotsBefore(long segment) throws IOException {
+    for (long snapshot : listSnapshots()) {
+      if (snapshot < segment) {
+        Files.deleteIfExists(snapshotPath(snapshot));
+      }
+    }
+  }
+
+  private static void writeState(DataOutputStream out, FsmMachine machine,
+      Map<String, Integer> dictionary) throws IOException {
+    int version = machine.getVersion();
+    String state = machine.getState();
+    out.writeInt(version);
+    Integer code = dictionary.get(state);
+    if (code != null) {
+      out.writeInt(code);
+    } else {
+      dictionary.put(state, dictionary.size());
+      out.writeInt(-1);
+      out.writeUTF(state);
+    }
+  }
+
+  private static String readState(DataInputStream in, List<String> dictionary)
+      throws IOException {
+    int code = in.readInt();
+    if (code >= 0) {
+      return dictionary.get(code);
+    }
+    String state = in.readUTF();
+    dictionary.add(state);
+    return state;
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static byte[] readBytes(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  private Path snapshotPath(long segment) {
+    return dir.resolve(String.format("%016d%s", segment, SUFFIX));
+  }
+
+  private List<Long> listSnapshots() throws IOException {
+    if (!Files.isDirectory(dir)) {
+      return new ArrayList<>();
+    }
+    try (Stream<Path> files = Files.list(dir)) {
+      return files
+          .map(path -> path.getFileName().toString())
+          .filter(name -> name.endsWith(SUFFIX))
+          .map(name -> Long.parseLong(name.substring(0, name.length() - SUFFIX.length())))
+          .sorted()
+          .collect(Collectors.toCollection(ArrayList::new));
+    }
+  }
+}
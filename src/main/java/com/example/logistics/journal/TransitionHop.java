@@ -0,0 +1,52 @@
+package com.example.logistics.journal;
+
+/**
+ * One step of an accepted action: the action's own transition, or an automatic transition it
+ * cascaded into.
+ */
+public final class TransitionHop {
+
+  private final String fromState;
+  private final String toState;
+  private final String event;
+
+  /**
+   * Constructs a TransitionHop.
+   *
+   * @param fromState the state code before the hop
+   * @param toState the state code after the hop
+   * @param event the event that triggered the hop
+   */
+  public TransitionHop(String fromState, String toState, String event) {
+    this.fromState = fromState;
+    this.toState = toState;
+    this.event = event;
+  }
+
+  /**
+   * Gets the state code before the hop.
+   *
+   * @return the state code
+   */
+  public String getFromState() {
+    return fromState;
+  }
+
+  /**
+   * Gets the state code after the hop.
+   *
+   * @return the state code
+   */
+  public String getToState() {
+    return toState;
+  }
+
+  /**
+   * Gets the event that triggered the hop.
+   *
+   * @return the event
+   */
+  public String getEvent() {
+    return event;
+  }
+}
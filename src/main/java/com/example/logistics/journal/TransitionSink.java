@@ -0,0 +1,64 @@
+package com.example.logistics.journal;
+
+import java.io.IOException;
+
+/**
+ * Receives the transitions of journal records once they are durable, in journal order, and
+ * stores them on its own.
+ *
+ * <p>Transitions are handed over on the journal writer thread after each group commit. A crash can
+ * lose the ones handed over but not yet stored, so on the next start the journal replays every
+ * transition after the last one the sink stored; transitions are therefore handed over at least
+ * once. A sink that cannot keep up drops transitions rather than hold up the writer, and reads
+ * them back from its {@link TransitionSource}. A snapshot waits for the sink before it deletes
+ * journal segments, so the segments it reads from stay until it has stored them.
+ */
+public interface TransitionSink {
+
+  /**
+   * Gets the position of the journal record of the last transition stored.
+   *
+   * @return the record position, or 0 if nothing is stored
+   */
+  long getStoredPosition();
+
+  /**
+   * Gets the number of transitions of the last record stored; a record holds one per hop of an
+   * action's cascade, and a crash can store only some of them.
+   *
+   * @return the number of transitions stored from the record at {@link #getStoredPosition()}
+   */
+  int getStoredHops();
+
+  /**
+   * Gives the sink the journal to read dropped transitions back from. Called once the journal is
+   * open, before the first transition is handed over.
+   *
+   * @param source the source reading durable transitions
+   */
+  void setSource(TransitionSource source);
+
+  /**
+   * Hands over one transition. Must not block: a sink that is full drops it and reads it back
+   * from its source later.
+   *
+   * @param position the position of the journal record holding the transition
+   * @param workflowId the ID of the workflow
+   * @param instanceId the ID of the instance, or 0 for a transition of the workflow itself
+   * @param fromState the state code before the transition
+   * @param toState the state code after the transition
+   * @param event the event that triggered the transition
+   * @param role the role that performed the action
+   * @param timestamp the epoch milliseconds of the transition
+   */
+  void transitioned(long position, int workflowId, int instanceId, String fromState,
+      String toState, String event, String role, long timestamp);
+
+  /**
+   * Waits until every transition handed over so far, dropped or not, is stored.
+   *
+   * @throws IOException if the sink is closed before storing them
+   * @throws InterruptedException if interrupted while waiting
+   */
+  void awaitStored() throws IOException, InterruptedException;
+}
@@ -0,0 +1,45 @@
+package com.example.logistics.journal;
+
+import java.io.IOException;
+
+/**
+ * Reads durable transitions back from the journal, for a {@link TransitionSink} that dropped
+ * some rather than hold up the journal writer.
+ */
+public interface TransitionSource {
+
+  /**
+   * Receives the transitions read back, with the same arguments as
+   * {@link TransitionSink#transitioned}.
+   */
+  interface Handler {
+
+    /**
+     * Handles one transition, on the thread reading the journal.
+     *
+     * @param position the position of the journal record holding the transition
+     * @param workflowId the ID of the workflow
+     * @param instanceId the ID of the instance, or 0 for a transition of the workflow itself
+     * @param fromState the state code before the transition
+     * @param toState the state code after the transition
+     * @param event the event that triggered the transition
+     * @param role the role that performed the action
+     * @param timestamp the epoch milliseconds of the transition
+     * @throws IOException if the transition cannot be handled
+     */
+    void transitioned(long position, int workflowId, int instanceId, String fromState,
+        String toState, String event, String role, long timestamp) throws IOException;
+  }
+
+  /**
+   * Reads, on the calling thread and in journal order, the transitions of the durable records
+   * from a position on. Records made durable meanwhile may be left out.
+   *
+   * @param position the position of the first record to read
+   * @param skippedHops the number of leading transitions of that record not to hand over
+   * @param handler the handler receiving the transitions
+   * @return the position of the last record read, transition or not, or 0 if none was
+   * @throws IOException if the journal cannot be read or the handler fails
+   */
+  long readTransitions(long position, int skippedHops, Handler handler) throws IOException;
+}
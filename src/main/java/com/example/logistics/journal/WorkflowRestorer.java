@@ -0,0 +1,105 @@
+package com.example.logistics.journal;
+
+import com.example.logistics.model.Application;
+import com.example.logistics.model.Workflow;
+import java.time.LocalDateTime;
+
+/**
+ * Rebuilds in-memory state from persisted records, without validating or persisting them again.
+ *
+ * <p>Replay may start from a snapshot that already holds later changes than the records replayed
+ * over it. Machine versions restart when a workflow is updated, so states and instances carry the
+ * generation of the definition they belong to, and one from another generation is ignored.
+ */
+public interface WorkflowRestorer {
+
+  /**
+   * Restores a created application.
+   *
+   * @param key the application key
+   * @param app the application
+   */
+  void restoreApp(String key, Application app);
+
+  /**
+   * Restores a created workflow.
+   *
+   * @param workflow the workflow, carrying its ID
+   * @param generation the generation of the workflow's definition
+   * @param createdTime the time the workflow was created
+   * @throws Exception if the workflow's state machine cannot be built
+   */
+  void restoreWorkflow(Workflow workflow, int generation, LocalDateTime createdTime)
+      throws Exception;
+
+  /**
+   * Restores an updated workflow, unless the workflow is already at that generation or later.
+   *
+   * @param workflow the workflow, carrying its ID
+   * @param generation the generation of the updated definition
+   * @throws Exception if the workflow's state machine cannot be built
+   */
+  void restoreWorkflowUpdate(Workflow workflow, int generation) throws Exception;
+
+  /**
+   * Restores a deleted workflow.
+   *
+   * @param id the ID of the workflow
+   */
+  void restoreWorkflowDeletion(int id);
+
+  /**
+   * Restores the state of a workflow after an accepted transition.
+   *
+   * @param id the ID of the workflow
+   * @param generation the generation of the definition the transition was taken on
+   * @param version the machine version after the transition
+   * @param state the state code after the transition
+   */
+  void restoreTransition(int id, int generation, int version, String state);
+
+  /**
+   * Restores a started workflow instance.
+   *
+   * @param instanceId the ID of the instance
+   * @param workflowId the ID of the workflow the instance was started from
+   * @param generation the generation of the definition the instance runs on
+   * @throws Exception if the instance's state machine cannot be built
+   */
+  void restoreInstance(int instanceId, int workflowId, int generation) throws Exception;
+
+  /**
+   * Restores the state of a workflow instance after an accepted transition.
+   *
+   * @param instanceId the ID of the instance
+   * @param generation the generation of the definition the transition was taken on
+   * @param version the machine version after the transition
+   * @param state the state code after the transition
+   */
+  void restoreInstanceTransition(int instanceId, int generation, int version, String state);
+
+  /**
+   * Gets the next workflow ID to be handed out, so a snapshot keeps it once the journal records
+   * that advanced it are truncated.
+   *
+   * @return the next workflow ID
+   */
+  int nextWorkflowId();
+
+  /**
+   * Gets the next instance ID to be handed out, so a snapshot keeps it once the journal records
+   * that advanced it are truncated.
+   *
+   * @return the next instance ID
+   */
+  int nextInstanceId();
+
+  /**
+   * Restores the next workflow and instance IDs to be handed out, keeping a counter that is
+   * already higher.
+   *
+   * @param nextWorkflowId the next workflow ID
+   * @param nextInstanceId the next instance ID
+   */
+  void restoreNextIds(int nextWorkflowId, int nextInstanceId);
+}
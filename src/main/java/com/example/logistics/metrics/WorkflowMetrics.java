@@ -0,0 +1,346 @@
+package com.example.logistics.metrics;
+
+import com.example.logistics.reposity.InstanceDatabase;
+import com.example.logistics.reposity.WorkflowDatabase;
+import com.example.logistics.result.ReturnCode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Meters for the workflow hot paths.
+ *
+ * <p>Every meter is registered up front and held in a field or an array indexed by
+ * {@link ReturnCode#ordinal()}, so recording is a lookup plus an HdrHistogram or adder update and
+ * allocates nothing. Latencies are passed in as {@link System#nanoTime()} deltas.
+ */
+@Component
+public class WorkflowMetrics {
+
+  private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+  private final Timer authorizeTimer;
+  private final Timer dispatchTimer;
+  private final Timer createTimer;
+  private final Timer updateTimer;
+  private final Timer deleteTimer;
+  private final Timer importTimer;
+  private final Counter[] workflowResults;
+  private final Counter[] instanceResults;
+  private final DistributionSummary journalBatch;
+  private final Counter parkedMachines;
+  private final Counter rehydratedMachines;
+  private final Counter firedTimers;
+  private final Counter staleTimers;
+  private final Counter outboxDropped;
+  private final Counter outboxOverflow;
+  private final Counter outboxWriteFailures;
+  private final Counter outboxDeliveryFailures;
+  private final DistributionSummary outboxBatch;
+  private final AtomicLong outboxDepth = new AtomicLong();
+  private final AtomicLong outboxLag = new AtomicLong();
+  private final AtomicInteger residentMachines = new AtomicInteger();
+  private final AtomicLong offHeapBytes = new AtomicLong();
+
+  /**
+   * Constructs a WorkflowMetrics and registers its meters.
+   *
+   * @param registry the registry to publish to
+   */
+  @Autowired
+  public WorkflowMetrics(MeterRegistry registry) {
+    authorizeTimer = phaseTimer(registry, "authorize");
+    dispatchTimer = phaseTimer(registry, "dispatch");
+    createTimer = changeTimer(registry, "create");
+    updateTimer = changeTimer(registry, "update");
+    deleteTimer = changeTimer(registry, "delete");
+    importTimer = changeTimer(registry, "import");
+    workflowResults = resultCounters(registry, "workflow");
+    instanceResults = resultCounters(registry, "instance");
+    journalBatch = DistributionSummary.builder("logistics.journal.batch")
+        .description("Records forced to disk by one group commit")
+        .publishPercentiles(PERCENTILES)
+        .register(registry);
+    parkedMachines = Counter.builder("logistics.residency.moves")
+        .description("Workflow state machines parked or rebuilt")
+        .tag("direction", "park")
+        .register(registry);
+    rehydratedMachines = Counter.builder("logistics.residency.moves")
+        .description("Workflow state machines parked or rebuilt")
+        .tag("direction", "rehydrate")
+        .register(registry);
+
+    firedTimers = Counter.builder("logistics.timers")
+        .description("Expired workflow timers")
+        .tag("outcome", "fired")
+        .register(registry);
+    staleTimers = Counter.builder("logistics.timers")
+        .description("Expired workflow timers")
+        .tag("outcome", "stale")
+        .register(registry);
+    outboxDropped = Counter.builder("logistics.outbox.dropped")
+        .description("Transitions never logged to the outbox")
+        .register(registry);
+    outboxOverflow = Counter.builder("logistics.outbox.overflow")
+        .description("Transitions left out of the full outbox ring and read back from the journal")
+        .register(registry);
+    outboxWriteFailures = Counter.builder("logistics.outbox.failures")
+        .description("Failed outbox writes and deliveries, each retried")
+        .tag("stage", "write")
+        .register(registry);
+    outboxDeliveryFailures = Counter.builder("logistics.outbox.failures")
+        .description("Failed outbox writes and deliveries, each retried")
+        .tag("stage", "deliver")
+        .register(registry);
+    outboxBatch = DistributionSummary.builder("logistics.outbox.batch")
+        .description("Outbox events forced to disk together")
+        .publishPercentiles(PERCENTILES)
+        .register(registry);
+
+    Gauge.builder("logistics.state.machines", WorkflowDatabase::size)
+        .description("Live state machines")
+        .tag("target", "workflow")
+        .register(registry);
+    Gauge.builder("logistics.state.machines", InstanceDatabase::size)
+        .description("Live state machines")
+        .tag("target", "instance")
+        .register(registry);
+    Gauge.builder("logistics.contents.size", () -> WorkflowDatabase.getContents().size())
+        .description("Workflows listed by the query endpoint")
+        .register(registry);
+    Gauge.builder("logistics.residency.resident", residentMachines, AtomicInteger::get)
+        .description("Resident workflow state machines, as of the last residency eviction")
+        .register(registry);
+    Gauge.builder("logistics.state.off-heap", offHeapBytes, AtomicLong::get)
+        .description("Native memory allocated for off-heap workflow and instance machine state")
+        .baseUnit("bytes")
+        .register(registry);
+    Gauge.builder("logistics.outbox.depth", outboxDepth, AtomicLong::get)
+        .description("Transitions published to the outbox ring and not yet logged")
+        .register(registry);
+    Gauge.builder("logistics.outbox.lag", outboxLag, AtomicLong::get)
+        .description("Logged outbox events the slowest subscriber has not yet confirmed")
+        .register(registry);
+  }
+
+  /**
+   * Records the time spent authorizing an action.
+   *
+   * @param nanos the elapsed time in nanoseconds
+   */
+  public void recordAuthorize(long nanos) {
+    authorizeTimer.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Records the time spent sending an action to a state machine, automatic transitions included.
+   *
+   * @param nanos the elapsed time in nanoseconds
+   */
+  public void recordDispatch(long nanos) {
+    dispatchTimer.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Records the time spent creating a workflow.
+   *
+   * @param nanos the elapsed time in nanoseconds
+   */
+  public void recordCreate(long nanos) {
+    createTimer.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Records the time spent updating a workflow.
+   *
+   * @param nanos the elapsed time in nanoseconds
+   */
+  public void recordUpdate(long nanos) {
+    updateTimer.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Records the time spent deleting a workflow.
+   *
+   * @param nanos the elapsed time in nanoseconds
+   */
+  public void recordDelete(long nanos) {
+    deleteTimer.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Records the time spent importing a batch of workflows.
+   *
+   * @param nanos the elapsed time in nanoseconds
+   */
+  public void recordImport(long nanos) {
+    importTimer.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Counts the outcome of an action on a workflow.
+   *
+   * @param result the return code of the action
+   */
+  public void recordWorkflowResult(ReturnCode result) {
+    workflowResults[result.ordinal()].increment();
+  }
+
+  /**
+   * Counts the outcome of an action on a workflow instance.
+   *
+   * @param result the return code of the action
+   */
+  public void recordInstanceResult(ReturnCode result) {
+    instanceResults[result.ordinal()].increment();
+  }
+
+  /**
+   * Records the number of records forced to disk by one group commit.
+   *
+   * @param size the number of records in the batch
+   */
+  public void recordJournalBatch(int size) {
+    journalBatch.record(size);
+  }
+
+  /**
+   * Counts workflow state machines parked by a residency sweep.
+   *
+   * @param count the number of machines parked
+   */
+  public void recordPark(int count) {
+    parkedMachines.increment(count);
+  }
+
+  /**
+   * Counts a parked workflow state machine rebuilt for an action.
+   */
+  public void recordRehydrate() {
+    rehydratedMachines.increment();
+  }
+
+  /**
+   * Sets the number of resident workflow state machines after a residency eviction.
+   *
+   * @param count the number of resident machines
+   */
+  public void setResidentMachines(int count) {
+    residentMachines.set(count);
+  }
+
+  /**
+   * Sets the native memory allocated for off-heap workflow and instance machine state.
+   *
+   * @param bytes the allocated bytes
+   */
+  public void setOffHeapBytes(long bytes) {
+    offHeapBytes.set(bytes);
+  }
+
+  /**
+   * Records an expired workflow timer.
+   *
+   * @param fired true if the timer moved its workflow, false if the workflow had moved on
+   */
+  public void recordTimer(boolean fired) {
+    (fired ? firedTimers : staleTimers).increment();
+  }
+
+  /**
+   * Records transitions dropped because they are too large to be logged to the outbox.
+   *
+   * @param count the number of transitions
+   */
+  public void recordOutboxDropped(int count) {
+    outboxDropped.increment(count);
+  }
+
+  /**
+   * Records transitions left out of the full outbox ring, to be read back from the journal.
+   *
+   * @param count the number of transitions
+   */
+  public void recordOutboxOverflow(int count) {
+    outboxOverflow.increment(count);
+  }
+
+  /**
+   * Records a failed outbox write or delivery.
+   *
+   * @param delivery true if a subscriber failed, false if the outbox log could not be written
+   */
+  public void recordOutboxFailure(boolean delivery) {
+    (delivery ? outboxDeliveryFailures : outboxWriteFailures).increment();
+  }
+
+  /**
+   * Records the number of outbox events forced to disk together.
+   *
+   * @param size the number of events
+   */
+  public void recordOutboxBatch(int size) {
+    outboxBatch.record(size);
+  }
+
+  /**
+   * Sets the number of transitions waiting in the outbox ring.
+   *
+   * @param depth the number of events
+   */
+  public void setOutboxDepth(long depth) {
+    outboxDepth.set(depth);
+  }
+
+  /**
+   * Sets the number of logged outbox events the slowest subscriber has not yet confirmed.
+   *
+   * @param lag the number of events
+   */
+  public void setOutboxLag(long lag) {
+    outboxLag.set(lag);
+  }
+
+  private static Timer phaseTimer(MeterRegistry registry, String phase) {
+    return Timer.builder("logistics.action.phase")
+        .description("Time spent in each phase of an action")
+        .tag("phase", phase)
+        .publishPercentiles(PERCENTILES)
+        .publishPercentileHistogram()
+        .minimumExpectedValue(Duration.ofNanos(100))
+        .maximumExpectedValue(Duration.ofSeconds(1))
+        .register(registry);
+  }
+
+  private static Timer changeTimer(MeterRegistry registry, String operation) {
+    return Timer.builder("logistics.workflow.change")
+        .description("Time spent creating, updating, deleting and importing workflows")
+        .tag("operation", operation)
+        .publishPercentiles(PERCENTILES)
+        .publishPercentileHistogram()
+        .minimumExpectedValue(Duration.ofNanos(1000))
+        .maximumExpectedValue(Duration.ofSeconds(10))
+        .register(registry);
+  }
+
+  private static Counter[] resultCounters(MeterRegistry registry, String target) {
+    ReturnCode[] codes = ReturnCode.values();
+    Counter[] counters = new Counter[codes.length];
+    for (ReturnCode code : codes) {
+      counters[code.ordinal()] = Counter.builder("logistics.action.results")
+          .description("Actions by return code")
+          .tag("target", target)
+          .tag("result", code.name())
+          .register(registry);
+    }
+    return counters;
+  }
+}
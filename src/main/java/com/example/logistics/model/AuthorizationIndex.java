@@ -0,0 +1,61 @@
+package com.example.logistics.model;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable (role, event) authorization decisions precompiled for one workflow.
+ *
+ * <p>A probe is two hash lookups and allocates nothing. Indexes are never modified; a change to
+ * the workflow publishes a freshly compiled index instead.
+ */
+public final class AuthorizationIndex {
+
+  private final Map<String, Set<String>> allowedEventsByRole;
+  private final Map<String, Set<String>> actionableRolesByState;
+
+  /**
+   * Constructs an AuthorizationIndex.
+   *
+   * @param allowedEventsByRole the events each role may trigger
+   * @param actionableRolesByState the roles that may trigger an event from each state
+   */
+  public AuthorizationIndex(Map<String, Set<String>> allowedEventsByRole,
+      Map<String, Set<String>> actionableRolesByState) {
+    this.allowedEventsByRole = allowedEventsByRole;
+    this.actionableRolesByState = actionableRolesByState;
+  }
+
+  /**
+   * Checks if a role may trigger an event.
+   *
+   * @param role the role
+   * @param event the event name
+   * @return true if the role may trigger the event, false otherwise
+   */
+  public boolean isAllowed(String role, String event) {
+    Set<String> events = allowedEventsByRole.get(role);
+    return events != null && events.contains(event);
+  }
+
+  /**
+   * Gets the roles that may act on a workflow in a state.
+   *
+   * @param state the state code
+   * @return the roles that may trigger an event leaving the state
+   */
+  public Set<String> getActionableRoles(String state) {
+    Set<String> roles = actionableRolesByState.get(state);
+    return roles == null ? Collections.emptySet() : roles;
+  }
+
+  /**
+   * Gets the events each role may trigger.
+   *
+   * @return an unmodifiable view of the allowed events by role
+   */
+  public Map<String, Set<String>> getAllowedEventsByRole() {
+    return Collections.unmodifiableMap(allowedEventsByRole);
+  }
+}
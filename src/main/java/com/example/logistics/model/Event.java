@@ -4,6 +4,12 @@ import lombok.Data;
 
 /**
  * Represents an event that triggers a state transition.
+ *
+ * <p>An automatic event is not requested by an action: it fires as soon as an action leaves the
+ * workflow in its source state. Events named {@code AUTO} are automatic without the flag.
+ *
+ * <p>A timer event fires by itself once the workflow has stayed in its source state for
+ * {@code timeoutSeconds}, unless an action moved it on first.
  */
 @Data
 public class Event {
@@ -12,4 +18,6 @@ public class Event {
   private String fromState;
   private String toState;
   private String role;
+  private boolean auto;
+  private Long timeoutSeconds;
 }
@@ -0,0 +1,17 @@
+package com.example.logistics.model;
+
+import java.time.LocalDateTime;
+import lombok.Data;
+
+/**
+ * Represents a query for the transitions of a workflow within a time range.
+ *
+ * <p>Either bound may be omitted to leave that side of the range open.
+ */
+@Data
+public class HistoryQuery {
+
+  private int id;
+  private LocalDateTime from;
+  private LocalDateTime to;
+}
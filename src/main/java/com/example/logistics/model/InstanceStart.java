@@ -0,0 +1,12 @@
+package com.example.logistics.model;
+
+import lombok.Data;
+
+/**
+ * Represents a request to start an instance of a workflow.
+ */
+@Data
+public class InstanceStart {
+
+  private int workflowId;
+}
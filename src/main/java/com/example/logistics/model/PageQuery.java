@@ -1,13 +1,19 @@
 package com.example.logistics.model;
 
+import java.time.LocalDateTime;
 import lombok.Data;
 
 /**
  * Represents a page query with page number and page size.
+ *
+ * <p>When both cursor fields are set, the page starts after the content with that creation time
+ * and ID instead of at the page number.
  */
 @Data
 public class PageQuery {
 
   private int page;
   private int pageSize;
+  private LocalDateTime afterCreatedTime;
+  private Integer afterId;
 }
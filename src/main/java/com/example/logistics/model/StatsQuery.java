@@ -0,0 +1,12 @@
+package com.example.logistics.model;
+
+import lombok.Data;
+
+/**
+ * Represents a query for workflow counts per state, optionally limited to one application.
+ */
+@Data
+public class StatsQuery {
+
+  private Integer appId;
+}
@@ -0,0 +1,75 @@
+package com.example.logistics.model;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Immutable index of the state transitions an application's roles are authorized for.
+ *
+ * <p>State codes are interned to dense ids, and each permitted transition is stored as the
+ * {@code long} key {@code (fromId << 32) | toId} in a sorted array. A probe is two hash lookups
+ * and a binary search, and allocates nothing. The index is compiled once per application and
+ * replaced, never modified, when the application changes.
+ */
+public final class TransitionPermissions {
+
+  private static final long[] NONE = new long[0];
+
+  private final Map<String, Integer> stateIds;
+  private final long[] transitions;
+  private final Map<String, long[]> transitionsByRole;
+
+  /**
+   * Constructs a TransitionPermissions.
+   *
+   * @param stateIds the interned id of every state code used by a transition
+   * @param transitions the sorted keys of the transitions permitted to any role
+   * @param transitionsByRole the sorted keys of the transitions permitted to each role
+   */
+  public TransitionPermissions(Map<String, Integer> stateIds, long[] transitions,
+      Map<String, long[]> transitionsByRole) {
+    this.stateIds = stateIds;
+    this.transitions = transitions;
+    this.transitionsByRole = transitionsByRole;
+  }
+
+  /**
+   * Builds the key of a transition between two interned states.
+   *
+   * @param fromId the id of the state the transition starts from
+   * @param toId the id of the state the transition goes to
+   * @return the transition key
+   */
+  public static long key(int fromId, int toId) {
+    return ((long) fromId << 32) | (toId & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Checks if any role of the application is authorized for a transition.
+   *
+   * @param fromState the state the transition starts from
+   * @param toState the state the transition goes to
+   * @return true if the transition is permitted, false otherwise
+   */
+  public boolean isPermitted(String fromState, String toState) {
+    return contains(transitions, fromState, toState);
+  }
+
+  /**
+   * Checks if a role is authorized for a transition.
+   *
+   * @param role the role
+   * @param fromState the state the transition starts from
+   * @param toState the state the transition goes to
+   * @return true if the role may make the transition, false otherwise
+   */
+  public boolean isPermitted(String role, String fromState, String toState) {
+    return contains(transitionsByRole.getOrDefault(role, NONE), fromState, toState);
+  }
+
+  private boolean contains(long[] keys, String fromState, String toState) {
+    Integer fromId = stateIds.get(fromState);
+    Integer toId = fromId == null ? null : stateIds.get(toState);
+    return toId != null && Arrays.binarySearch(keys, key(fromId, toId)) >= 0;
+  }
+}
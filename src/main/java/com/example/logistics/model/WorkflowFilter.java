@@ -0,0 +1,19 @@
+package com.example.logistics.model;
+
+import lombok.Data;
+
+/**
+ * Represents a filtered workflow query with page number and page size.
+ *
+ * <p>Workflows must match every criterion that is set: the application, the current state, and a
+ * role that may act on the workflow in that state.
+ */
+@Data
+public class WorkflowFilter {
+
+  private Integer appId;
+  private String state;
+  private String role;
+  private int page;
+  private int pageSize;
+}
@@ -0,0 +1,48 @@
+package com.example.logistics.model;
+
+import com.example.logistics.fsm.engine.FsmMachine;
+
+/**
+ * A running instance of a workflow.
+ *
+ * <p>The machine references the workflow's shared compiled definition, so an instance only holds
+ * its IDs, the generation it runs on and its own current state and version.
+ */
+public final class WorkflowInstance {
+
+  private final int id;
+  private final int workflowId;
+  private final int generation;
+  private final FsmMachine machine;
+
+  /**
+   * Constructs a WorkflowInstance.
+   *
+   * @param id the ID of the instance
+   * @param workflowId the ID of the workflow the instance was started from
+   * @param generation the generation of the workflow definition the instance runs on
+   * @param machine the instance's state machine
+   */
+  public WorkflowInstance(int id, int workflowId, int generation, FsmMachine machine) {
+    this.id = id;
+    this.workflowId = workflowId;
+    this.generation = generation;
+    this.machine = machine;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public int getWorkflowId() {
+    return workflowId;
+  }
+
+  public int getGeneration() {
+    return generation;
+  }
+
+  public FsmMachine getMachine() {
+    return machine;
+  }
+}
@@ -0,0 +1,108 @@
+package com.example.logistics.outbox;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free ring buffer for many producers and a single consumer.
+ *
+ * <p>Each slot carries a sequence number telling whose turn it is. A producer claims the next
+ * position with one CAS on the tail, stores its element and publishes the slot by advancing the
+ * slot's sequence; the consumer takes a slot once its sequence shows it published, then hands it
+ * back to producers one lap ahead. Producers never wait for each other or for the consumer, and
+ * an offer to a full buffer fails at once.
+ *
+ * @param <E> the element type
+ */
+public final class MpscRingBuffer<E> {
+
+  private final Object[] elements;
+  private final AtomicLongArray sequences;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong();
+  // Written by the consumer only
+  private volatile long head;
+
+  /**
+   * Constructs an empty MpscRingBuffer.
+   *
+   * @param capacity the number of slots, rounded up to a power of two
+   */
+  public MpscRingBuffer(int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    this.elements = new Object[size];
+    this.sequences = new AtomicLongArray(size);
+    this.mask = size - 1;
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Adds an element. May be called from any thread.
+   *
+   * @param element the element, not null
+   * @return true if it was added, false if the buffer is full
+   */
+  public boolean offer(E element) {
+    while (true) {
+      long position = tail.get();
+      int index = (int) position & mask;
+      long sequence = sequences.get(index);
+      if (sequence < position) {
+        return false;
+      }
+      if (sequence == position && tail.compareAndSet(position, position + 1)) {
+        elements[index] = element;
+        sequences.lazySet(index, position + 1);
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Removes the published elements in order. Must only be called by the single consumer.
+   *
+   * @param consumer the consumer of the removed elements
+   * @param max the maximum number of elements to remove
+   * @return the number of elements removed
+   */
+  public int drain(Consumer<E> consumer, int max) {
+    long position = head;
+    int count = 0;
+    while (count < max) {
+      int index = (int) position & mask;
+      if (sequences.get(index) != position + 1) {
+        break;
+      }
+      @SuppressWarnings("unchecked")
+      E element = (E) elements[index];
+      elements[index] = null;
+      sequences.lazySet(index, position + elements.length);
+      consumer.accept(element);
+      position++;
+      count++;
+    }
+    head = position;
+    return count;
+  }
+
+  /**
+   * Gets the number of elements claimed and not yet removed.
+   *
+   * @return the approximate size
+   */
+  public int size() {
+    return (int) Math.max(0, tail.get() - head);
+  }
+
+  /**
+   * Gets the number of slots.
+   *
+   * @return the capacity
+   */
+  public int capacity() {
+    return elements.length;
+  }
+}
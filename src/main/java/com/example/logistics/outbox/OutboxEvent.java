@@ -0,0 +1,53 @@
+package com.example.logistics.outbox;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+/**
+ * Represents one accepted workflow or instance transition as delivered to outbox subscribers.
+ *
+ * <p>The sequence number is assigned when the event is written to the outbox log and grows by
+ * one per event, so a subscriber can drop the duplicates that at-least-once delivery may repeat.
+ * The source is the position of the journal record the transition came from; it is kept in the
+ * log but not delivered.
+ */
+@Data
+public class OutboxEvent {
+
+  private long sequence;
+  @JsonIgnore
+  private long source;
+  private int workflowId;
+  private int instanceId;
+  private String fromState;
+  private String toState;
+  private String event;
+  private String role;
+  private long timestamp;
+
+  /**
+   * Constructs a new OutboxEvent instance with the specified parameters.
+   *
+   * @param sequence the sequence number, or 0 until the event is logged
+   * @param source the position of the journal record the transition came from
+   * @param workflowId the ID of the workflow
+   * @param instanceId the ID of the instance, or 0 for a transition of the workflow itself
+   * @param fromState the state code before the transition
+   * @param toState the state code after the transition
+   * @param event the event that triggered the transition
+   * @param role the role that performed the action
+   * @param timestamp the epoch milliseconds of the transition
+   */
+  public OutboxEvent(long sequence, long source, int workflowId, int instanceId, String fromState,
+      String toState, String event, String role, long timestamp) {
+    this.sequence = sequence;
+    this.source = source;
+    this.workflowId = workflowId;
+    this.instanceId = instanceId;
+    this.fromState = fromState;
+    this.toState = toState;
+    this.event = event;
+    this.role = role;
+    this.timestamp = timestamp;
+  }
+}
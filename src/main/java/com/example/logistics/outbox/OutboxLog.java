@@ -0,0 +1,501 @@
+package com.example.logistics.outbox;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of outbox events in memory-mapped segment files, read by any number of
+ * independent {@link Reader}s.
+ *
+ * <p>Each event is framed as {@code [int length][long sequence][long source][int workflowId]
+ * [int instanceId][long timestamp][fromState][toState][event][role][int crc32]}, with strings as
+ * {@code [int byteLength][UTF-8 bytes]}. Segments are preallocated and zero-filled, so a zero
+ * length marks the end of the written data, as in the journal.
+ *
+ * <p>A single writer appends and then flushes; a flush forces the segment to disk and only then
+ * publishes the new end of the log, so readers never see an event that a crash could lose. When an
+ * append or flush fails, every event appended since the last flush is discarded: their sequence
+ * numbers are handed out again, their bytes are cleared and segments opened since are deleted, so
+ * the writer can append the same events again. Each reader saves its own position in a small file,
+ * and the segments every reader has passed can be deleted.
+ *
+ * <p>The log also tracks the source of its last flushed event and how many events in a row came
+ * from that source, so the writer knows where to resume feeding it after a restart.
+ */
+public final class OutboxLog {
+
+  private static final String SEGMENT_SUFFIX = ".outbox";
+  private static final String POSITION_SUFFIX = ".position";
+  private static final int FRAME_OVERHEAD = 4 + 4;
+
+  private final Path dir;
+  private final int segmentSize;
+  private final CRC32 crc = new CRC32();
+
+  // Written by the single writer only
+  private MappedByteBuffer buffer;
+  private long segmentIndex;
+  private long lastSequence;
+  private long lastSource;
+  private int lastSourceEvents;
+  // Set when discarding the unflushed events failed, so the next append or flush retries it
+  private boolean discardPending;
+
+  // Segment index in the high and position in the low 32 bits of the flushed end
+  private volatile long end;
+  private volatile long flushedSequence;
+  private volatile long flushedSource;
+  private volatile int flushedSourceEvents;
+
+  private OutboxLog(Path dir, int segmentSize) {
+    this.dir = dir;
+    this.segmentSize = segmentSize;
+  }
+
+  /**
+   * Opens a log, positioning the writer after the last valid event.
+   *
+   * @param dir the directory holding the segment and position files
+   * @param segmentSize the size of each segment file in bytes
+   * @return the opened log
+   * @throws IOException if the log cannot be read or created
+   */
+  public static OutboxLog open(Path dir, int segmentSize) throws IOException {
+    Files.createDirectories(dir);
+    OutboxLog log = new OutboxLog(dir, segmentSize);
+    List<Long> segments = log.listSegments();
+    if (segments.isEmpty()) {
+      log.map(1);
+    } else {
+      for (long index : segments) {
+        log.map(index);
+        for (OutboxEvent event = readFrame(log.buffer, log.crc); event != null;
+            event = readFrame(log.buffer, log.crc)) {
+          log.lastSequence = event.getSequence();
+          log.track(event.getSource());
+        }
+      }
+      // Clear whatever a crash left behind the last valid event
+      zero(log.buffer.duplicate());
+    }
+    log.end = pack(log.segmentIndex, log.buffer.position());
+    log.flushedSequence = log.lastSequence;
+    log.flushedSource = log.lastSource;
+    log.flushedSourceEvents = log.lastSourceEvents;
+    return log;
+  }
+
+  /**
+   * Appends an event, assigning its sequence number. Must only be called by the single writer.
+   *
+   * @param event the event
+   * @throws IllegalArgumentException if the event does not fit in a segment, in which case
+   *     nothing is appended
+   * @throws IOException if a new segment cannot be created, in which case every event appended
+   *     since the last flush is discarded
+   */
+  public void append(OutboxEvent event) throws IOException {
+    byte[] from = bytes(event.getFromState());
+    byte[] to = bytes(event.getToState());
+    byte[] name = bytes(event.getEvent());
+    byte[] role = bytes(event.getRole());
+    int length = 8 + 8 + 4 + 4 + 8 + sizeOf(from) + sizeOf(to) + sizeOf(name) + sizeOf(role);
+    if (length + FRAME_OVERHEAD > segmentSize) {
+      throw new IllegalArgumentException(
+          "Outbox event of " + length + " bytes exceeds segment size");
+    }
+    if (discardPending) {
+      discardUnflushed();
+    }
+    try {
+      if (buffer.remaining() < length + FRAME_OVERHEAD) {
+        buffer.force();
+        map(segmentIndex + 1);
+      }
+      event.setSequence(++lastSequence);
+      int start = buffer.position();
+      buffer.putInt(length);
+      buffer.putLong(event.getSequence());
+      buffer.putLong(event.getSource());
+      buffer.putInt(event.getWorkflowId());
+      buffer.putInt(event.getInstanceId());
+      buffer.putLong(event.getTimestamp());
+      putString(buffer, from);
+      putString(buffer, to);
+      putString(buffer, name);
+      putString(buffer, role);
+      ByteBuffer frame = buffer.duplicate();
+      frame.position(start + 4);
+      frame.limit(start + 4 + length);
+      crc.reset();
+      crc.update(frame);
+      buffer.putInt((int) crc.getValue());
+      track(event.getSource());
+    } catch (IOException | RuntimeException e) {
+      rollBack();
+      throw e;
+    }
+  }
+
+  /**
+   * Forces the appended events to disk and makes them visible to readers. Must only be called by
+   * the single writer.
+   *
+   * @throws IOException if the segment cannot be forced, in which case every event appended since
+   *     the last flush is discarded
+   */
+  public void flush() throws IOException {
+    if (discardPending) {
+      discardUnflushed();
+    }
+    try {
+      buffer.force();
+    } catch (RuntimeException e) {
+      // A mapped buffer reports a failed force unchecked
+      rollBack();
+      throw new IOException("Failed to force outbox segment " + segmentIndex, e);
+    }
+    flushedSequence = lastSequence;
+    flushedSource = lastSource;
+    flushedSourceEvents = lastSourceEvents;
+    end = pack(segmentIndex, buffer.position());
+  }
+
+  private void track(long source) {
+    if (source == lastSource) {
+      lastSourceEvents++;
+    } else {
+      lastSource = source;
+      lastSourceEvents = 1;
+    }
+  }
+
+  private void rollBack() {
+    discardPending = true;
+    try {
+      discardUnflushed();
+    } catch (IOException | RuntimeException e) {
+      // Left pending; the next append or flush tries again before writing anything
+    }
+  }
+
+  private void discardUnflushed() throws IOException {
+    long flushed = end;
+    long flushedSegment = flushed >>> 32;
+    int flushedPosition = (int) flushed;
+    ByteBuffer unflushed = buffer.duplicate();
+    unflushed.limit(buffer.position());
+    if (segmentIndex != flushedSegment) {
+      // The rest of the flushed segment may hold events written before moving on
+      map(flushedSegment);
+      unflushed = buffer.duplicate();
+    }
+    unflushed.position(flushedPosition);
+    zero(unflushed);
+    buffer.position(flushedPosition);
+    lastSequence = flushedSequence;
+    lastSource = flushedSource;
+    lastSourceEvents = flushedSourceEvents;
+    // Segments opened since the flush hold only discarded events, and replay must not find them
+    for (long segment : listSegments()) {
+      if (segment > flushedSegment) {
+        Files.deleteIfExists(segmentPath(segment));
+      }
+    }
+    discardPending = false;
+  }
+
+  /**
+   * Gets the sequence number of the last flushed event.
+   *
+   * @return the sequence number, or 0 if the log is empty
+   */
+  public long getFlushedSequence() {
+    return flushedSequence;
+  }
+
+  /**
+   * Gets the source of the last flushed event.
+   *
+   * @return the source, or 0 if the log is empty
+   */
+  public long getFlushedSource() {
+    return flushedSource;
+  }
+
+  /**
+   * Gets the number of events in a row, up to the last flushed one, that share its source.
+   *
+   * @return the number of events, or 0 if the log is empty
+   */
+  public int getFlushedSourceEvents() {
+    return flushedSourceEvents;
+  }
+
+  /**
+   * Opens a reader at its saved position, or at the end of the log if it has none.
+   *
+   * @param name the reader name, which names its position file
+   * @return the reader
+   * @throws IOException if the saved position cannot be read
+   */
+  public Reader reader(String name) throws IOException {
+    Path file = dir.resolve(name + POSITION_SUFFIX);
+    long flushed = end;
+    long segment = flushed >>> 32;
+    int position = (int) flushed;
+    long sequence = flushedSequence;
+    if (!Files.exists(file)) {
+      // Save the starting point, so events logged before the first delivery are not skipped
+      Reader reader = new Reader(file, segment, position, sequence);
+      reader.save();
+      return reader;
+    }
+    ByteBuffer saved = ByteBuffer.wrap(Files.readAllBytes(file));
+    segment = saved.getLong();
+    position = (int) saved.getLong();
+    sequence = saved.getLong();
+    List<Long> segments = listSegments();
+    if (!segments.isEmpty() && segment < segments.get(0)) {
+      // The saved segment is gone; resume from the oldest one kept
+      segment = segments.get(0);
+      position = 0;
+    }
+    return new Reader(file, segment, position, sequence);
+  }
+
+  /**
+   * Deletes the segments older than the given one.
+   *
+   * @param index the oldest segment to keep
+   * @throws IOException if a segment cannot be deleted
+   */
+  public void deleteSegmentsBefore(long index) throws IOException {
+    for (long segment : listSegments()) {
+      if (segment < index && segment < segmentIndex) {
+        Files.deleteIfExists(segmentPath(segment));
+      }
+    }
+  }
+
+  /**
+   * Reads the log from a saved position up to its flushed end.
+   *
+   * <p>{@link #read} always starts at the committed position, so a batch that failed delivery is
+   * read again; {@link #commit} moves past the last batch read and saves the position.
+   */
+  public final class Reader {
+
+    private final Path file;
+    private final CRC32 crc = new CRC32();
+    private long segment;
+    private int position;
+    private long sequence;
+    // Where the last read stopped
+    private long readSegment;
+    private int readPosition;
+    private long readSequence;
+    private MappedByteBuffer mapping;
+    private long mappedSegment;
+
+    private Reader(Path file, long segment, int position, long sequence) {
+      this.file = file;
+      this.segment = segment;
+      this.position = position;
+      this.sequence = sequence;
+      this.readSegment = segment;
+      this.readPosition = position;
+      this.readSequence = sequence;
+    }
+
+    /**
+     * Reads the flushed events after the committed position.
+     *
+     * @param events the list receiving the events
+     * @param max the maximum number of events to read
+     * @return the number of events read
+     * @throws IOException if a segment cannot be mapped
+     */
+    public int read(List<OutboxEvent> events, int max) throws IOException {
+      long flushed = end;
+      long current = segment;
+      int offset = position;
+      long last = sequence;
+      int count = 0;
+      while (count < max && pack(current, offset) < flushed) {
+        ByteBuffer view = view(current);
+        view.position(offset);
+        OutboxEvent event = readFrame(view, crc);
+        if (event == null) {
+          // The writer moved on to the next segment
+          current++;
+          offset = 0;
+          continue;
+        }
+        events.add(event);
+        offset = view.position();
+        last = event.getSequence();
+        count++;
+      }
+      readSegment = current;
+      readPosition = offset;
+      readSequence = last;
+      return count;
+    }
+
+    /**
+     * Moves past the events of the last read and saves the position.
+     *
+     * @throws IOException if the position file cannot be written
+     */
+    public void commit() throws IOException {
+      segment = readSegment;
+      position = readPosition;
+      sequence = readSequence;
+      save();
+    }
+
+    /**
+     * Gets the segment of the committed position.
+     *
+     * @return the segment index
+     */
+    public long getSegment() {
+      return segment;
+    }
+
+    /**
+     * Gets the sequence number of the last committed event.
+     *
+     * @return the sequence number
+     */
+    public long getSequence() {
+      return sequence;
+    }
+
+    private void save() throws IOException {
+      ByteBuffer saved = ByteBuffer.allocate(3 * 8);
+      saved.putLong(segment).putLong(position).putLong(sequence);
+      Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+      Files.write(temp, saved.array());
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private ByteBuffer view(long index) throws IOException {
+      if (mapping == null || mappedSegment != index) {
+        try (FileChannel channel = FileChannel.open(segmentPath(index), StandardOpenOption.READ)) {
+          mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        mappedSegment = index;
+      }
+      return mapping.duplicate();
+    }
+  }
+
+  private static OutboxEvent readFrame(ByteBuffer view, CRC32 crc) {
+    int start = view.position();
+    if (view.remaining() < FRAME_OVERHEAD) {
+      return null;
+    }
+    int length = view.getInt();
+    if (length <= 0 || length + 4 > view.remaining()) {
+      view.position(start);
+      return null;
+    }
+    ByteBuffer frame = view.slice();
+    frame.limit(length);
+    crc.reset();
+    crc.update(frame.duplicate());
+    view.position(start + 4 + length);
+    if ((int) crc.getValue() != view.getInt()) {
+      view.position(start);
+      return null;
+    }
+    long sequence = frame.getLong();
+    long source = frame.getLong();
+    int workflowId = frame.getInt();
+    int instanceId = frame.getInt();
+    long timestamp = frame.getLong();
+    return new OutboxEvent(sequence, source, workflowId, instanceId, getString(frame),
+        getString(frame), getString(frame), getString(frame), timestamp);
+  }
+
+  private void map(long index) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(segmentPath(index).toFile(), "rw")) {
+      if (file.length() < segmentSize) {
+        file.setLength(segmentSize);
+      }
+      // The mapping stays valid after the file is closed
+      buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+    }
+    segmentIndex = index;
+  }
+
+  private Path segmentPath(long index) {
+    return dir.resolve(String.format("%016d%s", index, SEGMENT_SUFFIX));
+  }
+
+  private List<Long> listSegments() throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files
+          .map(path -> path.getFileName().toString())
+          .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+          .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+          .sorted()
+          .collect(Collectors.toCollection(ArrayList::new));
+    }
+  }
+
+  private static void zero(ByteBuffer range) {
+    byte[] zeros = new byte[64 * 1024];
+    while (range.hasRemaining()) {
+      range.put(zeros, 0, Math.min(zeros.length, range.remaining()));
+    }
+  }
+
+  private static long pack(long segment, int position) {
+    return (segment << 32) | (position & 0xFFFFFFFFL);
+  }
+
+  private static byte[] bytes(String value) {
+    return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static int sizeOf(byte[] value) {
+    return 4 + (value == null ? 0 : value.length);
+  }
+
+  private static void putString(ByteBuffer target, byte[] value) {
+    if (value == null) {
+      target.putInt(-1);
+    } else {
+      target.putInt(value.length);
+      target.put(value);
+    }
+  }
+
+  private static String getString(ByteBuffer source) {
+    int length = source.getInt();
+    if (length < 0) {
+      return null;
+    }
+    ByteBuffer bytes = source.slice();
+    bytes.limit(length);
+    source.position(source.position() + length);
+    return StandardCharsets.UTF_8.decode(bytes).toString();
+  }
+}
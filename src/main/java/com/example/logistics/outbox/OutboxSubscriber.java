@@ -0,0 +1,29 @@
+package com.example.logistics.outbox;
+
+import java.util.List;
+
+/**
+ * Receives accepted workflow transitions from the {@link TransitionOutbox}.
+ *
+ * <p>Every {@code OutboxSubscriber} bean gets its own worker thread and its own position in the
+ * outbox log. Batches are delivered in log order; a batch is retried until {@link #deliver}
+ * returns normally, and may be delivered again after a restart if its position was not yet
+ * saved, so delivery is at least once.
+ */
+public interface OutboxSubscriber {
+
+  /**
+   * Gets the name of the subscriber, which keys its saved position in the outbox log.
+   *
+   * @return a name unique among subscribers, usable as a file name
+   */
+  String getName();
+
+  /**
+   * Delivers a batch of events.
+   *
+   * @param events the events, in sequence order
+   * @throws Exception if the batch was not delivered and must be retried
+   */
+  void deliver(List<OutboxEvent> events) throws Exception;
+}
@@ -0,0 +1,383 @@
+package com.example.logistics.outbox;
+
+import com.example.logistics.journal.TransitionSink;
+import com.example.logistics.journal.TransitionSource;
+import com.example.logistics.metrics.WorkflowMetrics;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Delivers accepted workflow and instance transitions to every {@link OutboxSubscriber}, off the
+ * action path.
+ *
+ * <p>The outbox is the journal's {@link TransitionSink}: the journal writer hands it the hops of
+ * each transition record once the record is durable, so no event is published for a transition
+ * that a crash could still undo. They go into an {@link MpscRingBuffer}. One drainer thread takes
+ * the events in batches, appends them to the {@link OutboxLog} and forces each batch to disk
+ * once. Every logged event records its journal position, and after a restart the journal replays
+ * every hop after the last one logged, so events still in the ring when the process dies are
+ * logged on the next start.
+ *
+ * <p>When the ring is full, because the drainer cannot keep up with the disk, the writer must not
+ * wait: that would stall every group commit behind the outbox. The event is dropped and counted
+ * instead, and so is every later one until the drainer catches up. Once it has logged the events
+ * left in the ring, the drainer reads the dropped ones back from the journal, starting after the
+ * last hop logged, as a restart would, and only then takes events from the ring again. A snapshot
+ * waits for the dropped events to be logged, so their segments are not deleted meanwhile.
+ *
+ * <p>Every subscriber has its own worker thread reading the log from its saved position in
+ * batches, so a slow or failing subscriber falls behind on its own without holding up the drainer
+ * or the other subscribers. A batch that fails to be logged or delivered is kept and retried with
+ * exponential backoff, and positions are saved only after delivery, so every accepted transition
+ * is delivered at least once, across restarts too. The outbox therefore requires the journal.
+ */
+@Component
+@ConditionalOnProperty(name = "logistics.outbox.enabled", havingValue = "true")
+public class TransitionOutbox implements TransitionSink {
+
+  private static final Logger log = LoggerFactory.getLogger(TransitionOutbox.class);
+
+  private static final long DRAIN_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final long WORKER_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final long CLEANUP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+  private static final long FIRST_RETRY_MILLIS = 100;
+
+  private final WorkflowMetrics metrics;
+  private final MpscRingBuffer<OutboxEvent> ring;
+  private final OutboxLog outboxLog;
+  private final int maxBatch;
+  private final long maxRetryMillis;
+  private final List<Worker> workers = new ArrayList<>();
+  private final Thread drainer;
+  // Journal position of the last event handed over, and of the last one logged or given up
+  private volatile long handedPosition;
+  private volatile long storedPosition;
+  // Set by the writer when it drops an event, cleared by the drainer once it has read back every
+  // event handed over meanwhile; both under the outbox's monitor
+  private volatile boolean dropping;
+  private volatile TransitionSource source;
+  // Events read back from the journal up to this position are skipped if the ring holds them too;
+  // drainer thread only
+  private long readBack;
+  private volatile boolean closed;
+
+  /**
+   * Constructs a TransitionOutbox, opens its log and starts its threads.
+   *
+   * @param metrics the metrics recording ring depth, batches, drops and subscriber lag
+   * @param subscribers the subscribers receiving the events
+   * @param journalEnabled whether the journal is enabled, which the outbox requires
+   * @param dir the directory of the outbox log and subscriber positions
+   * @param segmentSize the size of each log segment file in bytes
+   * @param capacity the number of events the ring holds, rounded up to a power of two
+   * @param maxBatch the maximum number of events logged or delivered together
+   * @param maxRetrySeconds the longest delay between retries of a failed delivery
+   * @throws IOException if the log or a subscriber position cannot be read
+   * @throws IllegalStateException if the journal is disabled
+   */
+  @Autowired
+  public TransitionOutbox(WorkflowMetrics metrics, ObjectProvider<OutboxSubscriber> subscribers,
+      @Value("${logistics.journal.enabled:false}") boolean journalEnabled,
+      @Value("${logistics.outbox.dir:data/outbox}") String dir,
+      @Value("${logistics.outbox.segment-size:16777216}") int segmentSize,
+      @Value("${logistics.outbox.capacity:65536}") int capacity,
+      @Value("${logistics.outbox.max-batch:512}") int maxBatch,
+      @Value("${logistics.outbox.max-retry-seconds:30}") long maxRetrySeconds)
+      throws IOException {
+    if (!journalEnabled) {
+      throw new IllegalStateException(
+          "logistics.outbox.enabled requires logistics.journal.enabled");
+    }
+    this.metrics = metrics;
+    this.ring = new MpscRingBuffer<>(capacity);
+    this.outboxLog = OutboxLog.open(Paths.get(dir), segmentSize);
+    this.storedPosition = outboxLog.getFlushedSource();
+    this.handedPosition = storedPosition;
+    this.maxBatch = maxBatch;
+    this.maxRetryMillis = TimeUnit.SECONDS.toMillis(maxRetrySeconds);
+    for (OutboxSubscriber subscriber : subscribers.orderedStream().collect(Collectors.toList())) {
+      workers.add(new Worker(subscriber, outboxLog.reader(subscriber.getName())));
+    }
+    this.drainer = new Thread(this::drain, "outbox-drainer");
+    drainer.setDaemon(true);
+    drainer.start();
+    for (Worker worker : workers) {
+      worker.thread.start();
+    }
+    log.info("Outbox opened at sequence {} with {} subscribers",
+        outboxLog.getFlushedSequence(), workers.size());
+  }
+
+  @Override
+  public long getStoredPosition() {
+    return outboxLog.getFlushedSource();
+  }
+
+  @Override
+  public int getStoredHops() {
+    return outboxLog.getFlushedSourceEvents();
+  }
+
+  @Override
+  public void setSource(TransitionSource source) {
+    this.source = source;
+  }
+
+  @Override
+  public void transitioned(long position, int workflowId, int instanceId, String fromState,
+      String toState, String event, String role, long timestamp) {
+    if (!dropping) {
+      OutboxEvent outboxEvent = new OutboxEvent(
+          0, position, workflowId, instanceId, fromState, toState, event, role, timestamp);
+      if (ring.offer(outboxEvent)) {
+        handedPosition = position;
+        return;
+      }
+    }
+    synchronized (this) {
+      // Under the monitor, so the drainer cannot stop reading back between this drop and its check
+      dropping = true;
+      handedPosition = position;
+    }
+    metrics.recordOutboxOverflow(1);
+  }
+
+  @Override
+  public void awaitStored() throws IOException, InterruptedException {
+    long position = handedPosition;
+    while (storedPosition < position) {
+      if (closed) {
+        throw new IOException("Outbox closed before storing position " + position);
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      LockSupport.parkNanos(this, DRAIN_IDLE_NANOS);
+    }
+  }
+
+  /**
+   * Logs the events left in the ring and stops the threads. Subscribers resume from their saved
+   * positions after a restart, and events never logged are handed over again by the journal.
+   */
+  @PreDestroy
+  public void close() {
+    closed = true;
+    join(drainer);
+    for (Worker worker : workers) {
+      worker.thread.interrupt();
+      join(worker.thread);
+    }
+  }
+
+  private void drain() {
+    List<OutboxEvent> batch = new ArrayList<>(maxBatch);
+    long nextCleanup = System.nanoTime() + CLEANUP_INTERVAL_NANOS;
+    while (!closed || ring.size() > 0) {
+      ring.drain(event -> {
+        if (event.getSource() > readBack) {
+          batch.add(event);
+        }
+      }, maxBatch);
+      if (!batch.isEmpty()) {
+        write(batch);
+        batch.clear();
+      } else if (dropping && !closed) {
+        // The writer adds nothing to the ring while dropping, so every event left in it is logged
+        readBack(batch);
+      } else {
+        LockSupport.parkNanos(this, DRAIN_IDLE_NANOS);
+      }
+      metrics.setOutboxDepth(ring.size());
+      metrics.setOutboxLag(lag());
+      if (System.nanoTime() - nextCleanup > 0) {
+        cleanup();
+        nextCleanup = System.nanoTime() + CLEANUP_INTERVAL_NANOS;
+      }
+    }
+  }
+
+  private void readBack(List<OutboxEvent> batch) {
+    TransitionSource journal = source;
+    if (journal == null) {
+      // Nothing to read from; the journal hands the dropped events over again on the next start
+      LockSupport.parkNanos(this, DRAIN_IDLE_NANOS);
+      return;
+    }
+    long read;
+    try {
+      read = journal.readTransitions(outboxLog.getFlushedSource(),
+          outboxLog.getFlushedSourceEvents(),
+          (position, workflowId, instanceId, fromState, toState, event, role, timestamp) -> {
+            batch.add(new OutboxEvent(0, position, workflowId, instanceId, fromState, toState,
+                event, role, timestamp));
+            if (batch.size() == maxBatch) {
+              write(batch);
+              batch.clear();
+            }
+          });
+    } catch (IOException | RuntimeException e) {
+      batch.clear();
+      metrics.recordOutboxFailure(false);
+      log.error("Failed to read dropped outbox events back from the journal, retrying", e);
+      pause(FIRST_RETRY_MILLIS);
+      return;
+    }
+    if (!batch.isEmpty()) {
+      write(batch);
+      batch.clear();
+    }
+    synchronized (this) {
+      // Events dropped while reading lie after the last record read; read again for them
+      if (handedPosition <= read) {
+        dropping = false;
+      }
+    }
+    readBack = Math.max(readBack, read);
+  }
+
+  private void write(List<OutboxEvent> batch) {
+    OutboxEvent last = batch.get(batch.size() - 1);
+    long retryMillis = 0;
+    while (true) {
+      try {
+        // A failed append or flush discards the whole batch from the log, so it is logged again
+        for (Iterator<OutboxEvent> events = batch.iterator(); events.hasNext(); ) {
+          OutboxEvent event = events.next();
+          try {
+            outboxLog.append(event);
+          } catch (IllegalArgumentException e) {
+            // Larger than a segment, so it could never be logged; retrying would stall the outbox
+            log.error("Dropping outbox event of workflow {} {} -> {}", event.getWorkflowId(),
+                event.getFromState(), event.getToState(), e);
+            metrics.recordOutboxDropped(1);
+            events.remove();
+          }
+        }
+        outboxLog.flush();
+        metrics.recordOutboxBatch(batch.size());
+        storedPosition = last.getSource();
+        break;
+      } catch (IOException | RuntimeException e) {
+        metrics.recordOutboxFailure(false);
+        if (closed) {
+          // Shutdown must not wait on a failing disk; the journal hands the batch over again
+          log.error("Failed to log {} outbox events while closing, leaving them to the journal",
+              batch.size(), e);
+          return;
+        }
+        retryMillis = backoff(retryMillis);
+        log.error("Failed to log {} outbox events, retrying in {} ms", batch.size(), retryMillis,
+            e);
+        pause(retryMillis);
+      }
+    }
+    for (Worker worker : workers) {
+      LockSupport.unpark(worker.thread);
+    }
+  }
+
+  private long backoff(long retryMillis) {
+    return Math.min(Math.max(FIRST_RETRY_MILLIS, retryMillis * 2), maxRetryMillis);
+  }
+
+  private void pause(long millis) {
+    // Workers are woken after every batch; a retry still waits its full delay
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    long remaining;
+    while (!closed && (remaining = deadline - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(this, remaining);
+    }
+  }
+
+  private long lag() {
+    long lag = 0;
+    for (Worker worker : workers) {
+      lag = Math.max(lag, outboxLog.getFlushedSequence() - worker.committedSequence);
+    }
+    return lag;
+  }
+
+  private void cleanup() {
+    long oldest = Long.MAX_VALUE;
+    for (Worker worker : workers) {
+      oldest = Math.min(oldest, worker.committedSegment);
+    }
+    try {
+      outboxLog.deleteSegmentsBefore(oldest);
+    } catch (IOException e) {
+      log.warn("Failed to delete delivered outbox segments", e);
+    }
+  }
+
+  private static void join(Thread thread) {
+    LockSupport.unpark(thread);
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Delivers the log to one subscriber.
+   */
+  private final class Worker implements Runnable {
+
+    final OutboxSubscriber subscriber;
+    final OutboxLog.Reader reader;
+    final Thread thread;
+    volatile long committedSegment;
+    volatile long committedSequence;
+
+    Worker(OutboxSubscriber subscriber, OutboxLog.Reader reader) {
+      this.subscriber = subscriber;
+      this.reader = reader;
+      this.thread = new Thread(this, "outbox-" + subscriber.getName());
+      this.thread.setDaemon(true);
+      this.committedSegment = reader.getSegment();
+      this.committedSequence = reader.getSequence();
+    }
+
+    @Override
+    public void run() {
+      List<OutboxEvent> batch = new ArrayList<>(maxBatch);
+      long retryMillis = 0;
+      while (!closed) {
+        batch.clear();
+        try {
+          if (reader.read(batch, maxBatch) == 0) {
+            LockSupport.parkNanos(this, WORKER_IDLE_NANOS);
+            continue;
+          }
+          subscriber.deliver(Collections.unmodifiableList(batch));
+          reader.commit();
+          committedSegment = reader.getSegment();
+          committedSequence = reader.getSequence();
+          retryMillis = 0;
+        } catch (Exception e) {
+          metrics.recordOutboxFailure(true);
+          retryMillis = backoff(retryMillis);
+          log.warn("Outbox subscriber {} failed at sequence {}, retrying in {} ms",
+              subscriber.getName(), reader.getSequence() + 1, retryMillis, e);
+          pause(retryMillis);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package com.example.logistics.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Posts each outbox batch to a webhook as a JSON array of {@link OutboxEvent}s.
+ *
+ * <p>Any response other than 2xx fails the batch, which the outbox then retries.
+ */
+@Component
+@ConditionalOnProperty(name = "logistics.outbox.webhook.url")
+public class WebhookOutboxSubscriber implements OutboxSubscriber {
+
+  private final ObjectMapper objectMapper;
+  private final URL url;
+  private final int timeoutMillis;
+
+  /**
+   * Constructs a WebhookOutboxSubscriber.
+   *
+   * @param objectMapper the mapper writing the request bodies
+   * @param url the webhook URL
+   * @param timeoutMillis the connect and read timeout of each request
+   * @throws IOException if the URL is malformed
+   */
+  @Autowired
+  public WebhookOutboxSubscriber(ObjectMapper objectMapper,
+      @Value("${logistics.outbox.webhook.url}") String url,
+      @Value("${logistics.outbox.webhook.timeout-millis:5000}") int timeoutMillis)
+      throws IOException {
+    this.objectMapper = objectMapper;
+    this.url = new URL(url);
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  @Override
+  public String getName() {
+    return "webhook";
+  }
+
+  @Override
+  public void deliver(List<OutboxEvent> events) throws IOException {
+    byte[] body = objectMapper.writeValueAsBytes(events);
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    try {
+      connection.setRequestMethod("POST");
+      connection.setConnectTimeout(timeoutMillis);
+      connection.setReadTimeout(timeoutMillis);
+      connection.setDoOutput(true);
+      connection.setFixedLengthStreamingMode(body.length);
+      connection.setRequestProperty("Content-Type", "application/json");
+      try (OutputStream out = connection.getOutputStream()) {
+        out.write(body);
+      }
+      int status = connection.getResponseCode();
+      if (status / 100 != 2) {
+        throw new IOException("Webhook " + url + " answered " + status);
+      }
+    } finally {
+      connection.disconnect();
+    }
+  }
+}
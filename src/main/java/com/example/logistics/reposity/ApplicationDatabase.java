@@ -1,13 +1,68 @@
 package com.example.logistics.reposity;
 
 import com.example.logistics.model.Application;
+import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Represents the application database.
+ *
+ * <p>Each application is stored as an {@link ApplicationRecord} together with its compiled
+ * transition permissions, so workflows are validated and authorized against the application
+ * without rescanning its roles.
  */
 public class ApplicationDatabase {
 
-  public static final Map<String, Application> applications = new ConcurrentHashMap<>();
+  private static final Map<String, ApplicationRecord> records = new ConcurrentHashMap<>();
+
+  /**
+   * Adds or replaces the record of an application.
+   *
+   * @param key the application key
+   * @param record the record to be added or replaced
+   */
+  public static void addOrUpdate(String key, ApplicationRecord record) {
+    records.put(key, record);
+  }
+
+  /**
+   * Gets the record of an application by key.
+   *
+   * @param key the application key
+   * @return the record, or null if the application does not exist
+   */
+  public static ApplicationRecord get(String key) {
+    return records.get(key);
+  }
+
+  /**
+   * Gets the record of an application by ID.
+   *
+   * @param appId the application ID
+   * @return the record, or null if the application does not exist
+   */
+  public static ApplicationRecord get(int appId) {
+    return records.get(String.valueOf(appId));
+  }
+
+  /**
+   * Gets an application by ID.
+   *
+   * @param appId the application ID
+   * @return the application, or null if it does not exist
+   */
+  public static Application getApplication(int appId) {
+    ApplicationRecord record = get(appId);
+    return record == null ? null : record.getApplication();
+  }
+
+  /**
+   * Gets the records of all applications.
+   *
+   * @return an unmodifiable view of the records by application key
+   */
+  public static Map<String, ApplicationRecord> getRecords() {
+    return Collections.unmodifiableMap(records);
+  }
 }
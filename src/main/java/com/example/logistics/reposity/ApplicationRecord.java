@@ -0,0 +1,35 @@
+package com.example.logistics.reposity;
+
+import com.example.logistics.model.Application;
+import com.example.logistics.model.TransitionPermissions;
+
+/**
+ * Everything stored for one application.
+ *
+ * <p>Records are immutable: a change to the application publishes a new record, so its
+ * transition permissions are never read stale.
+ */
+public final class ApplicationRecord {
+
+  private final Application application;
+  private final TransitionPermissions permissions;
+
+  /**
+   * Constructs an ApplicationRecord.
+   *
+   * @param application the application
+   * @param permissions the compiled transition permissions of the application
+   */
+  public ApplicationRecord(Application application, TransitionPermissions permissions) {
+    this.application = application;
+    this.permissions = permissions;
+  }
+
+  public Application getApplication() {
+    return application;
+  }
+
+  public TransitionPermissions getPermissions() {
+    return permissions;
+  }
+}
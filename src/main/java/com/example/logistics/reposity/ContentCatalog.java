@@ -0,0 +1,411 @@
+package com.example.logistics.reposity;
+
+import com.example.logistics.result.Content;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content store kept in an append-only, memory-mapped catalog file.
+ *
+ * <p>Each content is one record framed as {@code [int length][int id][long epochSecond][int nano]
+ * [name][desc][creator]}, with strings as {@code [int byteLength][UTF-8 bytes]} and a length of -1
+ * for null. A write appends a record and marks the one it replaces in a tombstone bitmap indexed
+ * by record ordinal, so it costs the same however large the catalog is. Reads decode straight
+ * from the mapping without a system call.
+ *
+ * <p>Once tombstoned records take more than half of the written bytes, a background thread copies
+ * the live records into a new file and swaps it in. Contents are rebuilt from the journal at
+ * startup, so the file is recreated empty on open and never forced to disk.
+ */
+public class ContentCatalog implements ContentStore, Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(ContentCatalog.class);
+
+  private static final String FILE_NAME = "contents.catalog";
+  private static final String COMPACT_SUFFIX = ".compact";
+  private static final int HEADER_BYTES = 4;
+  private static final long MIN_COMPACT_BYTES = 1 << 20;
+
+  private final Path file;
+  private final int initialSize;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final ExecutorService compactor;
+
+  private FileChannel channel;
+  private MappedByteBuffer buffer;
+  private int end;
+  private int records;
+  private long deadBytes;
+  private BitSet tombstones = new BitSet();
+  // Position plus one and record ordinal of each ID's live record; 0 marks a missing ID
+  private int[] positions = new int[1024];
+  private int[] ordinals = new int[1024];
+  private boolean compacting;
+
+  private ContentCatalog(Path file, int initialSize) {
+    this.file = file;
+    this.initialSize = initialSize;
+    this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "catalog-compactor");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Creates an empty catalog, replacing any catalog file left in the directory.
+   *
+   * @param dir the catalog directory
+   * @param initialSize the initial size of the mapping in bytes
+   * @return the opened catalog
+   * @throws IOException if the file cannot be created or mapped
+   */
+  public static ContentCatalog open(Path dir, int initialSize) throws IOException {
+    Files.createDirectories(dir);
+    ContentCatalog catalog = new ContentCatalog(dir.resolve(FILE_NAME), initialSize);
+    Files.deleteIfExists(catalog.file);
+    catalog.channel = openChannel(catalog.file);
+    catalog.buffer = catalog.channel.map(FileChannel.MapMode.READ_WRITE, 0, initialSize);
+    return catalog;
+  }
+
+  @Override
+  public Content put(Content content) {
+    byte[] record = encode(content);
+    lock.writeLock().lock();
+    try {
+      Content previous = release(content.getId());
+      ensureCapacity(record.length);
+      ByteBuffer target = buffer.duplicate();
+      target.position(end);
+      target.put(record);
+      growIds(content.getId());
+      positions[content.getId()] = end + 1;
+      ordinals[content.getId()] = records++;
+      end += record.length;
+      scheduleCompaction();
+      return previous;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public Content remove(int id) {
+    lock.writeLock().lock();
+    try {
+      Content previous = release(id);
+      scheduleCompaction();
+      return previous;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public Content get(int id) {
+    lock.readLock().lock();
+    try {
+      if (id < 0 || id >= positions.length || positions[id] == 0) {
+        return null;
+      }
+      return decode(positions[id] - 1);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the number of bytes written, including tombstoned records.
+   *
+   * @return the written bytes
+   */
+  public int writtenBytes() {
+    lock.readLock().lock();
+    try {
+      return end;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Copies the live records into a new file and swaps it in.
+   *
+   * <p>The records written up to the start of the compaction are copied without holding the lock,
+   * from a snapshot of the tombstones, so reads and writes continue meanwhile. The write lock is
+   * then held only to copy the records written since, carry over the tombstones set since and
+   * swap the files.
+   *
+   * @throws IOException if the new file cannot be written, in which case it is deleted and the
+   *     catalog keeps its current file
+   */
+  public synchronized void compact() throws IOException {
+    long start = System.nanoTime();
+    int copyEnd;
+    int copyRecords;
+    long copyDeadBytes;
+    BitSet copyTombstones;
+    ByteBuffer source;
+    lock.readLock().lock();
+    try {
+      copyEnd = end;
+      copyRecords = records;
+      copyDeadBytes = deadBytes;
+      copyTombstones = (BitSet) tombstones.clone();
+      // Records before copyEnd never change, and a growing mapping keeps its old contents
+      source = buffer.duplicate();
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    int live = copyEnd - (int) copyDeadBytes;
+    int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(initialSize, live * 2L));
+    Path temp = file.resolveSibling(FILE_NAME + COMPACT_SUFFIX);
+    Files.deleteIfExists(temp);
+    FileChannel compactChannel = openChannel(temp);
+    try {
+      MappedByteBuffer compactBuffer =
+          compactChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+      // Records are stored in write order, so the n-th record has ordinal n
+      int[] renumbered = new int[copyRecords];
+      int[] relocated = new int[copyRecords];
+      int written = 0;
+      int kept = 0;
+      int position = 0;
+      for (int ordinal = 0; ordinal < copyRecords; ordinal++) {
+        int length = HEADER_BYTES + source.getInt(position);
+        if (copyTombstones.get(ordinal)) {
+          renumbered[ordinal] = -1;
+        } else {
+          copy(source, position, length, compactBuffer, written);
+          renumbered[ordinal] = kept++;
+          relocated[ordinal] = written + 1;
+          written += length;
+        }
+        position += length;
+      }
+
+      lock.writeLock().lock();
+      try {
+        if (!channel.isOpen()) {
+          throw new IOException("Content catalog closed during compaction");
+        }
+        int tail = end - copyEnd;
+        if ((long) written + tail > compactBuffer.capacity()) {
+          long grown = Math.min(Integer.MAX_VALUE, Math.max(capacity, (written + (long) tail) * 2));
+          compactBuffer = compactChannel.map(FileChannel.MapMode.READ_WRITE, 0, grown);
+        }
+        // Records written since are copied as they are, tombstoned or not
+        copy(buffer, copyEnd, tail, compactBuffer, written);
+        int shift = written - copyEnd;
+        int ordinalShift = kept - copyRecords;
+
+        int[] newPositions = new int[positions.length];
+        int[] newOrdinals = new int[ordinals.length];
+        for (int id = 0; id < positions.length; id++) {
+          if (positions[id] == 0) {
+            continue;
+          }
+          int ordinal = ordinals[id];
+          // A record live now and written before the copy was live in the snapshot too
+          boolean copied = ordinal < copyRecords;
+          newPositions[id] = copied ? relocated[ordinal] : positions[id] + shift;
+          newOrdinals[id] = copied ? renumbered[ordinal] : ordinal + ordinalShift;
+        }
+        BitSet newTombstones = new BitSet();
+        for (int ordinal = tombstones.nextSetBit(0); ordinal >= 0;
+            ordinal = tombstones.nextSetBit(ordinal + 1)) {
+          if (ordinal >= copyRecords) {
+            newTombstones.set(ordinal + ordinalShift);
+          } else if (renumbered[ordinal] >= 0) {
+            newTombstones.set(renumbered[ordinal]);
+          }
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        channel.close();
+        channel = compactChannel;
+        buffer = compactBuffer;
+        positions = newPositions;
+        ordinals = newOrdinals;
+        tombstones = newTombstones;
+        records += ordinalShift;
+        // The records dropped were exactly those dead in the snapshot
+        deadBytes -= copyDeadBytes;
+        log.info("Compacted content catalog from {} to {} bytes in {} ms",
+            end, end + shift, (System.nanoTime() - start) / 1_000_000);
+        end += shift;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    } catch (IOException | RuntimeException e) {
+      compactChannel.close();
+      Files.deleteIfExists(temp);
+      throw e;
+    }
+  }
+
+  /**
+   * Stops compaction and closes the file.
+   *
+   * @throws IOException if the file cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    compactor.shutdownNow();
+    lock.writeLock().lock();
+    try {
+      channel.close();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private Content release(int id) {
+    if (id < 0 || id >= positions.length || positions[id] == 0) {
+      return null;
+    }
+    int position = positions[id] - 1;
+    Content previous = decode(position);
+    tombstones.set(ordinals[id]);
+    deadBytes += HEADER_BYTES + buffer.getInt(position);
+    positions[id] = 0;
+    return previous;
+  }
+
+  private void scheduleCompaction() {
+    if (compacting || deadBytes < MIN_COMPACT_BYTES || deadBytes * 2 < end) {
+      return;
+    }
+    compacting = true;
+    compactor.execute(() -> {
+      try {
+        compact();
+      } catch (IOException e) {
+        log.warn("Content catalog compaction failed", e);
+      } finally {
+        lock.writeLock().lock();
+        compacting = false;
+        lock.writeLock().unlock();
+      }
+    });
+  }
+
+  private void ensureCapacity(int length) {
+    if ((long) end + length <= buffer.capacity()) {
+      return;
+    }
+    long capacity = buffer.capacity();
+    while (capacity < (long) end + length) {
+      capacity *= 2;
+    }
+    if (capacity > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Content catalog is full");
+    }
+    try {
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to grow content catalog", e);
+    }
+  }
+
+  private void growIds(int id) {
+    if (id >= positions.length) {
+      int length = Math.max(positions.length * 2, id + 1);
+      positions = Arrays.copyOf(positions, length);
+      ordinals = Arrays.copyOf(ordinals, length);
+    }
+  }
+
+  private static void copy(ByteBuffer from, int position, int length, ByteBuffer to, int target) {
+    ByteBuffer range = from.duplicate();
+    range.limit(position + length);
+    range.position(position);
+    ByteBuffer destination = to.duplicate();
+    destination.position(target);
+    destination.put(range);
+  }
+
+  private static FileChannel openChannel(Path path) throws IOException {
+    return FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+  }
+
+  private static byte[] encode(Content content) {
+    byte[] name = bytes(content.getName());
+    byte[] desc = bytes(content.getDesc());
+    byte[] creator = bytes(content.getCreator());
+    int length = 4 + 8 + 4 + sizeOf(name) + sizeOf(desc) + sizeOf(creator);
+    ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + length);
+    record.putInt(length);
+    record.putInt(content.getId());
+    record.putLong(content.getCreatedTime().toEpochSecond(ZoneOffset.UTC));
+    record.putInt(content.getCreatedTime().getNano());
+    putString(record, name);
+    putString(record, desc);
+    putString(record, creator);
+    return record.array();
+  }
+
+  private Content decode(int position) {
+    ByteBuffer record = buffer.duplicate();
+    record.position(position + HEADER_BYTES);
+    int id = record.getInt();
+    long second = record.getLong();
+    int nano = record.getInt();
+    String name = getString(record);
+    String desc = getString(record);
+    String creator = getString(record);
+    return new Content(id, name, desc, creator,
+        LocalDateTime.ofEpochSecond(second, nano, ZoneOffset.UTC));
+  }
+
+  private static byte[] bytes(String value) {
+    return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static int sizeOf(byte[] value) {
+    return 4 + (value == null ? 0 : value.length);
+  }
+
+  private static void putString(ByteBuffer record, byte[] value) {
+    if (value == null) {
+      record.putInt(-1);
+    } else {
+      record.putInt(value.length);
+      record.put(value);
+    }
+  }
+
+  private static String getString(ByteBuffer record) {
+    int length = record.getInt();
+    if (length < 0) {
+      return null;
+    }
+    ByteBuffer bytes = record.slice();
+    bytes.limit(length);
+    record.position(record.position() + length);
+    return StandardCharsets.UTF_8.decode(bytes).toString();
+  }
+}
@@ -0,0 +1,302 @@
+package com.example.logistics.reposity;
+
+import com.example.logistics.result.Content;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Content index kept ordered by creation time descending, then by ID descending.
+ *
+ * <p>Backed by a treap whose nodes carry subtree sizes, so inserts, deletes, offset seeks and
+ * cursor seeks all take O(log n), and a page costs O(log n + page size). Readers share a read
+ * lock and writers take the write lock, so pages never observe a half-applied update.
+ *
+ * <p>Nodes carry only the sort key; the contents themselves live in a {@link ContentStore} and
+ * are resolved when a page is built.
+ */
+public class ContentIndex {
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final ContentStore store;
+  private Node root;
+
+  /**
+   * A result page together with the position of its first item.
+   */
+  public static final class Page {
+
+    private final int offset;
+    private final List<Content> items;
+
+    Page(int offset, List<Content> items) {
+      this.offset = offset;
+      this.items = items;
+    }
+
+    public int getOffset() {
+      return offset;
+    }
+
+    public List<Content> getItems() {
+      return items;
+    }
+  }
+
+  private static final class Node {
+
+    final LocalDateTime createdTime;
+    final int id;
+    final int priority;
+    int size = 1;
+    Node left;
+    Node right;
+
+    Node(LocalDateTime createdTime, int id, int priority) {
+      this.createdTime = createdTime;
+      this.id = id;
+      this.priority = priority;
+    }
+  }
+
+  /**
+   * Constructs a ContentIndex holding its contents on the heap.
+   */
+  public ContentIndex() {
+    this(new HeapContentStore());
+  }
+
+  /**
+   * Constructs a ContentIndex.
+   *
+   * @param store the store holding the indexed contents
+   */
+  public ContentIndex(ContentStore store) {
+    this.store = store;
+  }
+
+  /**
+   * Adds content, replacing any content with the same ID.
+   *
+   * @param content the content to be added
+   */
+  public void add(Content content) {
+    lock.writeLock().lock();
+    try {
+      Content previous = store.put(content);
+      if (previous != null) {
+        root = delete(root, previous.getCreatedTime(), previous.getId());
+      }
+      root = insert(root, new Node(content.getCreatedTime(), content.getId(),
+          ThreadLocalRandom.current().nextInt()));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes content by ID.
+   *
+   * @param id the ID of the content to be removed
+   */
+  public void remove(int id) {
+    lock.writeLock().lock();
+    try {
+      Content previous = store.remove(id);
+      if (previous != null) {
+        root = delete(root, previous.getCreatedTime(), previous.getId());
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Gets content by ID.
+   *
+   * @param id the ID of the content
+   * @return the content, or null if it is not indexed
+   */
+  public Content get(int id) {
+    lock.readLock().lock();
+    try {
+      return store.get(id);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the number of indexed contents.
+   *
+   * @return the number of contents
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return size(root);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Gets a page of contents starting at an offset.
+   *
+   * @param offset the position of the first content
+   * @param limit the maximum number of contents
+   * @return the contents in index order
+   */
+  public List<Content> page(int offset, int limit) {
+    lock.readLock().lock();
+    try {
+      Deque<Node> stack = new ArrayDeque<>();
+      Node node = root;
+      int remaining = offset;
+      while (node != null) {
+        int leftSize = size(node.left);
+        if (remaining < leftSize) {
+          stack.push(node);
+          node = node.left;
+        } else if (remaining == leftSize) {
+          stack.push(node);
+          break;
+        } else {
+          remaining -= leftSize + 1;
+          node = node.right;
+        }
+      }
+      return drain(stack, limit);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Gets a page of contents that sort after a cursor.
+   *
+   * @param createdTime the creation time of the cursor
+   * @param id the ID of the cursor
+   * @param limit the maximum number of contents
+   * @return the page, with the offset of its first content
+   */
+  public Page pageAfter(LocalDateTime createdTime, int id, int limit) {
+    lock.readLock().lock();
+    try {
+      Deque<Node> stack = new ArrayDeque<>();
+      Node node = root;
+      int offset = 0;
+      while (node != null) {
+        if (compare(createdTime, id, node) < 0) {
+          stack.push(node);
+          node = node.left;
+        } else {
+          offset += size(node.left) + 1;
+          node = node.right;
+        }
+      }
+      return new Page(offset, drain(stack, limit));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private List<Content> drain(Deque<Node> stack, int limit) {
+    List<Content> items = new ArrayList<>(Math.min(limit, stack.size() * 2 + 1));
+    while (!stack.isEmpty() && items.size() < limit) {
+      Node node = stack.pop();
+      items.add(store.get(node.id));
+      for (Node next = node.right; next != null; next = next.left) {
+        stack.push(next);
+      }
+    }
+    return items;
+  }
+
+  private static int compare(LocalDateTime createdTime, int id, Node node) {
+    int order = node.createdTime.compareTo(createdTime);
+    return order != 0 ? order : Integer.compare(node.id, id);
+  }
+
+  private static int size(Node node) {
+    return node == null ? 0 : node.size;
+  }
+
+  private static Node update(Node node) {
+    node.size = size(node.left) + size(node.right) + 1;
+    return node;
+  }
+
+  private static Node insert(Node node, Node inserted) {
+    if (node == null) {
+      return inserted;
+    }
+    if (inserted.priority > node.priority) {
+      Node[] parts = split(node, inserted.createdTime, inserted.id);
+      inserted.left = parts[0];
+      inserted.right = parts[1];
+      return update(inserted);
+    }
+    if (compare(inserted.createdTime, inserted.id, node) < 0) {
+      node.left = insert(node.left, inserted);
+    } else {
+      node.right = insert(node.right, inserted);
+    }
+    return update(node);
+  }
+
+  private static Node delete(Node node, LocalDateTime createdTime, int id) {
+    if (node == null) {
+      return null;
+    }
+    int order = compare(createdTime, id, node);
+    if (order == 0) {
+      return merge(node.left, node.right);
+    }
+    if (order < 0) {
+      node.left = delete(node.left, createdTime, id);
+    } else {
+      node.right = delete(node.right, createdTime, id);
+    }
+    return update(node);
+  }
+
+  /**
+   * Splits a subtree into the nodes sorting before a key and the nodes sorting after it.
+   */
+  private static Node[] split(Node node, LocalDateTime createdTime, int id) {
+    if (node == null) {
+      return new Node[2];
+    }
+    if (compare(createdTime, id, node) < 0) {
+      Node[] parts = split(node.left, createdTime, id);
+      node.left = parts[1];
+      parts[1] = update(node);
+      return parts;
+    }
+    Node[] parts = split(node.right, createdTime, id);
+    node.right = parts[0];
+    parts[0] = update(node);
+    return parts;
+  }
+
+  private static Node merge(Node left, Node right) {
+    if (left == null) {
+      return right;
+    }
+    if (right == null) {
+      return left;
+    }
+    if (left.priority > right.priority) {
+      left.right = merge(left.right, right);
+      return update(left);
+    }
+    right.left = merge(left, right.left);
+    return update(right);
+  }
+}
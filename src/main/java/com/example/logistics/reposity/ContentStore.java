@@ -0,0 +1,36 @@
+package com.example.logistics.reposity;
+
+import com.example.logistics.result.Content;
+
+/**
+ * Storage of the contents listed by the query endpoint, keyed by workflow ID.
+ *
+ * <p>The {@link ContentIndex} keeps the listing order and resolves each listed ID through its
+ * store, which is only called under the index's lock.
+ */
+public interface ContentStore {
+
+  /**
+   * Stores content, replacing any content with the same ID.
+   *
+   * @param content the content to be stored
+   * @return the replaced content, or null if there was none
+   */
+  Content put(Content content);
+
+  /**
+   * Removes content by ID.
+   *
+   * @param id the ID of the content
+   * @return the removed content, or null if there was none
+   */
+  Content remove(int id);
+
+  /**
+   * Gets content by ID.
+   *
+   * @param id the ID of the content
+   * @return the content, or null if there is none
+   */
+  Content get(int id);
+}
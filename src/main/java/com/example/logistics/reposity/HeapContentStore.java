@@ -0,0 +1,28 @@
+package com.example.logistics.reposity;
+
+import com.example.logistics.result.Content;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Default content store holding the contents on the heap.
+ */
+public class HeapContentStore implements ContentStore {
+
+  private final Map<Integer, Content> byId = new HashMap<>();
+
+  @Override
+  public Content put(Content content) {
+    return byId.put(content.getId(), content);
+  }
+
+  @Override
+  public Content remove(int id) {
+    return byId.remove(id);
+  }
+
+  @Override
+  public Content get(int id) {
+    return byId.get(id);
+  }
+}
@@ -0,0 +1,138 @@
+package com.example.logistics.reposity;
+
+import com.example.logistics.result.Transition;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Represents the transition history database.
+ *
+ * <p>Each workflow's accepted transitions are kept in a {@link TransitionLog}. State codes,
+ * events and roles repeat across millions of entries, so the logs store them as codes of one
+ * shared dictionary, and recording an entry allocates nothing once its strings are known.
+ */
+public class HistoryDatabase {
+
+  private static final int NONE = -1;
+
+  private static final IntRecordTable<TransitionLog> logs =
+      new IntRecordTable<>(TransitionLog::getWorkflowId);
+  private static final Map<String, Integer> codes = new ConcurrentHashMap<>();
+  private static volatile String[] names = new String[64];
+
+  /**
+   * Records a transition of a workflow. Must be called under the workflow's lock.
+   *
+   * @param workflowId the ID of the workflow
+   * @param time the epoch milliseconds of the transition
+   * @param fromState the state code before the transition
+   * @param toState the state code after the transition
+   * @param event the event that triggered the transition
+   * @param role the role that performed the action
+   */
+  public static void record(int workflowId, long time, String fromState, String toState,
+      String event, String role) {
+    TransitionLog log = logs.get(workflowId);
+    if (log == null) {
+      log = new TransitionLog(workflowId);
+      logs.put(log);
+    }
+    log.append(time, intern(fromState), intern(toState), intern(event), intern(role));
+  }
+
+  /**
+   * Streams the transitions of a workflow in a time range, oldest first.
+   *
+   * <p>The iterator decodes one entry per call and sees the transitions recorded before it was
+   * opened.
+   *
+   * @param workflowId the ID of the workflow
+   * @param from the earliest transition time, inclusive, or null for no lower bound
+   * @param to the latest transition time, inclusive, or null for no upper bound
+   * @return the transitions in the range
+   */
+  public static Iterator<Transition> query(int workflowId, LocalDateTime from, LocalDateTime to) {
+    TransitionLog log = logs.get(workflowId);
+    if (log == null) {
+      return Collections.emptyIterator();
+    }
+    TransitionLog.Cursor cursor = log.range(
+        from == null ? Long.MIN_VALUE : toMillis(from), to == null ? Long.MAX_VALUE : toMillis(to));
+    return new Iterator<Transition>() {
+      private boolean ready;
+      private boolean more;
+
+      @Override
+      public boolean hasNext() {
+        if (!ready) {
+          more = cursor.next();
+          ready = true;
+        }
+        return more;
+      }
+
+      @Override
+      public Transition next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        ready = false;
+        String[] dictionary = names;
+        return new Transition(name(dictionary, cursor.getFromState()),
+            name(dictionary, cursor.getToState()), name(dictionary, cursor.getEvent()),
+            name(dictionary, cursor.getRole()),
+            LocalDateTime.ofInstant(Instant.ofEpochMilli(cursor.getTime()),
+                ZoneId.systemDefault()));
+      }
+    };
+  }
+
+  /**
+   * Deletes the history of a workflow.
+   *
+   * @param workflowId the ID of the workflow
+   */
+  public static void delete(int workflowId) {
+    logs.remove(workflowId);
+  }
+
+  private static int intern(String value) {
+    if (value == null) {
+      return NONE;
+    }
+    Integer code = codes.get(value);
+    return code != null ? code : add(value);
+  }
+
+  private static synchronized int add(String value) {
+    Integer code = codes.get(value);
+    if (code != null) {
+      return code;
+    }
+    int next = codes.size();
+    String[] current = names;
+    if (next == current.length) {
+      current = Arrays.copyOf(current, next * 2);
+    }
+    current[next] = value;
+    // Publish the name before its code, so any code a reader finds resolves
+    names = current;
+    codes.put(value, next);
+    return next;
+  }
+
+  private static String name(String[] dictionary, int code) {
+    return code == NONE ? null : dictionary[code];
+  }
+
+  private static long toMillis(LocalDateTime time) {
+    return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+  }
+}
@@ -0,0 +1,148 @@
+package com.example.logistics.reposity;
+
+import com.example.logistics.model.WorkflowInstance;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * InstanceDatabase handles the storage of running workflow instances.
+ *
+ * <p>Instances live in an int-keyed {@link IntRecordTable}, so a lookup never boxes the instance
+ * ID. They are also indexed by the workflow they were started from, in one such table per
+ * workflow, so the instances of one workflow are found without visiting every instance.
+ * Instances of the same workflow must be added and deleted together under that workflow's lock;
+ * a single instance may be deleted under its own lock once it has finished.
+ */
+public class InstanceDatabase {
+
+  private static final IntRecordTable<WorkflowInstance> instances =
+      new IntRecordTable<>(WorkflowInstance::getId);
+  private static final IntRecordTable<WorkflowInstances> instancesByWorkflow =
+      new IntRecordTable<>(WorkflowInstances::getWorkflowId);
+
+  /**
+   * The instances started from one workflow.
+   */
+  private static final class WorkflowInstances {
+
+    final int workflowId;
+    final IntRecordTable<WorkflowInstance> instances =
+        new IntRecordTable<>(WorkflowInstance::getId);
+
+    WorkflowInstances(int workflowId) {
+      this.workflowId = workflowId;
+    }
+
+    int getWorkflowId() {
+      return workflowId;
+    }
+  }
+
+  /**
+   * Adds an instance.
+   *
+   * @param instance the instance to be added, carrying its ID
+   */
+  public static void addInstance(WorkflowInstance instance) {
+    instances.put(instance);
+    WorkflowInstances byWorkflow = instancesByWorkflow.get(instance.getWorkflowId());
+    if (byWorkflow == null) {
+      byWorkflow = new WorkflowInstances(instance.getWorkflowId());
+      instancesByWorkflow.put(byWorkflow);
+    }
+    byWorkflow.instances.put(instance);
+  }
+
+  /**
+   * Gets an instance by ID.
+   *
+   * @param instanceId the ID of the instance
+   * @return the instance associated with the given ID
+   */
+  public static WorkflowInstance getInstance(int instanceId) {
+    return instances.get(instanceId);
+  }
+
+  /**
+   * Gets all instances.
+   *
+   * @return a point-in-time copy of the instances, in no particular order
+   */
+  public static List<WorkflowInstance> getInstances() {
+    return instances.values();
+  }
+
+  /**
+   * Gets the number of instances.
+   *
+   * @return the number of instances
+   */
+  public static int size() {
+    return instances.size();
+  }
+
+  /**
+   * Gets the instances started from a workflow.
+   *
+   * @param workflowId the ID of the workflow
+   * @return a point-in-time copy of the instances
+   */
+  public static List<WorkflowInstance> getInstances(int workflowId) {
+    WorkflowInstances byWorkflow = instancesByWorkflow.get(workflowId);
+    return byWorkflow == null
+        ? Collections.<WorkflowInstance>emptyList() : byWorkflow.instances.values();
+  }
+
+  /**
+   * Gets the IDs of the instances started from a workflow.
+   *
+   * @param workflowId the ID of the workflow
+   * @return a point-in-time copy of the IDs
+   */
+  public static List<Integer> getInstanceIds(int workflowId) {
+    List<WorkflowInstance> byWorkflow = getInstances(workflowId);
+    List<Integer> ids = new ArrayList<>(byWorkflow.size());
+    for (WorkflowInstance instance : byWorkflow) {
+      ids.add(instance.getId());
+    }
+    return ids;
+  }
+
+  /**
+   * Deletes an instance by ID.
+   *
+   * @param instanceId the ID of the instance
+   * @return the deleted instance, or null if there was none
+   */
+  public static WorkflowInstance deleteInstance(int instanceId) {
+    WorkflowInstance removed = instances.remove(instanceId);
+    if (removed != null) {
+      WorkflowInstances byWorkflow = instancesByWorkflow.get(removed.getWorkflowId());
+      if (byWorkflow != null) {
+        byWorkflow.instances.remove(instanceId);
+      }
+    }
+    return removed;
+  }
+
+  /**
+   * Deletes every instance started from a workflow.
+   *
+   * @param workflowId the ID of the workflow
+   * @return the IDs of the instances deleted
+   */
+  public static List<Integer> deleteInstances(int workflowId) {
+    WorkflowInstances byWorkflow = instancesByWorkflow.remove(workflowId);
+    if (byWorkflow == null) {
+      return Collections.emptyList();
+    }
+    List<Integer> deleted = new ArrayList<>(byWorkflow.instances.size());
+    for (WorkflowInstance instance : byWorkflow.instances.values()) {
+      if (instances.remove(instance.getId()) != null) {
+        deleted.add(instance.getId());
+      }
+    }
+    return deleted;
+  }
+}
@@ -0,0 +1,174 @@
+package com.example.logistics.reposity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ToIntFunction;
+
+/**
+ * Concurrent open-addressing hash table of records keyed by a primitive int they carry.
+ *
+ * <p>Lookups are lock-free, never box the key and allocate nothing: they probe linearly from the
+ * key's hash and compare the key read from each record. Writers are serialized on the table.
+ * Removed slots become tombstones so probe chains stay intact, and the table is rebuilt without
+ * them when live entries plus tombstones pass half the capacity, so every chain ends in an empty
+ * slot.
+ *
+ * @param <R> the record type
+ */
+public class IntRecordTable<R> {
+
+  private static final Object TOMBSTONE = new Object();
+  private static final int MIN_CAPACITY = 16;
+
+  private final ToIntFunction<R> keyOf;
+  private volatile AtomicReferenceArray<Object> slots =
+      new AtomicReferenceArray<>(MIN_CAPACITY);
+  private volatile int size;
+  // Live entries plus tombstones; guarded by this
+  private int used;
+
+  /**
+   * Constructs an IntRecordTable.
+   *
+   * @param keyOf the function reading a record's key
+   */
+  public IntRecordTable(ToIntFunction<R> keyOf) {
+    this.keyOf = keyOf;
+  }
+
+  /**
+   * Gets the record with the given key.
+   *
+   * @param key the key
+   * @return the record, or null if there is none
+   */
+  @SuppressWarnings("unchecked")
+  public R get(int key) {
+    AtomicReferenceArray<Object> table = slots;
+    int mask = table.length() - 1;
+    for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+      Object slot = table.get(i);
+      if (slot == null) {
+        return null;
+      }
+      if (slot != TOMBSTONE && keyOf.applyAsInt((R) slot) == key) {
+        return (R) slot;
+      }
+    }
+  }
+
+  /**
+   * Adds a record, replacing any record with the same key.
+   *
+   * @param record the record to be added
+   * @return the replaced record, or null if there was none
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized R put(R record) {
+    int key = keyOf.applyAsInt(record);
+    if ((used + 1) * 2 > slots.length()) {
+      rebuild();
+    }
+    AtomicReferenceArray<Object> table = slots;
+    int mask = table.length() - 1;
+    int tombstone = -1;
+    int i = mix(key) & mask;
+    for (Object slot = table.get(i); slot != null; i = (i + 1) & mask, slot = table.get(i)) {
+      if (slot == TOMBSTONE) {
+        if (tombstone < 0) {
+          tombstone = i;
+        }
+      } else if (keyOf.applyAsInt((R) slot) == key) {
+        table.set(i, record);
+        return (R) slot;
+      }
+    }
+    if (tombstone >= 0) {
+      table.set(tombstone, record);
+    } else {
+      table.set(i, record);
+      used++;
+    }
+    size++;
+    return null;
+  }
+
+  /**
+   * Removes the record with the given key.
+   *
+   * @param key the key
+   * @return the removed record, or null if there was none
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized R remove(int key) {
+    AtomicReferenceArray<Object> table = slots;
+    int mask = table.length() - 1;
+    for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+      Object slot = table.get(i);
+      if (slot == null) {
+        return null;
+      }
+      if (slot != TOMBSTONE && keyOf.applyAsInt((R) slot) == key) {
+        table.set(i, TOMBSTONE);
+        size--;
+        return (R) slot;
+      }
+    }
+  }
+
+  /**
+   * Gets the number of records.
+   *
+   * @return the number of records
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Gets a point-in-time copy of the records, in no particular order.
+   *
+   * @return the records
+   */
+  @SuppressWarnings("unchecked")
+  public List<R> values() {
+    AtomicReferenceArray<Object> table = slots;
+    List<R> values = new ArrayList<>(size);
+    for (int i = 0; i < table.length(); i++) {
+      Object slot = table.get(i);
+      if (slot != null && slot != TOMBSTONE) {
+        values.add((R) slot);
+      }
+    }
+    return values;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void rebuild() {
+    int capacity = MIN_CAPACITY;
+    while (capacity < (size + 1) * 4) {
+      capacity <<= 1;
+    }
+    AtomicReferenceArray<Object> old = slots;
+    AtomicReferenceArray<Object> table = new AtomicReferenceArray<>(capacity);
+    int mask = capacity - 1;
+    for (int j = 0; j < old.length(); j++) {
+      Object slot = old.get(j);
+      if (slot != null && slot != TOMBSTONE) {
+        int i = mix(keyOf.applyAsInt((R) slot)) & mask;
+        while (table.get(i) != null) {
+          i = (i + 1) & mask;
+        }
+        table.set(i, slot);
+      }
+    }
+    used = size;
+    slots = table;
+  }
+
+  private static int mix(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
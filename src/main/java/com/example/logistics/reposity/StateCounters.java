@@ -0,0 +1,81 @@
+package com.example.logistics.reposity;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counts of workflows per application and current state.
+ *
+ * <p>Each (application, state) pair has its own {@link LongAdder}, so concurrent transitions
+ * update striped cells instead of contending on one counter, and reading the matrix sums the
+ * adders without blocking any writer. A read made while transitions are applied may see a
+ * workflow in both or neither of its states; every count settles once they finish.
+ */
+public class StateCounters {
+
+  private static final Map<Integer, Map<String, LongAdder>> counts = new ConcurrentHashMap<>();
+
+  /**
+   * Counts a workflow entering a state.
+   *
+   * @param appId the ID of the workflow's application
+   * @param state the state code
+   */
+  public static void increment(int appId, String state) {
+    adder(appId, state).increment();
+  }
+
+  /**
+   * Counts a workflow leaving a state.
+   *
+   * @param appId the ID of the workflow's application
+   * @param state the state code
+   */
+  public static void decrement(int appId, String state) {
+    adder(appId, state).decrement();
+  }
+
+  /**
+   * Counts a workflow moving from one state to another.
+   *
+   * @param appId the ID of the workflow's application
+   * @param fromState the state code it leaves
+   * @param toState the state code it enters
+   */
+  public static void move(int appId, String fromState, String toState) {
+    adder(appId, fromState).decrement();
+    adder(appId, toState).increment();
+  }
+
+  /**
+   * Sums the counts of every application, or of one.
+   *
+   * @param appId the application ID, or null for all applications
+   * @return the number of workflows in each state, by application ID and state code
+   */
+  public static Map<Integer, Map<String, Long>> snapshot(Integer appId) {
+    Map<Integer, Map<String, Long>> snapshot = new TreeMap<>();
+    if (appId != null) {
+      Map<String, LongAdder> states = counts.get(appId);
+      if (states != null) {
+        snapshot.put(appId, sum(states));
+      }
+      return snapshot;
+    }
+    counts.forEach((app, states) -> snapshot.put(app, sum(states)));
+    return snapshot;
+  }
+
+  private static LongAdder adder(int appId, String state) {
+    return counts.computeIfAbsent(appId, k -> new ConcurrentHashMap<>())
+        .computeIfAbsent(state, k -> new LongAdder());
+  }
+
+  private static Map<String, Long> sum(Map<String, LongAdder> states) {
+    Map<String, Long> sums = new TreeMap<>();
+    states.forEach((state, adder) -> sums.put(state, adder.sum()));
+    return sums;
+  }
+}
@@ -0,0 +1,201 @@
+package com.example.logistics.reposity;
+
+import java.util.Arrays;
+
+/**
+ * Append-only history of one workflow's transitions, stored column by column.
+ *
+ * <p>Entries live in chunks of parallel primitive arrays: times, from and to states, events and
+ * roles, with strings replaced by {@link HistoryDatabase} dictionary codes. Chunks start small
+ * and double up to {@value #MAX_CHUNK} entries, so a short history stays small and a long one
+ * never copies what it has already written.
+ *
+ * <p>There is one writer per workflow, serialized by the workflow's lock. The entry count is
+ * published last, so readers never lock and see a prefix of the history. Times never decrease,
+ * so a time range is found by binary search.
+ */
+public final class TransitionLog {
+
+  private static final int FIRST_CHUNK = 8;
+  private static final int MAX_CHUNK = 1024;
+
+  private final int workflowId;
+  private volatile Chunk[] chunks = new Chunk[0];
+  private volatile int size;
+  // Written by the single writer only
+  private long lastTime = Long.MIN_VALUE;
+
+  private static final class Chunk {
+
+    final int start;
+    final long[] times;
+    final int[] fromStates;
+    final int[] toStates;
+    final int[] events;
+    final int[] roles;
+
+    Chunk(int start, int capacity) {
+      this.start = start;
+      this.times = new long[capacity];
+      this.fromStates = new int[capacity];
+      this.toStates = new int[capacity];
+      this.events = new int[capacity];
+      this.roles = new int[capacity];
+    }
+  }
+
+  /**
+   * A position in the log, read one entry at a time without allocating.
+   */
+  public static final class Cursor {
+
+    private final int end;
+    private final long toTime;
+    private final Chunk[] snapshot;
+    private int chunk;
+    private int index;
+    private Chunk current;
+    private int offset;
+
+    Cursor(Chunk[] snapshot, int end, int first, long toTime) {
+      this.snapshot = snapshot;
+      this.end = end;
+      this.toTime = toTime;
+      this.index = first - 1;
+      this.chunk = chunkOf(snapshot, first);
+    }
+
+    /**
+     * Moves to the next entry in the range.
+     *
+     * @return true if there is one
+     */
+    public boolean next() {
+      if (index + 1 >= end) {
+        return false;
+      }
+      index++;
+      while (index - snapshot[chunk].start >= snapshot[chunk].times.length) {
+        chunk++;
+      }
+      current = snapshot[chunk];
+      offset = index - current.start;
+      if (current.times[offset] > toTime) {
+        index = end;
+        return false;
+      }
+      return true;
+    }
+
+    public long getTime() {
+      return current.times[offset];
+    }
+
+    public int getFromState() {
+      return current.fromStates[offset];
+    }
+
+    public int getToState() {
+      return current.toStates[offset];
+    }
+
+    public int getEvent() {
+      return current.events[offset];
+    }
+
+    public int getRole() {
+      return current.roles[offset];
+    }
+  }
+
+  /**
+   * Constructs an empty TransitionLog.
+   *
+   * @param workflowId the ID of the workflow
+   */
+  public TransitionLog(int workflowId) {
+    this.workflowId = workflowId;
+  }
+
+  public int getWorkflowId() {
+    return workflowId;
+  }
+
+  /**
+   * Gets the number of entries.
+   *
+   * @return the number of transitions recorded
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Appends an entry. Must only be called by the workflow's single writer.
+   *
+   * @param time the epoch milliseconds of the transition; raised to the previous entry's if lower
+   * @param fromState the dictionary code of the source state
+   * @param toState the dictionary code of the target state
+   * @param event the dictionary code of the event
+   * @param role the dictionary code of the role
+   */
+  public void append(long time, int fromState, int toState, int event, int role) {
+    int n = size;
+    Chunk[] current = chunks;
+    Chunk last = current.length == 0 ? null : current[current.length - 1];
+    if (last == null || n - last.start == last.times.length) {
+      int capacity = last == null ? FIRST_CHUNK : Math.min(last.times.length * 2, MAX_CHUNK);
+      last = new Chunk(n, capacity);
+      current = Arrays.copyOf(current, current.length + 1);
+      current[current.length - 1] = last;
+      chunks = current;
+    }
+    lastTime = Math.max(lastTime, time);
+    int offset = n - last.start;
+    last.times[offset] = lastTime;
+    last.fromStates[offset] = fromState;
+    last.toStates[offset] = toState;
+    last.events[offset] = event;
+    last.roles[offset] = role;
+    size = n + 1;
+  }
+
+  /**
+   * Opens a cursor over the entries in a time range.
+   *
+   * @param fromTime the earliest epoch milliseconds, inclusive
+   * @param toTime the latest epoch milliseconds, inclusive
+   * @return a cursor positioned before the first entry in the range
+   */
+  public Cursor range(long fromTime, long toTime) {
+    // Read the size first: the chunks it covers were published before it
+    int end = size;
+    Chunk[] snapshot = chunks;
+    int low = 0;
+    int high = end;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      Chunk chunk = snapshot[chunkOf(snapshot, mid)];
+      if (chunk.times[mid - chunk.start] < fromTime) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return new Cursor(snapshot, end, low, toTime);
+  }
+
+  private static int chunkOf(Chunk[] snapshot, int index) {
+    int low = 0;
+    int high = snapshot.length - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (snapshot[mid].start <= index) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+}
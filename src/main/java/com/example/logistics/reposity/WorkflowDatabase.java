@@ -1,146 +1,110 @@
 package com.example.logistics.reposity;
 
-import com.example.logistics.model.Workflow;
-import com.example.logistics.result.Content;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-import org.springframework.statemachine.StateMachine;
 
 /**
  * WorkflowDatabase handles the storage and management of workflows and state machines.
+ *
+ * <p>Each workflow is one {@link WorkflowRecord} in an int-keyed table, so an action finds its
+ * machine and authorization index with a single lookup. A name index serves duplicate checks and
+ * the content index serves paged queries; writers keep all three in step.
  */
 public class WorkflowDatabase {
-  private static final Map<String, StateMachine<?, ?>> stateMachines = new ConcurrentHashMap<>();
-  private static final List<Content> contents = new CopyOnWriteArrayList<>();
-  private static final Map<Integer, Integer> workflowIdMap = new ConcurrentHashMap<>();
-  private static final Map<String, Workflow> workflows = new ConcurrentHashMap<>();
-  private static final Map<Integer, Workflow> workflowsMap = new ConcurrentHashMap<>();
+  private static final IntRecordTable<WorkflowRecord> records =
+      new IntRecordTable<>(WorkflowRecord::getId);
+  private static final Map<String, WorkflowRecord> recordsByName = new ConcurrentHashMap<>();
+  private static volatile ContentIndex contents = new ContentIndex();
 
   /**
-   * Adds or updates a state machine.
+   * Adds or replaces the record of a workflow.
    *
-   * @param workflowId   the ID of the workflow
-   * @param stateMachine the state machine to be added or updated
+   * @param record the record to be added or replaced
+   * @return the replaced record, or null if the workflow is new
    */
-  public static void addOrUpdateStateMachine(String workflowId, StateMachine<?, ?> stateMachine) {
-    stateMachines.put(workflowId, stateMachine);
-  }
-
-  /**
-   * Gets a state machine by workflow ID.
-   *
-   * @param workflowId the ID of the workflow
-   * @return the state machine associated with the given workflow ID
-   */
-  public static StateMachine<?, ?> getStateMachine(String workflowId) {
-    return stateMachines.get(workflowId);
-  }
-
-  /**
-   * Deletes a state machine by workflow ID.
-   *
-   * @param workflowId the ID of the workflow
-   */
-  public static void deleteStateMachine(String workflowId) {
-    stateMachines.remove(workflowId);
-  }
-
-  /**
-   * Adds content.
-   *
-   * @param content the content to be added
-   */
-  public static void addContent(Content content) {
-    contents.add(content);
+  public static synchronized WorkflowRecord addOrUpdate(WorkflowRecord record) {
+    WorkflowRecord previous = records.put(record);
+    if (previous != null) {
+      recordsByName.remove(previous.getWorkflow().getName(), previous);
+    }
+    recordsByName.put(record.getWorkflow().getName(), record);
+    contents.add(record.newContent());
+    return previous;
   }
 
   /**
-   * Gets all contents.
+   * Gets the record of a workflow by ID.
    *
-   * @return the list of contents
+   * @param id the ID of the workflow
+   * @return the record, or null if the workflow does not exist
    */
-  public static List<Content> getContents() {
-    return contents;
+  public static WorkflowRecord get(int id) {
+    return records.get(id);
   }
 
   /**
-   * Deletes content by ID.
+   * Gets the record of a workflow by name.
    *
-   * @param id the ID of the content to be deleted
+   * @param name the name of the workflow
+   * @return the record, or null if no workflow has the name
    */
-  public static void deleteContent(int id) {
-    contents.removeIf(content -> content.getId() == id);
+  public static WorkflowRecord getByName(String name) {
+    return recordsByName.get(name);
   }
 
   /**
-   * Updates content.
+   * Deletes the record of a workflow.
    *
-   * @param content the content to be updated
+   * @param id the ID of the workflow
+   * @return the deleted record, or null if the workflow did not exist
    */
-  public static void updateContent(Content content) {
-    synchronized (contents) {
-      contents.removeIf(c -> c.getId() == content.getId());
-      contents.add(content);
+  public static synchronized WorkflowRecord delete(int id) {
+    WorkflowRecord previous = records.remove(id);
+    if (previous != null) {
+      recordsByName.remove(previous.getWorkflow().getName(), previous);
+      contents.remove(id);
     }
+    return previous;
   }
 
   /**
-   * Adds a mapping between workflow ID and app ID.
+   * Gets all workflow records.
    *
-   * @param workflowId the ID of the workflow
-   * @param appId      the ID of the app
+   * @return a point-in-time copy of the records
    */
-  public static void addWorkflowId(int workflowId, int appId) {
-    workflowIdMap.put(workflowId, appId);
+  public static List<WorkflowRecord> getRecords() {
+    return records.values();
   }
 
   /**
-   * Gets the app ID by workflow ID.
+   * Gets the number of workflows.
    *
-   * @param workflowId the ID of the workflow
-   * @return the app ID associated with the given workflow ID
+   * @return the number of workflows
    */
-  public static Integer getAppId(int workflowId) {
-    return workflowIdMap.get(workflowId);
+  public static int size() {
+    return records.size();
   }
 
   /**
-   * Deletes a mapping between workflow ID and app ID.
-   *
-   * @param workflowId the ID of the workflow
-   */
-  public static void deleteWorkflowId(int workflowId) {
-    workflowIdMap.remove(workflowId);
-  }
-
-  /**
-   * Adds or updates a workflow.
-   *
-   * @param workflow the workflow to be added or updated
-   */
-  public static void addOrUpdateWorkflow(Workflow workflow) {
-    workflows.put(workflow.getName(), workflow);
-  }
-
-  /**
-   * Gets a workflow by name.
+   * Gets all contents.
    *
-   * @param name the name of the workflow
-   * @return the workflow associated with the given name
+   * @return the content index, ordered by creation time descending
    */
-  public static Workflow getWorkflow(String name) {
-    return workflows.get(name);
+  public static ContentIndex getContents() {
+    return contents;
   }
 
   /**
-   * Deletes a workflow by name.
+   * Moves the listed contents to another store. Must be called before any workflow is added.
    *
-   * @param name the name of the workflow
+   * @param store the store holding the contents from now on
    */
-  public static void deleteWorkflow(String name) {
-    workflows.remove(name);
+  public static synchronized void useContentStore(ContentStore store) {
+    if (records.size() > 0) {
+      throw new IllegalStateException("Content store must be set before workflows are added");
+    }
+    contents = new ContentIndex(store);
   }
 
   /**
@@ -150,36 +114,7 @@ public class WorkflowDatabase {
    * @return true if the workflow is in progress, false otherwise
    */
   public static boolean isWorkflowInProgress(int id) {
-    StateMachine<?, ?> stateMachine = getStateMachine(String.valueOf(id));
-    return stateMachine != null 
-        && !stateMachine.getState().getId().equals(stateMachine.getInitialState().getId());
-  }
-
-  /**
-   * Adds or updates a workflow by ID.
-   *
-   * @param workflow the workflow to be added or updated
-   */
-  public static void addOrUpdateWorkflowById(Workflow workflow) {
-    workflowsMap.put(workflow.getId(), workflow);
-  }
-
-  /**
-   * Gets a workflow by ID.
-   *
-   * @param id the ID of the workflow
-   * @return the workflow associated with the given ID
-   */
-  public static Workflow getWorkflowById(int id) {
-    return workflowsMap.get(id);
-  }
-
-  /**
-   * Deletes a workflow by ID.
-   *
-   * @param id the ID of the workflow
-   */
-  public static void deleteWorkflowById(int id) {
-    workflowsMap.remove(id);
+    WorkflowRecord record = records.get(id);
+    return record != null && !record.getMachine().isInInitialState();
   }
 }
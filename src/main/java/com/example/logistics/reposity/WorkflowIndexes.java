@@ -0,0 +1,133 @@
+package com.example.logistics.reposity;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * Secondary indexes of workflow IDs by application, by current state and by the roles that may
+ * act on the workflow in its current state.
+ *
+ * <p>Each key maps to a compressed {@link RoaringBitmap} of workflow IDs. A transition removes the
+ * ID from one state's bitmap and adds it to another's, plus one change per actionable role, so
+ * the cost does not depend on how many workflows are indexed. Bitmaps are guarded by their own
+ * monitors, held only for a single add, remove or copy; a query copies the bitmaps it needs and
+ * intersects the copies.
+ */
+public class WorkflowIndexes {
+
+  private static final Map<Integer, RoaringBitmap> byApp = new ConcurrentHashMap<>();
+  private static final Map<String, RoaringBitmap> byState = new ConcurrentHashMap<>();
+  private static final Map<String, RoaringBitmap> byRole = new ConcurrentHashMap<>();
+
+  /**
+   * Indexes a workflow.
+   *
+   * @param id the ID of the workflow
+   * @param appId the ID of its application
+   * @param state its current state code
+   * @param roles the roles that may act on it in that state
+   */
+  public static void add(int id, int appId, String state, Collection<String> roles) {
+    add(byApp, appId, id);
+    add(byState, state, id);
+    for (String role : roles) {
+      add(byRole, role, id);
+    }
+  }
+
+  /**
+   * Removes a workflow from the indexes.
+   *
+   * @param id the ID of the workflow
+   * @param appId the ID of its application
+   * @param state its current state code
+   * @param roles the roles that may act on it in that state
+   */
+  public static void remove(int id, int appId, String state, Collection<String> roles) {
+    remove(byApp, appId, id);
+    remove(byState, state, id);
+    for (String role : roles) {
+      remove(byRole, role, id);
+    }
+  }
+
+  /**
+   * Moves a workflow to a new state.
+   *
+   * @param id the ID of the workflow
+   * @param fromState the state code it leaves
+   * @param fromRoles the roles that could act on it in that state
+   * @param toState the state code it enters
+   * @param toRoles the roles that may act on it in the new state
+   */
+  public static void move(int id, String fromState, Collection<String> fromRoles, String toState,
+      Collection<String> toRoles) {
+    remove(byState, fromState, id);
+    add(byState, toState, id);
+    for (String role : fromRoles) {
+      if (!toRoles.contains(role)) {
+        remove(byRole, role, id);
+      }
+    }
+    for (String role : toRoles) {
+      if (!fromRoles.contains(role)) {
+        add(byRole, role, id);
+      }
+    }
+  }
+
+  /**
+   * Finds the workflows matching every given criterion.
+   *
+   * @param appId the application ID, or null for any application
+   * @param state the current state code, or null for any state
+   * @param role a role that may act on the workflow, or null for any role
+   * @return a new bitmap of the matching workflow IDs; empty if no criterion is given
+   */
+  public static RoaringBitmap find(Integer appId, String state, String role) {
+    RoaringBitmap result = null;
+    if (appId != null) {
+      result = intersect(result, byApp.get(appId));
+    }
+    if (state != null) {
+      result = intersect(result, byState.get(state));
+    }
+    if (role != null) {
+      result = intersect(result, byRole.get(role));
+    }
+    return result == null ? new RoaringBitmap() : result;
+  }
+
+  private static <K> void add(Map<K, RoaringBitmap> index, K key, int id) {
+    RoaringBitmap ids = index.computeIfAbsent(key, k -> new RoaringBitmap());
+    synchronized (ids) {
+      ids.add(id);
+    }
+  }
+
+  private static <K> void remove(Map<K, RoaringBitmap> index, K key, int id) {
+    RoaringBitmap ids = index.get(key);
+    if (ids != null) {
+      synchronized (ids) {
+        ids.remove(id);
+      }
+    }
+  }
+
+  private static RoaringBitmap intersect(RoaringBitmap result, RoaringBitmap ids) {
+    if (ids == null) {
+      return new RoaringBitmap();
+    }
+    RoaringBitmap copy;
+    synchronized (ids) {
+      copy = ids.clone();
+    }
+    if (result == null) {
+      return copy;
+    }
+    result.and(copy);
+    return result;
+  }
+}
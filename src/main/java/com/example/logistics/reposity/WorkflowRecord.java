@@ -0,0 +1,141 @@
+package com.example.logistics.reposity;
+
+import com.example.logistics.fsm.engine.FsmDefinition;
+import com.example.logistics.fsm.engine.FsmMachine;
+import com.example.logistics.fsm.engine.OffHeapFsmMachine;
+import com.example.logistics.fsm.engine.OffHeapStateStore;
+import com.example.logistics.fsm.engine.TransitionTable;
+import com.example.logistics.model.AuthorizationIndex;
+import com.example.logistics.model.Workflow;
+import com.example.logistics.result.Content;
+import java.time.LocalDateTime;
+
+/**
+ * Everything stored for one workflow.
+ *
+ * <p>Records are immutable: an update publishes a new record, so a reader always sees a
+ * definition, authorization index and machine that belong together. Of the listed content only
+ * the creator and creation time are kept; the listing itself lives in the {@link ContentIndex}.
+ * A record whose machine state lives off-heap keeps a view of its slot as its machine.
+ *
+ * <p>The generation counts the updates of the workflow. Machine versions restart with each
+ * generation, so persisted states carry the generation they belong to.
+ */
+public final class WorkflowRecord {
+
+  private final Workflow workflow;
+  private final int appId;
+  private final int generation;
+  private final FsmDefinition definition;
+  private final AuthorizationIndex authorizationIndex;
+  private final FsmMachine machine;
+  private final String creator;
+  private final LocalDateTime createdTime;
+
+  /**
+   * Constructs a WorkflowRecord.
+   *
+   * @param workflow the workflow, carrying its ID
+   * @param appId the ID of the application the workflow belongs to
+   * @param generation the number of times the workflow has been updated
+   * @param definition the compiled definition
+   * @param authorizationIndex the compiled authorization index
+   * @param machine the workflow's state machine
+   * @param content the content listed by the query endpoint
+   */
+  public WorkflowRecord(Workflow workflow, int appId, int generation, FsmDefinition definition,
+      AuthorizationIndex authorizationIndex, FsmMachine machine, Content content) {
+    this.workflow = workflow;
+    this.appId = appId;
+    this.generation = generation;
+    this.definition = definition;
+    this.authorizationIndex = authorizationIndex;
+    this.machine = machine;
+    this.creator = content.getCreator();
+    this.createdTime = content.getCreatedTime();
+  }
+
+  /**
+   * Constructs a WorkflowRecord whose machine state lives in the workflow's off-heap slot.
+   *
+   * @param workflow the workflow, carrying its ID
+   * @param appId the ID of the application the workflow belongs to
+   * @param generation the number of times the workflow has been updated
+   * @param definition the compiled transition table
+   * @param authorizationIndex the compiled authorization index
+   * @param stateStore the store holding the workflow's slot
+   * @param content the content listed by the query endpoint
+   */
+  public WorkflowRecord(Workflow workflow, int appId, int generation, TransitionTable definition,
+      AuthorizationIndex authorizationIndex, OffHeapStateStore stateStore, Content content) {
+    this(workflow, appId, generation, definition, authorizationIndex,
+        new OffHeapFsmMachine(definition, stateStore, workflow.getId()), content);
+  }
+
+  public int getId() {
+    return workflow.getId();
+  }
+
+  public Workflow getWorkflow() {
+    return workflow;
+  }
+
+  public int getAppId() {
+    return appId;
+  }
+
+  public int getGeneration() {
+    return generation;
+  }
+
+  public FsmDefinition getDefinition() {
+    return definition;
+  }
+
+  public AuthorizationIndex getAuthorizationIndex() {
+    return authorizationIndex;
+  }
+
+  /**
+   * Gets the workflow's state machine.
+   *
+   * @return the machine, or the view of the off-heap slot holding its state
+   */
+  public FsmMachine getMachine() {
+    return machine;
+  }
+
+  public String getCreator() {
+    return creator;
+  }
+
+  public LocalDateTime getCreatedTime() {
+    return createdTime;
+  }
+
+  /**
+   * Copies this record with a machine of its own in the current state, so the copy keeps that
+   * state once a replacing record resets the shared off-heap slot.
+   *
+   * @return the copy, or this record if its machine is on the heap
+   */
+  public WorkflowRecord detach() {
+    if (!(machine instanceof OffHeapFsmMachine)) {
+      return this;
+    }
+    FsmMachine copy = ((TransitionTable) definition).newMachine();
+    copy.restore(machine.getState(), machine.getVersion());
+    return new WorkflowRecord(workflow, appId, generation, definition, authorizationIndex, copy,
+        newContent());
+  }
+
+  /**
+   * Builds the content listed by the query endpoint.
+   *
+   * @return a new content from the workflow's name and description
+   */
+  public Content newContent() {
+    return new Content(workflow.getId(), workflow.getName(), workflow.getDesc(), creator,
+        createdTime);
+  }
+}
@@ -1,5 +1,6 @@
 package com.example.logistics.result;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 
 /**
@@ -11,6 +12,10 @@ public class ApiResponse {
   private ReturnCode state;
   private SingleData data;
 
+  // Explains a rejection, such as the offending path of an invalid workflow; omitted when null
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private String detail;
+
   /**
    * Returns a string representation of the object.
    *
@@ -21,6 +26,7 @@ public class ApiResponse {
     return "ApiResponse{"
         + "state=" + state
         + ", data=" + data
+        + (detail == null ? "" : ", detail=" + detail)
         + '}';
   }
 }
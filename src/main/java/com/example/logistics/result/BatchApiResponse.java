@@ -0,0 +1,14 @@
+package com.example.logistics.result;
+
+import java.util.List;
+import lombok.Data;
+
+/**
+ * Represents the API response for a batch request, with one result per input item.
+ */
+@Data
+public class BatchApiResponse {
+
+  private ReturnCode state;
+  private List<ApiResponse> data;
+}
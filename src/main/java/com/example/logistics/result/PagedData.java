@@ -1,5 +1,7 @@
 package com.example.logistics.result;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.time.LocalDateTime;
 import java.util.List;
 import lombok.Data;
 
@@ -15,6 +17,13 @@ public class PagedData {
   private int total;
   private List<Content> content;
 
+  // Cursor of the last content on this page, for fetching the next page
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private LocalDateTime nextAfterCreatedTime;
+
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private Integer nextAfterId;
+
   /**
    * Constructs a PagedData instance with the specified parameters.
    *
@@ -30,5 +39,10 @@ public class PagedData {
     this.totalPage = totalPage;
     this.total = total;
     this.content = content;
+    if (!content.isEmpty()) {
+      Content last = content.get(content.size() - 1);
+      this.nextAfterCreatedTime = last.getCreatedTime();
+      this.nextAfterId = last.getId();
+    }
   }
 }
@@ -22,8 +22,11 @@ public enum ReturnCode {
   ILLEGAL_STATE_TRANSITION(50040, "非法的状态流转"),
   INVALID_INPUT_PARAMETER(50050, "输入参数错误"),
   SYSTEM_ERROR(50502, "系统异常，请稍后重试"),
+  SYSTEM_BUSY(50503, "系统繁忙，请稍后重试"),
+  NOT_DURABLE(50504, "操作已生效，但未能持久化"),
   INVALID_WORKFLOW_NAME(50060, "工作流名称无效"),
-  DUPLICATE_WORKFLOW_NAME(50061, "工作流名称重复");
+  DUPLICATE_WORKFLOW_NAME(50061, "工作流名称重复"),
+  BATCH_ABORTED(50062, "批量操作因其他项失败而中止");
 
   private final int code;
   private final String message;
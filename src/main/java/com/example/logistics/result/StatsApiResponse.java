@@ -0,0 +1,14 @@
+package com.example.logistics.result;
+
+import java.util.Map;
+import lombok.Data;
+
+/**
+ * Represents the API response for workflow counts, by application ID and state code.
+ */
+@Data
+public class StatsApiResponse {
+
+  private ReturnCode state;
+  private Map<Integer, Map<String, Long>> data;
+}
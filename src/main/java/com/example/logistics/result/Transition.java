@@ -0,0 +1,38 @@
+package com.example.logistics.result;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import java.time.LocalDateTime;
+import lombok.Data;
+
+/**
+ * Represents one accepted transition in a workflow's history.
+ */
+@Data
+public class Transition {
+
+  private String fromState;
+  private String toState;
+  private String event;
+  private String role;
+
+  @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss.SSS")
+  private LocalDateTime time;
+
+  /**
+   * Constructs a new Transition instance with the specified parameters.
+   *
+   * @param fromState the state code before the transition
+   * @param toState the state code after the transition
+   * @param event the event that triggered the transition
+   * @param role the role that performed the action
+   * @param time the time of the transition
+   */
+  public Transition(String fromState, String toState, String event, String role,
+      LocalDateTime time) {
+    this.fromState = fromState;
+    this.toState = toState;
+    this.event = event;
+    this.role = role;
+    this.time = time;
+  }
+}
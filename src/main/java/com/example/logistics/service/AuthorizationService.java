@@ -1,13 +1,17 @@
 package com.example.logistics.service;
 
-import com.example.logistics.model.Action;
 import com.example.logistics.model.Application;
 import com.example.logistics.model.Auth;
+import com.example.logistics.model.AuthorizationIndex;
 import com.example.logistics.model.Event;
 import com.example.logistics.model.Role;
+import com.example.logistics.model.TransitionPermissions;
 import com.example.logistics.model.Workflow;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import org.springframework.stereotype.Service;
 
 /**
@@ -17,59 +21,91 @@ import org.springframework.stereotype.Service;
 public class AuthorizationService {
 
   /**
-   * Authorizes an action based on the application, workflow, action, and role.
+   * Compiles the transition permissions of an application.
+   *
+   * <p>Any role's authorizations count towards the application's permitted transitions; per
+   * role, the first role with a name wins.
    *
    * @param app the application
-   * @param workflow the workflow
-   * @param action the action to authorize
-   * @param role the role to authorize
-   * @return true if the action is authorized, false otherwise
+   * @return the compiled transition permissions
    */
-  public boolean authorize(Application app, Workflow workflow, String action, String role) {
-
-    if (action.equals(role)) {
-      return true;
-    }
-
-    List<Auth> roleAuths = null;
-
-    // Find the authorization list for the role
+  public TransitionPermissions compile(Application app) {
+    Map<String, Integer> stateIds = new HashMap<>();
+    Set<Long> transitions = new HashSet<>();
+    Map<String, Set<Long>> transitionsByRole = new HashMap<>();
     for (Role appRole : app.getRoles()) {
-      if (appRole.getRole().equals(role)) {
-        roleAuths = appRole.getAuth();
-        break; // Exit loop after finding the role
+      Set<Long> roleTransitions = transitionsByRole.containsKey(appRole.getRole())
+          ? null : new HashSet<>();
+      for (Auth auth : appRole.getAuth()) {
+        long key = TransitionPermissions.key(intern(stateIds, auth.getFromState()),
+            intern(stateIds, auth.getToState()));
+        transitions.add(key);
+        if (roleTransitions != null) {
+          roleTransitions.add(key);
+        }
+      }
+      if (roleTransitions != null) {
+        transitionsByRole.put(appRole.getRole(), roleTransitions);
       }
     }
 
-    // Return false if the role is not found
-    if (roleAuths == null) {
-      return false;
-    }
+    Map<String, long[]> sortedByRole = new HashMap<>();
+    transitionsByRole.forEach((role, keys) -> sortedByRole.put(role, sorted(keys)));
+    return new TransitionPermissions(stateIds, sorted(transitions), sortedByRole);
+  }
 
-    // Find events that match the action and role
-    List<Event> matchingEvents = new ArrayList<>();
+  /**
+   * Compiles the authorization decisions of a workflow.
+   *
+   * <p>A role may trigger an event if the event is assigned to the role and the role's
+   * authorizations in the application permit the event's state transition. The same decisions,
+   * grouped by source state, give the roles that may act on a workflow in each state.
+   *
+   * @param permissions the compiled transition permissions of the workflow's application
+   * @param workflow the workflow
+   * @return the compiled authorization index
+   */
+  public AuthorizationIndex compile(TransitionPermissions permissions, Workflow workflow) {
+    // Keep the events whose transition is permitted for their role
+    Map<String, Set<String>> allowedEventsByRole = new HashMap<>();
+    Map<String, Set<String>> actionableRolesByState = new HashMap<>();
     for (Event event : workflow.getEvents()) {
-      if (event.getName().equals(action) && event.getRole().equals(role)) {
-        matchingEvents.add(event);
+      if (permissions.isPermitted(event.getRole(), event.getFromState(), event.getToState())) {
+        allowedEventsByRole.computeIfAbsent(event.getRole(), k -> new HashSet<>())
+            .add(event.getName());
+        actionableRolesByState.computeIfAbsent(event.getFromState(), k -> new HashSet<>())
+            .add(event.getRole());
       }
     }
+    return new AuthorizationIndex(allowedEventsByRole, actionableRolesByState);
+  }
 
-    // Return false if no matching events are found
-    if (matchingEvents.isEmpty()) {
-      return false;
+  /**
+   * Authorizes an action based on the compiled authorization index, action, and role.
+   *
+   * @param index the compiled authorization index of the workflow
+   * @param action the action to authorize
+   * @param role the role to authorize
+   * @return true if the action is authorized, false otherwise
+   */
+  public boolean authorize(AuthorizationIndex index, String action, String role) {
+    if (action.equals(role)) {
+      return true;
     }
+    return index.isAllowed(role, action);
+  }
 
-    // Check if any event matches the role's authorizations
-    for (Event event : matchingEvents) {
-      for (Auth auth : roleAuths) {
-        if (event.getFromState().equals(auth.getFromState())
-            && event.getToState().equals(auth.getToState())) {
-          return true;
-        }
-      }
+  private static int intern(Map<String, Integer> stateIds, String state) {
+    return stateIds.computeIfAbsent(state, k -> stateIds.size());
+  }
+
+  private static long[] sorted(Set<Long> keys) {
+    long[] array = new long[keys.size()];
+    int i = 0;
+    for (long key : keys) {
+      array[i++] = key;
     }
-    
-    // Return false if no matching authorizations are found
-    return false;
+    Arrays.sort(array);
+    return array;
   }
 }
@@ -0,0 +1,152 @@
+package com.example.logistics.service;
+
+import com.example.logistics.model.Action;
+import com.example.logistics.result.ApiResponse;
+import com.example.logistics.result.BatchApiResponse;
+import com.example.logistics.result.ReturnCode;
+import com.example.logistics.result.SingleData;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Service for executing batches of workflow actions.
+ *
+ * <p>Actions are grouped by workflow ID, and the groups are shared out among at most one task per
+ * worker. A task applies each group's actions in submission order without waiting for the
+ * journal, so the records of a whole batch reach the journal together and are forced to disk in
+ * the same group commit. When the executor cannot take a task, because its queue is full or the
+ * service is shutting down, that task's actions fail with {@link ReturnCode#SYSTEM_BUSY}.
+ */
+@Service
+public class BatchActionService {
+
+  private final WorkflowService workflowService;
+  private final ThreadPoolExecutor executor;
+
+  /**
+   * Constructs a BatchActionService.
+   *
+   * @param workflowService the workflow service executing single actions
+   * @param threads the number of worker threads
+   * @param queueCapacity the number of tasks that may wait for a worker
+   */
+  @Autowired
+  public BatchActionService(WorkflowService workflowService,
+      @Value("${logistics.batch.threads:0}") int threads,
+      @Value("${logistics.batch.queue-capacity:1024}") int queueCapacity) {
+    this.workflowService = workflowService;
+    int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    AtomicInteger threadId = new AtomicInteger(1);
+    this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+          Thread thread = new Thread(runnable, "batch-action-" + threadId.getAndIncrement());
+          thread.setDaemon(true);
+          return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  /**
+   * Performs a batch of actions.
+   *
+   * @param actions the actions to perform
+   * @return the batch response, with results in the same order as the actions
+   */
+  public BatchApiResponse workflowActions(List<Action> actions) {
+    return workflowActionsAsync(actions).join();
+  }
+
+  /**
+   * Performs a batch of actions without waiting for the journal.
+   *
+   * @param actions the actions to perform
+   * @return a future completed with the batch response, with results in the same order as the
+   *     actions, once every transition is durable
+   */
+  public CompletableFuture<BatchApiResponse> workflowActionsAsync(List<Action> actions) {
+    @SuppressWarnings("unchecked")
+    CompletableFuture<ApiResponse>[] results = new CompletableFuture[actions.size()];
+
+    // Group action indexes by workflow ID, keeping submission order within each group
+    Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+    for (int i = 0; i < actions.size(); i++) {
+      groups.computeIfAbsent(actions.get(i).getId(), k -> new ArrayList<>()).add(i);
+    }
+
+    // Applying a group is quick, so a handful of tasks each take many groups
+    List<List<Integer>> tasks = new ArrayList<>();
+    int taskCount = Math.min(groups.size(), executor.getMaximumPoolSize());
+    for (int i = 0; i < taskCount; i++) {
+      tasks.add(new ArrayList<>());
+    }
+    int next = 0;
+    for (List<Integer> group : groups.values()) {
+      tasks.get(next++ % taskCount).addAll(group);
+    }
+
+    List<CompletableFuture<Void>> applied = new ArrayList<>(taskCount);
+    for (List<Integer> task : tasks) {
+      try {
+        applied.add(CompletableFuture.runAsync(() -> {
+          for (int index : task) {
+            results[index] = perform(actions.get(index));
+          }
+        }, executor));
+      } catch (RejectedExecutionException e) {
+        for (int index : task) {
+          results[index] = CompletableFuture.completedFuture(
+              response(ReturnCode.SYSTEM_BUSY, actions.get(index)));
+        }
+      }
+    }
+
+    return CompletableFuture.allOf(applied.toArray(new CompletableFuture<?>[0]))
+        .thenCompose(v -> CompletableFuture.allOf(results))
+        .thenApply(v -> {
+          List<ApiResponse> data = new ArrayList<>(results.length);
+          for (CompletableFuture<ApiResponse> result : results) {
+            data.add(result.join());
+          }
+          BatchApiResponse batchApiResponse = new BatchApiResponse();
+          batchApiResponse.setState(ReturnCode.SUCCESS);
+          batchApiResponse.setData(data);
+          return batchApiResponse;
+        });
+  }
+
+  private CompletableFuture<ApiResponse> perform(Action action) {
+    try {
+      return workflowService.workflowActionAsync(
+              action.getId(), action.getAction(), action.getRole())
+          .exceptionally(e -> response(ReturnCode.SYSTEM_ERROR, action));
+    } catch (RuntimeException e) {
+      return CompletableFuture.completedFuture(response(ReturnCode.SYSTEM_ERROR, action));
+    }
+  }
+
+  private static ApiResponse response(ReturnCode code, Action action) {
+    ApiResponse apiResponse = new ApiResponse();
+    apiResponse.setState(code);
+    apiResponse.setData(new SingleData(action.getId()));
+    return apiResponse;
+  }
+
+  /**
+   * Stops the worker threads.
+   */
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+  }
+}
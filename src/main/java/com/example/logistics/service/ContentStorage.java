@@ -0,0 +1,52 @@
+package com.example.logistics.service;
+
+import com.example.logistics.reposity.ContentCatalog;
+import com.example.logistics.reposity.WorkflowDatabase;
+import java.io.IOException;
+import java.nio.file.Paths;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Chooses where the contents listed by the query endpoint are stored.
+ *
+ * <p>When the catalog is enabled, contents are moved from the heap into a memory-mapped
+ * {@link ContentCatalog} before the journal is replayed.
+ */
+@Component
+public class ContentStorage {
+
+  private final ContentCatalog catalog;
+
+  /**
+   * Constructs a ContentStorage, opening the catalog when enabled.
+   *
+   * @param enabled whether contents are kept in the catalog
+   * @param dir the catalog directory
+   * @param initialSize the initial size of the catalog mapping in bytes
+   * @throws IOException if the catalog cannot be created
+   */
+  @Autowired
+  public ContentStorage(@Value("${logistics.catalog.enabled:false}") boolean enabled,
+      @Value("${logistics.catalog.dir:data/catalog}") String dir,
+      @Value("${logistics.catalog.initial-size:16777216}") int initialSize) throws IOException {
+    this.catalog = enabled ? ContentCatalog.open(Paths.get(dir), initialSize) : null;
+    if (catalog != null) {
+      WorkflowDatabase.useContentStore(catalog);
+    }
+  }
+
+  /**
+   * Closes the catalog.
+   *
+   * @throws IOException if the catalog cannot be closed
+   */
+  @PreDestroy
+  public void close() throws IOException {
+    if (catalog != null) {
+      catalog.close();
+    }
+  }
+}
@@ -0,0 +1,220 @@
+package com.example.logistics.service;
+
+import com.example.logistics.fsm.engine.FsmDefinition;
+import com.example.logistics.fsm.engine.FsmMachine;
+import com.example.logistics.fsm.engine.ResidentFsmMachine;
+import com.example.logistics.metrics.WorkflowMetrics;
+import com.example.logistics.model.WorkflowInstance;
+import com.example.logistics.reposity.InstanceDatabase;
+import com.example.logistics.reposity.WorkflowDatabase;
+import com.example.logistics.reposity.WorkflowRecord;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps only recently used workflow and instance state machines in memory.
+ *
+ * <p>When enabled, every on-heap workflow and instance machine is wrapped in a
+ * {@link ResidentFsmMachine}. A parked machine is rebuilt from its definition on its next action.
+ * A periodic sweep parks finished machines and machines idle for longer than the TTL.
+ *
+ * <p>The number of resident machines is bounded by a CLOCK, an approximate LRU. Every machine
+ * that becomes resident, when it is started or rebuilt, joins a queue and counts against the
+ * bound. Once the count exceeds it, the hand goes round the queue on the sweep thread: it gives
+ * a machine used since the hand last passed a second chance, and parks the first one that was
+ * not. The hand runs apart from the action that crossed the bound, so that action never waits
+ * on another machine's monitor. Until it has caught up, the bound is exceeded by the machines
+ * started or rebuilt meanwhile. The machine of a deleted workflow or of a reclaimed instance is
+ * kept reachable by the queue until the hand passes it.
+ *
+ * <p>Compiled machines are a single word over a shared transition table, so parking pays off
+ * mainly with the Spring engine.
+ */
+@Component
+public class MachineResidency {
+
+  private static final Logger log = LoggerFactory.getLogger(MachineResidency.class);
+
+  private final WorkflowMetrics metrics;
+  private final boolean enabled;
+  private final int maxResident;
+  private final long ttlNanos;
+  private final ScheduledExecutorService sweeper;
+  private final Queue<Entry> clock = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger queued = new AtomicInteger();
+  private final AtomicInteger resident = new AtomicInteger();
+  private final AtomicBoolean evicting = new AtomicBoolean();
+
+  /**
+   * A machine's place on the clock.
+   */
+  private static final class Entry {
+
+    ResidentFsmMachine machine;
+    // Whether the entry is on the clock. The hand clears it before checking residency, so a
+    // machine rebuilt meanwhile is either kept on by the hand or queues itself again
+    final AtomicBoolean onClock = new AtomicBoolean();
+    // The last access the hand saw; a later one earns a second chance. Read only by the hand
+    long seenAccess;
+  }
+
+  /**
+   * Constructs a MachineResidency and starts its sweep when enabled.
+   *
+   * @param metrics the metrics recording parked and rehydrated machines
+   * @param enabled whether workflow and instance machines are parked
+   * @param maxResident the maximum number of resident machines
+   * @param ttlSeconds the idle time after which a machine is parked; 0 disables the TTL
+   * @param sweepIntervalSeconds the delay between sweeps
+   */
+  @Autowired
+  public MachineResidency(WorkflowMetrics metrics,
+      @Value("${logistics.residency.enabled:false}") boolean enabled,
+      @Value("${logistics.residency.max-resident:100000}") int maxResident,
+      @Value("${logistics.residency.ttl-seconds:600}") long ttlSeconds,
+      @Value("${logistics.residency.sweep-interval-seconds:10}") long sweepIntervalSeconds) {
+    this.metrics = metrics;
+    this.enabled = enabled;
+    this.maxResident = maxResident;
+    this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "machine-residency");
+      thread.setDaemon(true);
+      return thread;
+    });
+    if (enabled) {
+      sweeper.scheduleWithFixedDelay(() -> {
+        try {
+          sweep();
+        } catch (RuntimeException e) {
+          log.warn("Residency sweep failed", e);
+        }
+      }, sweepIntervalSeconds, sweepIntervalSeconds, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Makes a workflow or instance machine parkable.
+   *
+   * @param definition the definition the machine was started from
+   * @param machine the started machine
+   * @return the wrapped machine, or the machine itself if disabled
+   */
+  public FsmMachine wrap(FsmDefinition definition, FsmMachine machine) {
+    if (!enabled) {
+      return machine;
+    }
+    Entry entry = new Entry();
+    entry.machine = new ResidentFsmMachine(definition, machine, () -> {
+      metrics.recordRehydrate();
+      admit(entry);
+    });
+    admit(entry);
+    return entry.machine;
+  }
+
+  /**
+   * Parks finished and idle workflow and instance machines, then any resident beyond the bound.
+   *
+   * @return the number of machines parked
+   */
+  public int sweep() {
+    long now = System.nanoTime();
+    int parked = 0;
+    for (WorkflowRecord record : WorkflowDatabase.getRecords()) {
+      if (parkIfIdle(record.getMachine(), now)) {
+        parked++;
+      }
+    }
+    for (WorkflowInstance instance : InstanceDatabase.getInstances()) {
+      if (parkIfIdle(instance.getMachine(), now)) {
+        parked++;
+      }
+    }
+    metrics.recordPark(parked);
+    return parked + evict();
+  }
+
+  private boolean parkIfIdle(FsmMachine fsmMachine, long now) {
+    if (!(fsmMachine instanceof ResidentFsmMachine)) {
+      return false;
+    }
+    ResidentFsmMachine machine = (ResidentFsmMachine) fsmMachine;
+    if (machine.isResident() && (machine.isFinished()
+        || (ttlNanos > 0 && now - machine.getLastAccess() > ttlNanos)) && machine.park()) {
+      resident.decrementAndGet();
+      return true;
+    }
+    return false;
+  }
+
+  private void admit(Entry entry) {
+    if (entry.onClock.compareAndSet(false, true)) {
+      queued.incrementAndGet();
+      clock.add(entry);
+    }
+    if (resident.incrementAndGet() > maxResident && evicting.compareAndSet(false, true)) {
+      try {
+        sweeper.execute(this::evict);
+      } catch (RejectedExecutionException e) {
+        // Only after close
+        evicting.set(false);
+      }
+    }
+  }
+
+  private int evict() {
+    // Cleared first, so an admission crossing the bound meanwhile schedules another pass
+    evicting.set(false);
+    int parked = 0;
+    // Two rounds clear every second chance, so the hand always finds a machine to park
+    int steps = 2 * queued.get();
+    while (resident.get() > maxResident && steps-- > 0) {
+      Entry entry = clock.poll();
+      if (entry == null) {
+        break;
+      }
+      queued.decrementAndGet();
+      entry.onClock.set(false);
+      ResidentFsmMachine machine = entry.machine;
+      if (!machine.isResident()) {
+        // Parked by the sweep; it queues itself again when rebuilt
+        continue;
+      }
+      long access = machine.getLastAccess();
+      if (access != entry.seenAccess) {
+        entry.seenAccess = access;
+        if (entry.onClock.compareAndSet(false, true)) {
+          queued.incrementAndGet();
+          clock.add(entry);
+        }
+      } else if (machine.park()) {
+        resident.decrementAndGet();
+        parked++;
+      }
+    }
+    metrics.recordPark(parked);
+    metrics.setResidentMachines(resident.get());
+    return parked;
+  }
+
+  /**
+   * Stops the sweep.
+   */
+  @PreDestroy
+  public void close() {
+    sweeper.shutdownNow();
+  }
+}
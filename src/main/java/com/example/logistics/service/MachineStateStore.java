@@ -0,0 +1,106 @@
+package com.example.logistics.service;
+
+import com.example.logistics.fsm.engine.FsmDefinition;
+import com.example.logistics.fsm.engine.FsmMachine;
+import com.example.logistics.fsm.engine.OffHeapFsmMachine;
+import com.example.logistics.fsm.engine.OffHeapStateStore;
+import com.example.logistics.fsm.engine.TransitionTable;
+import com.example.logistics.metrics.WorkflowMetrics;
+import com.example.logistics.reposity.WorkflowRecord;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Chooses where workflow and instance machine state is held.
+ *
+ * <p>When off-heap storage is enabled, workflows of the compiled engine keep their state in an
+ * {@link OffHeapStateStore} slot indexed by workflow ID, and their records keep only a view of
+ * the slot. Their instances keep theirs in a second store indexed by instance ID, since the two
+ * kinds of ID overlap. Machines of other engines stay on the heap. The native memory both stores
+ * hold is published as a gauge, refreshed as slots are reset.
+ */
+@Component
+public class MachineStateStore {
+
+  private final WorkflowMetrics metrics;
+  private final boolean offHeap;
+  private final OffHeapStateStore store;
+  private final OffHeapStateStore instanceStore;
+
+  /**
+   * Constructs a MachineStateStore.
+   *
+   * @param metrics the metrics publishing the off-heap memory
+   * @param offHeap whether compiled machines keep their state off-heap
+   */
+  @Autowired
+  public MachineStateStore(WorkflowMetrics metrics,
+      @Value("${logistics.state-store.off-heap:false}") boolean offHeap) {
+    this.metrics = metrics;
+    this.offHeap = offHeap;
+    this.store = offHeap ? new OffHeapStateStore() : null;
+    this.instanceStore = offHeap ? new OffHeapStateStore() : null;
+  }
+
+  /**
+   * Gets the store holding the state of workflows compiled to a definition.
+   *
+   * @param definition the compiled definition
+   * @return the off-heap store, or null if the workflows' machines stay on the heap
+   */
+  public OffHeapStateStore storeFor(FsmDefinition definition) {
+    return offHeap && definition instanceof TransitionTable ? store : null;
+  }
+
+  /**
+   * Positions the off-heap slot of a record's workflow in the initial state of its definition.
+   * Must be called only once listeners no longer need the state of a record it replaces.
+   *
+   * @param record the added or replacing record; one whose machine is on the heap is left alone
+   */
+  public void reset(WorkflowRecord record) {
+    FsmMachine machine = record.getMachine();
+    if (machine instanceof OffHeapFsmMachine) {
+      ((OffHeapFsmMachine) machine).reset();
+      // A new workflow's slot may be the first of its chunk
+      publishAllocatedBytes();
+    }
+  }
+
+  /**
+   * Starts the machine of a new instance in the off-heap slot of its ID, unless it stays on the
+   * heap.
+   *
+   * @param definition the compiled definition of the instance's workflow
+   * @param instanceId the ID of the instance
+   * @return a view of the slot positioned in the initial state, or null if the instance's machine
+   *     stays on the heap
+   */
+  public FsmMachine newInstanceMachine(FsmDefinition definition, int instanceId) {
+    if (storeFor(definition) == null) {
+      return null;
+    }
+    OffHeapFsmMachine machine =
+        new OffHeapFsmMachine((TransitionTable) definition, instanceStore, instanceId);
+    machine.reset();
+    publishAllocatedBytes();
+    return machine;
+  }
+
+  private void publishAllocatedBytes() {
+    metrics.setOffHeapBytes(store.allocatedBytes() + instanceStore.allocatedBytes());
+  }
+
+  /**
+   * Releases the off-heap state.
+   */
+  @PreDestroy
+  public void close() {
+    if (store != null) {
+      store.close();
+      instanceStore.close();
+    }
+  }
+}
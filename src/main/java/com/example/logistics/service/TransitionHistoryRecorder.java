@@ -0,0 +1,30 @@
+package com.example.logistics.service;
+
+import com.example.logistics.reposity.HistoryDatabase;
+import com.example.logistics.reposity.WorkflowRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Records every accepted workflow transition in the {@link HistoryDatabase}.
+ *
+ * <p>Recording is an append to the workflow's log under the lock the action already holds. A
+ * workflow's history is dropped with the workflow.
+ */
+@Component
+@ConditionalOnProperty(name = "logistics.history.enabled", havingValue = "true",
+    matchIfMissing = true)
+public class TransitionHistoryRecorder implements WorkflowListener {
+
+  @Override
+  public void workflowDeleted(WorkflowRecord record) {
+    HistoryDatabase.delete(record.getId());
+  }
+
+  @Override
+  public void workflowTransitioned(WorkflowRecord record, String fromState, String toState,
+      String event, String role) {
+    HistoryDatabase.record(
+        record.getId(), System.currentTimeMillis(), fromState, toState, event, role);
+  }
+}
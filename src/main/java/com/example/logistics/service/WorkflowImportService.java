@@ -0,0 +1,298 @@
+package com.example.logistics.service;
+
+import com.example.logistics.fsm.engine.FsmDefinition;
+import com.example.logistics.fsm.engine.FsmEngine;
+import com.example.logistics.fsm.engine.FsmMachine;
+import com.example.logistics.metrics.WorkflowMetrics;
+import com.example.logistics.model.AuthorizationIndex;
+import com.example.logistics.model.Workflow;
+import com.example.logistics.reposity.ApplicationDatabase;
+import com.example.logistics.reposity.ApplicationRecord;
+import com.example.logistics.reposity.WorkflowDatabase;
+import com.example.logistics.result.ApiResponse;
+import com.example.logistics.result.BatchApiResponse;
+import com.example.logistics.result.ReturnCode;
+import com.example.logistics.result.SingleData;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Service for importing workflows in bulk.
+ *
+ * <p>An import runs in three phases. Each application referenced by the batch is looked up once,
+ * and its record, with the compiled transition permissions, is shared by the batch. The
+ * workflows are then validated, compiled and given their state machines in parallel on a
+ * fork/join pool, since none of these steps reads shared state. Finally name uniqueness is
+ * checked and the valid workflows are added in input order; their journal records are appended
+ * together, so a synchronous journal forces them in a few group commits.
+ *
+ * <p>An import requiring all workflows to be valid adds nothing unless every workflow passes
+ * validation, and then journals the whole batch as one record: if the record fails nothing is
+ * added, and replay restores either all of the batch or none of it. Such a batch must fit in one
+ * journal segment. Otherwise the valid workflows are added one by one, each journaled as its own
+ * record, and every item reports its own result.
+ */
+@Service
+public class WorkflowImportService {
+
+  private static final Logger log = LoggerFactory.getLogger(WorkflowImportService.class);
+
+  // Workflows validated by one fork/join task without splitting further
+  private static final int SPLIT_THRESHOLD = 16;
+
+  private final WorkflowService workflowService;
+  private final AuthorizationService authorizationService;
+  private final FsmEngine fsmEngine;
+  private final WorkflowMetrics metrics;
+  private final ObjectMapper objectMapper;
+  private final ForkJoinPool pool;
+
+  /**
+   * Constructs a WorkflowImportService.
+   *
+   * @param workflowService the workflow service adding validated workflows
+   * @param authorizationService the authorization service
+   * @param fsmEngine the engine compiling workflows
+   * @param metrics the metrics recording import latency
+   * @param objectMapper the mapper reading streamed workflows
+   * @param parallelism the number of validation threads; 0 uses one per available processor
+   */
+  @Autowired
+  public WorkflowImportService(WorkflowService workflowService,
+      AuthorizationService authorizationService, FsmEngine fsmEngine, WorkflowMetrics metrics,
+      ObjectMapper objectMapper, @Value("${logistics.import.parallelism:0}") int parallelism) {
+    this.workflowService = workflowService;
+    this.authorizationService = authorizationService;
+    this.fsmEngine = fsmEngine;
+    this.metrics = metrics;
+    this.objectMapper = objectMapper;
+    this.pool = new ForkJoinPool(
+        parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Imports workflows read from a stream.
+   *
+   * <p>The stream holds either a JSON array of workflows or one workflow per line. Workflows are
+   * bound one at a time, without building a tree of the whole document.
+   *
+   * @param json the workflows as JSON
+   * @param requireAllValid whether to add all workflows as one journal record, or none unless
+   *     all of them are valid
+   * @return the batch response, with results in the same order as the workflows
+   * @throws IOException if the stream cannot be read or is not valid JSON
+   */
+  public BatchApiResponse importWorkflows(InputStream json, boolean requireAllValid)
+      throws IOException {
+    List<Workflow> workflows = new ArrayList<>();
+    try (MappingIterator<Workflow> iterator =
+        objectMapper.readerFor(Workflow.class).readValues(json)) {
+      while (iterator.hasNext()) {
+        workflows.add(iterator.next());
+      }
+    }
+    return importWorkflows(workflows, requireAllValid);
+  }
+
+  /**
+   * Imports workflows.
+   *
+   * @param workflows the workflows to import
+   * @param requireAllValid whether to add all workflows as one journal record, or none unless
+   *     all of them are valid
+   * @return the batch response, with results in the same order as the workflows
+   */
+  public BatchApiResponse importWorkflows(List<Workflow> workflows, boolean requireAllValid) {
+    long start = System.nanoTime();
+    try {
+      return doImportWorkflows(workflows, requireAllValid);
+    } finally {
+      metrics.recordImport(System.nanoTime() - start);
+    }
+  }
+
+  private BatchApiResponse doImportWorkflows(List<Workflow> workflows, boolean requireAllValid) {
+    Batch batch = new Batch(workflows);
+    pool.invoke(new ValidationTask(batch, 0, workflows.size()));
+
+    // Check names against the registry and the rest of the batch
+    boolean valid = true;
+    Set<String> names = new HashSet<>();
+    for (int i = 0; i < workflows.size(); i++) {
+      if (batch.results[i] == ReturnCode.SUCCESS) {
+        String name = workflows.get(i).getName();
+        if (WorkflowDatabase.getByName(name) != null || !names.add(name)) {
+          batch.results[i] = ReturnCode.DUPLICATE_WORKFLOW_NAME;
+        }
+      }
+      valid &= batch.results[i] == ReturnCode.SUCCESS;
+    }
+
+    BatchApiResponse batchApiResponse = new BatchApiResponse();
+    List<ApiResponse> data = new ArrayList<>(workflows.size());
+    if (requireAllValid && !valid) {
+      for (int i = 0; i < workflows.size(); i++) {
+        ReturnCode result = batch.results[i];
+        data.add(itemResponse(result == ReturnCode.SUCCESS ? ReturnCode.BATCH_ABORTED : result,
+            null, batch.details[i]));
+      }
+      batchApiResponse.setState(ReturnCode.INVALID_INPUT_PARAMETER);
+      batchApiResponse.setData(data);
+      return batchApiResponse;
+    }
+
+    if (requireAllValid) {
+      ReturnCode result = workflows.isEmpty() ? ReturnCode.SUCCESS
+          : workflowService.addWorkflows(workflows, Arrays.asList(batch.definitions),
+              Arrays.asList(batch.authorizationIndexes), Arrays.asList(batch.machines)).join();
+      for (int i = 0; i < workflows.size(); i++) {
+        data.add(itemResponse(result, result == ReturnCode.SUCCESS
+            ? workflows.get(i).getId() : null, batch.details[i]));
+      }
+      batchApiResponse.setState(result);
+      batchApiResponse.setData(data);
+      return batchApiResponse;
+    }
+
+    List<CompletableFuture<ReturnCode>> added = new ArrayList<>(workflows.size());
+    for (int i = 0; i < workflows.size(); i++) {
+      added.add(batch.results[i] == ReturnCode.SUCCESS
+          ? workflowService.addWorkflow(
+              workflows.get(i), batch.definitions[i], batch.authorizationIndexes[i],
+              batch.machines[i])
+          : CompletableFuture.completedFuture(batch.results[i]));
+    }
+    for (int i = 0; i < workflows.size(); i++) {
+      ReturnCode result = added.get(i).join();
+      // A workflow whose record failed was never added, so its consumed ID names nothing
+      data.add(itemResponse(result, result == ReturnCode.SUCCESS
+          ? workflows.get(i).getId() : null, batch.details[i]));
+    }
+    batchApiResponse.setState(ReturnCode.SUCCESS);
+    batchApiResponse.setData(data);
+    return batchApiResponse;
+  }
+
+  private static ApiResponse itemResponse(ReturnCode result, Integer id, String detail) {
+    ApiResponse apiResponse = new ApiResponse();
+    apiResponse.setState(result);
+    apiResponse.setData(new SingleData(id));
+    apiResponse.setDetail(detail);
+    return apiResponse;
+  }
+
+  /**
+   * Stops the validation threads.
+   */
+  @PreDestroy
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  /**
+   * The workflows of one import and the per-item outcome of validating them.
+   */
+  private final class Batch {
+
+    final List<Workflow> workflows;
+    final Map<Integer, ApplicationRecord> applications = new HashMap<>();
+    final ReturnCode[] results;
+    final String[] details;
+    final FsmDefinition[] definitions;
+    final AuthorizationIndex[] authorizationIndexes;
+    final FsmMachine[] machines;
+
+    Batch(List<Workflow> workflows) {
+      this.workflows = workflows;
+      this.results = new ReturnCode[workflows.size()];
+      this.details = new String[workflows.size()];
+      this.definitions = new FsmDefinition[workflows.size()];
+      this.authorizationIndexes = new AuthorizationIndex[workflows.size()];
+      this.machines = new FsmMachine[workflows.size()];
+      for (Workflow workflow : workflows) {
+        if (workflow != null && !applications.containsKey(workflow.getAppId())) {
+          applications.put(workflow.getAppId(), ApplicationDatabase.get(workflow.getAppId()));
+        }
+      }
+    }
+
+    void validate(int index) {
+      Workflow workflow = workflows.get(index);
+      if (workflow == null) {
+        results[index] = ReturnCode.INVALID_INPUT_PARAMETER;
+        return;
+      }
+      ApplicationRecord application = applications.get(workflow.getAppId());
+      if (application == null) {
+        results[index] = ReturnCode.APP_ID_NOT_EXIST;
+        return;
+      }
+      try {
+        ApiResponse validation = workflowService.validateWorkflow(workflow, application);
+        if (validation.getState() == ReturnCode.SUCCESS) {
+          definitions[index] = fsmEngine.compile(workflow);
+          authorizationIndexes[index] = authorizationService.compile(
+              application.getPermissions(), workflow);
+          machines[index] = workflowService.newMachine(definitions[index]);
+        }
+        results[index] = validation.getState();
+        details[index] = validation.getDetail();
+      } catch (IllegalArgumentException e) {
+        // The engine rejects a definition it cannot compile, such as a cycle of automatic events
+        results[index] = ReturnCode.INVALID_INPUT_PARAMETER;
+        details[index] = e.getMessage();
+      } catch (Exception e) {
+        log.warn("Failed to import workflow {}", workflow.getName(), e);
+        results[index] = ReturnCode.SYSTEM_ERROR;
+      }
+    }
+  }
+
+  /**
+   * Validates a range of a batch, splitting it in halves until it is small.
+   */
+  private static final class ValidationTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Batch batch;
+    private final int from;
+    private final int to;
+
+    ValidationTask(Batch batch, int from, int to) {
+      this.batch = batch;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= SPLIT_THRESHOLD) {
+        for (int i = from; i < to; i++) {
+          batch.validate(i);
+        }
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      invokeAll(new ValidationTask(batch, from, middle), new ValidationTask(batch, middle, to));
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package com.example.logistics.service;
+
+import com.example.logistics.model.AuthorizationIndex;
+import com.example.logistics.reposity.WorkflowIndexes;
+import com.example.logistics.reposity.WorkflowRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the {@link WorkflowIndexes} in step with workflow changes.
+ *
+ * <p>The roles that may act in each state are precompiled in the workflow's
+ * {@link AuthorizationIndex}, so no update scans the workflow's events.
+ */
+@Component
+@ConditionalOnProperty(name = "logistics.index.enabled", havingValue = "true",
+    matchIfMissing = true)
+public class WorkflowIndexer implements WorkflowListener {
+
+  @Override
+  public void workflowAdded(WorkflowRecord record) {
+    String state = record.getMachine().getState();
+    WorkflowIndexes.add(record.getId(), record.getAppId(), state,
+        record.getAuthorizationIndex().getActionableRoles(state));
+  }
+
+  @Override
+  public void workflowUpdated(WorkflowRecord previous, WorkflowRecord record) {
+    workflowDeleted(previous);
+    workflowAdded(record);
+  }
+
+  @Override
+  public void workflowDeleted(WorkflowRecord record) {
+    String state = record.getMachine().getState();
+    WorkflowIndexes.remove(record.getId(), record.getAppId(), state,
+        record.getAuthorizationIndex().getActionableRoles(state));
+  }
+
+  @Override
+  public void workflowRestored(WorkflowRecord record, String fromState) {
+    move(record, fromState, record.getMachine().getState());
+  }
+
+  @Override
+  public void workflowTransitioned(WorkflowRecord record, String fromState, String toState,
+      String event, String role) {
+    move(record, fromState, toState);
+  }
+
+  private static void move(WorkflowRecord record, String fromState, String toState) {
+    AuthorizationIndex authorizationIndex = record.getAuthorizationIndex();
+    WorkflowIndexes.move(record.getId(), fromState,
+        authorizationIndex.getActionableRoles(fromState), toState,
+        authorizationIndex.getActionableRoles(toState));
+  }
+}
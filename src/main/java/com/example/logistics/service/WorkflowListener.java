@@ -0,0 +1,112 @@
+package com.example.logistics.service;
+
+import com.example.logistics.model.WorkflowInstance;
+import com.example.logistics.reposity.WorkflowRecord;
+
+/**
+ * Receives workflow lifecycle events from the {@link WorkflowService}.
+ *
+ * <p>Every {@code WorkflowListener} bean is called synchronously, after the change is applied in
+ * memory and, for updates, deletes, transitions and started instances, while the workflow's lock
+ * is held; for an instance's transitions, the instance's lock. Listeners sit on the action path,
+ * so they must be fast and must not throw.
+ */
+public interface WorkflowListener {
+
+  /**
+   * Called when a workflow is created or restored.
+   *
+   * @param record the new record
+   */
+  default void workflowAdded(WorkflowRecord record) {
+  }
+
+  /**
+   * Called when a workflow definition is replaced.
+   *
+   * @param previous the replaced record
+   * @param record the new record
+   */
+  default void workflowUpdated(WorkflowRecord previous, WorkflowRecord record) {
+  }
+
+  /**
+   * Called when a workflow is deleted.
+   *
+   * @param record the deleted record
+   */
+  default void workflowDeleted(WorkflowRecord record) {
+  }
+
+  /**
+   * Called when journal replay moves a workflow to its recorded state.
+   *
+   * @param record the workflow's record
+   * @param fromState the state code before the restore
+   */
+  default void workflowRestored(WorkflowRecord record, String fromState) {
+  }
+
+  /**
+   * Called for each transition an action moves a workflow through: the action's own, then each
+   * automatic one in order.
+   *
+   * @param record the workflow's record
+   * @param fromState the state code before the transition
+   * @param toState the state code after the transition
+   * @param event the event that triggered the transition
+   * @param role the role that performed the action
+   */
+  default void workflowTransitioned(WorkflowRecord record, String fromState, String toState,
+      String event, String role) {
+  }
+
+  /**
+   * Called when a workflow instance is started or restored.
+   *
+   * @param record the record of the workflow the instance was started from
+   * @param instanceId the ID of the instance
+   * @param instance the new instance
+   */
+  default void instanceAdded(WorkflowRecord record, int instanceId, WorkflowInstance instance) {
+  }
+
+  /**
+   * Called when journal replay moves a workflow instance to its recorded state.
+   *
+   * @param record the record of the workflow the instance was started from
+   * @param instanceId the ID of the instance
+   * @param instance the instance
+   */
+  default void instanceRestored(WorkflowRecord record, int instanceId,
+      WorkflowInstance instance) {
+  }
+
+  /**
+   * Called for each instance dropped because it reached the end state or because its workflow
+   * was updated or deleted.
+   *
+   * @param record the record of the workflow the instance was started from, before the change
+   * @param instanceId the ID of the instance
+   */
+  default void instanceDeleted(WorkflowRecord record, int instanceId) {
+  }
+
+  /**
+   * Called for each transition an action moves a workflow instance through, in the same order as
+   * {@link #workflowTransitioned}.
+   *
+   * <p>The transition history, the content index and the state counters track workflows only and
+   * ignore instances, so they do not implement the instance callbacks.
+   *
+   * @param record the record of the workflow the instance was started from
+   * @param instanceId the ID of the instance
+   * @param fromState the state code before the transition
+   * @param toState the state code after the transition
+   * @param event the event that triggered the transition
+   * @param role the role that performed the action
+   */
+  default void instanceTransitioned(WorkflowRecord record, int instanceId, String fromState,
+      String toState, String event, String role) {
+  }
+}
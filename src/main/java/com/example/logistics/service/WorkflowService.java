@@ -1,52 +1,109 @@
 package com.example.logistics.service;
 
-import com.example.logistics.fsm.config.DynamicStateMachineConfig;
+import com.example.logistics.fsm.engine.FsmDefinition;
+import com.example.logistics.fsm.engine.FsmEngine;
+import com.example.logistics.fsm.engine.FsmMachine;
+import com.example.logistics.fsm.engine.TransitionTable;
+import com.example.logistics.fsm.graph.GraphAnalysis;
+import com.example.logistics.journal.JournalService;
+import com.example.logistics.journal.TransitionHop;
+import com.example.logistics.journal.WorkflowRestorer;
+import com.example.logistics.metrics.WorkflowMetrics;
 import com.example.logistics.model.Application;
 import com.example.logistics.model.Auth;
+import com.example.logistics.model.AuthorizationIndex;
 import com.example.logistics.model.Event;
 import com.example.logistics.model.Role;
 import com.example.logistics.model.State;
+import com.example.logistics.model.TransitionPermissions;
 import com.example.logistics.model.Workflow;
+import com.example.logistics.model.WorkflowFilter;
+import com.example.logistics.model.WorkflowInstance;
 import com.example.logistics.reposity.ApplicationDatabase;
+import com.example.logistics.reposity.ApplicationRecord;
+import com.example.logistics.reposity.ContentIndex;
+import com.example.logistics.reposity.HistoryDatabase;
+import com.example.logistics.reposity.InstanceDatabase;
+import com.example.logistics.reposity.StateCounters;
 import com.example.logistics.reposity.WorkflowDatabase;
+import com.example.logistics.reposity.WorkflowIndexes;
+import com.example.logistics.reposity.WorkflowRecord;
 import com.example.logistics.result.ApiResponse;
 import com.example.logistics.result.Content;
 import com.example.logistics.result.PagedApiResponse;
 import com.example.logistics.result.PagedData;
 import com.example.logistics.result.ReturnCode;
 import com.example.logistics.result.SingleData;
+import com.example.logistics.result.StatsApiResponse;
+import com.example.logistics.result.Transition;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.statemachine.StateMachine;
 import org.springframework.stereotype.Service;
 
 
 /**
  * Service for managing workflows.
+ *
+ * <p>Actions, updates and deletes of one workflow or instance hold its {@link WorkflowLocks}
+ * stripe, so an action and its automatic transitions are applied and published together and a
+ * definition is never swapped under a running action. Updates and deletes also hold the stripes
+ * of the workflow's instances, so no instance moves between their progress check and the removal
+ * of the instances. Unrelated workflows, and instances of the same workflow, proceed in parallel.
  */
 @Service
-public class WorkflowService {
+public class WorkflowService implements WorkflowRestorer {
 
   @Autowired
-  private DynamicStateMachineConfig dynamicStateMachineConfig;
+  private FsmEngine fsmEngine;
 
   @Autowired
   private AuthorizationService authorizationService;
 
+  @Autowired
+  private JournalService journalService;
+
+  @Autowired
+  private WorkflowMetrics metrics;
+
+  @Autowired
+  private WorkflowLocks locks;
+
+  @Autowired
+  private MachineStateStore stateStore;
+
+  @Autowired
+  private MachineResidency residency;
+
+  @Autowired(required = false)
+  private List<WorkflowListener> listeners = Collections.emptyList();
+
   // Atomic integer for recording workflow IDs
   private static final AtomicInteger workflowId = new AtomicInteger(1);
 
   // Atomic integer for application IDs
   private static final AtomicInteger applicationId = new AtomicInteger(1);
 
+  // Atomic integer for workflow instance IDs
+  private static final AtomicInteger instanceId = new AtomicInteger(1);
+
+  // Instance IDs start at 1, so 0 marks a transition of the workflow itself
+  private static final int NO_INSTANCE = 0;
+
   /**
    * Creates a new application.
    *
@@ -101,14 +158,24 @@ public class WorkflowService {
         statePairs.put(fromState, toState);
       }
     }
-    int id=workflowId.getAndIncrement();
-    if (ApplicationDatabase.applications.get(
+    if (ApplicationDatabase.get(
         String.valueOf(app.getName().hashCode() & 0x7FFFFFFF)) != null) {
       apiResponse.setState(ReturnCode.DUPLICATE_WORKFLOW_NAME);
       apiResponse.setData(new SingleData(app.getName().hashCode()));
     } else {
-      ApplicationDatabase.applications.put(
-          String.valueOf(app.getName().hashCode() & 0x7FFFFFFF), app);
+      String key = String.valueOf(app.getName().hashCode() & 0x7FFFFFFF);
+      ApplicationRecord record = new ApplicationRecord(app, authorizationService.compile(app));
+      long stamp = journalService.beginChange();
+      try {
+        journalService.appCreated(key, app);
+        ApplicationDatabase.addOrUpdate(key, record);
+      } catch (IOException e) {
+        apiResponse.setState(ReturnCode.SYSTEM_ERROR);
+        apiResponse.setData(new SingleData(app.getName().hashCode() & 0x7FFFFFFF));
+        return apiResponse;
+      } finally {
+        journalService.endChange(stamp);
+      }
       apiResponse.setState(ReturnCode.SUCCESS);
       apiResponse.setData(new SingleData(app.getName().hashCode() & 0x7FFFFFFF));
     }
@@ -123,121 +190,238 @@ public class WorkflowService {
    * @throws Exception if an error occurs during creation
    */
   public ApiResponse createWorkflow(Workflow workflow) throws Exception {
-    Set<String> stateCodes = new HashSet<>();
+    long start = System.nanoTime();
+    try {
+      return doCreateWorkflow(workflow);
+    } finally {
+      metrics.recordCreate(System.nanoTime() - start);
+    }
+  }
+
+  private ApiResponse doCreateWorkflow(Workflow workflow) throws Exception {
     ApiResponse apiResponse = new ApiResponse();
+    apiResponse.setData(new SingleData(null));
 
-    for (State state : workflow.getStates()) {
-      stateCodes.add(state.getCode());
+    ApplicationRecord application = ApplicationDatabase.get(workflow.getAppId());
+    if (application == null) {
+      apiResponse.setState(ReturnCode.APP_ID_NOT_EXIST);
+      return apiResponse;
     }
 
-    // Check if workflow name is empty
-    if (workflow.getName() == null || workflow.getName().trim().isEmpty()) {
-      apiResponse.setState(ReturnCode.INVALID_WORKFLOW_NAME);
-      apiResponse.setData(new SingleData(null));
-      return apiResponse;
+    ApiResponse validation = validateWorkflow(workflow, application);
+    if (validation.getState() != ReturnCode.SUCCESS) {
+      return validation;
     }
 
-    // Check if workflow name is duplicate
-    if (WorkflowDatabase.getWorkflow(workflow.getName()) != null) {
+    // Check if workflow name is duplicate; validation has already rejected an empty name
+    if (WorkflowDatabase.getByName(workflow.getName()) != null) {
       apiResponse.setState(ReturnCode.DUPLICATE_WORKFLOW_NAME);
-      apiResponse.setData(new SingleData(null));
       return apiResponse;
     }
 
-    // Check if fromState and toState exist in state list
-    for (Event event : workflow.getEvents()) {
-      if (!stateCodes.contains(event.getFromState()) 
-          || !stateCodes.contains(event.getToState())) {
-        apiResponse.setState(ReturnCode.ILLEGAL_STATE_TRANSITION);
-        apiResponse.setData(new SingleData(null));
-        return apiResponse;
-      }
-    }
-
-    Application application = ApplicationDatabase.applications.get(
-        String.valueOf(workflow.getAppId()));
-    List<Auth> auths = new ArrayList<>();
-
-    for (Role role : application.getRoles()) {
-      for (Auth auth : role.getAuth()) {
-        if (stateCodes.contains(auth.getFromState()) && stateCodes.contains(auth.getToState())) {
-          auths.add(auth);
-        }
-      }
+    FsmDefinition definition = fsmEngine.compile(workflow);
+    ReturnCode result = addWorkflow(workflow, definition,
+        authorizationService.compile(application.getPermissions(), workflow),
+        newMachine(definition)).join();
+    apiResponse.setState(result);
+    // A workflow whose record failed was never added, so its consumed ID names nothing
+    if (result == ReturnCode.SUCCESS) {
+      apiResponse.setData(new SingleData(workflow.getId()));
     }
+    return apiResponse;
+  }
 
-    Set<Auth> authSet = new HashSet<>(auths);
-
-    // Check if each event exists in app
-    for (Event event : workflow.getEvents()) {
-      String fromState = event.getFromState();
-      String toState = event.getToState();
-      if (!authSet.contains(new Auth(fromState, toState))) {
-        apiResponse.setState(ReturnCode.ILLEGAL_STATE_TRANSITION);
-        apiResponse.setData(new SingleData(null));
-        return apiResponse;
-      }
+  /**
+   * Validates a workflow against its application.
+   *
+   * <p>Checks everything except name uniqueness, and reads no shared state, so workflows of a
+   * bulk import can be validated in parallel. A workflow whose transitions form a cycle, leave a
+   * state unreachable from the begin state, or lead to a state that cannot reach the end state is
+   * rejected with the offending path as the response detail.
+   *
+   * @param workflow the workflow to validate
+   * @param application the record of the workflow's application
+   * @return the API response, {@link ReturnCode#SUCCESS} if the workflow is valid
+   */
+  public ApiResponse validateWorkflow(Workflow workflow, ApplicationRecord application) {
+    ApiResponse apiResponse = new ApiResponse();
+    apiResponse.setData(new SingleData(null));
+    apiResponse.setState(checkWorkflow(workflow, application.getPermissions()));
+    if (apiResponse.getState() != ReturnCode.SUCCESS) {
+      return apiResponse;
     }
 
-    if (hasCycle(workflow)) {
+    Application app = application.getApplication();
+    GraphAnalysis graph = GraphAnalysis.analyze(
+        workflow.getEvents(), app.getBeginState(), app.getEndState());
+    if (!graph.getCycle().isEmpty()) {
       apiResponse.setState(ReturnCode.ILLEGAL_STATE_TRANSITION);
-      apiResponse.setData(new SingleData(null));
-      return apiResponse;
+    } else if (!graph.isValid()) {
+      apiResponse.setState(ReturnCode.STATE_TRANSITION_INVALID);
     }
-    StateMachine<String, String> stateMachine = dynamicStateMachineConfig
-        .buildStateMachine(workflow);
-    stateMachine.start();
-    int id = workflowId.getAndIncrement();
-    workflow.setId(id);
-    WorkflowDatabase.addOrUpdateStateMachine(Integer.toString(id), stateMachine);
-    WorkflowDatabase.addWorkflowId(id, workflow.getAppId());
-    WorkflowDatabase.addContent(
-        new Content(id, workflow.getName(), workflow.getDesc(), "张三", LocalDateTime.now()));
-    WorkflowDatabase.addOrUpdateWorkflow(workflow);
-    WorkflowDatabase.addOrUpdateWorkflowById(workflow);
-    apiResponse.setState(ReturnCode.SUCCESS);
-    apiResponse.setData(new SingleData(id));
+    apiResponse.setDetail(graph.describe());
     return apiResponse;
   }
 
-  private boolean hasCycle(Workflow workflow) {
-    // Build graph
-    Map<String, List<String>> graph = new HashMap<>();
-    for (Event event : workflow.getEvents()) {
-      graph.computeIfAbsent(event.getFromState(), k -> new ArrayList<>()).add(event.getToState());
+  private static ReturnCode checkWorkflow(Workflow workflow, TransitionPermissions permissions) {
+    // Check if workflow name is empty
+    if (workflow.getName() == null || workflow.getName().trim().isEmpty()) {
+      return ReturnCode.INVALID_WORKFLOW_NAME;
     }
 
-    // Check for cycles using DFS
-    Set<String> visited = new HashSet<>();
-    Set<String> stack = new HashSet<>();
-    for (String state : graph.keySet()) {
-      if (hasCycleDfs(state, graph, visited, stack)) {
-        return true;
+    // Check that states and events are given
+    if (workflow.getStates() == null || workflow.getEvents() == null
+        || workflow.getStates().contains(null) || workflow.getEvents().contains(null)) {
+      return ReturnCode.INVALID_INPUT_PARAMETER;
+    }
+
+    Set<String> stateCodes = new HashSet<>();
+    for (State state : workflow.getStates()) {
+      stateCodes.add(state.getCode());
+    }
+
+    for (Event event : workflow.getEvents()) {
+      // Check if fromState and toState exist in state list
+      if (!stateCodes.contains(event.getFromState())
+          || !stateCodes.contains(event.getToState())) {
+        return ReturnCode.ILLEGAL_STATE_TRANSITION;
+      }
+      // Check if the transition is permitted by the app
+      if (!permissions.isPermitted(event.getFromState(), event.getToState())) {
+        return ReturnCode.ILLEGAL_STATE_TRANSITION;
+      }
+      // Check if a timer event has a positive timeout
+      if (event.getTimeoutSeconds() != null && event.getTimeoutSeconds() <= 0) {
+        return ReturnCode.INVALID_INPUT_PARAMETER;
       }
     }
-    return false;
+
+    return ReturnCode.SUCCESS;
   }
 
-  private boolean hasCycleDfs(
-      String state, Map<String, List<String>> graph, Set<String> visited, Set<String> stack) {
-    if (stack.contains(state)) {
-      return true; // Found cycle
+  /**
+   * Journals a validated, compiled workflow under a new ID and adds it once it is durable.
+   *
+   * <p>A workflow whose record cannot be made durable is never added, so no transition of it can
+   * reach the journal ahead of its creation. With a synchronous journal the workflow is added on
+   * the journal's writer thread when its group commit completes.
+   *
+   * @param workflow the workflow to add; its ID is assigned here
+   * @param definition the compiled definition of the workflow
+   * @param authorizationIndex the compiled authorization index of the workflow
+   * @param machine the workflow's state machine from {@link #newMachine}
+   * @return a future completed with the result once the workflow is durable and added
+   */
+  public CompletableFuture<ReturnCode> addWorkflow(Workflow workflow, FsmDefinition definition,
+      AuthorizationIndex authorizationIndex, FsmMachine machine) {
+    workflow.setId(workflowId.getAndIncrement());
+    LocalDateTime createdTime = LocalDateTime.now();
+    WorkflowRecord record = newRecord(workflow, 0, definition, authorizationIndex, machine,
+        newContent(workflow, createdTime));
+    return addWhenDurable(
+        () -> journalService.workflowCreatedAsync(workflow, createdTime), () -> add(record));
+  }
+
+  /**
+   * Journals validated, compiled workflows under new IDs as one record, and adds all of them once
+   * it is durable.
+   *
+   * <p>Either every workflow is added or, if the record fails, none is; replay likewise restores
+   * the whole batch or nothing of it.
+   *
+   * @param workflows the workflows to add; their IDs are assigned here
+   * @param definitions the compiled definitions of the workflows, in the same order
+   * @param authorizationIndexes the compiled authorization indexes of the workflows
+   * @param machines the workflows' state machines from {@link #newMachine}
+   * @return a future completed with the result once the workflows are durable and added
+   */
+  public CompletableFuture<ReturnCode> addWorkflows(List<Workflow> workflows,
+      List<FsmDefinition> definitions, List<AuthorizationIndex> authorizationIndexes,
+      List<FsmMachine> machines) {
+    LocalDateTime createdTime = LocalDateTime.now();
+    List<WorkflowRecord> records = new ArrayList<>(workflows.size());
+    for (int i = 0; i < workflows.size(); i++) {
+      Workflow workflow = workflows.get(i);
+      workflow.setId(workflowId.getAndIncrement());
+      records.add(newRecord(workflow, 0, definitions.get(i), authorizationIndexes.get(i),
+          machines.get(i), newContent(workflow, createdTime)));
     }
-    if (visited.contains(state)) {
-      return false;
+    return addWhenDurable(() -> journalService.workflowsImportedAsync(workflows, createdTime),
+        () -> records.forEach(this::add));
+  }
+
+  private CompletableFuture<ReturnCode> addWhenDurable(Supplier<CompletableFuture<Void>> append,
+      Runnable add) {
+    // The change ends once applied, on the journal's writer thread with a synchronous journal
+    long stamp = journalService.beginChange();
+    CompletableFuture<Void> durable;
+    try {
+      durable = append.get();
+    } catch (RuntimeException e) {
+      journalService.endChange(stamp);
+      throw e;
     }
-    visited.add(state);
-    stack.add(state);
-    List<String> neighbors = graph.get(state);
-    if (neighbors != null) {
-      for (String neighbor : neighbors) {
-        if (hasCycleDfs(neighbor, graph, visited, stack)) {
-          return true;
+    return durable.handle((done, e) -> {
+      try {
+        if (e != null) {
+          return ReturnCode.SYSTEM_ERROR;
         }
+        add.run();
+        return ReturnCode.SUCCESS;
+      } finally {
+        journalService.endChange(stamp);
       }
+    });
+  }
+
+  /**
+   * Starts the state machine of a new workflow, unless its state will live off-heap.
+   *
+   * @param definition the compiled definition of the workflow
+   * @return the started machine, or null if the workflow's state is kept in an off-heap slot
+   * @throws Exception if the machine cannot be built
+   */
+  public FsmMachine newMachine(FsmDefinition definition) throws Exception {
+    return stateStore.storeFor(definition) != null ? null : definition.newMachine();
+  }
+
+  private FsmMachine newInstanceMachine(WorkflowRecord record, int id) throws Exception {
+    FsmDefinition definition = record.getDefinition();
+    FsmMachine machine = stateStore.newInstanceMachine(definition, id);
+    return machine != null ? machine : residency.wrap(definition, definition.newMachine());
+  }
+
+  private void add(WorkflowRecord record) {
+    stateStore.reset(record);
+    WorkflowDatabase.addOrUpdate(record);
+    for (WorkflowListener listener : listeners) {
+      listener.workflowAdded(record);
     }
-    stack.remove(state);
-    return false;
+  }
+
+  private static Content newContent(Workflow workflow, LocalDateTime createdTime) {
+    return new Content(
+        workflow.getId(), workflow.getName(), workflow.getDesc(), "张三", createdTime);
+  }
+
+  private WorkflowRecord compileRecord(Workflow workflow, int generation, Content content)
+      throws Exception {
+    TransitionPermissions permissions = ApplicationDatabase.get(workflow.getAppId())
+        .getPermissions();
+    FsmDefinition definition = fsmEngine.compile(workflow);
+    return newRecord(workflow, generation, definition,
+        authorizationService.compile(permissions, workflow), newMachine(definition), content);
+  }
+
+  private WorkflowRecord newRecord(Workflow workflow, int generation, FsmDefinition definition,
+      AuthorizationIndex authorizationIndex, FsmMachine machine, Content content) {
+    if (machine == null) {
+      return new WorkflowRecord(workflow, workflow.getAppId(), generation,
+          (TransitionTable) definition, authorizationIndex, stateStore.storeFor(definition),
+          content);
+    }
+    return new WorkflowRecord(workflow, workflow.getAppId(), generation, definition,
+        authorizationIndex, residency.wrap(definition, machine), content);
   }
 
   /**
@@ -255,13 +439,11 @@ public class WorkflowService {
     if (page <= 0) {
       page = 1;
     }
-    List<Content> contents = WorkflowDatabase.getContents();
-
-    // Sort by creation time in descending order
-    contents.sort(Comparator.comparing(Content::getCreatedTime).reversed());
+    ContentIndex contents = WorkflowDatabase.getContents();
+    int total = contents.size();
 
     // Return successful response with null data if content is empty
-    if (contents.isEmpty()) {
+    if (total == 0) {
       PagedApiResponse pagedApiResponse = new PagedApiResponse();
       pagedApiResponse.setState(ReturnCode.SUCCESS);
       pagedApiResponse.setData(new PagedData(page, pageSize, 0, 0, new ArrayList<>()));
@@ -269,24 +451,107 @@ public class WorkflowService {
     }
 
     int fromIndex = (page - 1) * pageSize;
-    int toIndex = Math.min(fromIndex + pageSize, contents.size());
 
-    if (fromIndex >= contents.size()) {
-      page = (contents.size() + pageSize - 1) / pageSize;
+    if (fromIndex >= total) {
+      page = (total + pageSize - 1) / pageSize;
       fromIndex = (page - 1) * pageSize;
-      toIndex = contents.size();
     }
 
-    int totalPage = (contents.size() + pageSize - 1) / pageSize;
+    int totalPage = (total + pageSize - 1) / pageSize;
 
     PagedApiResponse pagedApiResponse = new PagedApiResponse();
     pagedApiResponse.setState(ReturnCode.SUCCESS);
     PagedData pagedData = new PagedData(
-        page, pageSize, totalPage, contents.size(), contents.subList(fromIndex, toIndex));
+        page, pageSize, totalPage, total, contents.page(fromIndex, pageSize));
+    pagedApiResponse.setData(pagedData);
+    return pagedApiResponse;
+  }
+
+  /**
+   * Queries workflows with cursor pagination.
+   *
+   * <p>Seeking to the cursor costs O(log n) regardless of how deep the page is.
+   *
+   * @param afterCreatedTime the creation time of the last content already seen
+   * @param afterId the ID of the last content already seen
+   * @param pageSize the page size
+   * @return the paginated API response
+   */
+  public PagedApiResponse queryWorkflowAfter(
+      LocalDateTime afterCreatedTime, int afterId, int pageSize) {
+    if (pageSize <= 0) {
+      pageSize = 20;
+    }
+    ContentIndex contents = WorkflowDatabase.getContents();
+    int total = contents.size();
+    ContentIndex.Page contentPage = contents.pageAfter(afterCreatedTime, afterId, pageSize);
+
+    int totalPage = (total + pageSize - 1) / pageSize;
+
+    PagedApiResponse pagedApiResponse = new PagedApiResponse();
+    pagedApiResponse.setState(ReturnCode.SUCCESS);
+    PagedData pagedData = new PagedData(contentPage.getOffset() / pageSize + 1, pageSize,
+        totalPage, total, contentPage.getItems());
     pagedApiResponse.setData(pagedData);
     return pagedApiResponse;
   }
 
+  /**
+   * Queries the workflows matching a filter, with pagination.
+   *
+   * <p>Matches are found by intersecting the secondary indexes and listed in ID order.
+   *
+   * @param filter the criteria and page parameters
+   * @return the paginated API response, or an invalid-parameter response without any criterion
+   */
+  public PagedApiResponse filterWorkflows(WorkflowFilter filter) {
+    PagedApiResponse pagedApiResponse = new PagedApiResponse();
+    if (filter.getAppId() == null && filter.getState() == null && filter.getRole() == null) {
+      pagedApiResponse.setState(ReturnCode.INVALID_INPUT_PARAMETER);
+      return pagedApiResponse;
+    }
+    int page = Math.max(filter.getPage(), 1);
+    int pageSize = filter.getPageSize() <= 0 ? 20 : filter.getPageSize();
+    RoaringBitmap ids =
+        WorkflowIndexes.find(filter.getAppId(), filter.getState(), filter.getRole());
+    int total = ids.getCardinality();
+    int totalPage = (total + pageSize - 1) / pageSize;
+
+    List<Content> items = new ArrayList<>();
+    long fromIndex = (long) (page - 1) * pageSize;
+    if (fromIndex < total) {
+      ContentIndex contents = WorkflowDatabase.getContents();
+      PeekableIntIterator iterator = ids.getIntIterator();
+      iterator.advanceIfNeeded(ids.select((int) fromIndex));
+      while (iterator.hasNext() && items.size() < pageSize) {
+        Content content = contents.get(iterator.next());
+        // Skip a workflow deleted since the indexes were read
+        if (content != null) {
+          items.add(content);
+        }
+      }
+    }
+    pagedApiResponse.setState(ReturnCode.SUCCESS);
+    pagedApiResponse.setData(new PagedData(page, pageSize, totalPage, total, items));
+    return pagedApiResponse;
+  }
+
+  /**
+   * Counts workflows per application and current state.
+   *
+   * <p>Counts are kept up to date on every change, so this sums one counter per state instead of
+   * visiting any workflow.
+   *
+   * @param appId the application ID, or null for all applications
+   * @return the counts, by application ID and state code
+   */
+  public StatsApiResponse queryStats(Integer appId) {
+    StatsApiResponse statsApiResponse = new StatsApiResponse();
+    statsApiResponse.setState(ReturnCode.SUCCESS);
+    statsApiResponse.setData(StateCounters.snapshot(appId));
+    return statsApiResponse;
+  }
+
   /**
    * Updates a workflow.
    *
@@ -295,51 +560,111 @@ public class WorkflowService {
    * @throws Exception if an error occurs during update
    */
   public ApiResponse updateWorkflow(Workflow workflow) throws Exception {
+    long start = System.nanoTime();
+    Lock lock = locks.forWorkflow(workflow.getId());
+    lock.lock();
+    List<Lock> instanceLocks = lockInstances(workflow.getId());
+    try {
+      return doUpdateWorkflow(workflow);
+    } finally {
+      unlock(instanceLocks);
+      lock.unlock();
+      metrics.recordUpdate(System.nanoTime() - start);
+    }
+  }
+
+  private ApiResponse doUpdateWorkflow(Workflow workflow) throws Exception {
     ApiResponse apiResponse = new ApiResponse();
-    Workflow existingWorkflow = WorkflowDatabase.getWorkflowById(workflow.getId());
+    WorkflowRecord existing = WorkflowDatabase.get(workflow.getId());
 
     // Check if workflow exists
-    if (existingWorkflow == null) {
+    if (existing == null) {
       apiResponse.setState(ReturnCode.FLOW_ID_NOT_EXIST);
       apiResponse.setData(null);
       return apiResponse;
     }
 
     // Check if input workflow ID matches existing workflow ID
-    if (workflow.getId() != existingWorkflow.getId()) {
+    if (workflow.getId() != existing.getId()) {
       apiResponse.setState(ReturnCode.INVALID_INPUT_PARAMETER);
       apiResponse.setData(null);
       return apiResponse;
     }
 
-    // Check if workflow is in progress
-    if (WorkflowDatabase.isWorkflowInProgress(workflow.getId())) {
+    // Check if workflow or one of its instances is in progress
+    if (isInProgress(workflow.getId())) {
       apiResponse.setState(ReturnCode.FLOW_IN_PROGRESS);
       apiResponse.setData(new SingleData(workflow.getId()));
       return apiResponse;
     }
 
     // Check if updated workflow name is duplicate
-    if (!workflow.getName().equals(existingWorkflow.getName()) 
-        && WorkflowDatabase.getWorkflow(workflow.getName()) != null) {
+    if (!workflow.getName().equals(existing.getWorkflow().getName())
+        && WorkflowDatabase.getByName(workflow.getName()) != null) {
       apiResponse.setState(ReturnCode.DUPLICATE_WORKFLOW_NAME);
       apiResponse.setData(new SingleData(workflow.getId()));
       return apiResponse;
     }
 
-    int id = workflow.getId();
-    int appId = WorkflowDatabase.getAppId(id);
-    workflow.setAppId(appId);
-    StateMachine<String, String> stateMachine = dynamicStateMachineConfig
-        .buildStateMachine(workflow);
-    stateMachine.start();
-    WorkflowDatabase.addOrUpdateStateMachine(Integer.toString(workflow.getId()), stateMachine);
+    // Journal first, so an update that cannot be made durable is not applied
+    WorkflowRecord record =
+        compileReplacement(existing, workflow, existing.getGeneration() + 1);
+    long stamp = journalService.beginChange();
+    try {
+      journalService.workflowUpdated(workflow, record.getGeneration());
+      replace(record);
+    } catch (IOException e) {
+      apiResponse.setState(ReturnCode.SYSTEM_ERROR);
+      apiResponse.setData(new SingleData(workflow.getId()));
+      return apiResponse;
+    } finally {
+      journalService.endChange(stamp);
+    }
 
     apiResponse.setState(ReturnCode.SUCCESS);
     apiResponse.setData(new SingleData(workflow.getId()));
     return apiResponse;
   }
 
+  private static boolean isInProgress(int id) {
+    if (WorkflowDatabase.isWorkflowInProgress(id)) {
+      return true;
+    }
+    // Like the workflow itself, an instance no action has moved yet is not in progress
+    for (WorkflowInstance instance : InstanceDatabase.getInstances(id)) {
+      FsmMachine machine = instance.getMachine();
+      if (!machine.isInInitialState() && !machine.isFinished()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private WorkflowRecord compileReplacement(WorkflowRecord existing, Workflow workflow,
+      int generation) throws Exception {
+    workflow.setAppId(existing.getAppId());
+    Content content = new Content(workflow.getId(), workflow.getName(), workflow.getDesc(),
+        existing.getCreator(), existing.getCreatedTime());
+    return compileRecord(workflow, generation, content);
+  }
+
+  private void replace(WorkflowRecord record) {
+    WorkflowRecord previous = WorkflowDatabase.get(record.getId());
+    if (previous != null) {
+      // Instances not yet moved run on the replaced definition; drop them rather than mix
+      // definitions
+      deleteInstances(previous);
+      // An off-heap record shares its slot with the one it replaces: listeners see the replaced
+      // state through a copy taken before the slot is reset
+      previous = previous.detach();
+    }
+    stateStore.reset(record);
+    WorkflowDatabase.addOrUpdate(record);
+    for (WorkflowListener listener : listeners) {
+      listener.workflowUpdated(previous, record);
+    }
+  }
+
   /**
    * Deletes a workflow.
    *
@@ -347,40 +672,64 @@ public class WorkflowService {
    * @return the API response
    */
   public ApiResponse deleteWorkflow(int id) {
-    // Check if workflow exists
-    Integer appId = WorkflowDatabase.getAppId(id);
+    long start = System.nanoTime();
+    Lock lock = locks.forWorkflow(id);
+    lock.lock();
+    List<Lock> instanceLocks = lockInstances(id);
+    try {
+      return doDeleteWorkflow(id);
+    } finally {
+      unlock(instanceLocks);
+      lock.unlock();
+      metrics.recordDelete(System.nanoTime() - start);
+    }
+  }
 
-    if (appId == null) {
+  private List<Lock> lockInstances(int workflowId) {
+    // No instance is started while the workflow's lock is held, so the set cannot grow here
+    List<Lock> instanceLocks = locks.forInstances(InstanceDatabase.getInstanceIds(workflowId));
+    for (Lock instanceLock : instanceLocks) {
+      instanceLock.lock();
+    }
+    return instanceLocks;
+  }
+
+  private static void unlock(List<Lock> instanceLocks) {
+    for (int i = instanceLocks.size() - 1; i >= 0; i--) {
+      instanceLocks.get(i).unlock();
+    }
+  }
+
+  private ApiResponse doDeleteWorkflow(int id) {
+    // Check if workflow exists
+    if (WorkflowDatabase.get(id) == null) {
       ApiResponse apiResponse = new ApiResponse();
       apiResponse.setState(ReturnCode.FLOW_ID_NOT_EXIST);
       apiResponse.setData(new SingleData(id));
       return apiResponse;
     }
 
-    // Check if workflow is in progress
-    if (WorkflowDatabase.isWorkflowInProgress(id)) {
+    // Check if workflow or one of its instances is in progress
+    if (isInProgress(id)) {
       ApiResponse apiResponse = new ApiResponse();
       apiResponse.setState(ReturnCode.FLOW_IN_PROGRESS);
       apiResponse.setData(new SingleData(id));
       return apiResponse;
     }
 
-    Workflow workflow = WorkflowDatabase.getWorkflowById(id);
-
-    // Delete workflow content
-    WorkflowDatabase.deleteContent(id);
-
-    // Delete mapping
-    WorkflowDatabase.deleteWorkflowId(id);
-
-    // Delete state machine
-    WorkflowDatabase.deleteStateMachine(Integer.toString(id));
-
-    // Delete workflow by name
-    WorkflowDatabase.deleteWorkflow(workflow.getName());
-
-    // Delete workflow by ID
-    WorkflowDatabase.deleteWorkflowById(id);
+    // Journal first, so a delete that cannot be made durable is not applied
+    long stamp = journalService.beginChange();
+    try {
+      journalService.workflowDeleted(id);
+      delete(id);
+    } catch (IOException e) {
+      ApiResponse apiResponse = new ApiResponse();
+      apiResponse.setState(ReturnCode.SYSTEM_ERROR);
+      apiResponse.setData(new SingleData(id));
+      return apiResponse;
+    } finally {
+      journalService.endChange(stamp);
+    }
 
     // Build response
     ApiResponse apiResponse = new ApiResponse();
@@ -398,33 +747,435 @@ public class WorkflowService {
    * @return the API response
    */
   public ApiResponse workflowAction(int id, String action, String role) {
-    StateMachine<String, String> stateMachine = 
-        (StateMachine<String, String>) WorkflowDatabase.getStateMachine(Integer.toString(id));
-    ApiResponse apiResponse = new ApiResponse();
-    Workflow workflow = WorkflowDatabase.getWorkflowById(id);
-    Application app = ApplicationDatabase.applications.get(String.valueOf(workflow.getAppId()));
+    return workflowActionAsync(id, action, role).join();
+  }
 
-    if (!authorizationService.authorize(app, workflow, action, role)) {
-      apiResponse.setState(ReturnCode.USER_ROLE_PERMISSION_INVALID);
+  /**
+   * Performs an action on a workflow without waiting for the journal.
+   *
+   * <p>The transition is applied before this method returns, so actions submitted one after
+   * another take effect in that order; only durability is awaited asynchronously. If its journal
+   * record fails, the transition stays applied and the response is
+   * {@link ReturnCode#NOT_DURABLE}: retrying the action would not repeat it.
+   *
+   * @param id the ID of the workflow
+   * @param action the action to perform
+   * @param role the role performing the action
+   * @return a future completed with the API response once the transition is durable
+   */
+  public CompletableFuture<ApiResponse> workflowActionAsync(int id, String action, String role) {
+    CompletableFuture<ReturnCode> durable;
+    Lock lock = locks.forWorkflow(id);
+    lock.lock();
+    try {
+      durable = doWorkflowAction(id, action, role);
+    } finally {
+      lock.unlock();
+    }
+    return durable.thenApply(code -> {
+      metrics.recordWorkflowResult(code);
+      ApiResponse apiResponse = new ApiResponse();
+      apiResponse.setState(code);
       apiResponse.setData(new SingleData(id));
       return apiResponse;
+    });
+  }
+
+  /**
+   * Fires the timer event of a workflow instance.
+   *
+   * <p>Like {@link #fireTimer}, the event applies only while the instance is still at the machine
+   * version the timer was scheduled at, and needs no role permission.
+   *
+   * @param instanceId the ID of the instance
+   * @param version the machine version the timer was scheduled at
+   * @param event the timer event
+   * @param role the role recorded for the transition
+   * @return a future completed with the result once the transition is durable
+   */
+  public CompletableFuture<ReturnCode> fireInstanceTimer(int instanceId, int version,
+      String event, String role) {
+    Lock lock = locks.forInstance(instanceId);
+    lock.lock();
+    try {
+      WorkflowInstance instance = InstanceDatabase.getInstance(instanceId);
+      WorkflowRecord record = instance == null
+          ? null : WorkflowDatabase.get(instance.getWorkflowId());
+      if (record == null) {
+        return CompletableFuture.completedFuture(ReturnCode.FLOW_ID_NOT_EXIST);
+      }
+      if (instance.getMachine().getVersion() != version) {
+        return CompletableFuture.completedFuture(ReturnCode.ILLEGAL_STATE_TRANSITION);
+      }
+      CompletableFuture<ReturnCode> durable = dispatch(instance.getMachine(), event, record,
+          instanceId, instance.getGeneration(), role);
+      reclaimIfFinished(record, instance);
+      return durable;
+    } finally {
+      lock.unlock();
     }
-    if (stateMachine == null) {
+  }
+
+  /**
+   * Fires the timer event of a workflow.
+   *
+   * <p>The event applies only while the workflow is still at the machine version the timer was
+   * scheduled at, so a timer that lost a race with an action, an update or a delete does nothing.
+   * Timer events need no role permission.
+   *
+   * @param id the ID of the workflow
+   * @param version the machine version the timer was scheduled at
+   * @param event the timer event
+   * @param role the role recorded for the transition
+   * @return a future completed with the result once the transition is durable
+   */
+  public CompletableFuture<ReturnCode> fireTimer(int id, int version, String event, String role) {
+    Lock lock = locks.forWorkflow(id);
+    lock.lock();
+    try {
+      WorkflowRecord record = WorkflowDatabase.get(id);
+      if (record == null) {
+        return CompletableFuture.completedFuture(ReturnCode.FLOW_ID_NOT_EXIST);
+      }
+      if (record.getMachine().getVersion() != version) {
+        return CompletableFuture.completedFuture(ReturnCode.ILLEGAL_STATE_TRANSITION);
+      }
+      return dispatch(record.getMachine(), event, record, NO_INSTANCE, record.getGeneration(),
+          role);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private CompletableFuture<ReturnCode> doWorkflowAction(int id, String action, String role) {
+    WorkflowRecord record = WorkflowDatabase.get(id);
+
+    if (record == null) {
+      return CompletableFuture.completedFuture(ReturnCode.FLOW_ID_NOT_EXIST);
+    }
+    if (!authorize(record.getAuthorizationIndex(), action, role)) {
+      return CompletableFuture.completedFuture(ReturnCode.USER_ROLE_PERMISSION_INVALID);
+    }
+
+    return dispatch(record.getMachine(), action, record, NO_INSTANCE, record.getGeneration(),
+        role);
+  }
+
+  /**
+   * Streams the recorded transitions of a workflow in a time range, oldest first.
+   *
+   * @param id the ID of the workflow
+   * @param from the earliest transition time, inclusive, or null for no lower bound
+   * @param to the latest transition time, inclusive, or null for no upper bound
+   * @return the transitions, decoded one at a time; empty if the workflow has no history
+   */
+  public Iterator<Transition> queryHistory(int id, LocalDateTime from, LocalDateTime to) {
+    return HistoryDatabase.query(id, from, to);
+  }
+
+  /**
+   * Starts a new instance of a workflow.
+   *
+   * <p>The instance shares the workflow's compiled definition and only holds its own state. It is
+   * removed as soon as it reaches the end state, after which actions on it find no instance. The
+   * workflow cannot be updated or deleted while any of its instances is in progress; an update or
+   * delete removes the rest, so an instance never outlives the definition it runs on.
+   *
+   * @param workflowId the ID of the workflow to start
+   * @return the API response carrying the instance ID
+   * @throws Exception if an error occurs while starting the instance
+   */
+  public ApiResponse startInstance(int workflowId) throws Exception {
+    // Held so the instance is journaled in order with its workflow's updates and deletes
+    Lock lock = locks.forWorkflow(workflowId);
+    lock.lock();
+    try {
+      return doStartInstance(workflowId);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private ApiResponse doStartInstance(int workflowId) throws Exception {
+    ApiResponse apiResponse = new ApiResponse();
+    WorkflowRecord record = WorkflowDatabase.get(workflowId);
+
+    if (record == null) {
       apiResponse.setState(ReturnCode.FLOW_ID_NOT_EXIST);
+      apiResponse.setData(new SingleData(workflowId));
+      return apiResponse;
+    }
+
+    int id = instanceId.getAndIncrement();
+    FsmMachine machine = newInstanceMachine(record, id);
+    WorkflowInstance instance =
+        new WorkflowInstance(id, workflowId, record.getGeneration(), machine);
+    long stamp = journalService.beginChange();
+    try {
+      journalService.instanceStarted(id, workflowId, record.getGeneration());
+      InstanceDatabase.addInstance(instance);
+    } catch (IOException e) {
+      apiResponse.setState(ReturnCode.SYSTEM_ERROR);
+      apiResponse.setData(new SingleData(workflowId));
+      return apiResponse;
+    } finally {
+      journalService.endChange(stamp);
+    }
+    for (WorkflowListener listener : listeners) {
+      listener.instanceAdded(record, id, instance);
+    }
+    apiResponse.setState(ReturnCode.SUCCESS);
+    apiResponse.setData(new SingleData(id));
+    return apiResponse;
+  }
+
+  /**
+   * Performs an action on a workflow instance.
+   *
+   * <p>The action that moves the instance to the end state removes it.
+   *
+   * @param id the ID of the instance
+   * @param action the action to perform
+   * @param role the role performing the action
+   * @return the API response
+   */
+  public ApiResponse instanceAction(int id, String action, String role) {
+    return instanceActionAsync(id, action, role).join();
+  }
+
+  /**
+   * Performs an action on a workflow instance without waiting for the journal.
+   *
+   * @param id the ID of the instance
+   * @param action the action to perform
+   * @param role the role performing the action
+   * @return a future completed with the API response once the transition is durable
+   */
+  public CompletableFuture<ApiResponse> instanceActionAsync(int id, String action, String role) {
+    CompletableFuture<ReturnCode> durable;
+    Lock lock = locks.forInstance(id);
+    lock.lock();
+    try {
+      durable = doInstanceAction(id, action, role);
+    } finally {
+      lock.unlock();
+    }
+    return durable.thenApply(code -> {
+      metrics.recordInstanceResult(code);
+      ApiResponse apiResponse = new ApiResponse();
+      apiResponse.setState(code);
       apiResponse.setData(new SingleData(id));
       return apiResponse;
+    });
+  }
+
+  private CompletableFuture<ReturnCode> doInstanceAction(int id, String action, String role) {
+    WorkflowInstance instance = InstanceDatabase.getInstance(id);
+    WorkflowRecord record = instance == null
+        ? null : WorkflowDatabase.get(instance.getWorkflowId());
+
+    if (record == null) {
+      return CompletableFuture.completedFuture(ReturnCode.FLOW_ID_NOT_EXIST);
+    }
+    if (!authorize(record.getAuthorizationIndex(), action, role)) {
+      return CompletableFuture.completedFuture(ReturnCode.USER_ROLE_PERMISSION_INVALID);
     }
 
-    boolean eventAccepted = stateMachine.sendEvent(action);
+    CompletableFuture<ReturnCode> durable =
+        dispatch(instance.getMachine(), action, record, id, instance.getGeneration(), role);
+    reclaimIfFinished(record, instance);
+    return durable;
+  }
 
-    if (eventAccepted) {
-      stateMachine.sendEvent("AUTO");
-      apiResponse.setState(ReturnCode.SUCCESS);
+  private void reclaimIfFinished(WorkflowRecord record, WorkflowInstance instance) {
+    // Nothing moves a finished instance again, so keeping it would only hold memory until its
+    // workflow is deleted; replay reclaims it the same way when it restores the end state
+    if (instance.getMachine().isFinished()
+        && InstanceDatabase.deleteInstance(instance.getId()) != null) {
+      for (WorkflowListener listener : listeners) {
+        listener.instanceDeleted(record, instance.getId());
+      }
+    }
+  }
+
+  private boolean authorize(AuthorizationIndex authorizationIndex, String action, String role) {
+    long start = System.nanoTime();
+    boolean authorized = authorizationService.authorize(authorizationIndex, action, role);
+    metrics.recordAuthorize(System.nanoTime() - start);
+    return authorized;
+  }
+
+  private CompletableFuture<ReturnCode> dispatch(FsmMachine stateMachine, String action,
+      WorkflowRecord record, int instanceId, int generation, String role) {
+    // States are read only when someone listens or the journal keeps the hops
+    boolean publish = !listeners.isEmpty() || journalService.hasTransitionSink();
+    String fromState = publish ? stateMachine.getState() : null;
+    long start = System.nanoTime();
+    if (!stateMachine.sendEvent(action)) {
+      metrics.recordDispatch(System.nanoTime() - start);
+      return CompletableFuture.completedFuture(ReturnCode.ILLEGAL_STATE_TRANSITION);
+    }
+    metrics.recordDispatch(System.nanoTime() - start);
+    List<TransitionHop> hops = publish
+        ? hops(record, fromState, action) : Collections.emptyList();
+    for (TransitionHop hop : hops) {
+      transitioned(record, instanceId, hop, role);
+    }
+    // Queued under the lock, so records land in the order the transitions were applied; the
+    // caller waits for durability after releasing it, so fsync waits overlap
+    return durable(instanceId == NO_INSTANCE
+        ? journalService.transitionAsync(record.getId(), generation, stateMachine, hops, role)
+        : journalService.instanceTransitionAsync(
+            instanceId, generation, record.getId(), stateMachine, hops, role));
+  }
+
+  private static List<TransitionHop> hops(WorkflowRecord record, String fromState,
+      String action) {
+    // The machine took the action and its cascade as one step; split them into hops
+    TransitionTable table = record.getDefinition().getTransitionTable();
+    List<TransitionHop> hops = new ArrayList<>(2);
+    int state = table.next(table.stateOrdinal(fromState), action);
+    hops.add(new TransitionHop(fromState, table.stateCode(state), action));
+    for (int next = table.autoTarget(state); next != TransitionTable.NONE;
+        next = table.autoTarget(state)) {
+      hops.add(new TransitionHop(
+          table.stateCode(state), table.stateCode(next), table.autoEvent(state)));
+      state = next;
+    }
+    return hops;
+  }
+
+  private void transitioned(WorkflowRecord record, int instanceId, TransitionHop hop,
+      String role) {
+    for (WorkflowListener listener : listeners) {
+      if (instanceId == NO_INSTANCE) {
+        listener.workflowTransitioned(
+            record, hop.getFromState(), hop.getToState(), hop.getEvent(), role);
+      } else {
+        listener.instanceTransitioned(record, instanceId, hop.getFromState(), hop.getToState(),
+            hop.getEvent(), role);
+      }
+    }
+  }
+
+  private void delete(int id) {
+    WorkflowRecord record = WorkflowDatabase.get(id);
+    if (record != null) {
+      deleteInstances(record);
+    }
+    WorkflowRecord deleted = WorkflowDatabase.delete(id);
+    if (deleted != null) {
+      for (WorkflowListener listener : listeners) {
+        listener.workflowDeleted(deleted);
+      }
+    }
+  }
+
+  private void deleteInstances(WorkflowRecord record) {
+    for (int instanceId : InstanceDatabase.deleteInstances(record.getId())) {
+      for (WorkflowListener listener : listeners) {
+        listener.instanceDeleted(record, instanceId);
+      }
+    }
+  }
+
+  private static CompletableFuture<ReturnCode> durable(CompletableFuture<Void> append) {
+    // A failed append cannot be undone: later transitions may already build on this one, and
+    // their records may still land. Report the transition as applied but possibly lost on restart
+    return append.handle((done, e) -> e == null ? ReturnCode.SUCCESS : ReturnCode.NOT_DURABLE);
+  }
+
+  @Override
+  public void restoreApp(String key, Application app) {
+    ApplicationDatabase.addOrUpdate(
+        key, new ApplicationRecord(app, authorizationService.compile(app)));
+  }
+
+  @Override
+  public void restoreWorkflow(Workflow workflow, int generation, LocalDateTime createdTime)
+      throws Exception {
+    WorkflowRecord record = compileRecord(workflow, generation, newContent(workflow, createdTime));
+    // A snapshot is captured after the journal rolls, so the replayed tail can create a workflow
+    // the snapshot already holds; replace it rather than count it twice
+    if (WorkflowDatabase.get(workflow.getId()) != null) {
+      replace(record);
     } else {
-      apiResponse.setState(ReturnCode.ILLEGAL_STATE_TRANSITION);
+      add(record);
     }
+    workflowId.accumulateAndGet(workflow.getId() + 1, Math::max);
+  }
 
-    apiResponse.setData(new SingleData(id));
-    return apiResponse;
+  @Override
+  public void restoreWorkflowUpdate(Workflow workflow, int generation) throws Exception {
+    WorkflowRecord existing = WorkflowDatabase.get(workflow.getId());
+    // A snapshot taken after the update already holds it, and maybe transitions on top of it
+    if (existing != null && generation > existing.getGeneration()) {
+      replace(compileReplacement(existing, workflow, generation));
+    }
+  }
+
+  @Override
+  public void restoreWorkflowDeletion(int id) {
+    delete(id);
+  }
+
+  @Override
+  public void restoreTransition(int id, int generation, int version, String state) {
+    WorkflowRecord record = WorkflowDatabase.get(id);
+    // Versions restart with each generation, so only those of the current one compare
+    if (record != null && generation == record.getGeneration()
+        && version > record.getMachine().getVersion()) {
+      String fromState = record.getMachine().getState();
+      record.getMachine().restore(state, version);
+      for (WorkflowListener listener : listeners) {
+        listener.workflowRestored(record, fromState);
+      }
+    }
+  }
+
+  @Override
+  public void restoreInstance(int instanceId, int workflowId, int generation) throws Exception {
+    WorkflowRecord record = WorkflowDatabase.get(workflowId);
+    // An instance of an older generation was dropped by an update the snapshot already holds
+    if (record != null && generation == record.getGeneration()) {
+      WorkflowInstance instance = new WorkflowInstance(
+          instanceId, workflowId, generation, newInstanceMachine(record, instanceId));
+      InstanceDatabase.addInstance(instance);
+      for (WorkflowListener listener : listeners) {
+        listener.instanceAdded(record, instanceId, instance);
+      }
+    }
+    WorkflowService.instanceId.accumulateAndGet(instanceId + 1, Math::max);
+  }
+
+  @Override
+  public void restoreInstanceTransition(int instanceId, int generation, int version,
+      String state) {
+    WorkflowInstance instance = InstanceDatabase.getInstance(instanceId);
+    if (instance != null && generation == instance.getGeneration()
+        && version > instance.getMachine().getVersion()) {
+      instance.getMachine().restore(state, version);
+      WorkflowRecord record = WorkflowDatabase.get(instance.getWorkflowId());
+      for (WorkflowListener listener : listeners) {
+        listener.instanceRestored(record, instanceId, instance);
+      }
+      reclaimIfFinished(record, instance);
+    }
+  }
+
+  @Override
+  public int nextWorkflowId() {
+    return workflowId.get();
+  }
+
+  @Override
+  public int nextInstanceId() {
+    return instanceId.get();
+  }
+
+  @Override
+  public void restoreNextIds(int nextWorkflowId, int nextInstanceId) {
+    workflowId.accumulateAndGet(nextWorkflowId, Math::max);
+    instanceId.accumulateAndGet(nextInstanceId, Math::max);
   }
 }
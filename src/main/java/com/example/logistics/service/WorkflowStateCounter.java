@@ -0,0 +1,42 @@
+package com.example.logistics.service;
+
+import com.example.logistics.reposity.StateCounters;
+import com.example.logistics.reposity.WorkflowRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the {@link StateCounters} in step with workflow changes.
+ */
+@Component
+@ConditionalOnProperty(name = "logistics.counters.enabled", havingValue = "true",
+    matchIfMissing = true)
+public class WorkflowStateCounter implements WorkflowListener {
+
+  @Override
+  public void workflowAdded(WorkflowRecord record) {
+    StateCounters.increment(record.getAppId(), record.getMachine().getState());
+  }
+
+  @Override
+  public void workflowUpdated(WorkflowRecord previous, WorkflowRecord record) {
+    workflowDeleted(previous);
+    workflowAdded(record);
+  }
+
+  @Override
+  public void workflowDeleted(WorkflowRecord record) {
+    StateCounters.decrement(record.getAppId(), record.getMachine().getState());
+  }
+
+  @Override
+  public void workflowRestored(WorkflowRecord record, String fromState) {
+    StateCounters.move(record.getAppId(), fromState, record.getMachine().getState());
+  }
+
+  @Override
+  public void workflowTransitioned(WorkflowRecord record, String fromState, String toState,
+      String event, String role) {
+    StateCounters.move(record.getAppId(), fromState, toState);
+  }
+}
@@ -0,0 +1,212 @@
+package com.example.logistics.service;
+
+import com.example.logistics.fsm.engine.FsmMachine;
+import com.example.logistics.fsm.engine.TransitionTable;
+import com.example.logistics.fsm.timer.TimingWheel;
+import com.example.logistics.metrics.WorkflowMetrics;
+import com.example.logistics.model.WorkflowInstance;
+import com.example.logistics.reposity.InstanceDatabase;
+import com.example.logistics.reposity.WorkflowRecord;
+import com.example.logistics.result.ReturnCode;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Schedules the timer transitions of workflows and their instances on one {@link TimingWheel}.
+ *
+ * <p>Whenever a workflow comes to rest in a state with a timer event, the timer is scheduled at
+ * the workflow's machine version; any change of state, update or delete cancels it first. An
+ * expired timer fires its event through {@link WorkflowService#fireTimer} only if the workflow is
+ * still at that version, so a timer racing with an action does nothing. Instances are timed the
+ * same way, keyed by instance ID and fired through {@link WorkflowService#fireInstanceTimer};
+ * an update or delete of their workflow drops them and cancels their timers. Timers are not
+ * journaled: replay reschedules them from the restored state, counting their delay from the
+ * restart.
+ *
+ * <p>Firing takes the workflow's or the instance's lock, so the wheel's ticker only hands expired
+ * timers to a pool of {@code logistics.timers.threads} workers and never waits behind an action.
+ * The pool's queue is unbounded: an expired timer must not be lost, and it holds no more than the
+ * wheel did.
+ */
+@Component
+@ConditionalOnProperty(name = "logistics.timers.enabled", havingValue = "true",
+    matchIfMissing = true)
+public class WorkflowTimers implements WorkflowListener {
+
+  /** The role recorded for transitions fired by timers. */
+  public static final String ROLE = "TIMER";
+
+  private final WorkflowService workflowService;
+  private final WorkflowMetrics metrics;
+  private final ExecutorService executor;
+  private final TimingWheel<Due> wheel;
+  private final Map<Integer, TimingWheel.Timeout<Due>> pending = new ConcurrentHashMap<>();
+  private final Map<Integer, TimingWheel.Timeout<Due>> pendingInstances =
+      new ConcurrentHashMap<>();
+
+  /**
+   * A timer event due on a workflow or on a workflow instance.
+   */
+  private static final class Due {
+
+    final int id;
+    final boolean instance;
+    final int version;
+    final String event;
+
+    Due(int id, boolean instance, int version, String event) {
+      this.id = id;
+      this.instance = instance;
+      this.version = version;
+      this.event = event;
+    }
+  }
+
+  /**
+   * Constructs a WorkflowTimers and starts its wheel.
+   *
+   * @param workflowService the workflow service firing expired timers
+   * @param metrics the metrics recording fired timers
+   * @param tickMillis the tick of the wheel, the resolution of every timer
+   * @param threads the number of threads firing expired timers
+   */
+  @Autowired
+  public WorkflowTimers(@Lazy WorkflowService workflowService, WorkflowMetrics metrics,
+      @Value("${logistics.timers.tick-millis:100}") long tickMillis,
+      @Value("${logistics.timers.threads:0}") int threads) {
+    this.workflowService = workflowService;
+    this.metrics = metrics;
+    int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    AtomicInteger threadId = new AtomicInteger(1);
+    this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(), runnable -> {
+          Thread thread = new Thread(runnable, "workflow-timer-" + threadId.getAndIncrement());
+          thread.setDaemon(true);
+          return thread;
+        });
+    this.wheel = new TimingWheel<>("workflow-timers", tickMillis, this::expire);
+  }
+
+  @Override
+  public void workflowAdded(WorkflowRecord record) {
+    schedule(record);
+  }
+
+  @Override
+  public void workflowUpdated(WorkflowRecord previous, WorkflowRecord record) {
+    schedule(record);
+  }
+
+  @Override
+  public void workflowDeleted(WorkflowRecord record) {
+    cancel(pending.remove(record.getId()));
+  }
+
+  @Override
+  public void workflowRestored(WorkflowRecord record, String fromState) {
+    schedule(record);
+  }
+
+  @Override
+  public void workflowTransitioned(WorkflowRecord record, String fromState, String toState,
+      String event, String role) {
+    // Only the last hop of a cascade leaves the workflow at rest
+    TransitionTable table = record.getDefinition().getTransitionTable();
+    if (table.autoTarget(table.stateOrdinal(toState)) == TransitionTable.NONE) {
+      schedule(record);
+    }
+  }
+
+  @Override
+  public void instanceAdded(WorkflowRecord record, int instanceId, WorkflowInstance instance) {
+    schedule(record, instanceId, instance);
+  }
+
+  @Override
+  public void instanceRestored(WorkflowRecord record, int instanceId,
+      WorkflowInstance instance) {
+    schedule(record, instanceId, instance);
+  }
+
+  @Override
+  public void instanceDeleted(WorkflowRecord record, int instanceId) {
+    cancel(pendingInstances.remove(instanceId));
+  }
+
+  @Override
+  public void instanceTransitioned(WorkflowRecord record, int instanceId, String fromState,
+      String toState, String event, String role) {
+    TransitionTable table = record.getDefinition().getTransitionTable();
+    WorkflowInstance instance = InstanceDatabase.getInstance(instanceId);
+    if (instance != null && table.autoTarget(table.stateOrdinal(toState)) == TransitionTable.NONE) {
+      schedule(record, instanceId, instance);
+    }
+  }
+
+  /**
+   * Stops the wheel and the firing threads. Pending timers, including expired ones not yet
+   * fired, are dropped and rescheduled by replay after a restart.
+   */
+  @PreDestroy
+  public void close() {
+    wheel.close();
+    executor.shutdownNow();
+  }
+
+  private void schedule(WorkflowRecord record) {
+    schedule(pending, record.getId(), false, record, record.getMachine());
+  }
+
+  private void schedule(WorkflowRecord record, int instanceId, WorkflowInstance instance) {
+    schedule(pendingInstances, instanceId, true, record, instance.getMachine());
+  }
+
+  private void schedule(Map<Integer, TimingWheel.Timeout<Due>> timers, int id, boolean instance,
+      WorkflowRecord record, FsmMachine machine) {
+    TransitionTable table = record.getDefinition().getTransitionTable();
+    int state = table.stateOrdinal(machine.getState());
+    String event = table.timerEvent(state);
+    TimingWheel.Timeout<Due> timeout = event == null ? null : wheel.schedule(
+        table.timerDelay(state), new Due(id, instance, machine.getVersion(), event));
+    cancel(timeout == null ? timers.remove(id) : timers.put(id, timeout));
+  }
+
+  private static void cancel(TimingWheel.Timeout<Due> timeout) {
+    if (timeout != null) {
+      timeout.cancel();
+    }
+  }
+
+  private void expire(TimingWheel.Timeout<Due> timeout) {
+    try {
+      executor.execute(() -> fire(timeout));
+    } catch (RejectedExecutionException e) {
+      // Only after close; replay reschedules the timer
+    }
+  }
+
+  private void fire(TimingWheel.Timeout<Due> timeout) {
+    Due due = timeout.getPayload();
+    if (due.instance) {
+      pendingInstances.remove(due.id, timeout);
+      workflowService.fireInstanceTimer(due.id, due.version, due.event, ROLE)
+          .thenAccept(code -> metrics.recordTimer(code == ReturnCode.SUCCESS));
+    } else {
+      pending.remove(due.id, timeout);
+      workflowService.fireTimer(due.id, due.version, due.event, ROLE)
+          .thenAccept(code -> metrics.recordTimer(code == ReturnCode.SUCCESS));
+    }
+  }
+}
@@ -0,0 +1,187 @@
+package com.example.logistics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.logistics.fsm.engine.CompiledFsmEngine;
+import com.example.logistics.journal.JournalService;
+import com.example.logistics.journal.TransitionSink;
+import com.example.logistics.metrics.WorkflowMetrics;
+import com.example.logistics.model.Application;
+import com.example.logistics.model.Auth;
+import com.example.logistics.model.Event;
+import com.example.logistics.model.Role;
+import com.example.logistics.model.State;
+import com.example.logistics.model.Workflow;
+import com.example.logistics.reposity.InstanceDatabase;
+import com.example.logistics.reposity.WorkflowDatabase;
+import com.example.logistics.result.ApiResponse;
+import com.example.logistics.result.ReturnCode;
+import com.example.logistics.service.AuthorizationService;
+import com.example.logistics.service.MachineResidency;
+import com.example.logistics.service.MachineStateStore;
+import com.example.logistics.service.WorkflowListener;
+import com.example.logistics.service.WorkflowLocks;
+import com.example.logistics.service.WorkflowService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Builds the model objects and the services shared by the tests.
+ *
+ * <p>Events are performed by role {@value #ROLE}. Applications built here have states A to D,
+ * begin at A and end at C; {@value #ROLE} may move A to B or D, and B or D to C.
+ */
+public final class TestFixtures {
+
+  /** The role performing every event built here. */
+  public static final String ROLE = "r1";
+
+  private static final AtomicInteger names = new AtomicInteger();
+
+  private TestFixtures() {
+  }
+
+  /**
+   * Builds a state.
+   *
+   * @param code the state code
+   * @return the state
+   */
+  public static State state(String code) {
+    State state = new State();
+    state.setCode(code);
+    return state;
+  }
+
+  /**
+   * Builds an event performed by {@value #ROLE}.
+   *
+   * @param name the event name
+   * @param from the state the event leaves
+   * @param to the state the event enters
+   * @return the event
+   */
+  public static Event event(String name, String from, String to) {
+    Event event = new Event();
+    event.setName(name);
+    event.setFromState(from);
+    event.setToState(to);
+    event.setRole(ROLE);
+    return event;
+  }
+
+  /**
+   * Builds an automatic event performed by {@value #ROLE}.
+   *
+   * @param name the event name
+   * @param from the state the event leaves
+   * @param to the state the event enters
+   * @return the event
+   */
+  public static Event auto(String name, String from, String to) {
+    Event event = event(name, from, to);
+    event.setAuto(true);
+    return event;
+  }
+
+  /**
+   * Builds an application with a unique name.
+   *
+   * @return the application
+   */
+  public static Application application() {
+    Application app = new Application();
+    app.setName("test-app-" + names.incrementAndGet());
+    app.setStates(Arrays.asList(state("A"), state("B"), state("C"), state("D")));
+    app.setBeginState("A");
+    app.setEndState("C");
+    Role role = new Role();
+    role.setRole(ROLE);
+    role.setAuth(Arrays.asList(
+        new Auth("A", "B"), new Auth("B", "C"), new Auth("A", "D"), new Auth("D", "C")));
+    app.setRoles(Collections.singletonList(role));
+    return app;
+  }
+
+  /**
+   * Builds a workflow with a unique name that moves from A to {@code via} on "go" and from
+   * {@code via} to C on "finish".
+   *
+   * @param appId the ID of the application
+   * @param via the state between the begin and the end state
+   * @return the workflow
+   */
+  public static Workflow workflow(int appId, String via) {
+    Workflow workflow = new Workflow();
+    workflow.setAppId(appId);
+    workflow.setName("test-workflow-" + names.incrementAndGet());
+    workflow.setStates(Arrays.asList(state("A"), state(via), state("C")));
+    workflow.setEvents(Arrays.asList(event("go", "A", via), event("finish", via, "C")));
+    return workflow;
+  }
+
+  /**
+   * Opens a journal service that syncs every record, without a transition sink.
+   *
+   * @param dir the journal directory
+   * @param metrics the metrics to record to
+   * @return the journal service, not yet opened
+   */
+  public static JournalService journal(Path dir, WorkflowMetrics metrics) {
+    return new JournalService(new ObjectMapper(), metrics,
+        new DefaultListableBeanFactory().getBeanProvider(TransitionSink.class),
+        true, dir.toString(), 1 << 16, 16, true, 0);
+  }
+
+  /**
+   * Builds a workflow service on the compiled engine, with on-heap machines that are never
+   * parked, and replays the journal into it.
+   *
+   * @param journal the journal service, not yet opened
+   * @param metrics the metrics to record to
+   * @param listeners the listeners to notify
+   * @return the service
+   * @throws Exception if the journal cannot be replayed
+   */
+  public static WorkflowService service(JournalService journal, WorkflowMetrics metrics,
+      WorkflowListener... listeners) throws Exception {
+    WorkflowService service = new WorkflowService();
+    ReflectionTestUtils.setField(service, "fsmEngine", new CompiledFsmEngine());
+    ReflectionTestUtils.setField(service, "authorizationService", new AuthorizationService());
+    ReflectionTestUtils.setField(service, "journalService", journal);
+    ReflectionTestUtils.setField(service, "metrics", metrics);
+    ReflectionTestUtils.setField(service, "locks", new WorkflowLocks(16));
+    ReflectionTestUtils.setField(service, "stateStore", new MachineStateStore(metrics, false));
+    ReflectionTestUtils.setField(service, "residency",
+        new MachineResidency(metrics, false, 0, 0, 1));
+    ReflectionTestUtils.setField(service, "listeners", Arrays.asList(listeners));
+    journal.open(service);
+    return service;
+  }
+
+  /**
+   * Checks that a response succeeded.
+   *
+   * @param response the response
+   * @return the ID the response carries
+   */
+  public static int require(ApiResponse response) {
+    assertThat(response.getState()).isEqualTo(ReturnCode.SUCCESS);
+    return response.getData().getId();
+  }
+
+  /**
+   * Drops a workflow and its instances from memory, as a restart does.
+   *
+   * @param id the ID of the workflow
+   */
+  public static void forget(int id) {
+    InstanceDatabase.deleteInstances(id);
+    WorkflowDatabase.delete(id);
+  }
+}
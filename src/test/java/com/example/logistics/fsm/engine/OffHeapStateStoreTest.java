@@ -0,0 +1,57 @@
+package com.example.logistics.fsm.engine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+class OffHeapStateStoreTest {
+
+  @Test
+  void replacesASlotOnlyIfItHoldsTheExpectedState() {
+    try (OffHeapStateStore store = new OffHeapStateStore()) {
+      store.set(7, 42);
+      assertThat(store.compareAndSet(7, 41, 43)).isFalse();
+      assertThat(store.get(7)).isEqualTo(42);
+      assertThat(store.compareAndSet(7, 42, 43)).isTrue();
+      assertThat(store.get(7)).isEqualTo(43);
+      // Neighbouring slots are untouched
+      assertThat(store.get(6)).isZero();
+      assertThat(store.get(8)).isZero();
+    }
+  }
+
+  @Test
+  void stampsASlotOnEveryChange() {
+    try (OffHeapStateStore store = new OffHeapStateStore()) {
+      assertThat(store.getUpdatedTime(7)).isZero();
+      long before = System.currentTimeMillis();
+      store.set(7, 42);
+      long set = store.getUpdatedTime(7);
+      assertThat(set).isBetween(before, System.currentTimeMillis());
+      // A failed compare-and-set is no change
+      store.compareAndSet(7, 41, 43);
+      assertThat(store.getUpdatedTime(7)).isEqualTo(set);
+      store.compareAndSet(7, 42, 43);
+      assertThat(store.getUpdatedTime(7)).isGreaterThanOrEqualTo(set);
+      assertThat(store.getUpdatedTime(8)).isZero();
+    }
+  }
+
+  @Test
+  void allocatesOneChunkPerRangeOfIdsInUse() {
+    OffHeapStateStore store = new OffHeapStateStore();
+    assertThat(store.allocatedBytes()).isZero();
+    store.set(1, 1);
+    long chunk = store.allocatedBytes();
+    assertThat(chunk).isPositive();
+    store.set(2, 1);
+    assertThat(store.allocatedBytes()).isEqualTo(chunk);
+    store.set(Integer.MAX_VALUE, 1);
+    assertThat(store.allocatedBytes()).isEqualTo(2 * chunk);
+
+    store.close();
+    assertThat(store.allocatedBytes()).isZero();
+    assertThatThrownBy(() -> store.get(1)).isInstanceOf(IllegalStateException.class);
+  }
+}
@@ -0,0 +1,162 @@
+package com.example.logistics.fsm.engine;
+
+import static com.example.logistics.TestFixtures.auto;
+import static com.example.logistics.TestFixtures.event;
+import static com.example.logistics.TestFixtures.state;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.example.logistics.fsm.config.DynamicStateMachineConfig;
+import com.example.logistics.model.Application;
+import com.example.logistics.model.Event;
+import com.example.logistics.model.Role;
+import com.example.logistics.model.Workflow;
+import com.example.logistics.reposity.ApplicationDatabase;
+import com.example.logistics.reposity.ApplicationRecord;
+import com.example.logistics.service.AuthorizationService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class TransitionTableTest {
+
+  private static final int APP_ID = 424242;
+
+  @Test
+  void cascadeBumpsTheVersionOncePerHop() {
+    TransitionTable table = TransitionTable.compile(Arrays.asList(
+        event("go", "A", "B"),
+        event("AUTO", "B", "C"),
+        auto("check", "C", "D"),
+        event("fin", "D", "F")), "A", "F");
+    int b = table.stateOrdinal("B");
+    assertThat(table.settle(b)).isEqualTo(table.stateOrdinal("D"));
+    assertThat(table.autoHops(b)).isEqualTo(2);
+    assertThat(table.autoHops(table.stateOrdinal("D"))).isZero();
+
+    FsmMachine machine = table.newMachine();
+    assertThat(machine.sendEvent("go")).isTrue();
+    assertThat(machine.getState()).isEqualTo("D");
+    // The action itself plus both automatic hops
+    assertThat(machine.getVersion()).isEqualTo(3);
+    assertThat(machine.sendEvent("fin")).isTrue();
+    assertThat(machine.getVersion()).isEqualTo(4);
+    assertThat(machine.isFinished()).isTrue();
+    assertThat(machine.sendEvent("go")).isFalse();
+  }
+
+  @Test
+  void rejectsCyclesOfAutomaticTransitions() {
+    assertThatThrownBy(() -> TransitionTable.compile(Arrays.asList(
+        event("go", "A", "B"),
+        event("AUTO", "B", "C"),
+        auto("back", "C", "B"),
+        event("fin", "C", "F")), "A", "F"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("cycle");
+    assertThatThrownBy(() -> TransitionTable.compile(Arrays.asList(
+        event("go", "A", "B"),
+        auto("stay", "B", "B"),
+        event("fin", "B", "F")), "A", "F"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void firstDeclaredTransitionWins() {
+    Event slow = event("slow", "C", "D");
+    slow.setTimeoutSeconds(5L);
+    Event slower = event("slower", "C", "A");
+    slower.setTimeoutSeconds(9L);
+    TransitionTable table = TransitionTable.compile(Arrays.asList(
+        event("go", "A", "B"),
+        event("go", "A", "C"),
+        auto("first", "B", "C"),
+        auto("second", "B", "D"),
+        slow,
+        slower,
+        event("fin", "D", "F")), "A", "F");
+
+    int a = table.stateOrdinal("A");
+    int b = table.stateOrdinal("B");
+    int c = table.stateOrdinal("C");
+    assertThat(table.next(a, "go")).isEqualTo(b);
+    assertThat(table.autoTarget(b)).isEqualTo(c);
+    assertThat(table.autoEvent(b)).isEqualTo("first");
+    assertThat(table.timerEvent(c)).isEqualTo("slow");
+    assertThat(table.timerDelay(c)).isEqualTo(5000L);
+  }
+
+  @Test
+  void ignoresAutomaticTransitionsLeavingTheEndState() {
+    TransitionTable table = TransitionTable.compile(Arrays.asList(
+        event("go", "A", "F"),
+        auto("again", "F", "A")), "A", "F");
+    int end = table.stateOrdinal("F");
+    assertThat(table.autoTarget(end)).isEqualTo(TransitionTable.NONE);
+    assertThat(table.settle(end)).isEqualTo(end);
+  }
+
+  @Test
+  void matchesTheSpringEngineOnRandomWalks() throws Exception {
+    List<Event> events = Arrays.asList(
+        event("go", "A", "B"),
+        event("AUTO", "B", "C"),
+        auto("check", "C", "D"),
+        event("back", "D", "A"),
+        event("skip", "A", "E"),
+        event("hold", "E", "E"),
+        event("fin", "D", "F"),
+        event("fin", "E", "F"));
+    Workflow workflow = register(events);
+    SpringFsmEngine spring = new SpringFsmEngine();
+    ReflectionTestUtils.setField(spring, "dynamicStateMachineConfig",
+        new DynamicStateMachineConfig());
+    FsmDefinition definition = spring.compile(workflow);
+    FsmMachine expected = definition.newMachine();
+    FsmMachine actual = definition.getTransitionTable().newMachine();
+
+    List<String> names = new ArrayList<>(Arrays.asList("go", "AUTO", "check", "back", "skip",
+        "hold", "fin", "unknown"));
+    Random random = new Random(7);
+    for (int step = 0; step < 300; step++) {
+      if (expected.isFinished()) {
+        // Start over the way a workflow is rebuilt: a new machine restored to a saved state
+        int version = expected.getVersion();
+        expected = definition.newMachine();
+        expected.restore("A", version);
+        actual = definition.getTransitionTable().newMachine();
+        actual.restore("A", version);
+      }
+      Collections.shuffle(names, random);
+      String name = names.get(0);
+      assertThat(actual.sendEvent(name)).as("step %d: %s", step, name)
+          .isEqualTo(expected.sendEvent(name));
+      assertThat(actual.getState()).as("step %d", step).isEqualTo(expected.getState());
+      assertThat(actual.getVersion()).as("step %d", step).isEqualTo(expected.getVersion());
+      assertThat(actual.isFinished()).as("step %d", step).isEqualTo(expected.isFinished());
+      assertThat(actual.isInInitialState()).as("step %d", step)
+          .isEqualTo(expected.isInInitialState());
+    }
+  }
+
+  private static Workflow register(List<Event> events) {
+    Application app = new Application();
+    app.setName("parity");
+    app.setStates(Collections.singletonList(state("A")));
+    app.setBeginState("A");
+    app.setEndState("F");
+    app.setRoles(Collections.<Role>emptyList());
+    ApplicationDatabase.addOrUpdate(String.valueOf(APP_ID),
+        new ApplicationRecord(app, new AuthorizationService().compile(app)));
+
+    Workflow workflow = new Workflow();
+    workflow.setAppId(APP_ID);
+    workflow.setName("parity");
+    workflow.setEvents(events);
+    return workflow;
+  }
+}
@@ -0,0 +1,128 @@
+package com.example.logistics.fsm.graph;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.logistics.model.Event;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class GraphAnalysisTest {
+
+  @Test
+  void acceptsAnAcyclicGraphWhereEveryStateLeadsToTheEnd() {
+    GraphAnalysis graph = GraphAnalysis.analyze(Arrays.asList(
+        event("A", "B"), event("A", "C"), event("B", "F"), event("C", "F")), "A", "F");
+
+    assertThat(graph.isValid()).isTrue();
+    assertThat(graph.getCycle()).isEmpty();
+    assertThat(graph.getDeadEndPath()).isEmpty();
+    assertThat(graph.describe()).isNull();
+  }
+
+  @Test
+  void closesTheCycleItFindsInEdgeDirection() {
+    List<Event> events = Arrays.asList(
+        event("A", "B"), event("B", "C"), event("C", "D"), event("D", "B"), event("D", "F"));
+    GraphAnalysis graph = GraphAnalysis.analyze(events, "A", "F");
+
+    List<String> cycle = graph.getCycle();
+    assertThat(cycle).hasSize(4);
+    assertThat(cycle.get(0)).isEqualTo(cycle.get(cycle.size() - 1));
+    assertThat(new HashSet<>(cycle)).containsExactlyInAnyOrder("B", "C", "D");
+    assertIsPath(cycle, events);
+    assertThat(graph.isValid()).isFalse();
+    assertThat(graph.describe()).isEqualTo("cycle: " + String.join(" -> ", cycle));
+  }
+
+  @Test
+  void findsACycleBehindALongChainWithoutRecursion() {
+    // A chain into a loop far from the begin state, then a tail out of it
+    int length = 50_000;
+    List<Event> events = new ArrayList<>();
+    for (int i = 0; i < length; i++) {
+      events.add(event("S" + i, "S" + (i + 1)));
+    }
+    events.add(event("S" + length, "S" + (length - 2)));
+    events.add(event("S" + length, "F"));
+    GraphAnalysis graph = GraphAnalysis.analyze(events, "S0", "F");
+
+    List<String> cycle = graph.getCycle();
+    assertThat(new HashSet<>(cycle)).containsExactlyInAnyOrder(
+        "S" + (length - 2), "S" + (length - 1), "S" + length);
+    assertIsPath(cycle, events);
+  }
+
+  @Test
+  void reportsDeadEndsWithThePathToTheFarthestOne() {
+    GraphAnalysis graph = GraphAnalysis.analyze(Arrays.asList(
+        event("A", "B"), event("B", "F"), event("A", "C"), event("C", "D")), "A", "F");
+
+    assertThat(graph.getDeadEnds()).containsExactly("C", "D");
+    assertThat(graph.getDeadEndPath()).containsExactly("A", "C", "D");
+    assertThat(graph.describe()).isEqualTo("cannot reach end state F: C, D (via A -> C -> D)");
+  }
+
+  @Test
+  void reportsStatesUnreachableFromTheBeginState() {
+    GraphAnalysis graph = GraphAnalysis.analyze(Arrays.asList(
+        event("A", "F"), event("X", "Y"), event("Y", "F")), "A", "F");
+
+    assertThat(graph.getUnreachable()).containsExactly("X", "Y");
+    assertThat(graph.getDeadEnds()).isEmpty();
+    assertThat(graph.isValid()).isFalse();
+    assertThat(graph.describe()).isEqualTo("unreachable from begin state: X, Y");
+  }
+
+  @Test
+  void rejectsAWorkflowWithoutEvents() {
+    GraphAnalysis graph = GraphAnalysis.analyze(Collections.emptyList(), "A", "F");
+
+    assertThat(graph.getUnreachable()).containsExactly("F");
+    assertThat(graph.isValid()).isFalse();
+  }
+
+  @Test
+  void shortensLongPathsKeepingBothEnds() {
+    int length = 100;
+    List<Event> events = new ArrayList<>();
+    events.add(event("S0", "F"));
+    for (int i = 0; i < length; i++) {
+      events.add(event("S" + i, "S" + (i + 1)));
+    }
+    GraphAnalysis graph = GraphAnalysis.analyze(events, "S0", "F");
+
+    assertThat(graph.getDeadEndPath()).hasSize(length + 1);
+    String via = graph.describe().substring(graph.describe().indexOf("(via ") + 5);
+    String[] steps = via.substring(0, via.length() - 1).split(" -> ");
+    assertThat(steps).hasSize(33);
+    assertThat(steps[0]).isEqualTo("S0");
+    assertThat(steps[15]).isEqualTo("S15");
+    assertThat(steps[16]).isEqualTo("...");
+    assertThat(steps[17]).isEqualTo("S" + (length - 15));
+    assertThat(steps[32]).isEqualTo("S" + length);
+  }
+
+  private static void assertIsPath(List<String> states, List<Event> events) {
+    Set<String> edges = new HashSet<>();
+    for (Event event : events) {
+      edges.add(event.getFromState() + ">" + event.getToState());
+    }
+    for (int i = 0; i + 1 < states.size(); i++) {
+      assertThat(edges).as("edge %s -> %s", states.get(i), states.get(i + 1))
+          .contains(states.get(i) + ">" + states.get(i + 1));
+    }
+  }
+
+  private static Event event(String from, String to) {
+    Event event = new Event();
+    event.setName(from + "-" + to);
+    event.setFromState(from);
+    event.setToState(to);
+    return event;
+  }
+}
@@ -0,0 +1,115 @@
+package com.example.logistics.fsm.timer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class TimingWheelTest {
+
+  private TimingWheel<Integer> wheel;
+
+  @AfterEach
+  void close() {
+    if (wheel != null) {
+      wheel.close();
+    }
+  }
+
+  @Test
+  void firesEachTimerOnceAndNeverEarly() throws InterruptedException {
+    int timers = 200;
+    Map<Integer, Long> firedNanos = new ConcurrentHashMap<>();
+    AtomicInteger duplicates = new AtomicInteger();
+    CountDownLatch fired = new CountDownLatch(timers);
+    wheel = new TimingWheel<>("test-wheel", 1, timeout -> {
+      if (firedNanos.putIfAbsent(timeout.getPayload(), System.nanoTime()) != null) {
+        duplicates.incrementAndGet();
+      }
+      fired.countDown();
+    });
+
+    // Delays past 256 ticks start in the second wheel and cascade into the first
+    long[] scheduledNanos = new long[timers];
+    for (int i = 0; i < timers; i++) {
+      scheduledNanos[i] = System.nanoTime();
+      wheel.schedule(delay(i), i);
+    }
+
+    assertThat(fired.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(duplicates.get()).isZero();
+    for (int i = 0; i < timers; i++) {
+      assertThat(firedNanos.get(i) - scheduledNanos[i])
+          .as("timer %d", i).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(delay(i)));
+    }
+  }
+
+  @Test
+  void cancelledTimersNeverFire() throws InterruptedException {
+    CountDownLatch fired = new CountDownLatch(1);
+    List<Integer> payloads = new ArrayList<>();
+    wheel = new TimingWheel<>("test-wheel", 1, timeout -> {
+      synchronized (payloads) {
+        payloads.add(timeout.getPayload());
+      }
+      fired.countDown();
+    });
+
+    TimingWheel.Timeout<Integer> near = wheel.schedule(5, 1);
+    TimingWheel.Timeout<Integer> far = wheel.schedule(300, 2);
+    assertThat(near.cancel()).isTrue();
+    assertThat(near.cancel()).isFalse();
+    assertThat(far.cancel()).isTrue();
+    TimingWheel.Timeout<Integer> kept = wheel.schedule(50, 3);
+
+    assertThat(fired.await(10, TimeUnit.SECONDS)).isTrue();
+    Thread.sleep(400);
+    synchronized (payloads) {
+      assertThat(payloads).containsExactly(3);
+    }
+    assertThat(kept.cancel()).isFalse();
+  }
+
+  @Test
+  void cancelRacingExpiryEitherWinsOrFiresOnce() throws InterruptedException {
+    int timers = 20_000;
+    Map<Integer, Integer> fireCounts = new ConcurrentHashMap<>();
+    wheel = new TimingWheel<>("test-wheel", 1,
+        timeout -> fireCounts.merge(timeout.getPayload(), 1, Integer::sum));
+
+    List<TimingWheel.Timeout<Integer>> timeouts = new ArrayList<>();
+    for (int i = 0; i < timers; i++) {
+      timeouts.add(wheel.schedule(i % 5, i));
+    }
+    // Cancel every other timer while the ticker is expiring them
+    boolean[] cancelled = new boolean[timers];
+    Thread canceller = new Thread(() -> {
+      for (int i = 0; i < timers; i += 2) {
+        if (ThreadLocalRandom.current().nextInt(64) == 0) {
+          Thread.yield();
+        }
+        cancelled[i] = timeouts.get(i).cancel();
+      }
+    });
+    canceller.start();
+    canceller.join();
+    Thread.sleep(200);
+
+    // A timer whose cancel won never fires; every other timer fires exactly once
+    for (int i = 0; i < timers; i++) {
+      assertThat(fireCounts.get(i)).as("timer %d", i).isEqualTo(cancelled[i] ? null : 1);
+    }
+  }
+
+  private static long delay(int i) {
+    return i * 3L;
+  }
+}
@@ -0,0 +1,225 @@
+package com.example.logistics.journal;
+
+import static com.example.logistics.TestFixtures.ROLE;
+import static com.example.logistics.TestFixtures.application;
+import static com.example.logistics.TestFixtures.forget;
+import static com.example.logistics.TestFixtures.journal;
+import static com.example.logistics.TestFixtures.require;
+import static com.example.logistics.TestFixtures.service;
+import static com.example.logistics.TestFixtures.workflow;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.logistics.TestFixtures;
+import com.example.logistics.fsm.engine.CompiledFsmEngine;
+import com.example.logistics.metrics.WorkflowMetrics;
+import com.example.logistics.model.Workflow;
+import com.example.logistics.reposity.InstanceDatabase;
+import com.example.logistics.reposity.WorkflowDatabase;
+import com.example.logistics.reposity.WorkflowRecord;
+import com.example.logistics.result.BatchApiResponse;
+import com.example.logistics.result.ReturnCode;
+import com.example.logistics.service.AuthorizationService;
+import com.example.logistics.service.WorkflowImportService;
+import com.example.logistics.service.WorkflowService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Replays journals over snapshots into a {@link WorkflowService}, as a restart does.
+ */
+class JournalReplayTest {
+
+  @TempDir
+  Path dir;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final WorkflowMetrics metrics = new WorkflowMetrics(new SimpleMeterRegistry());
+  private final List<JournalService> journals = new ArrayList<>();
+  private final List<Integer> workflowIds = new ArrayList<>();
+
+  @AfterEach
+  void tearDown() {
+    journals.forEach(JournalService::close);
+    workflowIds.forEach(TestFixtures::forget);
+  }
+
+  @Test
+  void ignoresRecordsOfTheDefinitionAnUpdateReplaced() throws Exception {
+    WorkflowService service = service(openJournal(), metrics);
+    int appId = require(service.createApp(application()));
+    Workflow route = workflow(appId, "B");
+    int id = create(service, route);
+    // Roll past the creation, so it is not replayed
+    journals.get(0).snapshot();
+
+    // Run an instance of the old definition to its end, then replace the definition
+    int instanceId = require(service.startInstance(id));
+    require(service.instanceAction(instanceId, "go", ROLE));
+    require(service.instanceAction(instanceId, "finish", ROLE));
+    Workflow detour = workflow(appId, "D");
+    detour.setId(id);
+    detour.setName(route.getName());
+    require(service.updateWorkflow(detour));
+    require(service.workflowAction(id, "go", ROLE));
+
+    // A snapshot taken after the roll holds the update; the tail still holds everything before it
+    new SnapshotStore(dir, objectMapper).write(latestSnapshot(), service);
+    restart(service, id);
+
+    WorkflowRecord record = WorkflowDatabase.get(id);
+    assertThat(record.getGeneration()).isEqualTo(1);
+    assertThat(record.getMachine().getState()).isEqualTo("D");
+    assertThat(record.getMachine().getVersion()).isEqualTo(1);
+    assertThat(InstanceDatabase.getInstance(instanceId)).isNull();
+  }
+
+  @Test
+  void replaysTheUpdateOverAnOlderSnapshot() throws Exception {
+    WorkflowService service = service(openJournal(), metrics);
+    int appId = require(service.createApp(application()));
+    Workflow route = workflow(appId, "B");
+    int id = create(service, route);
+    journals.get(0).snapshot();
+
+    Workflow detour = workflow(appId, "D");
+    detour.setId(id);
+    detour.setName(route.getName());
+    require(service.updateWorkflow(detour));
+    require(service.workflowAction(id, "go", ROLE));
+    int instanceId = require(service.startInstance(id));
+    require(service.instanceAction(instanceId, "go", ROLE));
+    restart(service, id);
+
+    WorkflowRecord record = WorkflowDatabase.get(id);
+    assertThat(record.getGeneration()).isEqualTo(1);
+    assertThat(record.getMachine().getState()).isEqualTo("D");
+    assertThat(InstanceDatabase.getInstance(instanceId).getGeneration()).isEqualTo(1);
+    assertThat(InstanceDatabase.getInstance(instanceId).getMachine().getState()).isEqualTo("D");
+  }
+
+  @Test
+  void replacesACreatedWorkflowTheSnapshotAlreadyHolds() throws Exception {
+    WorkflowService service = service(openJournal(), metrics);
+    int appId = require(service.createApp(application()));
+    int id = create(service, workflow(appId, "B"));
+    require(service.workflowAction(id, "go", ROLE));
+    int listed = WorkflowDatabase.getContents().size();
+
+    // Nothing is rolled first, so the creation and the action replay over the snapshot
+    new SnapshotStore(dir, objectMapper).write(1, service);
+    restart(service, id);
+
+    assertThat(WorkflowDatabase.getContents().size()).isEqualTo(listed);
+    assertThat(WorkflowDatabase.get(id).getMachine().getState()).isEqualTo("B");
+    assertThat(WorkflowDatabase.get(id).getMachine().getVersion()).isEqualTo(1);
+  }
+
+  @Test
+  void replaysAnAtomicImportAsAWhole() throws Exception {
+    WorkflowService service = service(openJournal(), metrics);
+    int appId = require(service.createApp(application()));
+    WorkflowImportService imports = new WorkflowImportService(service, new AuthorizationService(),
+        new CompiledFsmEngine(), metrics, objectMapper, 1);
+    BatchApiResponse response;
+    try {
+      response = imports.importWorkflows(
+          Arrays.asList(workflow(appId, "B"), workflow(appId, "D")), true);
+    } finally {
+      imports.shutdown();
+    }
+    assertThat(response.getState()).isEqualTo(ReturnCode.SUCCESS);
+    int[] ids = new int[2];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = require(response.getData().get(i));
+      workflowIds.add(ids[i]);
+    }
+    restart(service, ids);
+
+    require(service.workflowAction(ids[0], "go", ROLE));
+    require(service.workflowAction(ids[1], "go", ROLE));
+    assertThat(WorkflowDatabase.get(ids[0]).getMachine().getState()).isEqualTo("B");
+    assertThat(WorkflowDatabase.get(ids[1]).getMachine().getState()).isEqualTo("D");
+  }
+
+  @Test
+  void keepsAnUpdateJournaledBeforeASnapshotButAppliedDuringIt() throws Exception {
+    JournalService journal = openJournal();
+    WorkflowService service = service(journal, metrics);
+    int appId = require(service.createApp(application()));
+    Workflow route = workflow(appId, "B");
+    int id = create(service, route);
+    Workflow detour = workflow(appId, "D");
+    detour.setId(id);
+    detour.setName(route.getName());
+
+    // Journal the update as updateWorkflow does, and snapshot before it is applied
+    long stamp = journal.beginChange();
+    CompletableFuture<Void> snapshot;
+    try {
+      journal.workflowUpdated(detour, 1);
+      snapshot = CompletableFuture.runAsync(() -> {
+        try {
+          journal.snapshot();
+        } catch (Exception e) {
+          throw new CompletionException(e);
+        }
+      });
+      Thread.sleep(200);
+      assertThat(snapshot).isNotDone();
+      service.restoreWorkflowUpdate(detour, 1);
+    } finally {
+      journal.endChange(stamp);
+    }
+    snapshot.get(10, TimeUnit.SECONDS);
+    restart(service, id);
+
+    assertThat(WorkflowDatabase.get(id).getGeneration()).isEqualTo(1);
+    require(service.workflowAction(id, "go", ROLE));
+    assertThat(WorkflowDatabase.get(id).getMachine().getState()).isEqualTo("D");
+  }
+
+  private JournalService openJournal() {
+    JournalService journal = journal(dir, metrics);
+    journals.add(journal);
+    return journal;
+  }
+
+  private int create(WorkflowService service, Workflow workflow) throws Exception {
+    int id = require(service.createWorkflow(workflow));
+    workflowIds.add(id);
+    return id;
+  }
+
+  private void restart(WorkflowService service, int... ids) throws Exception {
+    journals.remove(journals.size() - 1).close();
+    for (int id : ids) {
+      forget(id);
+    }
+    JournalService journal = openJournal();
+    ReflectionTestUtils.setField(service, "journalService", journal);
+    journal.open(service);
+  }
+
+  private long latestSnapshot() throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.map(path -> path.getFileName().toString())
+          .filter(name -> name.endsWith(".snapshot"))
+          .mapToLong(name -> Long.parseLong(name.substring(0, name.indexOf('.'))))
+          .max().getAsLong();
+    }
+  }
+}
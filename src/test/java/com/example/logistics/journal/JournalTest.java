@@ -0,0 +1,151 @@
+package com.example.logistics.journal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JournalTest {
+
+  private static final int SEGMENT_SIZE = 4096;
+  private static final byte TYPE = 1;
+  // [int length][byte type][one-byte payload][int crc32]
+  private static final int FRAME_SIZE = 4 + 1 + 1 + 4;
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void replaysDurableRecordsInOrder() throws IOException {
+    append("a", "b", "c");
+
+    assertThat(replay()).containsExactly("a", "b", "c");
+  }
+
+  @Test
+  void stopsAtTornTailAndOverwritesIt() throws IOException {
+    append("a", "b");
+    // A crash left the header and part of the payload of a third record, but no checksum
+    ByteBuffer torn = ByteBuffer.allocate(8);
+    torn.putInt(1 + 32).put(TYPE).put("xyz".getBytes(StandardCharsets.UTF_8)).flip();
+    write(2 * FRAME_SIZE, torn);
+
+    assertThat(replay()).containsExactly("a", "b");
+    append("c");
+    assertThat(replay()).containsExactly("a", "b", "c");
+  }
+
+  @Test
+  void stopsAtChecksumMismatchAndDropsTheRecordsAfterIt() throws IOException {
+    append("a", "b", "c");
+    // Flip the payload of the second record
+    write(FRAME_SIZE + 5, ByteBuffer.wrap("x".getBytes(StandardCharsets.UTF_8)));
+
+    assertThat(replay()).containsExactly("a");
+    // The corrupt record and everything after it were cleared, so "c" never comes back
+    append("d");
+    assertThat(replay()).containsExactly("a", "d");
+  }
+
+  @Test
+  void stopsAtLengthBeyondSegmentEnd() throws IOException {
+    append("a");
+    ByteBuffer length = ByteBuffer.allocate(4);
+    length.putInt(SEGMENT_SIZE).flip();
+    write(FRAME_SIZE, length);
+
+    assertThat(replay()).containsExactly("a");
+  }
+
+  @Test
+  void failsOnACorruptRecordInASegmentBeforeTheLast() throws IOException {
+    try (Journal journal = open(new ArrayList<>())) {
+      journal.append(TYPE, "a".getBytes(StandardCharsets.UTF_8)).join();
+      journal.append(TYPE, "b".getBytes(StandardCharsets.UTF_8)).join();
+      journal.roll().join();
+      journal.append(TYPE, "c".getBytes(StandardCharsets.UTF_8)).join();
+    }
+    // Flip the payload of the first record of the first segment
+    write(5, ByteBuffer.wrap("x".getBytes(StandardCharsets.UTF_8)));
+
+    assertThatThrownBy(this::replay)
+        .isInstanceOf(IOException.class)
+        .hasMessageContaining("not the last segment");
+  }
+
+  @Test
+  void handsRecordsToTheDurableListenerAtTheirReplayPositions() throws IOException {
+    List<Long> durable = new ArrayList<>();
+    try (Journal journal = open(new ArrayList<>())) {
+      journal.setDurableListener((position, type, payload) -> durable.add(position));
+      journal.append(TYPE, "a".getBytes(StandardCharsets.UTF_8)).join();
+      journal.append(TYPE, "b".getBytes(StandardCharsets.UTF_8)).join();
+      journal.roll().join();
+      journal.append(TYPE, "c".getBytes(StandardCharsets.UTF_8)).join();
+    }
+
+    List<Long> replayed = new ArrayList<>();
+    Journal.open(dir, SEGMENT_SIZE, 16, 0, (position, type, payload) -> replayed.add(position))
+        .close();
+    assertThat(durable).containsExactly(1L << 32, (1L << 32) | FRAME_SIZE, 2L << 32);
+    assertThat(replayed).isEqualTo(durable);
+  }
+
+  @Test
+  void readsDurableRecordsAcrossSegmentsWhileOpen() throws IOException {
+    append("a");
+    try (Journal journal = open(new ArrayList<>())) {
+      assertThat(read(journal, 0)).containsExactly("a");
+      journal.append(TYPE, "b".getBytes(StandardCharsets.UTF_8)).join();
+      journal.roll().join();
+      journal.append(TYPE, "c".getBytes(StandardCharsets.UTF_8)).join();
+
+      assertThat(read(journal, 0)).containsExactly("a", "b", "c");
+      assertThat(read(journal, (1L << 32) | FRAME_SIZE)).containsExactly("b", "c");
+      assertThat(journal.readDurable(2L << 32, (position, type, payload) -> { }))
+          .isEqualTo(2L << 32);
+    }
+  }
+
+  private void append(String... records) throws IOException {
+    try (Journal journal = open(new ArrayList<>())) {
+      for (String record : records) {
+        journal.append(TYPE, record.getBytes(StandardCharsets.UTF_8)).join();
+      }
+    }
+  }
+
+  private List<String> replay() throws IOException {
+    List<String> records = new ArrayList<>();
+    open(records).close();
+    return records;
+  }
+
+  private static List<String> read(Journal journal, long from) throws IOException {
+    List<String> records = new ArrayList<>();
+    journal.readDurable(from, (position, type, payload) ->
+        records.add(StandardCharsets.UTF_8.decode(payload).toString()));
+    return records;
+  }
+
+  private Journal open(List<String> records) throws IOException {
+    return Journal.open(dir, SEGMENT_SIZE, 16, 0, (position, type, payload) ->
+        records.add(StandardCharsets.UTF_8.decode(payload).toString()));
+  }
+
+  private void write(int position, ByteBuffer bytes) throws IOException {
+    try (FileChannel channel = FileChannel.open(
+        dir.resolve(String.format("%016d.journal", 1)), StandardOpenOption.WRITE)) {
+      channel.write(bytes, position);
+    }
+  }
+}
@@ -0,0 +1,227 @@
+package com.example.logistics.journal;
+
+import static com.example.logistics.TestFixtures.ROLE;
+import static com.example.logistics.TestFixtures.event;
+import static com.example.logistics.TestFixtures.state;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.example.logistics.fsm.engine.FsmMachine;
+import com.example.logistics.fsm.engine.TransitionTable;
+import com.example.logistics.model.Application;
+import com.example.logistics.model.Auth;
+import com.example.logistics.model.Role;
+import com.example.logistics.model.Workflow;
+import com.example.logistics.model.WorkflowInstance;
+import com.example.logistics.reposity.ApplicationDatabase;
+import com.example.logistics.reposity.ApplicationRecord;
+import com.example.logistics.reposity.InstanceDatabase;
+import com.example.logistics.reposity.WorkflowDatabase;
+import com.example.logistics.reposity.WorkflowRecord;
+import com.example.logistics.result.Content;
+import com.example.logistics.service.AuthorizationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SnapshotStoreTest {
+
+  private static final int APP_ID = 535353;
+  private static final int WORKFLOW_ID = 1_000_001;
+  private static final int INSTANCE_ID = 2_000_001;
+  private static final LocalDateTime CREATED =
+      LocalDateTime.of(2026, 3, 1, 12, 30, 15, 123456789);
+
+  @TempDir
+  Path dir;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final AuthorizationService authorizationService = new AuthorizationService();
+
+  @BeforeEach
+  void setUp() {
+    Application app = application();
+    ApplicationDatabase.addOrUpdate(String.valueOf(APP_ID),
+        new ApplicationRecord(app, authorizationService.compile(app)));
+    Workflow workflow = workflow();
+    TransitionTable table = TransitionTable.compile(workflow.getEvents(), "A", "C");
+    FsmMachine machine = table.newMachine();
+    machine.sendEvent("go");
+    WorkflowDatabase.addOrUpdate(new WorkflowRecord(workflow, APP_ID, 2, table,
+        authorizationService.compile(
+            ApplicationDatabase.get(APP_ID).getPermissions(), workflow),
+        machine, new Content(WORKFLOW_ID, workflow.getName(), null, "creator", CREATED)));
+    FsmMachine instance = table.newMachine();
+    instance.sendEvent("go");
+    instance.sendEvent("finish");
+    InstanceDatabase.addInstance(new WorkflowInstance(INSTANCE_ID, WORKFLOW_ID, 2, instance));
+  }
+
+  @AfterEach
+  void tearDown() {
+    InstanceDatabase.deleteInstances(WORKFLOW_ID);
+    WorkflowDatabase.delete(WORKFLOW_ID);
+  }
+
+  @Test
+  void loadsWhatItWroteWithGenerationsAndIdCounters() throws Exception {
+    SnapshotStore store = new SnapshotStore(dir, objectMapper);
+    assertThat(store.write(7, new RecordingRestorer())).isGreaterThanOrEqualTo(3);
+
+    RecordingRestorer restored = new RecordingRestorer();
+    assertThat(store.load(restored)).isEqualTo(7);
+    // The counters come first, so replayed creations never hand out an ID again
+    assertThat(restored.calls.get(0)).isEqualTo("ids 5000 6000");
+    assertThat(restored.calls).contains("app " + APP_ID + " snapshot-app");
+    assertThat(restored.callsAbout(WORKFLOW_ID, INSTANCE_ID)).containsExactly(
+        "workflow " + WORKFLOW_ID + " 2 snapshot-workflow " + CREATED,
+        "transition " + WORKFLOW_ID + " 2 1 B",
+        "instance " + INSTANCE_ID + " " + WORKFLOW_ID + " 2",
+        "instance-transition " + INSTANCE_ID + " 2 2 C");
+  }
+
+  @Test
+  void loadsOnlyTheLatestSnapshotAndDeletesOlderOnes() throws Exception {
+    SnapshotStore store = new SnapshotStore(dir, objectMapper);
+    assertThat(store.load(new RecordingRestorer())).isZero();
+    store.write(3, new RecordingRestorer());
+    store.write(5, new RecordingRestorer());
+
+    assertThat(store.load(new RecordingRestorer())).isEqualTo(5);
+    store.deleteSnapshotsBefore(5);
+    assertThat(snapshotFiles()).containsExactly(String.format("%016d.snapshot", 5));
+  }
+
+  @Test
+  void rejectsASnapshotWhoseChecksumDoesNotMatch() throws Exception {
+    SnapshotStore store = new SnapshotStore(dir, objectMapper);
+    store.write(1, new RecordingRestorer());
+    Path snapshot = dir.resolve(String.format("%016d.snapshot", 1));
+    try (FileChannel channel = FileChannel.open(
+        snapshot, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      // Flip the low bit of the stored checksum, so every entry still parses
+      ByteBuffer last = ByteBuffer.allocate(1);
+      channel.read(last, channel.size() - 1);
+      last.put(0, (byte) (last.get(0) ^ 1)).rewind();
+      channel.write(last, channel.size() - 1);
+    }
+
+    assertThatThrownBy(() -> store.load(new RecordingRestorer()))
+        .isInstanceOf(IOException.class)
+        .hasMessageContaining("checksum mismatch");
+  }
+
+  private List<String> snapshotFiles() throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.map(path -> path.getFileName().toString()).sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static Application application() {
+    Application app = new Application();
+    app.setName("snapshot-app");
+    app.setStates(Arrays.asList(state("A"), state("B"), state("C")));
+    app.setBeginState("A");
+    app.setEndState("C");
+    Role role = new Role();
+    role.setRole(ROLE);
+    role.setAuth(Arrays.asList(new Auth("A", "B"), new Auth("B", "C")));
+    app.setRoles(Collections.singletonList(role));
+    return app;
+  }
+
+  private static Workflow workflow() {
+    Workflow workflow = new Workflow();
+    workflow.setAppId(APP_ID);
+    workflow.setId(WORKFLOW_ID);
+    workflow.setName("snapshot-workflow");
+    workflow.setStates(Arrays.asList(state("A"), state("B"), state("C")));
+    workflow.setEvents(Arrays.asList(event("go", "A", "B"), event("finish", "B", "C")));
+    return workflow;
+  }
+
+  /**
+   * Records each restore as one line, handing out fixed ID counters.
+   */
+  private static final class RecordingRestorer implements WorkflowRestorer {
+
+    final List<String> calls = new ArrayList<>();
+
+    List<String> callsAbout(int workflowId, int instanceId) {
+      // Other tests may leave workflows behind in the shared databases
+      return calls.stream()
+          .filter(call -> call.contains(" " + workflowId + " ")
+              || call.contains(" " + instanceId + " "))
+          .collect(Collectors.toList());
+    }
+
+    @Override
+    public void restoreApp(String key, Application app) {
+      calls.add("app " + key + " " + app.getName());
+    }
+
+    @Override
+    public void restoreWorkflow(Workflow workflow, int generation, LocalDateTime createdTime) {
+      calls.add("workflow " + workflow.getId() + " " + generation + " " + workflow.getName()
+          + " " + createdTime);
+    }
+
+    @Override
+    public void restoreWorkflowUpdate(Workflow workflow, int generation) {
+      calls.add("update " + workflow.getId() + " " + generation);
+    }
+
+    @Override
+    public void restoreWorkflowDeletion(int id) {
+      calls.add("delete " + id);
+    }
+
+    @Override
+    public void restoreTransition(int id, int generation, int version, String state) {
+      calls.add("transition " + id + " " + generation + " " + version + " " + state);
+    }
+
+    @Override
+    public void restoreInstance(int instanceId, int workflowId, int generation) {
+      calls.add("instance " + instanceId + " " + workflowId + " " + generation);
+    }
+
+    @Override
+    public void restoreInstanceTransition(int instanceId, int generation, int version,
+        String state) {
+      calls.add("instance-transition " + instanceId + " " + generation + " " + version + " "
+          + state);
+    }
+
+    @Override
+    public int nextWorkflowId() {
+      return 5000;
+    }
+
+    @Override
+    public int nextInstanceId() {
+      return 6000;
+    }
+
+    @Override
+    public void restoreNextIds(int nextWorkflowId, int nextInstanceId) {
+      calls.add("ids " + nextWorkflowId + " " + nextInstanceId);
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package com.example.logistics.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class AuthorizationIndexTest {
+
+  @Test
+  void allowsOnlyTheEventsCompiledForARole() {
+    Map<String, Set<String>> events = new HashMap<>();
+    events.put("r1", new HashSet<>(Collections.singletonList("go")));
+    AuthorizationIndex index = new AuthorizationIndex(events, new HashMap<>());
+
+    assertThat(index.isAllowed("r1", "go")).isTrue();
+    assertThat(index.isAllowed("r1", "finish")).isFalse();
+    assertThat(index.isAllowed("r2", "go")).isFalse();
+  }
+
+  @Test
+  void answersEveryStateWithoutExposingItsMaps() {
+    Map<String, Set<String>> roles = new HashMap<>();
+    roles.put("A", new HashSet<>(Collections.singletonList("r1")));
+    AuthorizationIndex index = new AuthorizationIndex(new HashMap<>(), roles);
+
+    assertThat(index.getActionableRoles("A")).containsExactly("r1");
+    assertThat(index.getActionableRoles("B")).isEmpty();
+    assertThatThrownBy(() -> index.getAllowedEventsByRole().put("r1", new HashSet<>()))
+        .isInstanceOf(UnsupportedOperationException.class);
+  }
+}
@@ -0,0 +1,86 @@
+package com.example.logistics.outbox;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class MpscRingBufferTest {
+
+  @Test
+  void roundsCapacityUpToAPowerOfTwo() {
+    assertThat(new MpscRingBuffer<Integer>(1).capacity()).isEqualTo(2);
+    assertThat(new MpscRingBuffer<Integer>(5).capacity()).isEqualTo(8);
+    assertThat(new MpscRingBuffer<Integer>(8).capacity()).isEqualTo(8);
+  }
+
+  @Test
+  void rejectsOffersWhenFullAndKeepsOrderAcrossLaps() {
+    MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(4);
+    List<Integer> drained = new ArrayList<>();
+    int next = 0;
+    for (int lap = 0; lap < 10; lap++) {
+      for (int i = 0; i < 4; i++) {
+        assertThat(buffer.offer(next++)).isTrue();
+      }
+      assertThat(buffer.offer(-1)).isFalse();
+      assertThat(buffer.size()).isEqualTo(4);
+      // Drain part of the buffer so the next lap starts mid-array
+      assertThat(buffer.drain(drained::add, 3)).isEqualTo(3);
+      assertThat(buffer.offer(next++)).isTrue();
+      assertThat(buffer.drain(drained::add, Integer.MAX_VALUE)).isEqualTo(2);
+    }
+
+    assertThat(buffer.size()).isZero();
+    assertThat(buffer.drain(drained::add, 1)).isZero();
+    assertThat(drained).hasSize(50);
+    for (int i = 0; i < drained.size(); i++) {
+      assertThat(drained.get(i)).isEqualTo(i);
+    }
+  }
+
+  @Test
+  void concurrentProducersLoseNothingAndKeepTheirOwnOrder() throws InterruptedException {
+    int producers = 4;
+    int perProducer = 20_000;
+    MpscRingBuffer<long[]> buffer = new MpscRingBuffer<>(64);
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      long producer = p;
+      Thread thread = new Thread(() -> {
+        for (long i = 0; i < perProducer; i++) {
+          while (!buffer.offer(new long[] {producer, i})) {
+            Thread.yield();
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+
+    long[] expected = new long[producers];
+    long[] outOfOrder = new long[1];
+    int total = 0;
+    while (total < producers * perProducer) {
+      int drained = buffer.drain(element -> {
+        int producer = (int) element[0];
+        if (element[1] != expected[producer]) {
+          outOfOrder[0]++;
+        }
+        expected[producer] = element[1] + 1;
+      }, 32);
+      if (drained == 0) {
+        Thread.yield();
+      }
+      total += drained;
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(outOfOrder[0]).isZero();
+    assertThat(expected).containsOnly(perProducer);
+    assertThat(buffer.size()).isZero();
+  }
+}
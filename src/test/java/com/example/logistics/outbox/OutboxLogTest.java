@@ -0,0 +1,163 @@
+package com.example.logistics.outbox;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OutboxLogTest {
+
+  // Four events of the size appended below fit in a segment
+  private static final int SEGMENT_SIZE = 256;
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void readersSeeOnlyFlushedEvents() throws IOException {
+    OutboxLog log = OutboxLog.open(dir, SEGMENT_SIZE);
+    OutboxLog.Reader reader = log.reader("subscriber");
+    append(log, 1, 2);
+
+    assertThat(read(reader, 10)).isEmpty();
+    log.flush();
+    assertThat(sequences(read(reader, 10))).containsExactly(1L, 2L);
+    assertThat(log.getFlushedSequence()).isEqualTo(2);
+  }
+
+  @Test
+  void readerResumesFromItsCommittedPositionAfterReopen() throws IOException {
+    OutboxLog log = OutboxLog.open(dir, SEGMENT_SIZE);
+    OutboxLog.Reader reader = log.reader("subscriber");
+    append(log, 1, 2, 3, 4, 5, 6, 7);
+    log.flush();
+    assertThat(sequences(read(reader, 3))).containsExactly(1L, 2L, 3L);
+    reader.commit();
+    // Read but never committed, so delivered again after a restart
+    assertThat(sequences(read(reader, 2))).containsExactly(4L, 5L);
+
+    OutboxLog reopened = OutboxLog.open(dir, SEGMENT_SIZE);
+    assertThat(reopened.getFlushedSequence()).isEqualTo(7);
+    OutboxLog.Reader resumed = reopened.reader("subscriber");
+    assertThat(resumed.getSequence()).isEqualTo(3);
+    List<OutboxEvent> events = read(resumed, 10);
+    assertThat(sequences(events)).containsExactly(4L, 5L, 6L, 7L);
+    assertThat(events).extracting(OutboxEvent::getWorkflowId).containsExactly(4, 5, 6, 7);
+  }
+
+  @Test
+  void newReaderStartsAtTheEndOfTheLog() throws IOException {
+    OutboxLog log = OutboxLog.open(dir, SEGMENT_SIZE);
+    append(log, 1, 2);
+    log.flush();
+    OutboxLog.Reader reader = log.reader("late");
+    append(log, 3);
+    log.flush();
+
+    assertThat(sequences(read(reader, 10))).containsExactly(3L);
+  }
+
+  @Test
+  void failedAppendDiscardsTheUnflushedEventsSoTheyCanBeAppendedAgain() throws IOException {
+    OutboxLog log = OutboxLog.open(dir, SEGMENT_SIZE);
+    OutboxLog.Reader reader = log.reader("subscriber");
+    append(log, 1, 2, 3);
+    log.flush();
+    // A directory in place of the next segment makes moving on to it fail
+    Path blocked = Files.createDirectory(dir.resolve(String.format("%016d.outbox", 2)));
+    assertThatThrownBy(() -> append(log, 4, 5, 6, 7, 8, 9, 10)).isInstanceOf(IOException.class);
+    assertThat(log.getFlushedSequence()).isEqualTo(3);
+
+    Files.deleteIfExists(blocked);
+    append(log, 4, 5, 6, 7, 8, 9, 10);
+    log.flush();
+    List<OutboxEvent> events = read(reader, 20);
+    assertThat(sequences(events)).containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L);
+    assertThat(events).extracting(OutboxEvent::getWorkflowId)
+        .containsExactly(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+    assertThat(OutboxLog.open(dir, SEGMENT_SIZE).getFlushedSequence()).isEqualTo(10);
+  }
+
+  @Test
+  void rejectsAnEventLargerThanASegment() throws IOException {
+    OutboxLog log = OutboxLog.open(dir, SEGMENT_SIZE);
+    char[] name = new char[SEGMENT_SIZE];
+    Arrays.fill(name, 'x');
+    OutboxEvent oversized = new OutboxEvent(0, 1, 1, 0, "A", "B", new String(name), "r1", 1L);
+
+    assertThatThrownBy(() -> log.append(oversized)).isInstanceOf(IllegalArgumentException.class);
+    append(log, 2);
+    log.flush();
+    assertThat(log.getFlushedSequence()).isEqualTo(1);
+  }
+
+  @Test
+  void tracksTheSourceOfTheLastFlushedEventsAcrossRollBackAndReopen() throws IOException {
+    OutboxLog log = OutboxLog.open(dir, SEGMENT_SIZE);
+    appendFrom(log, 5, 5, 6);
+    log.flush();
+    assertThat(log.getFlushedSource()).isEqualTo(6);
+    assertThat(log.getFlushedSourceEvents()).isEqualTo(1);
+    appendFrom(log, 6);
+    assertThat(log.getFlushedSourceEvents()).isEqualTo(1);
+    log.flush();
+    assertThat(log.getFlushedSourceEvents()).isEqualTo(2);
+
+    // A failed append rolls the source back with the events
+    Path blocked = Files.createDirectory(dir.resolve(String.format("%016d.outbox", 2)));
+    assertThatThrownBy(() -> appendFrom(log, 7, 7, 7)).isInstanceOf(IOException.class);
+    Files.deleteIfExists(blocked);
+    appendFrom(log, 6);
+    log.flush();
+    assertThat(log.getFlushedSource()).isEqualTo(6);
+    assertThat(log.getFlushedSourceEvents()).isEqualTo(3);
+
+    OutboxLog reopened = OutboxLog.open(dir, SEGMENT_SIZE);
+    assertThat(reopened.getFlushedSource()).isEqualTo(6);
+    assertThat(reopened.getFlushedSourceEvents()).isEqualTo(3);
+  }
+
+  @Test
+  void readerWhoseSegmentWasDeletedResumesFromTheOldestKept() throws IOException {
+    OutboxLog log = OutboxLog.open(dir, SEGMENT_SIZE);
+    log.reader("behind");
+    append(log, 1, 2, 3, 4, 5, 6, 7);
+    log.flush();
+    log.deleteSegmentsBefore(2);
+
+    OutboxLog.Reader reader = log.reader("behind");
+    assertThat(reader.getSegment()).isEqualTo(2);
+    assertThat(sequences(read(reader, 10))).containsExactly(5L, 6L, 7L);
+  }
+
+  private static void append(OutboxLog log, int... workflowIds) throws IOException {
+    for (int workflowId : workflowIds) {
+      // Each event stands for a journal record of its own
+      log.append(new OutboxEvent(0, workflowId, workflowId, 0, "A", "B", "go", "r1", 1L));
+    }
+  }
+
+  private static void appendFrom(OutboxLog log, long... sources) throws IOException {
+    for (long source : sources) {
+      log.append(new OutboxEvent(0, source, 1, 0, "A", "B", "go", "r1", 1L));
+    }
+  }
+
+  private static List<OutboxEvent> read(OutboxLog.Reader reader, int max) throws IOException {
+    List<OutboxEvent> events = new ArrayList<>();
+    reader.read(events, max);
+    return events;
+  }
+
+  private static List<Long> sequences(List<OutboxEvent> events) {
+    return events.stream().map(OutboxEvent::getSequence).collect(Collectors.toList());
+  }
+}
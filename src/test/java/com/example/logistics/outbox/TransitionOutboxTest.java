@@ -0,0 +1,246 @@
+package com.example.logistics.outbox;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.example.logistics.journal.TransitionSource;
+import com.example.logistics.metrics.WorkflowMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+class TransitionOutboxTest {
+
+  @TempDir
+  Path dir;
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final WorkflowMetrics metrics = new WorkflowMetrics(registry);
+
+  @Test
+  void retriesAFailedDeliveryUntilItSucceeds() throws Exception {
+    RecordingSubscriber subscriber = new RecordingSubscriber(2);
+    TransitionOutbox outbox = open(subscriber);
+    try {
+      outbox.transitioned(1, 7, 0, "A", "B", "go", "r1", 1L);
+      outbox.transitioned(2, 7, 3, "A", "B", "go", "r1", 1L);
+
+      await(() -> subscriber.delivered().size() == 2);
+      assertThat(subscriber.attempts.get()).isGreaterThanOrEqualTo(3);
+      List<OutboxEvent> events = subscriber.delivered();
+      assertThat(events).extracting(OutboxEvent::getSequence).containsExactly(1L, 2L);
+      assertThat(events).extracting(OutboxEvent::getWorkflowId).containsExactly(7, 7);
+      assertThat(events).extracting(OutboxEvent::getInstanceId).containsExactly(0, 3);
+    } finally {
+      outbox.close();
+    }
+  }
+
+  @Test
+  void resumesAfterRestartFromTheLastDeliveredEvent() throws Exception {
+    RecordingSubscriber first = new RecordingSubscriber(0);
+    TransitionOutbox outbox = open(first);
+    try {
+      outbox.transitioned(1, 1, 0, "A", "B", "go", "r1", 1L);
+      await(() -> first.delivered().size() == 1);
+    } finally {
+      outbox.close();
+    }
+
+    RecordingSubscriber second = new RecordingSubscriber(0);
+    outbox = open(second);
+    try {
+      outbox.transitioned(2, 2, 0, "B", "C", "go", "r1", 1L);
+      await(() -> second.delivered().size() == 1);
+      assertThat(second.delivered()).extracting(OutboxEvent::getSequence).containsExactly(2L);
+    } finally {
+      outbox.close();
+    }
+  }
+
+  @Test
+  void redeliversEventsLoggedButNotDeliveredBeforeRestart() throws Exception {
+    RecordingSubscriber failing = new RecordingSubscriber(Integer.MAX_VALUE);
+    TransitionOutbox outbox = open(failing);
+    try {
+      outbox.transitioned(1, 1, 0, "A", "B", "go", "r1", 1L);
+      outbox.transitioned(2, 2, 0, "A", "B", "go", "r1", 1L);
+      // A failed attempt means the events were logged and read
+      await(() -> failing.attempts.get() > 0);
+    } finally {
+      outbox.close();
+    }
+
+    RecordingSubscriber recovered = new RecordingSubscriber(0);
+    outbox = open(recovered);
+    try {
+      await(() -> recovered.delivered().size() == 2);
+      assertThat(recovered.delivered()).extracting(OutboxEvent::getWorkflowId)
+          .containsExactly(1, 2);
+    } finally {
+      outbox.close();
+    }
+  }
+
+  @Test
+  void storesThePositionAndHopCountOfTheLastRecordLogged() throws Exception {
+    RecordingSubscriber subscriber = new RecordingSubscriber(0);
+    TransitionOutbox outbox = open(subscriber);
+    try {
+      assertThat(outbox.getStoredPosition()).isZero();
+      outbox.transitioned(10, 1, 0, "A", "B", "go", "r1", 1L);
+      // An action that cascaded: one record, two hops
+      outbox.transitioned(20, 1, 0, "B", "C", "nx", "r1", 1L);
+      outbox.transitioned(20, 1, 0, "C", "D", "AUTO", "r1", 1L);
+      outbox.awaitStored();
+      assertThat(outbox.getStoredPosition()).isEqualTo(20);
+      assertThat(outbox.getStoredHops()).isEqualTo(2);
+    } finally {
+      outbox.close();
+    }
+
+    outbox = open(new RecordingSubscriber(0));
+    try {
+      assertThat(outbox.getStoredPosition()).isEqualTo(20);
+      assertThat(outbox.getStoredHops()).isEqualTo(2);
+      outbox.awaitStored();
+    } finally {
+      outbox.close();
+    }
+  }
+
+  @Test
+  void readsEventsDroppedFromAFullRingBackFromTheJournal() throws Exception {
+    RecordingSubscriber subscriber = new RecordingSubscriber(0);
+    TransitionOutbox outbox = open(subscriber, 2);
+    FakeJournal journal = new FakeJournal(outbox);
+    outbox.setSource(journal);
+    try {
+      // The writer never waits for room, however far the drainer falls behind
+      for (int position = 1; position <= 2000; position++) {
+        journal.transitioned(position, "B");
+        if (position % 10 == 0) {
+          // A cascade: a second hop of the same record
+          journal.transitioned(position, "C");
+        }
+      }
+
+      await(() -> subscriber.delivered().size() == journal.positions.size());
+      assertThat(registry.counter("logistics.outbox.overflow").count()).isPositive();
+      List<OutboxEvent> delivered = subscriber.delivered();
+      assertThat(delivered).extracting(OutboxEvent::getSource)
+          .containsExactlyElementsOf(journal.positions);
+      assertThat(delivered).extracting(OutboxEvent::getToState)
+          .containsExactlyElementsOf(journal.states);
+      assertThat(delivered).extracting(OutboxEvent::getSequence)
+          .isSortedAccordingTo(Long::compare).doesNotHaveDuplicates();
+    } finally {
+      outbox.close();
+    }
+  }
+
+  @Test
+  void refusesToStartWithoutTheJournal() {
+    StaticListableBeanFactory beans = new StaticListableBeanFactory();
+    assertThatThrownBy(() -> new TransitionOutbox(metrics,
+        beans.getBeanProvider(OutboxSubscriber.class), false, dir.toString(), 4096, 64, 16, 1))
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  private TransitionOutbox open(OutboxSubscriber subscriber) throws IOException {
+    return open(subscriber, 64);
+  }
+
+  private TransitionOutbox open(OutboxSubscriber subscriber, int capacity) throws IOException {
+    StaticListableBeanFactory beans = new StaticListableBeanFactory();
+    beans.addBean("subscriber", subscriber);
+    return new TransitionOutbox(metrics, beans.getBeanProvider(OutboxSubscriber.class), true,
+        dir.toString(), 4096, capacity, 16, 1);
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!condition.getAsBoolean()) {
+      assertThat(System.nanoTime() - deadline).as("timed out").isNegative();
+      Thread.sleep(10);
+    }
+  }
+
+  /**
+   * Keeps every hop it hands to the outbox, as the journal does, and reads them back.
+   */
+  private static final class FakeJournal implements TransitionSource {
+
+    // The position and target state of each hop
+    final List<Long> positions = new CopyOnWriteArrayList<>();
+    final List<String> states = new CopyOnWriteArrayList<>();
+    private final TransitionOutbox outbox;
+
+    FakeJournal(TransitionOutbox outbox) {
+      this.outbox = outbox;
+    }
+
+    void transitioned(long position, String toState) {
+      positions.add(position);
+      states.add(toState);
+      outbox.transitioned(position, 1, 0, "A", toState, "go", "r1", 1L);
+    }
+
+    @Override
+    public long readTransitions(long position, int skippedHops, Handler handler)
+        throws IOException {
+      long last = 0;
+      int skipped = 0;
+      for (int i = 0; i < positions.size(); i++) {
+        long hopPosition = positions.get(i);
+        if (hopPosition < position || (hopPosition == position && skipped++ < skippedHops)) {
+          continue;
+        }
+        handler.transitioned(hopPosition, 1, 0, "A", states.get(i), "go", "r1", 1L);
+        last = hopPosition;
+      }
+      return last;
+    }
+  }
+
+  /**
+   * Fails its first deliveries, then records every event delivered.
+   */
+  private static final class RecordingSubscriber implements OutboxSubscriber {
+
+    final AtomicInteger attempts = new AtomicInteger();
+    private final int failures;
+    private final List<OutboxEvent> events = new ArrayList<>();
+
+    RecordingSubscriber(int failures) {
+      this.failures = failures;
+    }
+
+    @Override
+    public String getName() {
+      return "recording";
+    }
+
+    @Override
+    public synchronized void deliver(List<OutboxEvent> batch) throws IOException {
+      if (attempts.incrementAndGet() <= failures) {
+        throw new IOException("Subscriber unavailable");
+      }
+      events.addAll(batch);
+    }
+
+    synchronized List<OutboxEvent> delivered() {
+      return Collections.unmodifiableList(new ArrayList<>(events));
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package com.example.logistics.reposity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.logistics.result.Content;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ContentCatalogTest {
+
+  private static final LocalDateTime EPOCH = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void compactionDropsReplacedAndRemovedRecords() throws Exception {
+    try (ContentCatalog catalog = ContentCatalog.open(dir, 4096)) {
+      for (int id = 1; id <= 10; id++) {
+        catalog.put(content(id, "v1"));
+      }
+      catalog.put(content(3, "v2"));
+      catalog.remove(5);
+      int before = catalog.writtenBytes();
+
+      catalog.compact();
+
+      assertThat(catalog.writtenBytes()).isLessThan(before);
+      assertThat(catalog.get(3).getName()).isEqualTo("v2");
+      assertThat(catalog.get(5)).isNull();
+      assertThat(catalog.get(10).getName()).isEqualTo("v1");
+
+      // Records written and removed after the swap land in the new file
+      catalog.put(content(11, "v1"));
+      catalog.remove(10);
+      catalog.compact();
+      assertThat(catalog.get(11).getName()).isEqualTo("v1");
+      assertThat(catalog.get(10)).isNull();
+      assertThat(catalog.get(3).getName()).isEqualTo("v2");
+    }
+  }
+
+  @Test
+  void writesDuringCompactionSurviveTheSwap() throws Exception {
+    try (ContentCatalog catalog = ContentCatalog.open(dir, 4096)) {
+      Map<Integer, String> expected = new HashMap<>();
+      AtomicBoolean done = new AtomicBoolean();
+      Thread compactor = new Thread(() -> {
+        while (!done.get()) {
+          try {
+            catalog.compact();
+          } catch (Exception e) {
+            throw new IllegalStateException(e);
+          }
+        }
+      });
+      compactor.start();
+      Random random = new Random(42);
+      for (int i = 0; i < 20_000; i++) {
+        int id = 1 + random.nextInt(200);
+        if (random.nextInt(4) == 0) {
+          catalog.remove(id);
+          expected.remove(id);
+        } else {
+          String name = "n" + i;
+          catalog.put(content(id, name));
+          expected.put(id, name);
+        }
+      }
+      done.set(true);
+      compactor.join();
+      catalog.compact();
+
+      for (int id = 1; id <= 200; id++) {
+        Content content = catalog.get(id);
+        assertThat(content == null ? null : content.getName()).as("id %d", id)
+            .isEqualTo(expected.get(id));
+      }
+    }
+  }
+
+  private static Content content(int id, String name) {
+    return new Content(id, name, "desc", "creator", EPOCH.plusSeconds(id));
+  }
+}
@@ -0,0 +1,109 @@
+package com.example.logistics.reposity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.logistics.result.Content;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+class ContentIndexTest {
+
+  private static final LocalDateTime EPOCH = LocalDateTime.of(2024, 1, 1, 0, 0);
+  private static final Comparator<Content> ORDER = Comparator
+      .comparing(Content::getCreatedTime, Comparator.reverseOrder())
+      .thenComparing(Content::getId, Comparator.reverseOrder());
+
+  private final ContentIndex index = new ContentIndex();
+
+  @Test
+  void ordersNewestFirstAndBreaksTiesByDescendingId() {
+    index.add(content(1, 0));
+    index.add(content(2, 5));
+    index.add(content(3, 5));
+    index.add(content(4, 2));
+
+    assertThat(ids(index.page(0, 10))).containsExactly(3, 2, 4, 1);
+    assertThat(ids(index.page(1, 2))).containsExactly(2, 4);
+    assertThat(index.page(4, 10)).isEmpty();
+  }
+
+  @Test
+  void replacingContentMovesItToItsNewRank() {
+    index.add(content(1, 0));
+    index.add(content(2, 1));
+    index.add(content(1, 2));
+
+    assertThat(index.size()).isEqualTo(2);
+    assertThat(ids(index.page(0, 10))).containsExactly(1, 2);
+    assertThat(index.get(1).getCreatedTime()).isEqualTo(EPOCH.plusSeconds(2));
+  }
+
+  @Test
+  void pageAfterStartsBehindTheCursorAndReportsItsRank() {
+    index.add(content(1, 0));
+    index.add(content(2, 5));
+    index.add(content(3, 5));
+    index.add(content(4, 2));
+
+    ContentIndex.Page page = index.pageAfter(EPOCH.plusSeconds(5), 2, 10);
+    assertThat(page.getOffset()).isEqualTo(2);
+    assertThat(ids(page.getItems())).containsExactly(4, 1);
+
+    // A cursor whose content was removed still seeks to where it would sort
+    index.remove(4);
+    page = index.pageAfter(EPOCH.plusSeconds(2), 4, 1);
+    assertThat(page.getOffset()).isEqualTo(2);
+    assertThat(ids(page.getItems())).containsExactly(1);
+  }
+
+  @Test
+  void matchesASortedListAcrossRandomUpdates() {
+    Random random = new Random(42);
+    Map<Integer, Content> expected = new HashMap<>();
+    for (int i = 0; i < 5000; i++) {
+      int id = random.nextInt(500);
+      if (random.nextInt(4) == 0) {
+        index.remove(id);
+        expected.remove(id);
+      } else {
+        // Few distinct times, so many contents tie on creation time
+        Content content = content(id, random.nextInt(50));
+        index.add(content);
+        expected.put(id, content);
+      }
+    }
+    List<Content> sorted = expected.values().stream().sorted(ORDER).collect(Collectors.toList());
+
+    assertThat(index.size()).isEqualTo(sorted.size());
+    for (int offset = 0; offset <= sorted.size(); offset += 7) {
+      assertThat(index.page(offset, 10))
+          .containsExactlyElementsOf(sorted.subList(offset, Math.min(offset + 10, sorted.size())));
+    }
+    for (int rank = 0; rank < sorted.size(); rank++) {
+      Content cursor = sorted.get(rank);
+      ContentIndex.Page page = index.pageAfter(cursor.getCreatedTime(), cursor.getId(), 3);
+      assertThat(page.getOffset()).isEqualTo(rank + 1);
+      assertThat(page.getItems())
+          .containsExactlyElementsOf(sorted.subList(rank + 1, Math.min(rank + 4, sorted.size())));
+    }
+  }
+
+  private static Content content(int id, int second) {
+    return new Content(id, "content-" + id, "", "tester", EPOCH.plusSeconds(second));
+  }
+
+  private static List<Integer> ids(List<Content> contents) {
+    List<Integer> ids = new ArrayList<>();
+    for (Content content : contents) {
+      ids.add(content.getId());
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,115 @@
+package com.example.logistics.reposity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class IntRecordTableTest {
+
+  private final IntRecordTable<Entry> table = new IntRecordTable<>(entry -> entry.key);
+
+  @Test
+  void replacesRecordWithTheSameKey() {
+    assertThat(table.put(new Entry(7, "a"))).isNull();
+    assertThat(table.put(new Entry(7, "b")).value).isEqualTo("a");
+
+    assertThat(table.get(7).value).isEqualTo("b");
+    assertThat(table.size()).isEqualTo(1);
+  }
+
+  @Test
+  void findsKeysProbedPastTombstones() {
+    for (int key = 0; key < 1000; key++) {
+      table.put(new Entry(key, "first"));
+    }
+    for (int key = 0; key < 1000; key += 2) {
+      assertThat(table.remove(key)).isNotNull();
+    }
+
+    for (int key = 0; key < 1000; key += 2) {
+      assertThat(table.get(key)).as("key %d", key).isNull();
+    }
+    for (int key = 1; key < 1000; key += 2) {
+      assertThat(table.get(key).key).as("key %d", key).isEqualTo(key);
+    }
+    assertThat(table.size()).isEqualTo(500);
+  }
+
+  @Test
+  void replacingAfterTombstoneKeepsOneRecordPerKey() {
+    for (int key = 0; key < 1000; key++) {
+      table.put(new Entry(key, "first"));
+    }
+    for (int key = 0; key < 1000; key += 2) {
+      table.remove(key);
+    }
+    // Each put must replace the live record further down its chain, not reuse a tombstone
+    for (int key = 1; key < 1000; key += 2) {
+      assertThat(table.put(new Entry(key, "second"))).isNotNull();
+    }
+    for (int key = 1; key < 1000; key += 2) {
+      table.remove(key);
+    }
+
+    assertThat(table.size()).isZero();
+    assertThat(table.values()).isEmpty();
+  }
+
+  @Test
+  void rebuildsBeforeTombstonesFillTheTable() {
+    // Without a rebuild, tombstones would leave no empty slot and a miss would probe forever
+    assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+      for (int key = 0; key < 100_000; key++) {
+        table.put(new Entry(key, "churn"));
+        table.remove(key);
+      }
+      assertThat(table.get(-1)).isNull();
+    });
+    assertThat(table.size()).isZero();
+  }
+
+  @Test
+  void readersFindStableKeysWhileTheTableIsRebuilt() throws InterruptedException {
+    for (int key = 0; key < 100; key++) {
+      table.put(new Entry(key, "stable"));
+    }
+    AtomicBoolean done = new AtomicBoolean();
+    AtomicInteger misses = new AtomicInteger();
+    Thread reader = new Thread(() -> {
+      while (!done.get()) {
+        for (int key = 0; key < 100; key++) {
+          if (table.get(key) == null) {
+            misses.incrementAndGet();
+          }
+        }
+      }
+    });
+    reader.start();
+    for (int key = 100; key < 200_000; key++) {
+      table.put(new Entry(key, "churn"));
+      if (key % 4 != 0) {
+        table.remove(key);
+      }
+    }
+    done.set(true);
+    reader.join();
+
+    assertThat(misses.get()).isZero();
+    assertThat(table.size()).isEqualTo(100 + (200_000 - 100) / 4);
+  }
+
+  private static final class Entry {
+
+    final int key;
+    final String value;
+
+    Entry(int key, String value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+}
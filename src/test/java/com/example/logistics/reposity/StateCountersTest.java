@@ -0,0 +1,65 @@
+package com.example.logistics.reposity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class StateCountersTest {
+
+  // The counters are shared, so each test keeps to applications of its own
+  private static final int APP = -2201;
+  private static final int OTHER_APP = -2202;
+  private static final int CONCURRENT_APP = -2203;
+
+  @Test
+  void countsWorkflowsPerApplicationAndState() {
+    StateCounters.increment(APP, "A");
+    StateCounters.increment(APP, "A");
+    StateCounters.increment(OTHER_APP, "A");
+    StateCounters.move(APP, "A", "B");
+    StateCounters.decrement(OTHER_APP, "A");
+
+    assertThat(StateCounters.snapshot(APP))
+        .containsOnlyKeys(APP)
+        .extractingByKey(APP)
+        .satisfies(states -> assertThat(states).containsOnly(entry("A", 1L), entry("B", 1L)));
+    assertThat(StateCounters.snapshot(OTHER_APP).get(OTHER_APP)).containsOnly(entry("A", 0L));
+    assertThat(StateCounters.snapshot(null)).containsKeys(APP, OTHER_APP);
+    assertThat(StateCounters.snapshot(Integer.MIN_VALUE)).isEmpty();
+  }
+
+  @Test
+  void settlesOnceConcurrentMovesFinish() throws Exception {
+    int workflows = 1000;
+    for (int i = 0; i < workflows; i++) {
+      StateCounters.increment(CONCURRENT_APP, "A");
+    }
+    ExecutorService threads = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> done = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        done.add(threads.submit(() -> {
+          for (int i = 0; i < workflows / 4; i++) {
+            StateCounters.move(CONCURRENT_APP, "A", "B");
+            StateCounters.move(CONCURRENT_APP, "B", "C");
+          }
+        }));
+      }
+      for (Future<?> thread : done) {
+        thread.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      threads.shutdownNow();
+    }
+
+    assertThat(StateCounters.snapshot(CONCURRENT_APP).get(CONCURRENT_APP))
+        .containsOnly(entry("A", 0L), entry("B", 0L), entry("C", (long) workflows));
+  }
+}
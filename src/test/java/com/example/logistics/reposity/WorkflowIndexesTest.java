@@ -0,0 +1,59 @@
+package com.example.logistics.reposity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+class WorkflowIndexesTest {
+
+  // The indexes are shared, so each test keeps to keys of its own
+  private static final int APP = -2101;
+  private static final int OTHER_APP = -2102;
+
+  @Test
+  void findsWorkflowsMatchingEveryCriterion() {
+    WorkflowIndexes.add(1, APP, "idx-A", Arrays.asList("idx-r1", "idx-r2"));
+    WorkflowIndexes.add(2, APP, "idx-B", Collections.singletonList("idx-r1"));
+    WorkflowIndexes.add(3, OTHER_APP, "idx-A", Collections.singletonList("idx-r2"));
+
+    assertThat(WorkflowIndexes.find(APP, null, null).toArray()).containsExactly(1, 2);
+    assertThat(WorkflowIndexes.find(null, "idx-A", null).toArray()).containsExactly(1, 3);
+    assertThat(WorkflowIndexes.find(APP, "idx-A", "idx-r2").toArray()).containsExactly(1);
+    assertThat(WorkflowIndexes.find(APP, "idx-unknown", null).isEmpty()).isTrue();
+    assertThat(WorkflowIndexes.find(null, null, null).isEmpty()).isTrue();
+  }
+
+  @Test
+  void movesAWorkflowBetweenStatesAndRoles() {
+    WorkflowIndexes.add(4, APP, "mv-A", Arrays.asList("mv-r1", "mv-r2"));
+
+    WorkflowIndexes.move(4, "mv-A", Arrays.asList("mv-r1", "mv-r2"), "mv-B",
+        Arrays.asList("mv-r2", "mv-r3"));
+
+    assertThat(WorkflowIndexes.find(null, "mv-A", null).isEmpty()).isTrue();
+    assertThat(WorkflowIndexes.find(null, "mv-B", null).toArray()).containsExactly(4);
+    assertThat(WorkflowIndexes.find(null, null, "mv-r1").isEmpty()).isTrue();
+    assertThat(WorkflowIndexes.find(null, null, "mv-r2").toArray()).containsExactly(4);
+    assertThat(WorkflowIndexes.find(null, null, "mv-r3").toArray()).containsExactly(4);
+
+    WorkflowIndexes.remove(4, APP, "mv-B", Arrays.asList("mv-r2", "mv-r3"));
+
+    assertThat(WorkflowIndexes.find(null, "mv-B", null).isEmpty()).isTrue();
+    assertThat(WorkflowIndexes.find(null, null, "mv-r2").isEmpty()).isTrue();
+    assertThat(WorkflowIndexes.find(null, null, "mv-r3").isEmpty()).isTrue();
+  }
+
+  @Test
+  void returnsACopyUnaffectedByLaterChanges() {
+    WorkflowIndexes.add(5, APP, "cp-A", Collections.emptyList());
+
+    RoaringBitmap found = WorkflowIndexes.find(null, "cp-A", null);
+    WorkflowIndexes.remove(5, APP, "cp-A", Collections.emptyList());
+
+    assertThat(found.toArray()).containsExactly(5);
+    assertThat(WorkflowIndexes.find(null, "cp-A", null).isEmpty()).isTrue();
+  }
+}
@@ -0,0 +1,165 @@
+package com.example.logistics.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.logistics.model.Application;
+import com.example.logistics.model.Auth;
+import com.example.logistics.model.AuthorizationIndex;
+import com.example.logistics.model.Event;
+import com.example.logistics.model.Role;
+import com.example.logistics.model.Workflow;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the compiled authorization decisions against the scan they replaced.
+ */
+class AuthorizationServiceTest {
+
+  private static final List<String> STATES = Arrays.asList("A", "B", "C", "D");
+  private static final List<String> ROLES = Arrays.asList("r1", "r2", "r3");
+  private static final List<String> EVENTS = Arrays.asList("go", "back", "skip");
+
+  private final AuthorizationService service = new AuthorizationService();
+
+  @Test
+  void decidesLikeScanningTheApplicationAndWorkflow() {
+    Random random = new Random(42);
+    for (int round = 0; round < 500; round++) {
+      Application app = application(random);
+      Workflow workflow = workflow(random);
+      AuthorizationIndex index = service.compile(service.compile(app), workflow);
+
+      List<String> roles = new ArrayList<>(ROLES);
+      roles.add("unknown");
+      List<String> actions = new ArrayList<>(EVENTS);
+      // An action named after the role is always allowed
+      actions.addAll(roles);
+      for (String role : roles) {
+        for (String action : actions) {
+          assertThat(service.authorize(index, action, role))
+              .as("%s by %s in round %d", action, role, round)
+              .isEqualTo(scan(app, workflow, action, role));
+        }
+      }
+      for (String state : STATES) {
+        assertThat(index.getActionableRoles(state))
+            .as("roles acting in %s in round %d", state, round)
+            .isEqualTo(actionableRoles(app, workflow, state));
+      }
+    }
+  }
+
+  @Test
+  void usesTheFirstRoleOfAName() {
+    Application app = new Application();
+    app.setRoles(Arrays.asList(role("r1", new Auth("A", "B")), role("r1", new Auth("B", "C"))));
+    Workflow workflow = new Workflow();
+    workflow.setEvents(Arrays.asList(event("go", "r1", "A", "B"), event("finish", "r1", "B", "C")));
+
+    AuthorizationIndex index = service.compile(service.compile(app), workflow);
+
+    assertThat(service.authorize(index, "go", "r1")).isTrue();
+    assertThat(service.authorize(index, "finish", "r1")).isFalse();
+    assertThat(index.getActionableRoles("A")).containsExactly("r1");
+    assertThat(index.getActionableRoles("B")).isEmpty();
+  }
+
+  /**
+   * The scan that decided every action before the decisions were compiled.
+   */
+  private static boolean scan(Application app, Workflow workflow, String action, String role) {
+    if (action.equals(role)) {
+      return true;
+    }
+    List<Auth> roleAuths = null;
+    for (Role appRole : app.getRoles()) {
+      if (appRole.getRole().equals(role)) {
+        roleAuths = appRole.getAuth();
+        break;
+      }
+    }
+    if (roleAuths == null) {
+      return false;
+    }
+    for (Event event : workflow.getEvents()) {
+      if (event.getName().equals(action) && event.getRole().equals(role)) {
+        for (Auth auth : roleAuths) {
+          if (event.getFromState().equals(auth.getFromState())
+              && event.getToState().equals(auth.getToState())) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  private static Set<String> actionableRoles(Application app, Workflow workflow, String state) {
+    // The roles of the events leaving the state whose own transition the role may make
+    Set<String> roles = new HashSet<>();
+    for (Event event : workflow.getEvents()) {
+      if (event.getFromState().equals(state)) {
+        Workflow single = new Workflow();
+        single.setEvents(Arrays.asList(event));
+        if (!event.getName().equals(event.getRole())
+            && scan(app, single, event.getName(), event.getRole())) {
+          roles.add(event.getRole());
+        }
+      }
+    }
+    return roles;
+  }
+
+  private static Application application(Random random) {
+    // Role names may repeat, and a role may have no authorizations at all
+    List<Role> roles = new ArrayList<>();
+    for (int i = random.nextInt(5); i > 0; i--) {
+      Auth[] auths = new Auth[random.nextInt(4)];
+      for (int j = 0; j < auths.length; j++) {
+        auths[j] = new Auth(pick(random, STATES), pick(random, STATES));
+      }
+      roles.add(role(pick(random, ROLES), auths));
+    }
+    Application app = new Application();
+    app.setRoles(roles);
+    return app;
+  }
+
+  private static Workflow workflow(Random random) {
+    // Event names may repeat, for different roles or transitions
+    List<Event> events = new ArrayList<>();
+    for (int i = random.nextInt(6); i > 0; i--) {
+      events.add(event(pick(random, EVENTS), pick(random, ROLES),
+          pick(random, STATES), pick(random, STATES)));
+    }
+    Workflow workflow = new Workflow();
+    workflow.setEvents(events);
+    return workflow;
+  }
+
+  private static Role role(String name, Auth... auths) {
+    Role role = new Role();
+    role.setRole(name);
+    role.setAuth(Arrays.asList(auths));
+    return role;
+  }
+
+  private static Event event(String name, String role, String from, String to) {
+    Event event = new Event();
+    event.setName(name);
+    event.setRole(role);
+    event.setFromState(from);
+    event.setToState(to);
+    return event;
+  }
+
+  private static String pick(Random random, List<String> values) {
+    return values.get(random.nextInt(values.size()));
+  }
+}
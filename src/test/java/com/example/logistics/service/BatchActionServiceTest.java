@@ -0,0 +1,120 @@
+package com.example.logistics.service;
+
+import static com.example.logistics.TestFixtures.ROLE;
+import static com.example.logistics.TestFixtures.application;
+import static com.example.logistics.TestFixtures.forget;
+import static com.example.logistics.TestFixtures.journal;
+import static com.example.logistics.TestFixtures.require;
+import static com.example.logistics.TestFixtures.service;
+import static com.example.logistics.TestFixtures.workflow;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.logistics.journal.JournalService;
+import com.example.logistics.metrics.WorkflowMetrics;
+import com.example.logistics.model.Action;
+import com.example.logistics.reposity.WorkflowDatabase;
+import com.example.logistics.result.ApiResponse;
+import com.example.logistics.result.BatchApiResponse;
+import com.example.logistics.result.ReturnCode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Performs batches of actions through a {@link BatchActionService}.
+ */
+class BatchActionServiceTest {
+
+  private static final int WORKFLOWS = 50;
+
+  @TempDir
+  Path dir;
+
+  private final WorkflowMetrics metrics = new WorkflowMetrics(new SimpleMeterRegistry());
+  private final List<Integer> workflowIds = new ArrayList<>();
+  private JournalService journal;
+  private BatchActionService batch;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    journal = journal(dir, metrics);
+    WorkflowService service = service(journal, metrics);
+    batch = new BatchActionService(service, 4, 16);
+    int appId = require(service.createApp(application()));
+    for (int i = 0; i < WORKFLOWS; i++) {
+      workflowIds.add(require(service.createWorkflow(workflow(appId, "B"))));
+    }
+  }
+
+  @AfterEach
+  void tearDown() {
+    batch.shutdown();
+    journal.close();
+    for (int id : workflowIds) {
+      forget(id);
+    }
+  }
+
+  @Test
+  void appliesTheActionsOfOneWorkflowInSubmissionOrder() {
+    // Actions on the same workflow are spread through the batch, between those of the others
+    List<Action> actions = new ArrayList<>();
+    for (String name : new String[] {"finish", "go", "finish", "go"}) {
+      for (int id : workflowIds) {
+        actions.add(action(id, name));
+      }
+    }
+
+    BatchApiResponse response = batch.workflowActions(actions);
+
+    assertThat(response.getState()).isEqualTo(ReturnCode.SUCCESS);
+    List<ApiResponse> results = response.getData();
+    assertThat(results).hasSize(actions.size());
+    for (int i = 0; i < WORKFLOWS; i++) {
+      int id = workflowIds.get(i);
+      // Each result sits at the position of its action
+      assertThat(states(results, i)).containsExactly(ReturnCode.ILLEGAL_STATE_TRANSITION,
+          ReturnCode.SUCCESS, ReturnCode.SUCCESS, ReturnCode.ILLEGAL_STATE_TRANSITION);
+      assertThat(results.get(i).getData().getId()).isEqualTo(id);
+      assertThat(WorkflowDatabase.get(id).getMachine().getState()).isEqualTo("C");
+      assertThat(WorkflowDatabase.get(id).getMachine().getVersion()).isEqualTo(2);
+    }
+  }
+
+  @Test
+  void failsAnActionOnAMissingWorkflowWithoutFailingTheBatch() {
+    int id = workflowIds.get(0);
+    List<Action> actions = new ArrayList<>();
+    actions.add(action(id, "go"));
+    actions.add(action(Integer.MAX_VALUE, "go"));
+    actions.add(action(id, "finish"));
+
+    List<ApiResponse> results = batch.workflowActions(actions).getData();
+
+    assertThat(results).extracting(ApiResponse::getState).containsExactly(ReturnCode.SUCCESS,
+        ReturnCode.FLOW_ID_NOT_EXIST, ReturnCode.SUCCESS);
+    assertThat(results.get(1).getData().getId()).isEqualTo(Integer.MAX_VALUE);
+    assertThat(WorkflowDatabase.get(id).getMachine().getState()).isEqualTo("C");
+  }
+
+  private static List<ReturnCode> states(List<ApiResponse> results, int offset) {
+    List<ReturnCode> states = new ArrayList<>();
+    for (int i = offset; i < results.size(); i += WORKFLOWS) {
+      states.add(results.get(i).getState());
+    }
+    return states;
+  }
+
+  private static Action action(int id, String name) {
+    Action action = new Action();
+    action.setId(id);
+    action.setAction(name);
+    action.setRole(ROLE);
+    return action;
+  }
+}
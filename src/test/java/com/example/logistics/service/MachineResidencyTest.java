@@ -0,0 +1,53 @@
+package com.example.logistics.service;
+
+import static com.example.logistics.TestFixtures.event;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.logistics.fsm.engine.ResidentFsmMachine;
+import com.example.logistics.fsm.engine.TransitionTable;
+import com.example.logistics.metrics.WorkflowMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class MachineResidencyTest {
+
+  @Test
+  void parksTheMachineUnusedSinceTheHandPassedOnceTheBoundIsCrossed() throws Exception {
+    MachineResidency residency = new MachineResidency(
+        new WorkflowMetrics(new SimpleMeterRegistry()), true, 2, 0, 3600);
+    try {
+      TransitionTable table = TransitionTable.compile(
+          Collections.singletonList(event("go", "A", "B")), "A", "B");
+      List<ResidentFsmMachine> machines = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        machines.add((ResidentFsmMachine) residency.wrap(table, table.newMachine()));
+      }
+      // Every machine is new to the hand, so each gets its second chance and the oldest goes
+      awaitResident(machines, 2);
+      assertThat(machines.get(0).isResident()).isFalse();
+
+      // Rebuilding it crosses the bound again, and the next machine on the clock goes
+      assertThat(machines.get(0).sendEvent("go")).isTrue();
+      awaitResident(machines, 2);
+      assertThat(machines.get(0).isResident()).isTrue();
+      assertThat(machines.get(1).isResident()).isFalse();
+      assertThat(machines.get(0).getState()).isEqualTo("B");
+    } finally {
+      residency.close();
+    }
+  }
+
+  private static void awaitResident(List<ResidentFsmMachine> machines, int count)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (machines.stream().filter(ResidentFsmMachine::isResident).count() != count
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertThat(machines.stream().filter(ResidentFsmMachine::isResident).count())
+        .isEqualTo(count);
+  }
+}
@@ -0,0 +1,152 @@
+package com.example.logistics.service;
+
+import static com.example.logistics.TestFixtures.application;
+import static com.example.logistics.TestFixtures.forget;
+import static com.example.logistics.TestFixtures.journal;
+import static com.example.logistics.TestFixtures.require;
+import static com.example.logistics.TestFixtures.service;
+import static com.example.logistics.TestFixtures.workflow;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.logistics.fsm.engine.CompiledFsmEngine;
+import com.example.logistics.journal.JournalService;
+import com.example.logistics.metrics.WorkflowMetrics;
+import com.example.logistics.model.Workflow;
+import com.example.logistics.reposity.WorkflowDatabase;
+import com.example.logistics.reposity.WorkflowRecord;
+import com.example.logistics.result.ApiResponse;
+import com.example.logistics.result.BatchApiResponse;
+import com.example.logistics.result.ReturnCode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Imports workflows in bulk through a {@link WorkflowImportService}.
+ */
+class WorkflowImportServiceTest {
+
+  @TempDir
+  Path dir;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final WorkflowMetrics metrics = new WorkflowMetrics(new SimpleMeterRegistry());
+  private final List<String> names = new ArrayList<>();
+  private JournalService journal;
+  private WorkflowService service;
+  private WorkflowImportService imports;
+  private int appId;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    journal = journal(dir, metrics);
+    service = service(journal, metrics);
+    imports = new WorkflowImportService(service, new AuthorizationService(),
+        new CompiledFsmEngine(), metrics, objectMapper, 2);
+    appId = require(service.createApp(application()));
+  }
+
+  @AfterEach
+  void tearDown() {
+    imports.shutdown();
+    journal.close();
+    for (String name : names) {
+      WorkflowRecord record = WorkflowDatabase.getByName(name);
+      if (record != null) {
+        forget(record.getId());
+      }
+    }
+  }
+
+  @Test
+  void addsNothingUnlessEveryWorkflowIsValid() throws Exception {
+    Workflow existing = track(workflow(appId, "B")).get(0);
+    int existingId = require(service.createWorkflow(existing));
+    Workflow missingApp = workflow(Integer.MAX_VALUE, "B");
+    Workflow first = workflow(appId, "B");
+    Workflow second = workflow(appId, "D");
+    Workflow twin = workflow(appId, "D");
+    twin.setName(second.getName());
+    Workflow taken = workflow(appId, "B");
+    taken.setName(existing.getName());
+    List<Workflow> workflows = track(first, missingApp, second, twin, taken, null);
+
+    BatchApiResponse response = imports.importWorkflows(workflows, true);
+
+    assertThat(response.getState()).isEqualTo(ReturnCode.INVALID_INPUT_PARAMETER);
+    // The valid workflows report why they were left out, and the others what is wrong with them
+    assertThat(response.getData()).extracting(ApiResponse::getState).containsExactly(
+        ReturnCode.BATCH_ABORTED, ReturnCode.APP_ID_NOT_EXIST, ReturnCode.BATCH_ABORTED,
+        ReturnCode.DUPLICATE_WORKFLOW_NAME, ReturnCode.DUPLICATE_WORKFLOW_NAME,
+        ReturnCode.INVALID_INPUT_PARAMETER);
+    assertThat(response.getData()).allSatisfy(item -> assertThat(item.getData().getId()).isNull());
+    assertThat(WorkflowDatabase.getByName(first.getName())).isNull();
+    assertThat(WorkflowDatabase.getByName(second.getName())).isNull();
+    assertThat(WorkflowDatabase.getByName(existing.getName()).getId()).isEqualTo(existingId);
+  }
+
+  @Test
+  void addsEveryWorkflowOfAValidBatchTogether() {
+    List<Workflow> workflows = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      workflows.add(workflow(appId, i % 2 == 0 ? "B" : "D"));
+    }
+    track(workflows.toArray(new Workflow[0]));
+
+    BatchApiResponse response = imports.importWorkflows(workflows, true);
+
+    assertThat(response.getState()).isEqualTo(ReturnCode.SUCCESS);
+    for (int i = 0; i < workflows.size(); i++) {
+      int id = require(response.getData().get(i));
+      WorkflowRecord record = WorkflowDatabase.get(id);
+      assertThat(record.getWorkflow().getName()).isEqualTo(workflows.get(i).getName());
+      assertThat(record.getMachine().getState()).isEqualTo("A");
+    }
+  }
+
+  @Test
+  void addsTheValidWorkflowsAndReportsEachInvalidOne() throws Exception {
+    Workflow first = workflow(appId, "B");
+    Workflow missingApp = workflow(Integer.MAX_VALUE, "B");
+    Workflow second = workflow(appId, "D");
+    Workflow twin = workflow(appId, "D");
+    twin.setName(second.getName());
+    track(first, missingApp, second, twin);
+    // One workflow per line, as a stream
+    StringBuilder json = new StringBuilder();
+    for (Workflow workflow : Arrays.asList(first, missingApp, second, twin)) {
+      json.append(objectMapper.writeValueAsString(workflow)).append('\n');
+    }
+
+    BatchApiResponse response = imports.importWorkflows(
+        new ByteArrayInputStream(json.toString().getBytes(StandardCharsets.UTF_8)), false);
+
+    assertThat(response.getState()).isEqualTo(ReturnCode.SUCCESS);
+    List<ApiResponse> items = response.getData();
+    assertThat(items).extracting(ApiResponse::getState).containsExactly(ReturnCode.SUCCESS,
+        ReturnCode.APP_ID_NOT_EXIST, ReturnCode.SUCCESS, ReturnCode.DUPLICATE_WORKFLOW_NAME);
+    assertThat(WorkflowDatabase.getByName(first.getName()).getId())
+        .isEqualTo(items.get(0).getData().getId());
+    assertThat(WorkflowDatabase.getByName(second.getName()).getId())
+        .isEqualTo(items.get(2).getData().getId());
+    assertThat(items.get(3).getData().getId()).isNull();
+  }
+
+  private List<Workflow> track(Workflow... workflows) {
+    for (Workflow workflow : workflows) {
+      if (workflow != null) {
+        names.add(workflow.getName());
+      }
+    }
+    return Arrays.asList(workflows);
+  }
+}
@@ -0,0 +1,98 @@
+package com.example.logistics.service;
+
+import static com.example.logistics.TestFixtures.ROLE;
+import static com.example.logistics.TestFixtures.application;
+import static com.example.logistics.TestFixtures.forget;
+import static com.example.logistics.TestFixtures.journal;
+import static com.example.logistics.TestFixtures.require;
+import static com.example.logistics.TestFixtures.service;
+import static com.example.logistics.TestFixtures.workflow;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.logistics.journal.JournalService;
+import com.example.logistics.metrics.WorkflowMetrics;
+import com.example.logistics.model.Workflow;
+import com.example.logistics.reposity.WorkflowDatabase;
+import com.example.logistics.reposity.WorkflowIndexes;
+import com.example.logistics.result.ReturnCode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Keeps the {@link WorkflowIndexes} in step with a {@link WorkflowService} through a
+ * {@link WorkflowIndexer}.
+ */
+class WorkflowIndexerTest {
+
+  @TempDir
+  Path dir;
+
+  private final WorkflowMetrics metrics = new WorkflowMetrics(new SimpleMeterRegistry());
+  private JournalService journal;
+  private WorkflowService service;
+  private int appId;
+  private int id;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    journal = journal(dir, metrics);
+    service = service(journal, metrics, new WorkflowIndexer());
+    appId = require(service.createApp(application()));
+    id = require(service.createWorkflow(workflow(appId, "B")));
+  }
+
+  @AfterEach
+  void tearDown() {
+    journal.close();
+    forget(id);
+  }
+
+  @Test
+  void followsTransitions() {
+    assertIndexed("A", true);
+
+    require(service.workflowAction(id, "go", ROLE));
+    assertIndexed("B", true);
+
+    // No role acts on a workflow at its end state
+    require(service.workflowAction(id, "finish", ROLE));
+    assertIndexed("C", false);
+  }
+
+  @Test
+  void followsUpdates() throws Exception {
+    Workflow detour = workflow(appId, "D");
+    detour.setId(id);
+    detour.setName(WorkflowDatabase.get(id).getWorkflow().getName());
+    require(service.updateWorkflow(detour));
+    assertIndexed("A", true);
+
+    // The replacement moves on its own definition
+    require(service.workflowAction(id, "go", ROLE));
+    assertIndexed("D", true);
+  }
+
+  @Test
+  void forgetsADeletedWorkflow() {
+    assertThat(service.deleteWorkflow(id).getState()).isEqualTo(ReturnCode.SUCCESS);
+
+    assertThat(WorkflowIndexes.find(appId, null, null).isEmpty()).isTrue();
+    assertThat(WorkflowIndexes.find(appId, "A", null).isEmpty()).isTrue();
+    assertThat(WorkflowIndexes.find(appId, null, ROLE).isEmpty()).isTrue();
+  }
+
+  private void assertIndexed(String state, boolean actionable) {
+    assertThat(WorkflowIndexes.find(appId, null, null).toArray()).containsExactly(id);
+    for (String code : new String[] {"A", "B", "C", "D"}) {
+      assertThat(WorkflowIndexes.find(appId, code, null).toArray())
+          .as("workflows in %s", code)
+          .containsExactly(code.equals(state) ? new int[] {id} : new int[0]);
+    }
+    assertThat(WorkflowIndexes.find(appId, null, ROLE).toArray())
+        .containsExactly(actionable ? new int[] {id} : new int[0]);
+  }
+}
@@ -0,0 +1,80 @@
+package com.example.logistics.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import org.junit.jupiter.api.Test;
+
+class WorkflowLocksTest {
+
+  @Test
+  void roundsTheStripeCountUpToAPowerOfTwo() {
+    assertThat(stripesUsed(new WorkflowLocks(5), 10_000)).isEqualTo(8);
+    assertThat(stripesUsed(new WorkflowLocks(8), 10_000)).isEqualTo(8);
+    assertThat(stripesUsed(new WorkflowLocks(1), 10_000)).isEqualTo(2);
+  }
+
+  @Test
+  void guardsAnIdWithTheSameLockAndKeepsInstancesApart() {
+    WorkflowLocks locks = new WorkflowLocks(16);
+    for (int id = 0; id < 100; id++) {
+      assertThat(locks.forWorkflow(id)).isSameAs(locks.forWorkflow(id));
+      assertThat(locks.forInstance(id)).isSameAs(locks.forInstance(id));
+      assertThat(locks.forInstance(id)).isNotSameAs(locks.forWorkflow(id));
+    }
+  }
+
+  @Test
+  void takesTheStripesOfSeveralInstancesOnceAndInTheSameOrder() {
+    WorkflowLocks locks = new WorkflowLocks(4);
+    List<Integer> ids = new ArrayList<>();
+    for (int id = 1; id <= 50; id++) {
+      ids.add(id);
+    }
+    List<Lock> held = locks.forInstances(ids);
+
+    assertThat(held).hasSize(4).doesNotHaveDuplicates();
+    for (int id : ids) {
+      assertThat(held).contains(locks.forInstance(id));
+    }
+    // Callers taking overlapping sets in any order agree on the order of the shared stripes
+    Collections.reverse(ids);
+    assertThat(locks.forInstances(ids)).containsExactlyElementsOf(held);
+    List<Lock> some = locks.forInstances(ids.subList(0, 3));
+    assertThat(held).containsSubsequence(some);
+    assertThat(locks.forInstances(Collections.emptyList())).isEmpty();
+  }
+
+  @Test
+  void spreadsSequentialAndStridedIdsOverTheStripes() {
+    int stripes = 1024;
+    WorkflowLocks locks = new WorkflowLocks(stripes);
+    // Eight IDs per stripe on average, and no stripe takes more than three times that
+    assertThat(maxLoad(locks, 1, stripes * 8)).isLessThanOrEqualTo(24);
+    // IDs sharing their low bits would all land on one stripe without the mix
+    assertThat(maxLoad(locks, stripes, stripes * 8)).isLessThanOrEqualTo(24);
+  }
+
+  private static int stripesUsed(WorkflowLocks locks, int ids) {
+    Set<Lock> used = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (int id = 0; id < ids; id++) {
+      used.add(locks.forWorkflow(id));
+    }
+    return used.size();
+  }
+
+  private static int maxLoad(WorkflowLocks locks, int stride, int ids) {
+    Map<Lock, Integer> load = new IdentityHashMap<>();
+    int max = 0;
+    for (int i = 1; i <= ids; i++) {
+      max = Math.max(max, load.merge(locks.forWorkflow(i * stride), 1, Integer::sum));
+    }
+    return max;
+  }
+}
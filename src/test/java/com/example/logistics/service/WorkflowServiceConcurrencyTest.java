@@ -0,0 +1,199 @@
+package com.example.logistics.service;
+
+import static com.example.logistics.TestFixtures.ROLE;
+import static com.example.logistics.TestFixtures.application;
+import static com.example.logistics.TestFixtures.forget;
+import static com.example.logistics.TestFixtures.journal;
+import static com.example.logistics.TestFixtures.require;
+import static com.example.logistics.TestFixtures.service;
+import static com.example.logistics.TestFixtures.workflow;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.logistics.journal.JournalService;
+import com.example.logistics.metrics.WorkflowMetrics;
+import com.example.logistics.reposity.InstanceDatabase;
+import com.example.logistics.reposity.WorkflowDatabase;
+import com.example.logistics.reposity.WorkflowRecord;
+import com.example.logistics.result.ApiResponse;
+import com.example.logistics.result.ReturnCode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Races many threads over the same workflows and instances of a {@link WorkflowService}.
+ *
+ * <p>Every thread sends every action to every ID, in its own order. Actions on one ID must apply
+ * one at a time, so each action succeeds exactly once and listeners see the hops in order, while
+ * actions on different IDs proceed in parallel.
+ */
+class WorkflowServiceConcurrencyTest {
+
+  private static final int THREADS = 8;
+  private static final int IDS = 200;
+
+  @TempDir
+  Path dir;
+
+  private final WorkflowMetrics metrics = new WorkflowMetrics(new SimpleMeterRegistry());
+  private final Hops hops = new Hops();
+  private final List<Integer> workflowIds = new ArrayList<>();
+  private JournalService journal;
+  private WorkflowService service;
+  private int appId;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    journal = journal(dir, metrics);
+    service = service(journal, metrics, hops);
+    appId = require(service.createApp(application()));
+  }
+
+  @AfterEach
+  void tearDown() {
+    journal.close();
+    for (int id : workflowIds) {
+      forget(id);
+    }
+  }
+
+  @Test
+  void appliesConcurrentActionsOnOneWorkflowOneAtATime() throws Exception {
+    List<Integer> ids = new ArrayList<>();
+    for (int i = 0; i < IDS; i++) {
+      ids.add(create());
+    }
+
+    Map<String, AtomicInteger> successes =
+        race(ids, (id, action) -> service.workflowAction(id, action, ROLE),
+            ReturnCode.ILLEGAL_STATE_TRANSITION);
+
+    for (int id : ids) {
+      assertThat(successes.get(id + "go")).hasValue(1);
+      assertThat(successes.get(id + "finish")).hasValue(1);
+      WorkflowRecord record = WorkflowDatabase.get(id);
+      assertThat(record.getMachine().getState()).isEqualTo("C");
+      assertThat(record.getMachine().getVersion()).isEqualTo(2);
+      assertThat(hops.of(id)).containsExactly("A>B", "B>C");
+    }
+  }
+
+  @Test
+  void appliesConcurrentActionsOnOneInstanceOneAtATime() throws Exception {
+    int workflowId = create();
+    List<Integer> ids = new ArrayList<>();
+    for (int i = 0; i < IDS; i++) {
+      ids.add(require(service.startInstance(workflowId)));
+    }
+
+    // An instance is reclaimed once it finishes, so an action that comes too late finds none
+    Map<String, AtomicInteger> successes =
+        race(ids, (id, action) -> service.instanceAction(id, action, ROLE),
+            ReturnCode.ILLEGAL_STATE_TRANSITION, ReturnCode.FLOW_ID_NOT_EXIST);
+
+    for (int id : ids) {
+      assertThat(successes.get(id + "go")).hasValue(1);
+      assertThat(successes.get(id + "finish")).hasValue(1);
+      assertThat(hops.of(-id)).containsExactly("A>B", "B>C");
+    }
+    // Every instance reached the end state and was reclaimed; the workflow itself never moved
+    assertThat(InstanceDatabase.getInstanceIds(workflowId)).isEmpty();
+    assertThat(WorkflowDatabase.get(workflowId).getMachine().getVersion()).isZero();
+  }
+
+  private Map<String, AtomicInteger> race(List<Integer> ids, Action action,
+      ReturnCode... refusals) throws Exception {
+    Map<String, AtomicInteger> successes = new ConcurrentHashMap<>();
+    for (int id : ids) {
+      successes.put(id + "go", new AtomicInteger());
+      successes.put(id + "finish", new AtomicInteger());
+    }
+    ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<?>> done = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        List<Integer> order = new ArrayList<>(ids);
+        Collections.shuffle(order, new Random(t));
+        done.add(threads.submit(() -> {
+          start.await();
+          for (int id : order) {
+            // "finish" before "go" has applied is refused, not reordered
+            for (String name : new String[] {"finish", "go", "finish"}) {
+              ApiResponse response = action.apply(id, name);
+              if (response.getState() == ReturnCode.SUCCESS) {
+                successes.get(id + name).incrementAndGet();
+              } else {
+                assertThat(response.getState()).isIn((Object[]) refusals);
+              }
+            }
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> thread : done) {
+        thread.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      threads.shutdownNow();
+    }
+    return successes;
+  }
+
+  private int create() throws Exception {
+    int id = require(service.createWorkflow(workflow(appId, "B")));
+    workflowIds.add(id);
+    return id;
+  }
+
+  private interface Action {
+
+    ApiResponse apply(int id, String action) throws Exception;
+  }
+
+  /**
+   * Records the hops of each workflow, and of each instance under its negated ID, as listeners see
+   * them.
+   */
+  private static final class Hops implements WorkflowListener {
+
+    private final Map<Integer, List<String>> hops = new ConcurrentHashMap<>();
+
+    List<String> of(int id) {
+      return hops.getOrDefault(id, Collections.emptyList());
+    }
+
+    @Override
+    public void workflowTransitioned(WorkflowRecord record, String fromState, String toState,
+        String event, String role) {
+      add(record.getId(), fromState, toState);
+    }
+
+    @Override
+    public void instanceTransitioned(WorkflowRecord record, int instanceId, String fromState,
+        String toState, String event, String role) {
+      add(-instanceId, fromState, toState);
+    }
+
+    private void add(int id, String fromState, String toState) {
+      // Not synchronized: the listener is called under the ID's lock, so a race shows up here
+      hops.computeIfAbsent(id, key -> new ArrayList<>()).add(fromState + ">" + toState);
+    }
+  }
+}
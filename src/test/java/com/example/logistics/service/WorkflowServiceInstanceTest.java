@@ -0,0 +1,166 @@
+package com.example.logistics.service;
+
+import static com.example.logistics.TestFixtures.ROLE;
+import static com.example.logistics.TestFixtures.application;
+import static com.example.logistics.TestFixtures.forget;
+import static com.example.logistics.TestFixtures.journal;
+import static com.example.logistics.TestFixtures.require;
+import static com.example.logistics.TestFixtures.service;
+import static com.example.logistics.TestFixtures.workflow;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.logistics.fsm.engine.FsmMachine;
+import com.example.logistics.fsm.engine.OffHeapFsmMachine;
+import com.example.logistics.fsm.engine.ResidentFsmMachine;
+import com.example.logistics.journal.JournalService;
+import com.example.logistics.metrics.WorkflowMetrics;
+import com.example.logistics.reposity.InstanceDatabase;
+import com.example.logistics.reposity.WorkflowDatabase;
+import com.example.logistics.reposity.WorkflowRecord;
+import com.example.logistics.result.ReturnCode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Starts and moves workflow instances through a {@link WorkflowService}.
+ */
+class WorkflowServiceInstanceTest {
+
+  @TempDir
+  Path dir;
+
+  private final WorkflowMetrics metrics = new WorkflowMetrics(new SimpleMeterRegistry());
+  private final DeletedInstances deleted = new DeletedInstances();
+  private JournalService journal;
+  private WorkflowService service;
+  private int workflowId;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    journal = journal(dir, metrics);
+    service = service(journal, metrics, deleted);
+    int appId = require(service.createApp(application()));
+    workflowId = require(service.createWorkflow(workflow(appId, "B")));
+  }
+
+  @AfterEach
+  void tearDown() {
+    journal.close();
+    forget(workflowId);
+  }
+
+  @Test
+  void startsInstancesOfAnExistingWorkflowOnly() throws Exception {
+    assertThat(service.startInstance(Integer.MAX_VALUE).getState())
+        .isEqualTo(ReturnCode.FLOW_ID_NOT_EXIST);
+
+    int first = require(service.startInstance(workflowId));
+    int second = require(service.startInstance(workflowId));
+    assertThat(first).isNotEqualTo(second);
+    assertThat(InstanceDatabase.getInstanceIds(workflowId))
+        .containsExactlyInAnyOrder(first, second);
+    assertThat(InstanceDatabase.getInstance(first).getWorkflowId()).isEqualTo(workflowId);
+    assertThat(InstanceDatabase.getInstance(first).getMachine().getState()).isEqualTo("A");
+  }
+
+  @Test
+  void movesAnInstanceApartFromItsWorkflow() throws Exception {
+    int instanceId = require(service.startInstance(workflowId));
+
+    assertThat(service.instanceAction(instanceId, "finish", ROLE).getState())
+        .isEqualTo(ReturnCode.ILLEGAL_STATE_TRANSITION);
+    assertThat(service.instanceAction(instanceId, "go", "r2").getState())
+        .isEqualTo(ReturnCode.USER_ROLE_PERMISSION_INVALID);
+    require(service.instanceAction(instanceId, "go", ROLE));
+
+    assertThat(InstanceDatabase.getInstance(instanceId).getMachine().getState()).isEqualTo("B");
+    assertThat(InstanceDatabase.getInstance(instanceId).getMachine().getVersion()).isEqualTo(1);
+    assertThat(WorkflowDatabase.get(workflowId).getMachine().getState()).isEqualTo("A");
+    // A moved instance holds its workflow in place
+    assertThat(service.deleteWorkflow(workflowId).getState())
+        .isEqualTo(ReturnCode.FLOW_IN_PROGRESS);
+  }
+
+  @Test
+  void reclaimsAnInstanceThatReachesTheEndState() throws Exception {
+    int finished = require(service.startInstance(workflowId));
+    int running = require(service.startInstance(workflowId));
+    require(service.instanceAction(finished, "go", ROLE));
+    require(service.instanceAction(finished, "finish", ROLE));
+
+    assertThat(InstanceDatabase.getInstance(finished)).isNull();
+    assertThat(InstanceDatabase.getInstanceIds(workflowId)).containsExactly(running);
+    assertThat(deleted.ids).containsExactly(finished);
+    assertThat(service.instanceAction(finished, "go", ROLE).getState())
+        .isEqualTo(ReturnCode.FLOW_ID_NOT_EXIST);
+
+    // Replay reaches the end state again and reclaims the instance the same way
+    journal.close();
+    forget(workflowId);
+    journal = journal(dir, metrics);
+    service = service(journal, metrics);
+    assertThat(InstanceDatabase.getInstance(finished)).isNull();
+    assertThat(InstanceDatabase.getInstanceIds(workflowId)).containsExactly(running);
+  }
+
+  @Test
+  void parksAndRebuildsInstanceMachines() throws Exception {
+    MachineResidency residency = new MachineResidency(metrics, true, 1, 0, 3600);
+    ReflectionTestUtils.setField(service, "residency", residency);
+    try {
+      int first = require(service.startInstance(workflowId));
+      require(service.startInstance(workflowId));
+      ResidentFsmMachine machine =
+          (ResidentFsmMachine) InstanceDatabase.getInstance(first).getMachine();
+      // The second instance crosses the bound, and the hand parks the older one
+      long deadline = System.currentTimeMillis() + 5000;
+      while (machine.isResident() && System.currentTimeMillis() < deadline) {
+        Thread.sleep(5);
+      }
+      assertThat(machine.isResident()).isFalse();
+
+      require(service.instanceAction(first, "go", ROLE));
+      assertThat(machine.isResident()).isTrue();
+      assertThat(machine.getState()).isEqualTo("B");
+    } finally {
+      residency.close();
+    }
+  }
+
+  @Test
+  void keepsInstanceStateOffHeapApartFromWorkflowState() throws Exception {
+    MachineStateStore stateStore = new MachineStateStore(metrics, true);
+    ReflectionTestUtils.setField(service, "stateStore", stateStore);
+    try {
+      // Instance IDs index a store of their own, since they overlap workflow IDs
+      int instanceId = require(service.startInstance(workflowId));
+      FsmMachine machine = InstanceDatabase.getInstance(instanceId).getMachine();
+      assertThat(machine).isInstanceOf(OffHeapFsmMachine.class);
+      assertThat(((OffHeapFsmMachine) machine).getUpdatedTime()).isPositive();
+
+      require(service.instanceAction(instanceId, "go", ROLE));
+      assertThat(machine.getState()).isEqualTo("B");
+      assertThat(machine.getVersion()).isEqualTo(1);
+      assertThat(WorkflowDatabase.get(workflowId).getMachine().getState()).isEqualTo("A");
+    } finally {
+      stateStore.close();
+    }
+  }
+
+  private static final class DeletedInstances implements WorkflowListener {
+
+    final List<Integer> ids = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void instanceDeleted(WorkflowRecord record, int instanceId) {
+      ids.add(instanceId);
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package com.example.logistics.service;
+
+import static com.example.logistics.TestFixtures.ROLE;
+import static com.example.logistics.TestFixtures.application;
+import static com.example.logistics.TestFixtures.forget;
+import static com.example.logistics.TestFixtures.journal;
+import static com.example.logistics.TestFixtures.require;
+import static com.example.logistics.TestFixtures.service;
+import static com.example.logistics.TestFixtures.workflow;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import com.example.logistics.journal.JournalService;
+import com.example.logistics.metrics.WorkflowMetrics;
+import com.example.logistics.model.Workflow;
+import com.example.logistics.reposity.StateCounters;
+import com.example.logistics.reposity.WorkflowDatabase;
+import com.example.logistics.result.ReturnCode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Keeps the {@link StateCounters} in step with a {@link WorkflowService} through a
+ * {@link WorkflowStateCounter}.
+ */
+class WorkflowStateCounterTest {
+
+  @TempDir
+  Path dir;
+
+  private final WorkflowMetrics metrics = new WorkflowMetrics(new SimpleMeterRegistry());
+  private JournalService journal;
+  private WorkflowService service;
+  private int appId;
+  private int moving;
+  private int waiting;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    journal = journal(dir, metrics);
+    service = service(journal, metrics, new WorkflowStateCounter());
+    appId = require(service.createApp(application()));
+    moving = require(service.createWorkflow(workflow(appId, "B")));
+    waiting = require(service.createWorkflow(workflow(appId, "B")));
+  }
+
+  @AfterEach
+  void tearDown() {
+    journal.close();
+    forget(moving);
+    forget(waiting);
+  }
+
+  @Test
+  void countsTransitions() {
+    assertThat(counts()).containsOnly(entry("A", 2L));
+
+    require(service.workflowAction(moving, "go", ROLE));
+    assertThat(counts()).containsOnly(entry("A", 1L), entry("B", 1L));
+
+    require(service.workflowAction(moving, "finish", ROLE));
+    assertThat(counts()).containsOnly(entry("A", 1L), entry("B", 0L), entry("C", 1L));
+    assertThat(service.queryStats(appId).getData().get(appId)).isEqualTo(counts());
+  }
+
+  @Test
+  void countsAnUpdatedWorkflowOnce() throws Exception {
+    Workflow detour = workflow(appId, "D");
+    detour.setId(waiting);
+    detour.setName(WorkflowDatabase.get(waiting).getWorkflow().getName());
+    require(service.updateWorkflow(detour));
+    assertThat(counts()).containsOnly(entry("A", 2L));
+
+    require(service.workflowAction(waiting, "go", ROLE));
+    assertThat(counts()).containsOnly(entry("A", 1L), entry("D", 1L));
+  }
+
+  @Test
+  void uncountsADeletedWorkflow() {
+    require(service.workflowAction(moving, "go", ROLE));
+    // A workflow that has moved is in progress, and stays counted
+    assertThat(service.deleteWorkflow(moving).getState()).isEqualTo(ReturnCode.FLOW_IN_PROGRESS);
+    assertThat(service.deleteWorkflow(waiting).getState()).isEqualTo(ReturnCode.SUCCESS);
+
+    assertThat(counts()).containsOnly(entry("A", 0L), entry("B", 1L));
+  }
+
+  private Map<String, Long> counts() {
+    return StateCounters.snapshot(appId).get(appId);
+  }
+}